@@ -0,0 +1,61 @@
+package bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * This class defines the entry point of benchmarks.jar.  It accepts the
+ * usual JMH command line (benchmark regexps, -f, -wi, -rf json, ...),
+ * always adds the gc profiler so allocation rates are reported next to
+ * throughput and latency percentiles, and hands the bench.* connection
+ * properties on to the forked benchmark JVMs.
+ *
+ * ReservationPartitionBenchmark rewrites Reservation, so it only runs when
+ * a scratch database is named with -Dbench.scratch.db; otherwise it is
+ * excluded, even when a regexp selects it.
+ *
+ * Usage: java -Dbench.port=9996 -jar benchmarks/target/benchmarks.jar [JMH options] [regexp...]
+ *
+ */
+
+public class BenchmarkMain{
+	static final String[] PROPERTIES = { "bench.db", "bench.scratch.db", "bench.port", "bench.user" };
+	//benchmarks that need bench.scratch.db
+	static final String SCRATCH_ONLY = ReservationPartitionBenchmark.class.getSimpleName();
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp()){
+			cmd.showHelp();
+			return;
+		}
+		List<String> jvmArgs = new ArrayList<String>();
+		for (String key : PROPERTIES){
+			String value = System.getProperty(key);
+			if (value != null){
+				jvmArgs.add("-D" + key + "=" + value);
+			}
+		}
+		OptionsBuilder options = new OptionsBuilder();
+		options.parent(cmd);
+		options.addProfiler(GCProfiler.class);
+		options.jvmArgsAppend(jvmArgs.toArray(new String[0]));
+		if (System.getProperty(ReservationPartitionBenchmark.SCRATCH_DB) == null){
+			options.exclude(SCRATCH_ONLY);
+			if (!cmd.shouldList()){
+				System.err.println(SCRATCH_ONLY + " skipped: set -D" + ReservationPartitionBenchmark.SCRATCH_DB + "=<DBname> to run it");
+			}
+		}
+		Runner runner = new Runner(options.build());
+		if (cmd.shouldList()){
+			runner.list();
+			return;
+		}
+		runner.run();
+	}
+}
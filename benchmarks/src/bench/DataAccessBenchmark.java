@@ -0,0 +1,83 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class defines benchmarks of the generic data-access methods of
+ * DBproject: executeQueryAndReturnResult, executeQueryAndPrintResult and
+ * executeUpdate, each against a randomly chosen flight of the seeded data.
+ *
+ * Throughput mode reports operations per millisecond, sample mode reports
+ * the latency distribution (p50, p90, p99, ...).
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class DataAccessBenchmark{
+	static final int NUM_FLIGHTS = 2000;	//rows in data/flights.csv
+
+	static final String RESERVATIONS_SQL = "SELECT rnum, cid, status FROM Reservation WHERE fid = ?;";
+	static final String FLIGHT_SQL =
+		"SELECT F.fnum, F.cost, F.num_sold, F.actual_departure_date, F.departure_airport, F.arrival_airport " +
+		"FROM Flight F WHERE F.fnum = ?;";
+	//rewrites a row with its own values, so repeated runs do not change the data
+	static final String UPDATE_SQL = "UPDATE Flight SET cost = cost WHERE fnum = ?;";
+
+	private Project _project;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		this._project = new Project();
+		Quiet.on();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		Quiet.off();
+		this._project.cleanup();
+	}
+
+	private static int randomFlight(){
+		return ThreadLocalRandom.current().nextInt(NUM_FLIGHTS);
+	}
+
+	@Benchmark
+	public List<List<String>> returnResultReservations() throws Throwable {
+		return this._project.executeQueryAndReturnResult(RESERVATIONS_SQL, randomFlight());
+	}
+
+	@Benchmark
+	public List<List<String>> returnResultFlight() throws Throwable {
+		return this._project.executeQueryAndReturnResult(FLIGHT_SQL, randomFlight());
+	}
+
+	@Benchmark
+	public int printResultReservations() throws Throwable {
+		return this._project.executeQueryAndPrintResult(RESERVATIONS_SQL, randomFlight());
+	}
+
+	@Benchmark
+	public int update() throws Throwable {
+		return this._project.executeUpdate(UPDATE_SQL, randomFlight());
+	}
+}
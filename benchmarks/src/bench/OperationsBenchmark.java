@@ -0,0 +1,137 @@
+package bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class defines one benchmark per menu option of the CLI, each run
+ * end to end (prompts, validation queries, the operation itself and the
+ * printed result) with scripted input.
+ *
+ * The write operations take their ids from the id allocator and book on a
+ * flight created for the run, flight BENCH_ID_BASE.  Everything they add
+ * is marked (the names below, or that flight) and deleted again when the
+ * trial ends, so the seeded data is left as it was.
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)	//the operations share the static input reader of DBproject
+public class OperationsBenchmark{
+	static final int BENCH_ID_BASE = 1000000;	//well above the ids in data/*.csv
+	static final int NUM_FLIGHTS = 2000;	//rows in data/flights.csv
+	static final int NUM_CUSTOMERS = 250;	//rows in data/customer.csv
+	static final String[] STATUSES = { "R", "W", "C" };
+	//names of the rows the add benchmarks insert
+	static final String BENCH_MAKE = "Bench";
+	static final String BENCH_PILOT = "Bench Pilot";
+	static final String BENCH_TECHNICIAN = "Bench Technician";
+
+	static final String[] CLEANUP = {
+		"DELETE FROM Reservation WHERE fid = " + BENCH_ID_BASE + ";",
+		"DELETE FROM FlightInfo WHERE flight_id = " + BENCH_ID_BASE + ";",
+		"DELETE FROM Flight WHERE fnum = " + BENCH_ID_BASE + ";",
+		"DELETE FROM Plane WHERE make = '" + BENCH_MAKE + "';",
+		"DELETE FROM Pilot WHERE fullname = '" + BENCH_PILOT + "';",
+		"DELETE FROM Technician WHERE full_name = '" + BENCH_TECHNICIAN + "';",
+	};
+
+	private Project _project;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		this._project = new Project();
+		clean();
+		//a flight of its own for the booking benchmark, flown by plane 0
+		this._project.executeUpdate("INSERT INTO Flight(fnum, cost, num_sold, num_stops, actual_departure_date, " +
+			"actual_arrival_date, arrival_airport, departure_airport) VALUES (?, 100, 0, 0, '2014-05-01', '2014-05-02', 'BENCH', 'BENCH');",
+			BENCH_ID_BASE);
+		this._project.runOperation("AddFlight", BENCH_ID_BASE + "\n0\n0\n");
+		Quiet.on();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		Quiet.off();
+		try{
+			clean();
+		}finally{
+			this._project.cleanup();
+		}
+	}
+
+	private void clean() throws Throwable {
+		for (String sql : CLEANUP){
+			this._project.executeUpdate(sql);
+		}
+	}
+
+	private static int random(int bound){
+		return ThreadLocalRandom.current().nextInt(bound);
+	}
+
+	@Benchmark
+	public void addPlane() throws Throwable {
+		this._project.runOperation("AddPlane", BENCH_MAKE + "\nB-1\n1\n200\n");
+	}
+
+	@Benchmark
+	public void addPilot() throws Throwable {
+		this._project.runOperation("AddPilot", BENCH_PILOT + "\nNowhere\n");
+	}
+
+	@Benchmark
+	public void addFlight() throws Throwable {
+		this._project.runOperation("AddFlight", BENCH_ID_BASE + "\n0\n0\n");
+	}
+
+	@Benchmark
+	public void addTechnician() throws Throwable {
+		this._project.runOperation("AddTechnician", BENCH_TECHNICIAN + "\n");
+	}
+
+	//once the flight is full, every booking goes to the wait list
+	@Benchmark
+	public void bookFlight() throws Throwable {
+		this._project.runOperation("BookFlight", random(NUM_CUSTOMERS) + "\n" + BENCH_ID_BASE + "\ny\n");
+	}
+
+	@Benchmark
+	public void listNumberOfAvailableSeats() throws Throwable {
+		this._project.runOperation("ListNumberOfAvailableSeats", random(NUM_FLIGHTS) + "\n");
+	}
+
+	@Benchmark
+	public void listTotalNumberOfRepairsPerPlane() throws Throwable {
+		this._project.runOperation("ListsTotalNumberOfRepairsPerPlane", "");
+	}
+
+	@Benchmark
+	public void listTotalNumberOfRepairsPerYear() throws Throwable {
+		this._project.runOperation("ListTotalNumberOfRepairsPerYear", "");
+	}
+
+	@Benchmark
+	public void findPassengersCountWithStatus() throws Throwable {
+		this._project.runOperation("FindPassengersCountWithStatus", random(NUM_FLIGHTS) + "\n" + STATUSES[random(STATUSES.length)] + "\n");
+	}
+}
@@ -0,0 +1,124 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class defines a handle on a DBproject instance for the benchmarks.
+ * DBproject lives in the default package, which JMH benchmarks (and any
+ * other packaged class) can not import, so its methods are bound once
+ * through method handles and called through them.
+ *
+ * The connection settings come from system properties:
+ *
+ *   bench.db    database name, default $USER_DB (see postgresql/createPostgreDB.sh)
+ *   bench.port  port, default 9996 (see postgresql/startPostgreSQL.sh)
+ *   bench.user  database user, default $USER
+ *
+ * Benchmarks that rebuild tables connect to bench.scratch.db instead, see
+ * ReservationPartitionBenchmark.
+ *
+ */
+
+public class Project{
+	//menu options of the CLI, by benchmark name
+	static final String[] OPERATIONS = {
+		"AddPlane", "AddPilot", "AddFlight", "AddTechnician", "BookFlight",
+		"ListNumberOfAvailableSeats", "ListsTotalNumberOfRepairsPerPlane",
+		"ListTotalNumberOfRepairsPerYear", "FindPassengersCountWithStatus"
+	};
+
+	private final Object _esql;
+	private final MethodHandle _returnResult;
+	private final MethodHandle _printResult;
+	private final MethodHandle _update;
+	private final MethodHandle _cleanup;
+	private final MethodHandle _setInput;
+	private final Map<String, MethodHandle> _operations = new HashMap<String, MethodHandle>();
+
+	/**
+	 * Connects to the database named by the bench.* system properties.
+	 *
+	 * @throws java.lang.Exception when DBproject can not be loaded or connected
+	 */
+	public Project() throws Exception {
+		this(System.getProperty("bench.db", System.getProperty("bench.user", System.getProperty("user.name")) + "_DB"));
+	}
+
+	/**
+	 * Connects to the given database, with the port and user of the bench.*
+	 * system properties.
+	 *
+	 * @param dbname the database name
+	 * @throws java.lang.Exception when DBproject can not be loaded or connected
+	 */
+	public Project(String dbname) throws Exception {
+		String user = System.getProperty("bench.user", System.getProperty("user.name"));
+		String port = System.getProperty("bench.port", "9996");
+
+		Class.forName("org.postgresql.Driver");
+		Class<?> cls = Class.forName("DBproject");
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		this._esql = cls.getConstructor(String.class, String.class, String.class, String.class)
+			.newInstance(dbname, port, user, "");
+
+		this._returnResult = bind(lookup, cls, "executeQueryAndReturnResult", List.class);
+		this._printResult = bind(lookup, cls, "executeQueryAndPrintResult", int.class);
+		this._update = bind(lookup, cls, "executeUpdate", int.class);
+		this._cleanup = lookup.unreflect(cls.getMethod("cleanup")).bindTo(this._esql);
+
+		//the menu options read their input from the static reader DBproject.in
+		Field in = cls.getDeclaredField("in");
+		in.setAccessible(true);
+		this._setInput = lookup.unreflectSetter(in);
+		//and run on the storage interface, here the JDBC store of the connection
+		Class<?> store = Class.forName("AirlineStore");
+		Object jdbc = cls.getMethod("getStore").invoke(this._esql);
+		for (String name : OPERATIONS){
+			this._operations.put(name, lookup.unreflect(cls.getMethod(name, store)).bindTo(jdbc));
+		}
+	}
+
+	private MethodHandle bind(MethodHandles.Lookup lookup, Class<?> cls, String name, Class<?> result) throws Exception {
+		return lookup.unreflect(cls.getMethod(name, String.class, Object[].class)).asFixedArity().bindTo(this._esql)
+			.asType(MethodType.methodType(result, String.class, Object[].class));
+	}
+
+	@SuppressWarnings("unchecked")
+	public List<List<String>> executeQueryAndReturnResult(String query, Object... params) throws Throwable {
+		return (List<List<String>>) this._returnResult.invokeExact(query, params);
+	}
+
+	public int executeQueryAndPrintResult(String query, Object... params) throws Throwable {
+		return (int) this._printResult.invokeExact(query, params);
+	}
+
+	public int executeUpdate(String sql, Object... params) throws Throwable {
+		return (int) this._update.invokeExact(sql, params);
+	}
+
+	/**
+	 * Method to run one of the nine menu options with scripted input, one
+	 * answer per line.  The input reader is static, so operations must not
+	 * run from several threads at once.
+	 *
+	 * @param name the operation, one of OPERATIONS
+	 * @param input the answers to the prompts of the operation
+	 * @throws java.lang.Throwable whatever the operation throws
+	 */
+	public void runOperation(String name, String input) throws Throwable {
+		this._setInput.invoke(new BufferedReader(new StringReader(input)));
+		this._operations.get(name).invoke();
+	}
+
+	public void cleanup() throws Throwable {
+		this._cleanup.invoke();
+	}
+}
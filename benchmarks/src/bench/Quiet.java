@@ -0,0 +1,41 @@
+package bench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * This class defines a stdout replacement that drops everything written to
+ * it, so printed results and prompts are formatted (and measured) but do
+ * not flood the benchmark log.
+ *
+ */
+
+public class Quiet{
+	private static PrintStream _saved = null;
+
+	/**
+	 * Method to start discarding System.out.
+	 */
+	public static synchronized void on(){
+		if (_saved == null){
+			_saved = System.out;
+			System.setOut(new PrintStream(new OutputStream(){
+				public void write(int b){
+				}
+
+				public void write(byte[] b, int off, int len){
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Method to restore System.out.
+	 */
+	public static synchronized void off(){
+		if (_saved != null){
+			System.setOut(_saved);
+			_saved = null;
+		}
+	}
+}
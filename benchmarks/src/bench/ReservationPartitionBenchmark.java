@@ -0,0 +1,196 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class defines benchmarks of Reservation at scale, plain and
+ * partitioned on fid (see reservation_partition in create.sql): the
+ * per-flight reads of options 9/10 and of wait list promotion, and point
+ * lookups of a reservation with and without its flight number.
+ *
+ * It runs on its own database, bench.scratch.db, and only when that is
+ * set (BenchmarkMain excludes it otherwise): the trial setup grows
+ * Reservation to the given number of rows, which stay, and rebuilds the
+ * table in the given partitioning.  The tear down rebuilds it back in the
+ * partitioning it had before.
+ *
+ * The rows added are waitlisted or cancelled reservations of existing
+ * customers and flights, so Flight.num_sold stays right; the status counts
+ * are rebuilt afterwards.  Growing disables the triggers while it
+ * inserts, which needs a superuser, as the user of the local cluster of
+ * postgresql/startPostgreSQL.sh is.  At 100M rows each rebuild copies the
+ * whole table and takes minutes.
+ *
+ *   java -Dbench.scratch.db=<DBname> -Dbench.port=9996 -jar benchmarks/target/benchmarks.jar ReservationPartitionBenchmark [-p rows=100000000]
+ *
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ReservationPartitionBenchmark{
+	//names the database the benchmark may rewrite
+	static final String SCRATCH_DB = "bench.scratch.db";
+	//reservations sampled for the point lookups
+	static final int SAMPLE = 10000;
+
+	static final String COUNT_SQL = "SELECT count(*) FROM Reservation;";
+	static final String MAX_SQL = "SELECT coalesce(max(rnum), -1), (SELECT max(id) FROM Customer), (SELECT max(fnum) FROM Flight) FROM Reservation;";
+	static final String MODE_SQL =
+		"SELECT coalesce((SELECT CASE partstrat WHEN 'h' THEN 'hash' WHEN 'r' THEN 'range' END " +
+		"FROM pg_partitioned_table WHERE partrelid = 'reservation'::regclass), 'none');";
+	//the argument reservation_partition needs to rebuild the current partitioning: partitions for hash, flights per partition for range
+	static final String COUNT_OF_MODE_SQL =
+		"SELECT coalesce(CASE ? " +
+			"WHEN 'hash' THEN (SELECT count(*)::int FROM pg_inherits WHERE inhparent = 'reservation'::regclass) " +
+			"WHEN 'range' THEN (SELECT substring(pg_get_expr(relpartbound, oid) from 'TO \\((\\d+)\\)')::int " +
+				"FROM pg_class WHERE relname = 'reservation_p0') END, 1);";
+	static final String PARTITION_SQL = "SELECT reservation_partition(?, ?);";
+	static final String DISABLE_SQL = "ALTER TABLE Reservation DISABLE TRIGGER ALL;";
+	static final String ENABLE_SQL = "ALTER TABLE Reservation ENABLE TRIGGER ALL;";
+	//parameters: first rnum, number of rows; no 'R' rows, which num_sold would have to count
+	static final String GROW_SQL =
+		"WITH C AS (SELECT array_agg(id) AS ids FROM Customer), F AS (SELECT array_agg(fnum) AS ids FROM Flight) " +
+		"INSERT INTO Reservation (rnum, cid, fid, status) " +
+		"SELECT ? + g, C.ids[1 + floor(random() * cardinality(C.ids))::int], F.ids[1 + floor(random() * cardinality(F.ids))::int], " +
+			"(ARRAY['W', 'C'])[1 + floor(random() * 2)::int] " +
+		"FROM C, F, generate_series(0, ? - 1) g;";
+	static final String AFTER_GROW_SQL =
+		"SELECT reservation_counts_rebuild(), " +
+		"setval('reservation_rnum_seq', (SELECT max(rnum) + 1 FROM Reservation), false);";
+	static final String SAMPLE_SQL = "SELECT rnum, fid FROM Reservation TABLESAMPLE SYSTEM (1) LIMIT " + SAMPLE + ";";
+	//for tables too small for a 1% sample of pages to find rows
+	static final String FIRST_SQL = "SELECT rnum, fid FROM Reservation LIMIT " + SAMPLE + ";";
+
+	static final String STATUS_COUNTS_SQL = "SELECT status, count(*) FROM Reservation WHERE fid = ? GROUP BY status;";
+	static final String WAITLIST_SQL = "SELECT rnum FROM Reservation WHERE fid = ? AND status = 'W' ORDER BY booked LIMIT 10;";
+	static final String BY_FLIGHT_AND_RNUM_SQL = "SELECT cid, status FROM Reservation WHERE fid = ? AND rnum = ?;";
+	static final String BY_RNUM_SQL = "SELECT cid, status FROM Reservation WHERE rnum = ?;";
+
+	@Param({"1000000"})
+	public long rows;
+
+	@Param({"none", "hash", "range"})
+	public String partitioning;
+
+	//number of partitions; range partitions split the flight numbers into about as many ranges
+	@Param({"64"})
+	public int partitions;
+
+	private Project _project;
+	//the partitioning to restore, and its reservation_partition argument
+	private String _mode;
+	private int _modeCount;
+	private int _flights;
+	private int[] _rnums;
+	private int[] _fids;
+
+	@Setup(Level.Trial)
+	public void setup() throws Throwable {
+		String scratch = System.getProperty(SCRATCH_DB);
+		if (scratch == null){
+			throw new IllegalStateException(getClass().getSimpleName() + " rewrites Reservation; set -D" + SCRATCH_DB + "=<DBname> to run it");
+		}
+		this._project = new Project(scratch);
+		String mode = this._project.executeQueryAndReturnResult(MODE_SQL).get(0).get(0);
+		this._mode = mode;
+		this._modeCount = Integer.parseInt(this._project.executeQueryAndReturnResult(COUNT_OF_MODE_SQL, mode).get(0).get(0).trim());
+		long count = Long.parseLong(this._project.executeQueryAndReturnResult(COUNT_SQL).get(0).get(0));
+		if (count < this.rows){
+			//grow as a plain table, then partition
+			if (!mode.equals("none")){
+				this._project.executeQueryAndReturnResult(PARTITION_SQL, "none", 1);
+				mode = "none";
+			}
+			List<String> max = this._project.executeQueryAndReturnResult(MAX_SQL).get(0);
+			this._project.executeUpdate(DISABLE_SQL);
+			try{
+				this._project.executeUpdate(GROW_SQL, Integer.parseInt(max.get(0).trim()) + 1, this.rows - count);
+			}finally{
+				this._project.executeUpdate(ENABLE_SQL);
+			}
+			this._project.executeQueryAndReturnResult(AFTER_GROW_SQL);
+		}
+		if (!mode.equals(this.partitioning)){
+			int n = this.partitioning.equals("range")
+				? Math.max(1, Integer.parseInt(this._project.executeQueryAndReturnResult(MAX_SQL).get(0).get(2).trim()) / this.partitions)
+				: this.partitions;
+			this._project.executeQueryAndReturnResult(PARTITION_SQL, this.partitioning, n);
+		}
+
+		this._flights = Integer.parseInt(this._project.executeQueryAndReturnResult(MAX_SQL).get(0).get(2).trim()) + 1;
+		List<List<String>> sample = this._project.executeQueryAndReturnResult(SAMPLE_SQL);
+		if (sample.isEmpty()){
+			sample = this._project.executeQueryAndReturnResult(FIRST_SQL);
+		}
+		this._rnums = new int[sample.size()];
+		this._fids = new int[sample.size()];
+		for (int i = 0; i < sample.size(); i++){
+			this._rnums[i] = Integer.parseInt(sample.get(i).get(0).trim());
+			this._fids[i] = Integer.parseInt(sample.get(i).get(1).trim());
+		}
+		Quiet.on();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Throwable {
+		Quiet.off();
+		try{
+			String mode = this._project.executeQueryAndReturnResult(MODE_SQL).get(0).get(0);
+			if (!mode.equals(this._mode)){
+				this._project.executeQueryAndReturnResult(PARTITION_SQL, this._mode, this._modeCount);
+			}
+		}finally{
+			this._project.cleanup();
+		}
+	}
+
+	private int randomFlight(){
+		return ThreadLocalRandom.current().nextInt(this._flights);
+	}
+
+	//the per-flight status count that option 10 reads from FlightStatusCounts, straight from Reservation
+	@Benchmark
+	public List<List<String>> statusCountsOfFlight() throws Throwable {
+		return this._project.executeQueryAndReturnResult(STATUS_COUNTS_SQL, randomFlight());
+	}
+
+	//the read side of wait list promotion
+	@Benchmark
+	public List<List<String>> waitlistOfFlight() throws Throwable {
+		return this._project.executeQueryAndReturnResult(WAITLIST_SQL, randomFlight());
+	}
+
+	//a lookup that names the flight, so it is routed to one partition
+	@Benchmark
+	public List<List<String>> reservationByFlightAndRnum() throws Throwable {
+		int i = ThreadLocalRandom.current().nextInt(this._rnums.length);
+		return this._project.executeQueryAndReturnResult(BY_FLIGHT_AND_RNUM_SQL, this._fids[i], this._rnums[i]);
+	}
+
+	//a lookup by rnum alone, which probes every partition
+	@Benchmark
+	public List<List<String>> reservationByRnum() throws Throwable {
+		int i = ThreadLocalRandom.current().nextInt(this._rnums.length);
+		return this._project.executeQueryAndReturnResult(BY_RNUM_SQL, this._rnums[i]);
+	}
+}
@@ -0,0 +1,542 @@
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class defines the booking path shared by the CLI and the GUI.  A
+ * booking is a single statement: a conditional UPDATE of Flight.num_sold
+ * that only succeeds while seats are left, and an INSERT of the
+ * reservation that uses the outcome of that UPDATE to pick the status.
+ * Both run in one implicit transaction and one round trip, the row lock
+ * taken by the UPDATE serializes concurrent bookers of the same flight so
+ * it can not be oversold, and rnum is taken from a block of
+ * reservation_rnum_seq reserved by IdAllocator, so concurrent bookings
+ * never collide and a booking costs no extra round trip for its key.
+ *
+ * Every committed reservation is written through to the in-memory seat
+ * inventory (InventoryCache), so availability reads stay current without
+ * a round trip.
+ *
+ * Bulk bookings from bookFlights are grouped by flight: each flight takes
+ * its seats with one conditional UPDATE and inserts all of its
+ * reservations with one batched INSERT, in one transaction per flight.
+ * The rnums of a batch come from the same IdAllocator blocks as single
+ * bookings, so a batch only queries reservation_rnum_seq when it uses up
+ * a block.
+ *
+ * Cancelling sets a reservation to 'C' and, if it held a seat, gives the
+ * seat back; in the same transaction the oldest 'W' reservations of the
+ * flight (in the order they were inserted, see Reservation.booked) are
+ * moved to 'R' for as many seats as are free.  Mass cancellations (cancelReservations, cancelFlight) take one
+ * pass per flight: lock the flight, cancel all of its reservations with
+ * one UPDATE, then promote with one more, whatever their number.
+ *
+ */
+
+public class BookingEngine{
+	public static final char RESERVED = 'R';
+	public static final char WAITLISTED = 'W';
+	public static final char CANCELLED = 'C';
+
+	static final String BOOK_SQL =
+		"WITH seat AS (" +
+			"UPDATE Flight F SET num_sold = F.num_sold + 1 " +
+			"FROM FlightInfo FI, Plane P " +
+			"WHERE F.fnum = ? AND FI.flight_id = F.fnum AND FI.plane_id = P.id AND P.seats - F.num_sold > 0 " +
+			"RETURNING F.fnum) " +
+		"INSERT INTO Reservation(rnum, cid, fid, status) " +
+		"SELECT ?, ?, ?, " +
+			"CAST(CASE WHEN EXISTS (SELECT 1 FROM seat) THEN 'R' ELSE 'W' END AS CHAR(1)) " +
+		"WHERE EXISTS (SELECT 1 FROM seat) OR ? " +
+		"RETURNING rnum, status;";
+
+	//takes up to ? seats on a flight, returning how many were granted
+	static final String RESERVE_SQL =
+		"WITH cap AS (" +
+			"SELECT F.fnum, GREATEST(LEAST(?, P.seats - F.num_sold), 0) AS granted " +
+			"FROM Flight F, FlightInfo FI, Plane P " +
+			"WHERE F.fnum = ? AND FI.flight_id = F.fnum AND FI.plane_id = P.id " +
+			"LIMIT 1 FOR UPDATE OF F) " +
+		"UPDATE Flight F SET num_sold = F.num_sold + cap.granted FROM cap WHERE F.fnum = cap.fnum " +
+		"RETURNING cap.granted;";
+
+	static final String INSERT_SQL = "INSERT INTO Reservation(rnum, cid, fid, status) VALUES (?, ?, ?, ?);";
+
+	//the only statement without fid: with Reservation partitioned it probes the primary key of every partition
+	static final String FLIGHTS_OF_SQL = "SELECT rnum, fid FROM Reservation WHERE rnum = ANY (?);";
+
+	//locks the flight against bookings and other cancellations, returning the free seats (NULL without plane)
+	static final String LOCK_FLIGHT_SQL =
+		"SELECT P.seats - F.num_sold " +
+		"FROM Flight F LEFT JOIN FlightInfo FI ON FI.flight_id = F.fnum LEFT JOIN Plane P ON P.id = FI.plane_id " +
+		"WHERE F.fnum = ? LIMIT 1 FOR UPDATE OF F;";
+
+	//cancels the listed (or, when the second parameter is true, all) live reservations of a flight,
+	//returning the status each had before; both sides name the flight, so each reads one partition
+	static final String CANCEL_SQL =
+		"UPDATE Reservation R SET status = 'C' FROM Reservation O " +
+		"WHERE O.rnum = R.rnum AND O.fid = R.fid AND R.fid = ? AND R.status IN ('R', 'W') AND (? OR R.rnum = ANY (?)) " +
+		"RETURNING R.rnum, O.status;";
+
+	//moves the ? oldest waitlisted reservations of a flight to 'R' and sets num_sold to num_sold - ? + promoted;
+	//oldest by booked, the insertion order, since rnums come in per-process blocks and are not booking order
+	static final String PROMOTE_SQL =
+		"WITH promoted AS (" +
+			"UPDATE Reservation SET status = 'R' WHERE fid = ? AND rnum IN (" +
+				"SELECT rnum FROM Reservation WHERE fid = ? AND status = 'W' ORDER BY booked LIMIT ? FOR UPDATE) " +
+			"RETURNING rnum, cid, booked), " +
+		"sold AS (" +
+			"UPDATE Flight SET num_sold = GREATEST(num_sold - ? + (SELECT count(*) FROM promoted), 0) WHERE fnum = ?) " +
+		"SELECT rnum, cid FROM promoted ORDER BY booked;";
+
+	/**
+	 * This class defines one booking request of a bulk booking.
+	 */
+	public static class BookingRequest{
+		public final int cid;
+		public final int fnum;
+		public final boolean waitlistIfFull;
+
+		public BookingRequest(int cid, int fnum, boolean waitlistIfFull){
+			this.cid = cid;
+			this.fnum = fnum;
+			this.waitlistIfFull = waitlistIfFull;
+		}
+	}
+
+	/**
+	 * This class defines the outcome of one request of a bulk booking:
+	 * either a booking, a rejection because the flight was full, or an
+	 * error message.
+	 */
+	public static class Outcome{
+		public final BookingRequest request;
+		public final Booking booking;
+		public final String error;
+
+		Outcome(BookingRequest request, Booking booking, String error){
+			this.request = request;
+			this.booking = booking;
+			this.error = error;
+		}
+
+		public boolean isBooked(){
+			return this.booking != null;
+		}
+
+		public boolean isFailed(){
+			return this.error != null;
+		}
+
+		public String toString(){
+			if (this.booking != null) return this.booking.toString();
+			if (this.error != null) return "Booking customer " + this.request.cid + " on flight " + this.request.fnum + " failed: " + this.error;
+			return "Flight " + this.request.fnum + " is sold out, customer " + this.request.cid + " was not booked";
+		}
+	}
+
+	/**
+	 * This class defines the outcome of a successful booking.
+	 */
+	public static class Booking{
+		public final int rnum;
+		public final int cid;
+		public final int fnum;
+		public final char status;
+
+		Booking(int rnum, int cid, int fnum, char status){
+			this.rnum = rnum;
+			this.cid = cid;
+			this.fnum = fnum;
+			this.status = status;
+		}
+
+		public boolean isReserved(){
+			return this.status == RESERVED;
+		}
+
+		public String toString(){
+			return "Reservation #" + this.rnum + " for customer " + this.cid + " on flight " + this.fnum +
+				(isReserved() ? " is confirmed" : " is on the wait list");
+		}
+	}
+
+	/**
+	 * This class defines the outcome of cancellations on one flight.
+	 */
+	public static class Cancellation{
+		public final int fnum;
+		//reservations set to 'C'
+		public final int cancelled;
+		//seats given back, the cancelled reservations that were 'R'
+		public final int released;
+		//waitlisted reservations that got a seat, oldest first
+		public final List<Booking> promoted;
+
+		Cancellation(int fnum, int cancelled, int released, List<Booking> promoted){
+			this.fnum = fnum;
+			this.cancelled = cancelled;
+			this.released = released;
+			this.promoted = promoted;
+		}
+
+		public String toString(){
+			StringBuilder sb = new StringBuilder();
+			sb.append(this.cancelled).append(this.cancelled == 1 ? " reservation" : " reservations")
+				.append(" on flight ").append(this.fnum).append(" cancelled, ").append(this.released)
+				.append(this.released == 1 ? " seat" : " seats").append(" released");
+			for (Booking booking : this.promoted){
+				sb.append("\n").append(booking);
+			}
+			return sb.toString();
+		}
+	}
+
+	private final Database _esql;
+
+	public BookingEngine(Database esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to book a seat for a customer on a flight.  If the flight is
+	 * full the customer is either put on the wait list or turned away,
+	 * depending on waitlistIfFull.
+	 *
+	 * @param cid the customer id
+	 * @param fnum the flight number
+	 * @param waitlistIfFull whether to add a 'W' reservation when no seat is left
+	 * @return the booking, or null when the flight is full and waitlistIfFull is false
+	 * @throws java.sql.SQLException when the customer or flight does not exist or the booking failed
+	 */
+	public Booking book(int cid, int fnum, boolean waitlistIfFull) throws SQLException {
+		int rnum = this._esql.getIdAllocator().next(IdAllocator.RESERVATION);
+		ResultTable result = this._esql.executeQueryAndReturnTable(BOOK_SQL, fnum, rnum, cid, fnum, waitlistIfFull);
+		if (result.getRowCount() == 0){
+			return null;
+		}
+		return booked(new Booking(result.getInt(0, 0), cid, fnum, result.getString(0, 1).charAt(0)));
+	}
+
+	/*
+	 * Books one seat on a connection the caller already holds, with
+	 * auto-commit off, and commits it.  Used by bookFlights, which must not
+	 * borrow a second connection while it holds one.
+	 */
+	private Booking book(Connection conn, StatementCache cache, int cid, int fnum, boolean waitlistIfFull) throws SQLException {
+		int rnum = this._esql.getIdAllocator().next(IdAllocator.RESERVATION, conn);
+		PreparedStatement stmt = cache.prepare(BOOK_SQL);
+		StatementCache.bind(stmt, fnum, rnum, cid, fnum, waitlistIfFull);
+		ResultSet rs = CancelHandle.executeQuery(stmt);
+		try{
+			if (!rs.next()){
+				conn.commit();
+				return null;
+			}
+			Booking booking = new Booking(rs.getInt(1), cid, fnum, rs.getString(2).charAt(0));
+			conn.commit();
+			return booked(booking);
+		}finally{
+			rs.close();
+		}
+	}
+
+	//writes a committed single booking through to the caches
+	private Booking booked(Booking booking){
+		this._esql.getResultCache().invalidate("reservation");
+		if (booking.isReserved()){
+			this._esql.getInventory().recordSale(booking.fnum, 1);
+		}
+		return booking;
+	}
+
+	/**
+	 * Method to book many seats at once.  Requests are grouped by flight and
+	 * flights are processed in ascending order, so concurrent bulk bookings
+	 * lock flights in the same order.  Within a flight, requests are served
+	 * in the order given: the first ones get the seats that are left, the
+	 * rest are waitlisted or rejected.  If a flight's batch fails (e.g. an
+	 * unknown customer id) it is rolled back and its requests are retried
+	 * one at a time on the same connection so each gets its own outcome.
+	 * If the connection itself breaks, the requests not yet committed fail
+	 * with its error.
+	 *
+	 * @param requests the booking requests
+	 * @return one outcome per request, in the order of the requests
+	 * @throws java.sql.SQLException when no connection could be obtained
+	 */
+	public List<Outcome> bookFlights(Collection<BookingRequest> requests) throws SQLException {
+		BookingRequest[] ordered = requests.toArray(new BookingRequest[0]);
+		Outcome[] outcomes = new Outcome[ordered.length];
+
+		//request indexes per flight
+		Map<Integer, List<Integer>> byFlight = new TreeMap<Integer, List<Integer>>();
+		for (int i = 0; i < ordered.length; i++){
+			List<Integer> group = byFlight.get(ordered[i].fnum);
+			if (group == null){
+				group = new ArrayList<Integer>();
+				byFlight.put(ordered[i].fnum, group);
+			}
+			group.add(i);
+		}
+
+		ConnectionPool pool = this._esql.getPool();
+		Connection conn = pool.borrow();
+		//error of the connection once it broke; the remaining flights are not tried
+		String broken = null;
+		try{
+			StatementCache cache = pool.getStatementCache(conn);
+			conn.setAutoCommit(false);
+			for (Map.Entry<Integer, List<Integer>> entry : byFlight.entrySet()){
+				if (broken != null){
+					fail(entry.getValue(), ordered, outcomes, broken);
+					continue;
+				}
+				try{
+					int granted = bookGroup(conn, cache, entry.getKey(), entry.getValue(), ordered, outcomes);
+					conn.commit();
+					this._esql.getResultCache().invalidate("reservation");
+					this._esql.getInventory().recordSale(entry.getKey(), granted);
+				}catch (SQLException e){
+					//the outcomes bookGroup filled in were rolled back
+					for (int i : entry.getValue()){
+						outcomes[i] = null;
+					}
+					try{
+						conn.rollback();
+						retryGroup(conn, cache, entry.getValue(), ordered, outcomes);
+					}catch (SQLException f){
+						broken = f.getMessage();
+						fail(entry.getValue(), ordered, outcomes, broken);
+					}
+				}
+			}
+		}finally{
+			pool.release(conn);
+		}
+		return Arrays.asList(outcomes);
+	}
+
+	/*
+	 * Books all requests of one flight inside the caller's transaction and
+	 * returns the number of seats taken.
+	 */
+	private int bookGroup(Connection conn, StatementCache cache, int fnum, List<Integer> group,
+			BookingRequest[] requests, Outcome[] outcomes) throws SQLException {
+		//take as many seats as there are requests, or as many as are left
+		PreparedStatement stmt = cache.prepare(RESERVE_SQL);
+		StatementCache.bind(stmt, group.size(), fnum);
+		ResultSet rs = CancelHandle.executeQuery(stmt);
+		if (!rs.next()){
+			rs.close();
+			for (int i : group){
+				outcomes[i] = new Outcome(requests[i], null, "flight " + fnum + " does not exist or has no plane assigned");
+			}
+			return 0;
+		}
+		int granted = rs.getInt(1);
+		rs.close();
+
+		//decide the status of each request before touching Reservation
+		char[] status = new char[group.size()];
+		int numRows = 0;
+		for (int k = 0; k < group.size(); k++){
+			if (k < granted){
+				status[k] = RESERVED;
+			}else if (requests[group.get(k)].waitlistIfFull){
+				status[k] = WAITLISTED;
+			}
+			if (status[k] != 0){
+				numRows++;
+			}
+		}
+
+		PreparedStatement insert = cache.prepare(INSERT_SQL);
+		for (int k = 0; k < group.size(); k++){
+			int i = group.get(k);
+			if (status[k] == 0){
+				outcomes[i] = new Outcome(requests[i], null, null);
+				continue;
+			}
+			int rnum = this._esql.getIdAllocator().next(IdAllocator.RESERVATION, conn);
+			insert.setInt(1, rnum);
+			insert.setInt(2, requests[i].cid);
+			insert.setInt(3, fnum);
+			insert.setString(4, String.valueOf(status[k]));
+			insert.addBatch();
+			outcomes[i] = new Outcome(requests[i], new Booking(rnum, requests[i].cid, fnum, status[k]), null);
+		}
+		if (numRows > 0){
+			try{
+				CancelHandle.executeBatch(insert);
+			}finally{
+				//the statement is cached, so never leave rows queued on it
+				insert.clearBatch();
+			}
+		}
+		return granted;
+	}
+
+	/**
+	 * Method to cancel a reservation and give its seat to the oldest
+	 * waitlisted reservation of the flight.
+	 *
+	 * @param rnum the reservation number
+	 * @return the outcome, or null if there is no such reservation
+	 * @throws java.sql.SQLException when the cancellation failed
+	 */
+	public Cancellation cancel(int rnum) throws SQLException {
+		List<Cancellation> outcomes = cancelReservations(Collections.singletonList(rnum));
+		return outcomes.isEmpty() ? null : outcomes.get(0);
+	}
+
+	/**
+	 * Method to cancel many reservations at once.  They are grouped by
+	 * flight and flights are processed in ascending order, each in its own
+	 * transaction; reservations already cancelled are left alone.  When a
+	 * flight fails, the flights before it stay cancelled.
+	 *
+	 * @param rnums the reservation numbers; unknown ones are ignored
+	 * @return one outcome per flight, by flight number
+	 * @throws java.sql.SQLException when a flight could not be cancelled
+	 */
+	public List<Cancellation> cancelReservations(Collection<Integer> rnums) throws SQLException {
+		ConnectionPool pool = this._esql.getPool();
+		Connection conn = pool.borrow();
+		try{
+			StatementCache cache = pool.getStatementCache(conn);
+			//reservation numbers per flight
+			Map<Integer, List<Integer>> byFlight = new TreeMap<Integer, List<Integer>>();
+			PreparedStatement stmt = cache.prepare(FLIGHTS_OF_SQL);
+			StatementCache.bind(stmt, conn.createArrayOf("int4", rnums.toArray()));
+			ResultSet rs = CancelHandle.executeQuery(stmt);
+			while (rs.next()){
+				List<Integer> group = byFlight.get(rs.getInt(2));
+				if (group == null){
+					group = new ArrayList<Integer>();
+					byFlight.put(rs.getInt(2), group);
+				}
+				group.add(rs.getInt(1));
+			}
+			rs.close();
+
+			List<Cancellation> outcomes = new ArrayList<Cancellation>();
+			for (Map.Entry<Integer, List<Integer>> entry : byFlight.entrySet()){
+				outcomes.add(cancelGroup(conn, cache, entry.getKey(), conn.createArrayOf("int4", entry.getValue().toArray())));
+			}
+			return outcomes;
+		}finally{
+			pool.release(conn);
+		}
+	}
+
+	/**
+	 * Method to cancel every reservation of a flight, e.g. when its
+	 * passengers are moved to another flight.
+	 *
+	 * @param fnum the flight number
+	 * @return the outcome
+	 * @throws java.sql.SQLException when the flight does not exist or the cancellation failed
+	 */
+	public Cancellation cancelFlight(int fnum) throws SQLException {
+		ConnectionPool pool = this._esql.getPool();
+		Connection conn = pool.borrow();
+		try{
+			return cancelGroup(conn, pool.getStatementCache(conn), fnum, null);
+		}finally{
+			pool.release(conn);
+		}
+	}
+
+	/*
+	 * Cancels the given reservations of a flight (all of them when rnums is
+	 * null) and promotes waitlisted ones into the free seats, in one
+	 * transaction.  The pool restores auto-commit when conn is released.
+	 */
+	private Cancellation cancelGroup(Connection conn, StatementCache cache, int fnum, Array rnums) throws SQLException {
+		conn.setAutoCommit(false);
+		try{
+			PreparedStatement lock = cache.prepare(LOCK_FLIGHT_SQL);
+			StatementCache.bind(lock, fnum);
+			ResultSet rs = CancelHandle.executeQuery(lock);
+			if (!rs.next()){
+				rs.close();
+				throw new SQLException("flight " + fnum + " does not exist", "P0002");
+			}
+			int free = rs.getInt(1);
+			boolean hasPlane = !rs.wasNull();
+			rs.close();
+
+			PreparedStatement cancel = cache.prepare(CANCEL_SQL);
+			StatementCache.bind(cancel, fnum, rnums == null, rnums == null ? conn.createArrayOf("int4", new Object[0]) : rnums);
+			rs = CancelHandle.executeQuery(cancel);
+			int cancelled = 0;
+			int released = 0;
+			while (rs.next()){
+				cancelled++;
+				if (String.valueOf(RESERVED).equals(rs.getString(2))){
+					released++;
+				}
+			}
+			rs.close();
+
+			List<Booking> promoted = new ArrayList<Booking>();
+			int seats = hasPlane ? Math.max(free + released, 0) : 0;
+			if (released > 0 || seats > 0){
+				PreparedStatement promote = cache.prepare(PROMOTE_SQL);
+				StatementCache.bind(promote, fnum, fnum, seats, released, fnum);
+				rs = CancelHandle.executeQuery(promote);
+				while (rs.next()){
+					promoted.add(new Booking(rs.getInt(1), rs.getInt(2), fnum, RESERVED));
+				}
+				rs.close();
+			}
+			conn.commit();
+			this._esql.getResultCache().invalidate("reservation");
+			this._esql.getInventory().recordSale(fnum, promoted.size() - released);
+			return new Cancellation(fnum, cancelled, released, promoted);
+		}catch (SQLException e){
+			conn.rollback();
+			throw e;
+		}
+	}
+
+	/*
+	 * Fallback after a failed batch: books the requests one at a time on
+	 * the connection of the batch, each in its own transaction.  Throws
+	 * only when a rollback fails, i.e. the connection is no longer usable.
+	 */
+	private void retryGroup(Connection conn, StatementCache cache, List<Integer> group,
+			BookingRequest[] requests, Outcome[] outcomes) throws SQLException {
+		for (int i : group){
+			BookingRequest request = requests[i];
+			try{
+				outcomes[i] = new Outcome(request, book(conn, cache, request.cid, request.fnum, request.waitlistIfFull), null);
+			}catch (SQLException e){
+				outcomes[i] = new Outcome(request, null, e.getMessage());
+				conn.rollback();
+			}
+		}
+	}
+
+	/*
+	 * Fails the requests of a group that have no outcome yet.  Requests a
+	 * retry already committed keep theirs.
+	 */
+	private static void fail(List<Integer> group, BookingRequest[] requests, Outcome[] outcomes, String error){
+		for (int i : group){
+			if (outcomes[i] == null){
+				outcomes[i] = new Outcome(requests[i], null, error);
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class defines the cancel handle of one task, e.g. a GUI operation.
+ * The task's thread enters the handle while it runs; every statement it
+ * executes, through DBproject, BookingEngine, IdAllocator or a RowCursor,
+ * is registered with the handle just before it executes and deregistered
+ * once it is done.  cancel() cancels the statements registered at that
+ * moment and makes every later registration fail, so the task stops at
+ * its next statement instead of running on.
+ *
+ * cancel() takes the statements registered at that moment under the
+ * handle's lock, but sends the cancel requests (a new connection to the
+ * server each) without holding it, so it should run off the GUI thread.
+ * A statement being cancelled can not be deregistered, nor the handle
+ * left, until its request has been sent, so a cancel never reaches a
+ * statement the task, or another task on the same connection, runs later.
+ *
+ * Threads that have not entered a handle (the CLI, the page reader, the
+ * HTTP server) register nothing.
+ *
+ */
+
+public class CancelHandle{
+	//SQLState of a statement cancelled on request, as PostgreSQL reports it
+	public static final String QUERY_CANCELED = "57014";
+
+	private static final ThreadLocal<CancelHandle> CURRENT = new ThreadLocal<CancelHandle>();
+
+	private final Set<Statement> _statements = new HashSet<Statement>();
+	//statements whose cancel request is being sent
+	private final Set<Statement> _cancelling = new HashSet<Statement>();
+	private boolean _cancelled = false;
+
+	/**
+	 * @return the handle the calling thread entered, or null
+	 */
+	public static CancelHandle current(){
+		return CURRENT.get();
+	}
+
+	/**
+	 * Method to make this the handle of the calling thread, until exit().
+	 */
+	public void enter(){
+		CURRENT.set(this);
+	}
+
+	/**
+	 * Method to leave the handle; statements still registered by the
+	 * calling thread are dropped from it.
+	 */
+	public synchronized void exit(){
+		CURRENT.remove();
+		awaitCancelled(null);
+		this._statements.clear();
+	}
+
+	/**
+	 * Method to register a statement about to execute with the handle of
+	 * the calling thread, if it entered one.
+	 *
+	 * @param stmt the statement
+	 * @throws java.sql.SQLException when the handle was already cancelled
+	 */
+	public static void started(Statement stmt) throws SQLException {
+		CancelHandle handle = CURRENT.get();
+		if (handle != null){
+			handle.register(stmt);
+		}
+	}
+
+	/**
+	 * Method to deregister a statement of the calling thread once it is
+	 * done, successfully or not.
+	 *
+	 * @param stmt the statement
+	 */
+	public static void finished(Statement stmt){
+		CancelHandle handle = CURRENT.get();
+		if (handle != null){
+			handle.deregister(stmt);
+		}
+	}
+
+	/**
+	 * Method to execute a query registered with the handle of the calling
+	 * thread.  The result is read completely unless a fetch size is set, so
+	 * reading it needs no registration.
+	 *
+	 * @param stmt the bound statement
+	 * @return its result
+	 * @throws java.sql.SQLException when the query fails or is cancelled
+	 */
+	public static ResultSet executeQuery(PreparedStatement stmt) throws SQLException {
+		started(stmt);
+		try{
+			return stmt.executeQuery();
+		}finally{
+			finished(stmt);
+		}
+	}
+
+	/**
+	 * Method to execute a batch registered with the handle of the calling
+	 * thread.
+	 *
+	 * @param stmt the statement with its batch added
+	 * @return the update counts
+	 * @throws java.sql.SQLException when the batch fails or is cancelled
+	 */
+	public static int[] executeBatch(PreparedStatement stmt) throws SQLException {
+		started(stmt);
+		try{
+			return stmt.executeBatch();
+		}finally{
+			finished(stmt);
+		}
+	}
+
+	/**
+	 * Method to register a statement, e.g. one that stays open across calls
+	 * like the statement of a RowCursor.
+	 *
+	 * @param stmt the statement
+	 * @throws java.sql.SQLException when the handle was already cancelled
+	 */
+	public synchronized void register(Statement stmt) throws SQLException {
+		if (this._cancelled){
+			throw new SQLException("canceling statement due to user request", QUERY_CANCELED);
+		}
+		this._statements.add(stmt);
+	}
+
+	public synchronized void deregister(Statement stmt){
+		awaitCancelled(stmt);
+		this._statements.remove(stmt);
+	}
+
+	/*
+	 * Waits, with the lock held, until no cancel request is being sent for
+	 * the statement (for any statement when it is null).
+	 */
+	private void awaitCancelled(Statement stmt){
+		boolean interrupted = false;
+		while (stmt == null ? !this._cancelling.isEmpty() : this._cancelling.contains(stmt)){
+			try{
+				wait();
+			}catch (InterruptedException e){
+				interrupted = true;
+			}
+		}
+		if (interrupted){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Method to cancel the statements registered now and refuse any later
+	 * one.  Each cancelled statement fails with an SQLException in the
+	 * task's thread.  The requests are sent without holding the lock, but
+	 * the call still waits for the server, so run it off the GUI thread.
+	 *
+	 * @throws java.sql.SQLException when a cancel request could not be sent
+	 */
+	public void cancel() throws SQLException {
+		List<Statement> statements;
+		synchronized (this){
+			this._cancelled = true;
+			statements = new ArrayList<Statement>(this._statements);
+			statements.removeAll(this._cancelling);
+			this._cancelling.addAll(statements);
+		}
+		List<SQLException> errors = new ArrayList<SQLException>();
+		try{
+			for (Statement stmt : statements){
+				try{
+					stmt.cancel();
+				}catch (SQLException e){
+					errors.add(e);
+				}
+			}
+		}finally{
+			synchronized (this){
+				this._cancelling.removeAll(statements);
+				notifyAll();
+			}
+		}
+		if (!errors.isEmpty()){
+			throw errors.get(0);
+		}
+	}
+
+	public synchronized boolean isCancelled(){
+		return this._cancelled;
+	}
+}
@@ -0,0 +1,451 @@
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a bounded pool of physical database connections.
+ * Connections are borrowed with borrow() and must be handed back with
+ * release() once the caller is done with them.
+ *
+ * The pool keeps at least minSize connections open, never opens more than
+ * maxSize, closes connections that sat idle longer than the idle timeout,
+ * validates a connection that sat idle longer than the validation interval
+ * before handing it out (a recently used one is handed out without the
+ * round trip) and reports connections
+ * that were held longer than the leak threshold, one line each.  With
+ * -Dpool.leakTrace=true the line also names the call that borrowed the
+ * connection, at the cost of a stack capture per borrow.
+ *
+ */
+
+public class ConnectionPool{
+	//an idle physical connection and the time it was handed back
+	private static class Idle{
+		final Connection conn;
+		final long since;
+		Idle(Connection conn, long since){
+			this.conn = conn;
+			this.since = since;
+		}
+	}
+
+	//a borrowed physical connection, kept for leak detection
+	private static class Lease{
+		final long since;
+		final String thread;
+		final StackTraceElement site;	//null unless leak tracing is on
+		volatile boolean reported = false;
+		Lease(long since, String thread, StackTraceElement site){
+			this.since = since;
+			this.thread = thread;
+			this.site = site;
+		}
+	}
+
+	private final String _url;
+	private final Properties _props;
+	private final int _minSize;
+	private final int _maxSize;
+
+	private long _acquireTimeout = 30000;	//ms to wait for a free connection
+	private long _idleTimeout = 600000;	//ms before an idle connection above minSize is closed
+	private long _leakThreshold = 60000;	//ms before a borrowed connection is reported as leaked
+	private boolean _leakTrace = Boolean.getBoolean("pool.leakTrace");	//record where each connection was borrowed
+	private int _validationTimeout = 2;	//seconds
+	private long _validationInterval = 5000;	//ms a connection may sit idle and still be handed out unchecked
+
+	private final LinkedBlockingDeque<Idle> _idle = new LinkedBlockingDeque<Idle>();
+	private final Map<Connection, Lease> _active = new ConcurrentHashMap<Connection, Lease>();
+	private final Map<Connection, StatementCache> _caches = new ConcurrentHashMap<Connection, StatementCache>();
+	private final Semaphore _permits;
+	private final AtomicInteger _total = new AtomicInteger();
+	private final ScheduledExecutorService _housekeeper;
+	private volatile boolean _closed = false;
+
+	//statistics
+	private final AtomicLong _borrowCount = new AtomicLong();
+	private final AtomicLong _waitNanos = new AtomicLong();
+	private final AtomicLong _maxWaitNanos = new AtomicLong();
+	private final AtomicLong _timeoutCount = new AtomicLong();
+	private final AtomicLong _invalidCount = new AtomicLong();
+	private final AtomicLong _evictedCount = new AtomicLong();
+	private final AtomicLong _leakCount = new AtomicLong();
+
+	/**
+	 * Creates the pool and opens minSize connections up front.
+	 *
+	 * @param url the JDBC connection URL
+	 * @param user the database user
+	 * @param passwd the database password
+	 * @param minSize number of connections kept open at all times
+	 * @param maxSize upper bound on open connections
+	 * @throws java.sql.SQLException when the initial connections can not be opened
+	 */
+	public ConnectionPool(String url, String user, String passwd, int minSize, int maxSize) throws SQLException {
+		if (minSize < 0 || maxSize < 1 || minSize > maxSize){
+			throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+		}
+		this._url = url;
+		this._props = new Properties();
+		this._props.setProperty("user", user);
+		this._props.setProperty("password", passwd);
+		this._minSize = minSize;
+		this._maxSize = maxSize;
+		this._permits = new Semaphore(maxSize, true);
+
+		for (int i = 0; i < minSize; i++){
+			this._idle.offerLast(new Idle(open(), System.currentTimeMillis()));
+		}
+
+		this._housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "pool-housekeeper");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._housekeeper.scheduleWithFixedDelay(new Runnable(){
+			public void run(){
+				housekeep();
+			}
+		}, 5, 5, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Sets how long borrow() waits for a free connection before failing.
+	 *
+	 * @param millis the timeout in milliseconds
+	 */
+	public void setAcquireTimeout(long millis){
+		this._acquireTimeout = millis;
+	}
+
+	/**
+	 * Sets how long a connection above minSize may stay idle before it is closed.
+	 *
+	 * @param millis the timeout in milliseconds
+	 */
+	public void setIdleTimeout(long millis){
+		this._idleTimeout = millis;
+	}
+
+	/**
+	 * Sets how long a connection may be held before it is reported as leaked.
+	 *
+	 * @param millis the threshold in milliseconds, 0 disables leak detection
+	 */
+	public void setLeakThreshold(long millis){
+		this._leakThreshold = millis;
+	}
+
+	/**
+	 * Sets whether borrow() records its caller, so a leak report names the
+	 * call that borrowed the connection.  Off unless -Dpool.leakTrace=true.
+	 *
+	 * @param on true to record the caller of every borrow
+	 */
+	public void setLeakTrace(boolean on){
+		this._leakTrace = on;
+	}
+
+	/**
+	 * Sets how long a connection may sit idle and still be handed out
+	 * without checking it with the server first.
+	 *
+	 * @param millis the interval in milliseconds, 0 to validate on every borrow
+	 */
+	public void setValidationInterval(long millis){
+		this._validationInterval = millis;
+	}
+
+	/**
+	 * Sets a single connection property (e.g. prepareThreshold) used for
+	 * every connection opened from now on.
+	 *
+	 * @param key the pgjdbc property name
+	 * @param value the property value
+	 */
+	public void setConnectionProperty(String key, String value){
+		this._props.setProperty(key, value);
+	}
+
+	/**
+	 * Borrows a connection from the pool, opening a new one if none is idle
+	 * and the pool is below maxSize.  Connections idle longer than the
+	 * validation interval are validated first.
+	 *
+	 * @return a connection that must be handed back with release()
+	 * @throws java.sql.SQLException when no connection became available in time
+	 */
+	public Connection borrow() throws SQLException {
+		Connection conn = borrow(this._acquireTimeout);
+		if (conn == null){
+			this._timeoutCount.incrementAndGet();
+			throw new SQLException("Timed out after " + this._acquireTimeout + "ms waiting for a connection (" + getStatistics() + ")");
+		}
+		return conn;
+	}
+
+	/**
+	 * Borrows a connection like borrow(), but gives up after the given time
+	 * instead of the acquire timeout, e.g. for diagnostics that must not
+	 * queue behind the application when the pool is saturated.
+	 *
+	 * @param millis how long to wait for a free connection
+	 * @return a connection that must be handed back with release(), or null if none became free in time
+	 * @throws java.sql.SQLException when the pool is closed or a connection can not be opened
+	 */
+	public Connection tryBorrow(long millis) throws SQLException {
+		return borrow(millis);
+	}
+
+	private Connection borrow(long timeout) throws SQLException {
+		if (this._closed){
+			throw new SQLException("Connection pool is closed");
+		}
+		long start = System.nanoTime();
+		try{
+			if (!this._permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)){
+				return null;
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a connection");
+		}
+		recordWait(System.nanoTime() - start);
+
+		try{
+			Connection conn = null;
+			Idle idle;
+			while (conn == null && (idle = this._idle.pollFirst()) != null){
+				if (isValid(idle)){
+					conn = idle.conn;
+				}else{
+					this._invalidCount.incrementAndGet();
+					discard(idle.conn);
+				}
+			}//end while
+			if (conn == null){
+				conn = open();
+			}
+			this._active.put(conn, new Lease(System.currentTimeMillis(), Thread.currentThread().getName(),
+				this._leakThreshold > 0 && this._leakTrace ? caller() : null));
+			this._borrowCount.incrementAndGet();
+			return conn;
+		}catch (SQLException e){
+			this._permits.release();
+			throw e;
+		}catch (RuntimeException e){
+			this._permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Hands a borrowed connection back to the pool.  Connections that were
+	 * closed or left inside a transaction are reset or discarded.
+	 *
+	 * @param conn the connection obtained from borrow()
+	 */
+	public void release(Connection conn){
+		if (conn == null || this._active.remove(conn) == null){
+			return;
+		}
+		try{
+			boolean reusable = !this._closed && !conn.isClosed();
+			if (reusable && !conn.getAutoCommit()){
+				conn.rollback();
+				conn.setAutoCommit(true);
+			}
+			if (reusable){
+				this._idle.offerFirst(new Idle(conn, System.currentTimeMillis()));
+			}else{
+				discard(conn);
+			}
+		}catch (SQLException e){
+			discard(conn);
+		}finally{
+			this._permits.release();
+		}
+	}
+
+	/**
+	 * Method to fetch the prepared statement cache of a borrowed connection.
+	 * The cache lives as long as the physical connection does.
+	 *
+	 * @param conn the connection obtained from borrow()
+	 * @return the statement cache for that connection
+	 */
+	public StatementCache getStatementCache(Connection conn){
+		StatementCache cache = this._caches.get(conn);
+		if (cache == null){
+			cache = new StatementCache(conn);
+			this._caches.put(conn, cache);
+		}
+		return cache;
+	}
+
+	/**
+	 * Closes every idle connection and stops the housekeeper.  Connections
+	 * still borrowed are closed when they are released.
+	 */
+	public void close(){
+		this._closed = true;
+		this._housekeeper.shutdownNow();
+		Idle idle;
+		while ((idle = this._idle.pollFirst()) != null){
+			discard(idle.conn);
+		}
+	}
+
+	public int getActiveCount(){
+		return this._active.size();
+	}
+
+	public int getIdleCount(){
+		return this._idle.size();
+	}
+
+	public int getTotalCount(){
+		return this._total.get();
+	}
+
+	public int getMaxSize(){
+		return this._maxSize;
+	}
+
+	public long getBorrowCount(){
+		return this._borrowCount.get();
+	}
+
+	public long getTotalWaitMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(this._waitNanos.get());
+	}
+
+	public long getMaxWaitMillis(){
+		return TimeUnit.NANOSECONDS.toMillis(this._maxWaitNanos.get());
+	}
+
+	public long getTimeoutCount(){
+		return this._timeoutCount.get();
+	}
+
+	public long getLeakCount(){
+		return this._leakCount.get();
+	}
+
+	/**
+	 * Method to summarize the pool state on one line, used for sizing the
+	 * pool under load.
+	 *
+	 * @return the pool statistics
+	 */
+	public String getStatistics(){
+		long borrows = this._borrowCount.get();
+		double avgWait = borrows == 0 ? 0 : this._waitNanos.get() / 1e6 / borrows;
+		return String.format("active=%d idle=%d total=%d max=%d borrows=%d avgWait=%.3fms maxWait=%dms timeouts=%d invalid=%d evicted=%d leaks=%d",
+			getActiveCount(), getIdleCount(), getTotalCount(), this._maxSize, borrows, avgWait,
+			getMaxWaitMillis(), getTimeoutCount(), this._invalidCount.get(), this._evictedCount.get(), getLeakCount());
+	}
+
+	private Connection open() throws SQLException {
+		Connection conn = DriverManager.getConnection(this._url, this._props);
+		this._total.incrementAndGet();
+		return conn;
+	}
+
+	private void discard(Connection conn){
+		this._total.decrementAndGet();
+		StatementCache cache = this._caches.remove(conn);
+		if (cache != null){
+			cache.close();
+		}
+		try{
+			conn.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+
+	private boolean isValid(Idle idle){
+		try{
+			if (idle.conn.isClosed()){
+				return false;
+			}
+			return System.currentTimeMillis() - idle.since < this._validationInterval || idle.conn.isValid(this._validationTimeout);
+		}catch (SQLException e){
+			return false;
+		}//end try
+	}
+
+	private void recordWait(long nanos){
+		this._waitNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = this._maxWaitNanos.get()) && !this._maxWaitNanos.compareAndSet(max, nanos));
+	}
+
+	/*
+	 * Runs periodically: closes idle connections above minSize that timed
+	 * out, tops the pool back up to minSize and reports leaked connections.
+	 */
+	private void housekeep(){
+		long now = System.currentTimeMillis();
+
+		Iterator<Idle> it = this._idle.descendingIterator();
+		while (it.hasNext() && this._total.get() > this._minSize){
+			Idle idle = it.next();
+			if (now - idle.since > this._idleTimeout && this._idle.remove(idle)){
+				this._evictedCount.incrementAndGet();
+				discard(idle.conn);
+			}
+		}//end while
+
+		//each connection is opened under a permit, so a borrow opening one at the same time can not pass maxSize
+		try{
+			while (!this._closed && this._total.get() < this._minSize && this._permits.tryAcquire()){
+				try{
+					this._idle.offerLast(new Idle(open(), now));
+				}finally{
+					this._permits.release();
+				}
+			}
+		}catch (SQLException e){
+			System.err.println("Connection pool: unable to refill: " + e.getMessage());
+		}//end try
+
+		if (this._leakThreshold > 0){
+			for (Lease lease : this._active.values()){
+				if (!lease.reported && now - lease.since > this._leakThreshold){
+					lease.reported = true;
+					this._leakCount.incrementAndGet();
+					System.err.println("Connection pool: connection held for " + (now - lease.since) + "ms by thread " + lease.thread +
+						(lease.site != null ? ", borrowed at " + lease.site : "") + ", possible leak");
+				}
+			}
+		}
+	}
+
+	//the first frame of the stack outside the pool and DBproject, i.e. the code that asked for the connection
+	private static StackTraceElement caller(){
+		StackTraceElement[] stack = new Throwable().getStackTrace();
+		for (StackTraceElement frame : stack){
+			String cls = frame.getClassName();
+			if (!cls.equals(ConnectionPool.class.getName()) && !cls.startsWith("DBproject")){
+				return frame;
+			}
+		}
+		return stack.length > 0 ? stack[stack.length - 1] : null;
+	}
+}
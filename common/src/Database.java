@@ -0,0 +1,45 @@
+import java.sql.SQLException;
+
+/**
+ * This interface defines what the shared classes (the booking engine, the
+ * inventory, the id allocator, ...) need from a DBproject.  The CLI and the
+ * GUI each have their own DBproject and both implement it, so the shared
+ * classes are compiled once, in this module, for both.
+ *
+ */
+
+public interface Database{
+	//rows fetched per round trip by streamed reads
+	int DEFAULT_FETCH_SIZE = 1000;
+
+	/**
+	 * Method to run a query and return its result as a typed table.
+	 *
+	 * @param query the query, with '?' placeholders
+	 * @param params values for the placeholders, in order
+	 * @return the result
+	 * @throws java.sql.SQLException when the query fails
+	 */
+	ResultTable executeQueryAndReturnTable(String query, Object... params) throws SQLException;
+
+	/**
+	 * Method to run a query and hand its rows to a handler one at a time,
+	 * fetchSize rows per round trip.
+	 *
+	 * @param query the query, with '?' placeholders
+	 * @param fetchSize rows fetched per round trip
+	 * @param handler receives each row
+	 * @param params values for the placeholders, in order
+	 * @return the number of rows handled
+	 * @throws java.sql.SQLException when the query or the handler fails
+	 */
+	int executeQueryAndStream(String query, int fetchSize, RowHandler handler, Object... params) throws SQLException;
+
+	ConnectionPool getPool();
+
+	ResultCache getResultCache();
+
+	InventoryCache getInventory();
+
+	IdAllocator getIdAllocator();
+}
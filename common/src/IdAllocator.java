@@ -0,0 +1,158 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a block allocator of primary keys.  Every key has a
+ * Postgres sequence that advances by a block of ids at a time (INCREMENT BY
+ * in create.sql); one nextval() reserves the block [value, value + block)
+ * for this process, whose ids are then handed out with an atomic increment
+ * and no round trip.  Blocks reserved by different processes never
+ * overlap, so the keys stay unique across clients, and SQL that calls
+ * nextval() itself just reserves a block it uses one id of.
+ *
+ * The block size is read from the sequence, so a sequence created with the
+ * default increment of 1 is still safe to use, one round trip per id.
+ * Ids of a block that is not used up before the process exits are lost,
+ * which only leaves gaps.
+ *
+ */
+
+public class IdAllocator{
+	//the sequences, see create.sql
+	public static final String RESERVATION = "reservation_rnum_seq";
+	public static final String PLANE = "plane_id_seq";
+	public static final String PILOT = "pilot_id_seq";
+	public static final String FLIGHT_INFO = "flightinfo_fiid_seq";
+	public static final String TECHNICIAN = "technician_id_seq";
+
+	static final String INCREMENT_SQL =
+		"SELECT increment_by FROM pg_sequences WHERE schemaname = current_schema() AND sequencename = ?;";
+	static final String NEXTVAL_SQL = "SELECT nextval(CAST(? AS regclass));";
+
+	//ids [next, end) of one reserved block
+	private static class Block{
+		final AtomicLong next;
+		final long end;
+
+		Block(long start, long end){
+			this.next = new AtomicLong(start);
+			this.end = end;
+		}
+	}
+
+	//the current block of one sequence
+	private static class Sequence{
+		volatile Block block = new Block(0, 0);
+		long size = 0;
+	}
+
+	private final Database _esql;
+	private final ConcurrentHashMap<String, Sequence> _sequences = new ConcurrentHashMap<String, Sequence>();
+
+	//statistics
+	private final AtomicLong _blocks = new AtomicLong();
+
+	public IdAllocator(Database esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to take the next id of a sequence, borrowing a connection only
+	 * when a new block has to be reserved.
+	 *
+	 * @param sequence e.g. RESERVATION
+	 * @return an id no other caller, in this or another process, receives
+	 * @throws java.sql.SQLException when a new block can not be reserved
+	 */
+	public int next(String sequence) throws SQLException {
+		return next(sequence, null);
+	}
+
+	/**
+	 * Method to take the next id of a sequence, reserving a new block on the
+	 * caller's connection if needed.  nextval() is not undone by a rollback,
+	 * so the connection may be inside a transaction.
+	 *
+	 * @param sequence e.g. RESERVATION
+	 * @param conn a borrowed connection, or null to borrow one
+	 * @return an id no other caller, in this or another process, receives
+	 * @throws java.sql.SQLException when a new block can not be reserved
+	 */
+	public int next(String sequence, Connection conn) throws SQLException {
+		Sequence seq = sequenceOf(sequence);
+		while (true){
+			Block block = seq.block;
+			long id = block.next.getAndIncrement();
+			if (id < block.end){
+				return (int) id;
+			}
+			refill(sequence, seq, block, conn);
+		}
+	}
+
+	private Sequence sequenceOf(String sequence){
+		Sequence seq = this._sequences.get(sequence);
+		if (seq == null){
+			this._sequences.putIfAbsent(sequence, new Sequence());
+			seq = this._sequences.get(sequence);
+		}
+		return seq;
+	}
+
+	/*
+	 * Reserves the next block, unless another thread already replaced the
+	 * exhausted one while this one waited.
+	 */
+	private void refill(String sequence, Sequence seq, Block exhausted, Connection conn) throws SQLException {
+		synchronized (seq){
+			if (seq.block != exhausted){
+				return;
+			}
+			boolean borrowed = conn == null;
+			if (borrowed){
+				conn = this._esql.getPool().borrow();
+			}
+			try{
+				if (seq.size == 0){
+					seq.size = Math.max(queryLong(conn, INCREMENT_SQL, sequence, 1), 1);
+				}
+				long start = queryLong(conn, NEXTVAL_SQL, sequence, -1);
+				seq.block = new Block(start, start + seq.size);
+				this._blocks.incrementAndGet();
+			}finally{
+				if (borrowed){
+					this._esql.getPool().release(conn);
+				}
+			}
+		}
+	}
+
+	private long queryLong(Connection conn, String sql, String sequence, long missing) throws SQLException {
+		PreparedStatement stmt = this._esql.getPool().getStatementCache(conn).prepare(sql);
+		stmt.setString(1, sequence);
+		ResultSet rs = CancelHandle.executeQuery(stmt);
+		try{
+			return rs.next() ? rs.getLong(1) : missing;
+		}finally{
+			rs.close();
+		}
+	}
+
+	/**
+	 * Method to summarize the allocator on one line.
+	 *
+	 * @return the number of blocks reserved, and the block size per sequence
+	 */
+	public String getStatistics(){
+		StringBuilder sb = new StringBuilder("blocks=").append(this._blocks.get());
+		for (Map.Entry<String, Sequence> e : this._sequences.entrySet()){
+			sb.append(' ').append(e.getKey()).append('=').append(e.getValue().size);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,322 @@
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This class defines an in-memory copy of the seat inventory, i.e. the
+ * capacity (Plane.seats through FlightInfo) and Flight.num_sold of every
+ * flight, indexed by flight number.  It answers "how many seats are left"
+ * without the Flight x FlightInfo x Plane join.  Flight numbers below
+ * MAX_DENSE are kept in arrays; the few above, which users can type in,
+ * in a map, so one huge flight number does not size the arrays.
+ *
+ * The inventory is loaded on first use.  Bookings made through this
+ * process update it as they commit (write-through); changes made by other
+ * writers are picked up by reloading the whole inventory once it is older
+ * than the maximum staleness.  While one thread reloads, the others keep
+ * answering from the previous copy.
+ *
+ * With a snapshot file (InventorySnapshot, -Dinventory.snapshot), a load
+ * copies the inventory out of the mapped file instead, however old it is,
+ * so a process starting up answers without querying the database.  A file
+ * older than the maximum staleness is refreshed on a background thread,
+ * and the inventory reloaded from it once that is done; if the database
+ * can not be reached the mapped file keeps being served.  Every process
+ * sharing the file reloads from whichever of them refreshed it last.
+ *
+ */
+
+public class InventoryCache{
+	//ms an inventory may be served before it is reloaded from the database
+	static final long DEFAULT_MAX_STALENESS = 5000;
+	//staleness value meaning the inventory is never reloaded automatically
+	public static final long NEVER_REFRESH = -1;
+
+	//flight numbers kept in the arrays; the snapshot file keeps the same range
+	static final int MAX_DENSE = InventorySnapshot.MAX_SLOTS;
+
+	static final String LOAD_SQL =
+		"SELECT F.fnum, P.seats, F.num_sold FROM Flight F, FlightInfo FI, Plane P " +
+		"WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id);";
+
+	static final String SEATS_SQL =
+		"SELECT P.seats - F.num_sold FROM Flight F, FlightInfo FI, Plane P " +
+		"WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND fnum = ?;";
+
+	//a flight numbered MAX_DENSE or more
+	private static class Outlier{
+		final int capacity;
+		final AtomicInteger sold;
+
+		Outlier(int capacity, int sold){
+			this.capacity = capacity;
+			this.sold = new AtomicInteger(sold);
+		}
+	}
+
+	//one loaded copy of the inventory; capacity is -1 for unknown flights
+	private static class Snapshot{
+		final int[] capacity;
+		final AtomicIntegerArray sold;
+		final Map<Integer, Outlier> outliers;
+		final long loadedAt;
+
+		Snapshot(int[] capacity, int[] sold, Map<Integer, Outlier> outliers, long loadedAt){
+			this.capacity = capacity;
+			this.sold = new AtomicIntegerArray(sold);
+			this.outliers = outliers;
+			this.loadedAt = loadedAt;
+		}
+	}
+
+	private final Database _esql;
+	private final ReentrantLock _loadLock = new ReentrantLock();
+	private volatile Snapshot _snapshot = null;
+	private volatile long _maxStaleness = DEFAULT_MAX_STALENESS;
+	//shared snapshot file the inventory is loaded from, or null
+	private volatile InventorySnapshot _file = null;
+	//set while a background refresh of the file runs
+	private final AtomicBoolean _refreshing = new AtomicBoolean(false);
+
+	public InventoryCache(Database esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Sets how long a loaded inventory is trusted before it is reloaded.
+	 *
+	 * @param millis the staleness bound in milliseconds, 0 to reload on
+	 * every read or NEVER_REFRESH to rely on write-through only
+	 */
+	public void setMaxStaleness(long millis){
+		this._maxStaleness = millis;
+	}
+
+	/**
+	 * Sets the snapshot file loads read from and refresh.
+	 *
+	 * @param file the snapshot, or null to load from the database only
+	 */
+	public void setSnapshotFile(InventorySnapshot file){
+		this._file = file;
+	}
+
+	/**
+	 * @return the snapshot file, or null
+	 */
+	public InventorySnapshot getSnapshotFile(){
+		return this._file;
+	}
+
+	/**
+	 * Method to fetch the number of seats left on a flight.  Flights that
+	 * are not in the inventory (e.g. added by another process since the
+	 * last load) are looked up in the database.
+	 *
+	 * @param fnum the flight number
+	 * @return the number of seats left, or -1 if the flight does not exist or has no plane
+	 * @throws java.sql.SQLException when the inventory can not be loaded
+	 */
+	public int getAvailableSeats(int fnum) throws SQLException {
+		Snapshot s = current();
+		if (fnum >= 0 && fnum < s.capacity.length && s.capacity[fnum] >= 0){
+			return s.capacity[fnum] - s.sold.get(fnum);
+		}
+		Outlier outlier = s.outliers.get(fnum);
+		if (outlier != null){
+			return outlier.capacity - outlier.sold.get();
+		}
+		ResultTable result = this._esql.executeQueryAndReturnTable(SEATS_SQL, fnum);
+		return result.getRowCount() == 0 ? -1 : result.getInt(0, 0);
+	}
+
+	/**
+	 * Method to record seats sold by a committed booking.
+	 *
+	 * @param fnum the flight number
+	 * @param seats number of seats taken, negative for released seats
+	 */
+	public void recordSale(int fnum, int seats){
+		Snapshot s = this._snapshot;
+		if (s == null){
+			return;
+		}
+		if (fnum >= 0 && fnum < s.capacity.length && s.capacity[fnum] >= 0){
+			s.sold.addAndGet(fnum, seats);
+			return;
+		}
+		Outlier outlier = s.outliers.get(fnum);
+		if (outlier != null){
+			outlier.sold.addAndGet(seats);
+		}
+	}
+
+	/**
+	 * Method to drop the loaded inventory, so the next read reloads it.
+	 */
+	public void invalidate(){
+		this._snapshot = null;
+	}
+
+	/**
+	 * Method to reload the inventory from the database now.
+	 *
+	 * @throws java.sql.SQLException when the query fails
+	 */
+	public void refresh() throws SQLException {
+		this._loadLock.lock();
+		try{
+			this._snapshot = load();
+		}finally{
+			this._loadLock.unlock();
+		}
+	}
+
+	/*
+	 * Returns a snapshot that is fresh enough, reloading it if needed.  A
+	 * stale snapshot is still served to readers that find another thread
+	 * already reloading.
+	 */
+	private Snapshot current() throws SQLException {
+		Snapshot s = this._snapshot;
+		if (s != null && !isStale(s)){
+			return s;
+		}
+		if (s != null && !this._loadLock.tryLock()){
+			return s;
+		}
+		if (s == null){
+			this._loadLock.lock();
+		}
+		try{
+			s = this._snapshot;
+			if (s == null || isStale(s)){
+				s = load();
+				this._snapshot = s;
+			}
+			return s;
+		}finally{
+			this._loadLock.unlock();
+		}
+	}
+
+	private boolean isStale(Snapshot s){
+		long maxStaleness = this._maxStaleness;
+		return maxStaleness != NEVER_REFRESH && System.currentTimeMillis() - s.loadedAt >= maxStaleness;
+	}
+
+	private Snapshot load() throws SQLException {
+		InventorySnapshot file = this._file;
+		if (file != null){
+			Snapshot s = loadFile(file);
+			if (s != null){
+				return s;
+			}
+		}
+		final int[][] arrays = { new int[1024], new int[1024] };
+		final Map<Integer, Outlier> outliers = new HashMap<Integer, Outlier>();
+		Arrays.fill(arrays[0], -1);
+		long now = System.currentTimeMillis();
+		this._esql.executeQueryAndStream(LOAD_SQL, Database.DEFAULT_FETCH_SIZE, new RowHandler(){
+			public boolean handleRow(ResultSet row) throws SQLException {
+				int fnum = row.getInt(1);
+				if (fnum < 0){
+					return true;
+				}
+				if (fnum >= MAX_DENSE){
+					if (!outliers.containsKey(fnum)){
+						outliers.put(fnum, new Outlier(row.getInt(2), row.getInt(3)));
+					}
+					return true;
+				}
+				if (fnum >= arrays[0].length){
+					int n = Math.min(Math.max(arrays[0].length * 2, fnum + 1), MAX_DENSE);
+					int old = arrays[0].length;
+					arrays[0] = Arrays.copyOf(arrays[0], n);
+					arrays[1] = Arrays.copyOf(arrays[1], n);
+					Arrays.fill(arrays[0], old, n, -1);
+				}
+				//a flight with several FlightInfo rows keeps its first plane
+				if (arrays[0][fnum] < 0){
+					arrays[0][fnum] = row.getInt(2);
+					arrays[1][fnum] = row.getInt(3);
+				}
+				return true;
+			}
+		});
+		return new Snapshot(arrays[0], arrays[1], outliers, now);
+	}
+
+	/*
+	 * Copies the inventory out of the snapshot file.  A stale file is
+	 * served as it is while a background refresh runs; only a missing file
+	 * is written before it is read.  Returns null if the file can not be
+	 * used, so the inventory is read from the database.
+	 */
+	private Snapshot loadFile(InventorySnapshot file){
+		long now = System.currentTimeMillis();
+		long maxStaleness = this._maxStaleness;
+		file.remapIfReplaced();
+		if (!file.isMapped()){
+			try{
+				file.refresh(this._esql);
+			}catch (IOException e){
+				System.err.println("Unable to write the inventory snapshot: " + e.getMessage());
+			}catch (SQLException e){
+				System.err.println("Unable to read the inventory for the snapshot: " + e.getMessage());
+			}
+			if (!file.isMapped()){
+				return null;
+			}
+		}
+		long age = Math.min(Math.max(file.getAgeMillis(), 0), now);
+		if (maxStaleness != NEVER_REFRESH && age >= maxStaleness){
+			refreshInBackground(file);
+			//trusted until the refresh replaces it, instead of being copied again on every read
+			age = 0;
+		}
+		int[] capacity = new int[Math.max(file.getSlots(), 1)];
+		int[] sold = new int[capacity.length];
+		Arrays.fill(capacity, -1);
+		file.copyInto(capacity, sold);
+		//a file another process is still refreshing is served as it is, dated when it was written
+		//flights left out of the file are looked up in the database
+		return new Snapshot(capacity, sold, new HashMap<Integer, Outlier>(), now - age);
+	}
+
+	/*
+	 * Refreshes the snapshot file on a daemon thread, unless a refresh is
+	 * already running, and drops the loaded inventory once the file is new
+	 * so the next read copies it.  A failed refresh leaves the old file in
+	 * use.
+	 */
+	private void refreshInBackground(final InventorySnapshot file){
+		if (!this._refreshing.compareAndSet(false, true)){
+			return;
+		}
+		Thread t = new Thread(new Runnable(){
+			public void run(){
+				try{
+					if (file.refresh(_esql)){
+						invalidate();
+					}
+				}catch (IOException e){
+					System.err.println("Unable to write the inventory snapshot: " + e.getMessage());
+				}catch (SQLException e){
+					System.err.println("Unable to refresh the inventory snapshot, serving the old one: " + e.getMessage());
+				}finally{
+					_refreshing.set(false);
+				}
+			}
+		}, "inventory-refresh");
+		t.setDaemon(true);
+		t.start();
+	}
+}
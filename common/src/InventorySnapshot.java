@@ -0,0 +1,529 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a binary snapshot of the flight inventory kept in a
+ * file, so the CLI, the GUI and any other process on the machine can start
+ * answering availability questions without querying Postgres.  The file
+ * is mapped (MappedByteBuffer) rather than read: a process reads the
+ * fields it needs straight from the page cache, and every process mapping
+ * the same file shares the same pages.
+ *
+ * Layout (big-endian): a HEADER_SIZE byte header, then one RECORD_SIZE
+ * byte record per flight number, so the record of flight n is at
+ * HEADER_SIZE + n * RECORD_SIZE.  Flight numbers are typed in by users, so
+ * a single huge one would make a huge file: flight numbers from MAX_SLOTS
+ * (about 2 million, a 64 MB file) up are left out, and InventoryCache
+ * looks them up in the database.
+ *
+ *   header: magic, version, record size, slots (int) | generation, written at (long) | flights (int)
+ *           | FlightInfo rows (long)
+ *   record: fnum, capacity (EMPTY for a slot without flight, NO_PLANE for a flight without plane),
+ *           num_sold, departure and arrival date (epoch days) (int) | departure and arrival airport
+ *           (6 ASCII bytes each, zero padded)
+ *
+ * refresh() brings the file up to date incrementally: num_sold is read for
+ * every flight, but the joined columns (capacity, dates, airports) only for
+ * flights the file does not have yet.  Flights found without a plane are
+ * recorded as NO_PLANE and only looked up again once the number of
+ * FlightInfo rows has changed, which is how a plane gets assigned.  The new file is written next to the
+ * old one and renamed over it, so a reader maps either the old or the new
+ * snapshot and never a half-written one; readers still holding the old
+ * mapping keep reading it until remapIfReplaced() sees the rename.  A lock
+ * file keeps two processes from refreshing at the same time.
+ *
+ * The application never changes the plane, dates or airports of an
+ * existing flight; refresh(true) re-reads them all for writers that do.
+ *
+ */
+
+public class InventorySnapshot{
+	static final int MAGIC = 0x494E5631;	//"INV1"
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 64;
+	static final int RECORD_SIZE = 32;
+	static final int AIRPORT_LENGTH = 6;
+	//flights read one by one before a refresh reads every flight's details instead
+	static final int MAX_MISSING = 100;
+	//capacity of a slot no flight has, and of a flight that had no plane at the last refresh
+	static final int EMPTY = -1;
+	static final int NO_PLANE = -2;
+	//one more than the highest flight number a record is kept for
+	static final int MAX_SLOTS = 1 << 21;
+	//ms between checks for a file replaced by another process
+	static final long REMAP_INTERVAL = 1000;
+
+	//header offsets
+	static final int H_MAGIC = 0;
+	static final int H_VERSION = 4;
+	static final int H_RECORD_SIZE = 8;
+	static final int H_SLOTS = 12;
+	static final int H_GENERATION = 16;
+	static final int H_WRITTEN_AT = 24;
+	static final int H_FLIGHTS = 32;
+	static final int H_FLIGHT_INFO = 40;
+
+	//record offsets
+	static final int R_FNUM = 0;
+	static final int R_CAPACITY = 4;
+	static final int R_SOLD = 8;
+	static final int R_DEPARTURE_DATE = 12;
+	static final int R_ARRIVAL_DATE = 16;
+	static final int R_DEPARTURE_AIRPORT = 20;
+	static final int R_ARRIVAL_AIRPORT = 26;
+
+	static final String SOLD_SQL = "SELECT fnum, num_sold FROM Flight;";
+
+	static final String FLIGHT_INFO_SQL = "SELECT count(*) FROM FlightInfo;";
+
+	static final String DETAILS_SQL =
+		"SELECT F.fnum, P.seats, F.num_sold, F.actual_departure_date, F.actual_arrival_date, " +
+		"F.departure_airport, F.arrival_airport FROM Flight F, FlightInfo FI, Plane P " +
+		"WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND F.fnum > ?;";
+
+	static final String FLIGHT_DETAILS_SQL =
+		"SELECT F.fnum, P.seats, F.num_sold, F.actual_departure_date, F.actual_arrival_date, " +
+		"F.departure_airport, F.arrival_airport FROM Flight F, FlightInfo FI, Plane P " +
+		"WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND F.fnum = ?;";
+
+	private final File _file;
+	private final File _lockFile;
+	//the mapped snapshot, null until a valid file has been mapped
+	private volatile ByteBuffer _map = null;
+	private volatile Object _mappedKey = null;
+	private volatile long _checkedAt = 0;
+
+	//statistics
+	private final AtomicLong _refreshes = new AtomicLong();
+	private final AtomicLong _remaps = new AtomicLong();
+
+	/**
+	 * @param file the snapshot file, shared by every process using it
+	 */
+	public InventorySnapshot(File file){
+		this._file = file.getAbsoluteFile();
+		this._lockFile = new File(this._file.getPath() + ".lock");
+		remapIfReplaced();
+	}
+
+	/**
+	 * Method to create the snapshot -Dinventory.snapshot asks for.
+	 *
+	 * @return the snapshot, or null if no file is set
+	 */
+	public static InventorySnapshot fromProperties(){
+		String file = System.getProperty("inventory.snapshot");
+		return file == null || file.isEmpty() ? null : new InventorySnapshot(new File(file));
+	}
+
+	/**
+	 * Method to map the file again if another process replaced it since it
+	 * was mapped.  Checks the file at most every REMAP_INTERVAL ms.
+	 *
+	 * @return whether a valid snapshot is mapped
+	 */
+	public boolean remapIfReplaced(){
+		long now = System.currentTimeMillis();
+		if (this._map != null && now - this._checkedAt < REMAP_INTERVAL){
+			return true;
+		}
+		this._checkedAt = now;
+		try{
+			BasicFileAttributes attrs = Files.readAttributes(this._file.toPath(), BasicFileAttributes.class);
+			Object key = keyOf(attrs);
+			if (this._map == null || !key.equals(this._mappedKey)){
+				map(key);
+			}
+		}catch (IOException e){
+			//no snapshot written yet; keep whatever is mapped
+		}
+		return this._map != null;
+	}
+
+	//the file key identifies the file itself, so a rename over it is seen even within the mtime resolution
+	private static Object keyOf(BasicFileAttributes attrs){
+		Object key = attrs.fileKey();
+		return (key != null ? key.toString() : "") + "@" + attrs.lastModifiedTime().toMillis() + "+" + attrs.size();
+	}
+
+	private synchronized void map(Object key) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(this._file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			if (channel.size() < HEADER_SIZE){
+				return;
+			}
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (map.getInt(H_MAGIC) != MAGIC || map.getInt(H_VERSION) != VERSION ||
+				map.getInt(H_RECORD_SIZE) != RECORD_SIZE ||
+				HEADER_SIZE + (long) map.getInt(H_SLOTS) * RECORD_SIZE > map.capacity()){
+				System.err.println("Ignoring " + this._file + ": not an inventory snapshot");
+				return;
+			}
+			this._map = map;
+			this._mappedKey = key;
+			this._remaps.incrementAndGet();
+		}finally{
+			//the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return whether a valid snapshot is mapped
+	 */
+	public boolean isMapped(){
+		return this._map != null;
+	}
+
+	/**
+	 * @return ms since the mapped snapshot was written, or Long.MAX_VALUE if none is mapped
+	 */
+	public long getAgeMillis(){
+		ByteBuffer map = this._map;
+		return map == null ? Long.MAX_VALUE : System.currentTimeMillis() - map.getLong(H_WRITTEN_AT);
+	}
+
+	/**
+	 * @return the number of times the file was refreshed, by any process
+	 */
+	public long getGeneration(){
+		ByteBuffer map = this._map;
+		return map == null ? 0 : map.getLong(H_GENERATION);
+	}
+
+	/**
+	 * @return one more than the highest flight number in the snapshot
+	 */
+	public int getSlots(){
+		ByteBuffer map = this._map;
+		return map == null ? 0 : map.getInt(H_SLOTS);
+	}
+
+	/**
+	 * Method to check that the snapshot has a flight.
+	 *
+	 * @param fnum the flight number
+	 * @return whether the flight is in the snapshot with a plane
+	 */
+	public boolean contains(int fnum){
+		ByteBuffer map = this._map;
+		return map != null && fnum >= 0 && fnum < map.getInt(H_SLOTS) && map.getInt(offset(fnum) + R_CAPACITY) >= 0;
+	}
+
+	//fnum is below the slots of a snapshot, hence below MAX_SLOTS
+	private static int offset(int fnum){
+		return HEADER_SIZE + fnum * RECORD_SIZE;
+	}
+
+	/**
+	 * Method to fetch the number of seats left on a flight, read straight
+	 * from the mapped file.
+	 *
+	 * @param fnum the flight number
+	 * @return the number of seats left, or -1 if the flight is not in the snapshot
+	 */
+	public int getAvailableSeats(int fnum){
+		ByteBuffer map = this._map;
+		if (map == null || fnum < 0 || fnum >= map.getInt(H_SLOTS)){
+			return -1;
+		}
+		int capacity = map.getInt(offset(fnum) + R_CAPACITY);
+		return capacity < 0 ? -1 : capacity - map.getInt(offset(fnum) + R_SOLD);
+	}
+
+	/**
+	 * @param fnum a flight number in the snapshot
+	 * @return the capacity of its plane, or -1
+	 */
+	public int getCapacity(int fnum){
+		return contains(fnum) ? this._map.getInt(offset(fnum) + R_CAPACITY) : -1;
+	}
+
+	/**
+	 * @param fnum a flight number in the snapshot
+	 * @return its num_sold, or -1
+	 */
+	public int getSold(int fnum){
+		return contains(fnum) ? this._map.getInt(offset(fnum) + R_SOLD) : -1;
+	}
+
+	/**
+	 * @param fnum a flight number in the snapshot
+	 * @return its actual departure date in days since 1970-01-01, or -1
+	 */
+	public int getDepartureDay(int fnum){
+		return contains(fnum) ? this._map.getInt(offset(fnum) + R_DEPARTURE_DATE) : -1;
+	}
+
+	/**
+	 * @param fnum a flight number in the snapshot
+	 * @return its actual arrival date in days since 1970-01-01, or -1
+	 */
+	public int getArrivalDay(int fnum){
+		return contains(fnum) ? this._map.getInt(offset(fnum) + R_ARRIVAL_DATE) : -1;
+	}
+
+	/**
+	 * @param fnum a flight number in the snapshot
+	 * @return its departure airport code, or null
+	 */
+	public String getDepartureAirport(int fnum){
+		return contains(fnum) ? airportAt(this._map, offset(fnum) + R_DEPARTURE_AIRPORT) : null;
+	}
+
+	/**
+	 * @param fnum a flight number in the snapshot
+	 * @return its arrival airport code, or null
+	 */
+	public String getArrivalAirport(int fnum){
+		return contains(fnum) ? airportAt(this._map, offset(fnum) + R_ARRIVAL_AIRPORT) : null;
+	}
+
+	private static String airportAt(ByteBuffer map, int at){
+		byte[] bytes = new byte[AIRPORT_LENGTH];
+		int n = 0;
+		while (n < AIRPORT_LENGTH && (bytes[n] = map.get(at + n)) != 0){
+			n++;
+		}
+		return new String(bytes, 0, n, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Method to copy the capacity and num_sold of every flight into arrays
+	 * indexed by flight number, e.g. to seed InventoryCache.
+	 *
+	 * @param capacity receives the capacities, negative for empty slots and flights without plane; at least getSlots() long
+	 * @param sold receives num_sold; at least getSlots() long
+	 * @return the number of slots copied
+	 */
+	public int copyInto(int[] capacity, int[] sold){
+		ByteBuffer map = this._map;
+		if (map == null){
+			return 0;
+		}
+		int slots = map.getInt(H_SLOTS);
+		for (int fnum = 0, at = HEADER_SIZE; fnum < slots; fnum++, at += RECORD_SIZE){
+			capacity[fnum] = map.getInt(at + R_CAPACITY);
+			sold[fnum] = map.getInt(at + R_SOLD);
+		}
+		return slots;
+	}
+
+	/**
+	 * Method to bring the file up to date, re-reading only num_sold for
+	 * flights it already has.
+	 *
+	 * @param esql the database to read
+	 * @return false if another process was refreshing the file, which is then left to it
+	 * @throws java.sql.SQLException when the inventory can not be read
+	 * @throws java.io.IOException when the file can not be written
+	 */
+	public boolean refresh(Database esql) throws SQLException, IOException {
+		return refresh(esql, false);
+	}
+
+	/**
+	 * Method to bring the file up to date.
+	 *
+	 * @param esql the database to read
+	 * @param full re-read the joined columns of every flight, not only of new ones
+	 * @return false if another process was refreshing the file, which is then left to it
+	 * @throws java.sql.SQLException when the inventory can not be read
+	 * @throws java.io.IOException when the file can not be written
+	 */
+	public synchronized boolean refresh(Database esql, boolean full) throws SQLException, IOException {
+		RandomAccessFile lockFile = new RandomAccessFile(this._lockFile, "rw");
+		try{
+			FileLock lock = lockFile.getChannel().tryLock();
+			if (lock == null){
+				return false;
+			}
+			try{
+				//another process may have refreshed it while this one waited
+				this._checkedAt = 0;
+				remapIfReplaced();
+				write(esql, full ? null : this._map);
+				this._checkedAt = 0;
+				remapIfReplaced();
+				this._refreshes.incrementAndGet();
+				return true;
+			}finally{
+				lock.release();
+			}
+		}finally{
+			lockFile.close();
+		}
+	}
+
+	/*
+	 * Reads the changes against the previous snapshot (or every flight, if
+	 * there is none) and writes the new file under a temporary name before
+	 * renaming it over the old one.
+	 */
+	private void write(Database esql, ByteBuffer previous) throws SQLException, IOException {
+		final int oldSlots = previous == null ? 0 : previous.getInt(H_SLOTS);
+		final ByteBuffer old = previous == null ? null : previous.duplicate();
+		//a changed number of FlightInfo rows may have given a plane to a flight recorded without one
+		long flightInfo = esql.executeQueryAndReturnTable(FLIGHT_INFO_SQL).getLong(0, 0);
+		final boolean planesChanged = old == null || old.getLong(H_FLIGHT_INFO) != flightInfo;
+
+		//num_sold of every flight; flights without a record are collected
+		final List<int[]> sold = new ArrayList<int[]>();
+		final List<Integer> missing = new ArrayList<Integer>();
+		final int[] maxFnum = { oldSlots - 1 };
+		final int[] skipped = { 0 };
+		esql.executeQueryAndStream(SOLD_SQL, Database.DEFAULT_FETCH_SIZE, new RowHandler(){
+			public boolean handleRow(ResultSet row) throws SQLException {
+				int fnum = row.getInt(1);
+				if (fnum < 0){
+					return true;
+				}
+				if (fnum >= MAX_SLOTS){
+					skipped[0]++;
+					return true;
+				}
+				sold.add(new int[]{ fnum, row.getInt(2) });
+				if (fnum < oldSlots){
+					int capacity = old.getInt(offset(fnum) + R_CAPACITY);
+					if (capacity == EMPTY || (capacity == NO_PLANE && planesChanged)){
+						missing.add(fnum);
+					}
+				}
+				maxFnum[0] = Math.max(maxFnum[0], fnum);
+				return true;
+			}
+		});
+		if (skipped[0] > 0){
+			System.err.println("Inventory snapshot: " + skipped[0] + " flights numbered " + MAX_SLOTS + " or more left out");
+		}
+
+		//the joined columns of flights above the old snapshot, and of those missing below it
+		final List<Object[]> details = new ArrayList<Object[]>();
+		RowHandler collect = new RowHandler(){
+			public boolean handleRow(ResultSet row) throws SQLException {
+				details.add(new Object[]{ row.getInt(1), row.getInt(2), row.getInt(3), row.getDate(4),
+					row.getDate(5), row.getString(6), row.getString(7) });
+				return true;
+			}
+		};
+		if (missing.size() > MAX_MISSING){
+			esql.executeQueryAndStream(DETAILS_SQL, Database.DEFAULT_FETCH_SIZE, collect, -1);
+		}else{
+			esql.executeQueryAndStream(DETAILS_SQL, Database.DEFAULT_FETCH_SIZE, collect, oldSlots - 1);
+			for (int fnum : missing){
+				esql.executeQueryAndStream(FLIGHT_DETAILS_SQL, Database.DEFAULT_FETCH_SIZE, collect, fnum);
+			}
+		}
+
+		int slots = maxFnum[0] + 1;
+		File tmp = File.createTempFile(this._file.getName() + ".", ".tmp", this._file.getParentFile());
+		try{
+			RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+			try{
+				long size = HEADER_SIZE + (long) slots * RECORD_SIZE;
+				raf.setLength(size);
+				MappedByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+				//the records carried over are copied as they are, the new slots start empty
+				if (old != null){
+					ByteBuffer records = old.duplicate();
+					records.position(HEADER_SIZE).limit(HEADER_SIZE + oldSlots * RECORD_SIZE);
+					out.position(HEADER_SIZE);
+					out.put(records);
+				}
+				for (int fnum = oldSlots; fnum < slots; fnum++){
+					out.putInt(offset(fnum) + R_FNUM, fnum);
+					out.putInt(offset(fnum) + R_CAPACITY, EMPTY);
+				}
+				for (Object[] d : details){
+					//flights added since SOLD_SQL ran wait for the next refresh
+					if ((Integer) d[0] < slots){
+						putDetails(out, d);
+					}
+				}
+				for (int[] s : sold){
+					int capacity = out.getInt(offset(s[0]) + R_CAPACITY);
+					if (capacity >= 0){
+						out.putInt(offset(s[0]) + R_SOLD, s[1]);
+					}else if (capacity == EMPTY){
+						//the join found no plane: not looked up again until FlightInfo changes
+						out.putInt(offset(s[0]) + R_CAPACITY, NO_PLANE);
+					}
+				}
+				int flights = 0;
+				for (int fnum = 0; fnum < slots; fnum++){
+					if (out.getInt(offset(fnum) + R_CAPACITY) >= 0){
+						flights++;
+					}
+				}
+				out.putInt(H_MAGIC, MAGIC);
+				out.putInt(H_VERSION, VERSION);
+				out.putInt(H_RECORD_SIZE, RECORD_SIZE);
+				out.putInt(H_SLOTS, slots);
+				out.putLong(H_GENERATION, getGeneration() + 1);
+				out.putLong(H_WRITTEN_AT, System.currentTimeMillis());
+				out.putInt(H_FLIGHTS, flights);
+				out.putLong(H_FLIGHT_INFO, flightInfo);
+				out.force();
+			}finally{
+				raf.close();
+			}
+			Files.move(tmp.toPath(), this._file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}finally{
+			tmp.delete();
+		}
+	}
+
+	//a flight with several FlightInfo rows keeps the first plane read
+	private static void putDetails(ByteBuffer out, Object[] d){
+		int at = offset((Integer) d[0]);
+		if (out.getInt(at + R_CAPACITY) >= 0){
+			return;
+		}
+		out.putInt(at + R_FNUM, (Integer) d[0]);
+		out.putInt(at + R_CAPACITY, (Integer) d[1]);
+		out.putInt(at + R_SOLD, (Integer) d[2]);
+		out.putInt(at + R_DEPARTURE_DATE, epochDay((Date) d[3]));
+		out.putInt(at + R_ARRIVAL_DATE, epochDay((Date) d[4]));
+		putAirport(out, at + R_DEPARTURE_AIRPORT, (String) d[5]);
+		putAirport(out, at + R_ARRIVAL_AIRPORT, (String) d[6]);
+	}
+
+	private static int epochDay(Date date){
+		return date == null ? -1 : (int) date.toLocalDate().toEpochDay();
+	}
+
+	private static void putAirport(ByteBuffer out, int at, String code){
+		byte[] bytes = code == null ? new byte[0] : code.trim().getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < AIRPORT_LENGTH; i++){
+			out.put(at + i, i < bytes.length ? bytes[i] : 0);
+		}
+	}
+
+	/**
+	 * Method to summarize the snapshot on one line.
+	 *
+	 * @return the file, its generation and age, and how often it was refreshed and mapped here
+	 */
+	public String getStatistics(){
+		ByteBuffer map = this._map;
+		return "file=" + this._file + " generation=" + getGeneration() + " flights=" +
+			(map == null ? 0 : map.getInt(H_FLIGHTS)) + " ageMs=" + (map == null ? -1 : getAgeMillis()) +
+			" refreshes=" + this._refreshes.get() + " remaps=" + this._remaps.get();
+	}
+}
@@ -0,0 +1,231 @@
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class defines the little JSON the HTTP server and QueryMetrics need:
+ * parsing a flat request object (string, number, boolean and null members)
+ * and writing objects and query results.  Nested request objects are rejected.
+ *
+ */
+
+public class Json{
+	private final String _text;
+	private int _pos = 0;
+
+	private Json(String text){
+		this._text = text;
+	}
+
+	/**
+	 * Method to parse a flat JSON object.
+	 *
+	 * @param text the request body
+	 * @return the members in order; numbers are Long or Double
+	 * @throws java.lang.IllegalArgumentException when the text is not a flat JSON object
+	 */
+	public static Map<String, Object> parseObject(String text){
+		Json p = new Json(text);
+		Map<String, Object> members = new LinkedHashMap<String, Object>();
+		p.expect('{');
+		if (!p.consume('}')){
+			do{
+				String key = p.string();
+				p.expect(':');
+				members.put(key, p.value());
+			}while (p.consume(','));
+			p.expect('}');
+		}
+		p.skipSpace();
+		if (p._pos != p._text.length()){
+			throw p.error("trailing characters");
+		}
+		return members;
+	}
+
+	private Object value(){
+		skipSpace();
+		if (this._pos >= this._text.length()){
+			throw error("value expected");
+		}
+		char c = this._text.charAt(this._pos);
+		if (c == '"') return string();
+		if (this._text.startsWith("true", this._pos)){ this._pos += 4; return Boolean.TRUE; }
+		if (this._text.startsWith("false", this._pos)){ this._pos += 5; return Boolean.FALSE; }
+		if (this._text.startsWith("null", this._pos)){ this._pos += 4; return null; }
+		if (c == '-' || (c >= '0' && c <= '9')) return number();
+		throw error("unsupported value");
+	}
+
+	private Object number(){
+		int start = this._pos;
+		boolean fraction = false;
+		while (this._pos < this._text.length()){
+			char c = this._text.charAt(this._pos);
+			if (c == '.' || c == 'e' || c == 'E'){
+				fraction = true;
+			}else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))){
+				break;
+			}
+			this._pos++;
+		}
+		String s = this._text.substring(start, this._pos);
+		try{
+			return fraction ? (Object) Double.valueOf(s) : (Object) Long.valueOf(s);
+		}catch (NumberFormatException e){
+			throw error("bad number " + s);
+		}
+	}
+
+	private String string(){
+		expect('"');
+		StringBuilder sb = new StringBuilder();
+		while (this._pos < this._text.length()){
+			char c = this._text.charAt(this._pos++);
+			if (c == '"'){
+				return sb.toString();
+			}
+			if (c != '\\'){
+				sb.append(c);
+				continue;
+			}
+			if (this._pos >= this._text.length()){
+				break;
+			}
+			char e = this._text.charAt(this._pos++);
+			switch (e){
+				case 'b': sb.append('\b'); break;
+				case 'f': sb.append('\f'); break;
+				case 'n': sb.append('\n'); break;
+				case 'r': sb.append('\r'); break;
+				case 't': sb.append('\t'); break;
+				case 'u':
+					if (this._pos + 4 > this._text.length()){
+						throw error("bad escape");
+					}
+					sb.append((char) Integer.parseInt(this._text.substring(this._pos, this._pos + 4), 16));
+					this._pos += 4;
+					break;
+				default: sb.append(e); break;
+			}
+		}
+		throw error("unterminated string");
+	}
+
+	private void expect(char c){
+		if (!consume(c)){
+			throw error("'" + c + "' expected");
+		}
+	}
+
+	private boolean consume(char c){
+		skipSpace();
+		if (this._pos < this._text.length() && this._text.charAt(this._pos) == c){
+			this._pos++;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipSpace(){
+		while (this._pos < this._text.length() && Character.isWhitespace(this._text.charAt(this._pos))){
+			this._pos++;
+		}
+	}
+
+	private IllegalArgumentException error(String message){
+		return new IllegalArgumentException("Invalid JSON at " + this._pos + ": " + message);
+	}
+
+	/**
+	 * Method to write one value: numbers and booleans as such, collections
+	 * as arrays, everything else as a string.
+	 *
+	 * @param sb the output
+	 * @param value the value, may be null
+	 */
+	public static void write(StringBuilder sb, Object value){
+		if (value == null){
+			sb.append("null");
+		}else if (value instanceof Number || value instanceof Boolean){
+			sb.append(value);
+		}else if (value instanceof Collection){
+			sb.append('[');
+			int i = 0;
+			for (Object element : (Collection<?>) value){
+				if (i++ > 0) sb.append(',');
+				write(sb, element);
+			}
+			sb.append(']');
+		}else{
+			String s = value.toString();
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++){
+				char c = s.charAt(i);
+				switch (c){
+					case '"': sb.append("\\\""); break;
+					case '\\': sb.append("\\\\"); break;
+					case '\n': sb.append("\\n"); break;
+					case '\r': sb.append("\\r"); break;
+					case '\t': sb.append("\\t"); break;
+					default:
+						if (c < 0x20){
+							sb.append(String.format("\\u%04x", (int) c));
+						}else{
+							sb.append(c);
+						}
+				}
+			}
+			sb.append('"');
+		}
+	}
+
+	/**
+	 * Method to write an object from alternating names and values.
+	 *
+	 * @param members name1, value1, name2, value2, ...
+	 * @return the JSON text
+	 */
+	public static String object(Object... members){
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i + 1 < members.length; i += 2){
+			if (i > 0) sb.append(',');
+			write(sb, members[i].toString());
+			sb.append(':');
+			write(sb, members[i + 1]);
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Method to write a query result as {"rows":[{column: value, ...}, ...]},
+	 * with numbers unquoted and CHAR values trimmed.
+	 *
+	 * @param table the result
+	 * @return the JSON text
+	 */
+	public static String rows(ResultTable table){
+		StringBuilder sb = new StringBuilder("{\"rows\":[");
+		for (int row = 0; row < table.getRowCount(); row++){
+			sb.append(row == 0 ? "{" : ",{");
+			for (int col = 0; col < table.getColumnCount(); col++){
+				if (col > 0) sb.append(',');
+				write(sb, table.getColumnName(col));
+				sb.append(':');
+				if (table.isNull(row, col)){
+					sb.append("null");
+					continue;
+				}
+				switch (table.getColumnType(col)){
+					case ResultTable.INT: sb.append(table.getInt(row, col)); break;
+					case ResultTable.LONG: sb.append(table.getLong(row, col)); break;
+					case ResultTable.DOUBLE: sb.append(table.getString(row, col)); break;
+					case ResultTable.DATE: write(sb, table.getString(row, col)); break;
+					default: write(sb, table.getString(row, col).trim()); break;
+				}
+			}
+			sb.append('}');
+		}
+		return sb.append("]}").toString();
+	}
+}
@@ -0,0 +1,155 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class defines a latency histogram in the style of HdrHistogram:
+ * values are counted in buckets whose width doubles with every power of
+ * two, and every power of two is split into SUB_BUCKETS linear buckets, so
+ * any recorded value is known to within about 3% from 1 microsecond up to
+ * hours, in a fixed 15 KB of counters.
+ *
+ * Recording is lock-free and may be done from any number of threads.
+ *
+ */
+
+public class LatencyHistogram{
+	static final int SUB_BITS = 5;
+	static final int SUB_BUCKETS = 1 << SUB_BITS;
+	static final int NUM_BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	//percentiles printed by summary()
+	static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+	private final AtomicLongArray _counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong _count = new AtomicLong();
+	private final AtomicLong _sum = new AtomicLong();
+	private final AtomicLong _max = new AtomicLong();
+
+	/**
+	 * Method to record one latency.
+	 *
+	 * @param nanos the latency in nanoseconds
+	 */
+	public void record(long nanos){
+		long micros = Math.max(nanos / 1000, 0);
+		this._counts.incrementAndGet(bucketOf(micros));
+		this._count.incrementAndGet();
+		this._sum.addAndGet(micros);
+		long max;
+		while (micros > (max = this._max.get()) && !this._max.compareAndSet(max, micros));
+	}
+
+	static int bucketOf(long micros){
+		if (micros < SUB_BUCKETS){
+			return (int) micros;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(micros);
+		int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	//highest value counted in a bucket
+	static long upperBoundOf(int bucket){
+		if (bucket < SUB_BUCKETS){
+			return bucket;
+		}
+		int exp = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long width = 1L << (exp - SUB_BITS);
+		return ((SUB_BUCKETS + bucket % SUB_BUCKETS) << (exp - SUB_BITS)) + width - 1;
+	}
+
+	public long getCount(){
+		return this._count.get();
+	}
+
+	/**
+	 * @return the mean latency in microseconds
+	 */
+	public double getMean(){
+		long count = this._count.get();
+		return count == 0 ? 0 : (double) this._sum.get() / count;
+	}
+
+	/**
+	 * @return the highest latency recorded, in microseconds
+	 */
+	public long getMax(){
+		return this._max.get();
+	}
+
+	/**
+	 * Method to find the latency below which a given share of the recorded
+	 * values fall.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the latency in microseconds, rounded up to its bucket
+	 */
+	public long getPercentile(double percentile){
+		long count = this._count.get();
+		if (count == 0){
+			return 0;
+		}
+		long target = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; i++){
+			seen += this._counts.get(i);
+			if (seen >= target){
+				return Math.min(upperBoundOf(i), this._max.get());
+			}
+		}
+		return this._max.get();
+	}
+
+	/**
+	 * Method to summarize the histogram on one line.
+	 *
+	 * @return count, mean, percentiles and max in milliseconds
+	 */
+	public String summary(){
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("count=%d mean=%.3fms", getCount(), getMean() / 1000));
+		for (double p : PERCENTILES){
+			sb.append(String.format(" p%s=%.3fms", p == Math.rint(p) ? Long.toString((long) p) : Double.toString(p), getPercentile(p) / 1000.0));
+		}
+		sb.append(String.format(" max=%.3fms", getMax() / 1000.0));
+		return sb.toString();
+	}
+
+	/**
+	 * Method to print the percentile distribution, one line per halving of
+	 * the remaining tail (50%, 75%, 87.5%, ...), like HdrHistogram's output.
+	 *
+	 * @param title printed above the table
+	 */
+	public void printDistribution(String title){
+		System.out.println(title);
+		System.out.println(String.format("%12s %12s %10s", "Value(ms)", "Percentile", "Count"));
+		long count = this._count.get();
+		if (count == 0){
+			return;
+		}
+		double tail = 100;
+		long previous = -1;
+		while (true){
+			long value = getPercentile(100 - tail);
+			long below = countAtOrBelow(value);
+			if (value != previous){
+				System.out.println(String.format("%12.3f %12.6f %10d", value / 1000.0, 100.0 * below / count, below));
+				previous = value;
+			}
+			if (below >= count){
+				break;
+			}
+			tail /= 2;
+		}
+	}
+
+	private long countAtOrBelow(long micros){
+		long seen = 0;
+		int last = bucketOf(micros);
+		for (int i = 0; i <= last; i++){
+			seen += this._counts.get(i);
+		}
+		return seen;
+	}
+}
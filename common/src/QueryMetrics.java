@@ -0,0 +1,319 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class defines the per-query statistics of DBproject: for every
+ * data-access method and every SQL string it ran, the number of calls,
+ * failed calls, rows returned (or affected) and a latency histogram.
+ * Statements take their input through '?' placeholders, so the SQL string
+ * is the shape of the query and the number of shapes stays small; past
+ * MAX_SHAPES, new shapes are counted under OTHER.
+ *
+ * record() is called on every query.  Once a shape has been seen it only
+ * does a map lookup and lock-free increments, with no allocation and no
+ * lock shared between threads.
+ *
+ * The statistics are readable through JMX (see QueryMetricsMBean) and can
+ * be written to a file every few seconds, as text or JSON:
+ *
+ *   -Dmetrics.dump=<seconds> [-Dmetrics.file=<path>] [-Dmetrics.format=json]
+ *
+ */
+
+public class QueryMetrics implements QueryMetricsMBean{
+	//the instrumented DBproject methods
+	public static final int UPDATE = 0;
+	public static final int QUERY = 1;
+	public static final int PRINT = 2;
+	public static final int RESULT = 3;
+	public static final int TABLE = 4;
+	public static final int STREAM = 5;
+	static final String[] OPERATIONS = { "executeUpdate", "executeQuery", "executeQueryAndPrintResult",
+		"executeQueryAndReturnResult", "executeQueryAndReturnTable", "executeQueryAndStream" };
+
+	static final int MAX_SHAPES = 256;
+	static final String OTHER = "(other)";
+	static final String OBJECT_NAME = "airline:type=QueryMetrics";
+
+	/**
+	 * This class defines the statistics of one SQL shape run by one method.
+	 */
+	public static class Shape{
+		public final String operation;
+		public final String sql;
+		final LongAdder _calls = new LongAdder();
+		final LongAdder _errors = new LongAdder();
+		final LongAdder _rows = new LongAdder();
+		final LongAdder _nanos = new LongAdder();
+		final LatencyHistogram _latency = new LatencyHistogram();
+
+		Shape(String operation, String sql){
+			this.operation = operation;
+			this.sql = sql;
+		}
+
+		public long getCalls(){
+			return this._calls.sum();
+		}
+
+		public long getErrors(){
+			return this._errors.sum();
+		}
+
+		public long getRows(){
+			return this._rows.sum();
+		}
+
+		public long getTotalNanos(){
+			return this._nanos.sum();
+		}
+
+		public LatencyHistogram getLatency(){
+			return this._latency;
+		}
+	}
+
+	//per operation: query text -> its shape
+	private volatile List<ConcurrentHashMap<String, Shape>> _shapes = newMaps();
+	private ScheduledExecutorService _dumper = null;
+	private ObjectName _registered = null;
+
+	private static List<ConcurrentHashMap<String, Shape>> newMaps(){
+		List<ConcurrentHashMap<String, Shape>> maps = new ArrayList<ConcurrentHashMap<String, Shape>>(OPERATIONS.length);
+		for (int i = 0; i < OPERATIONS.length; i++){
+			maps.add(new ConcurrentHashMap<String, Shape>());
+		}
+		return maps;
+	}
+
+	/**
+	 * Method to record one call.
+	 *
+	 * @param operation UPDATE, QUERY, PRINT, RESULT, TABLE or STREAM
+	 * @param sql the statement as passed to DBproject
+	 * @param start System.nanoTime() when the call began
+	 * @param rows rows returned or affected, or -1 if the call failed
+	 * @return the duration of the call in nanoseconds
+	 */
+	public long record(int operation, String sql, long start, long rows){
+		long nanos = System.nanoTime() - start;
+		Shape shape = shapeOf(operation, sql);
+		shape._calls.increment();
+		shape._nanos.add(nanos);
+		shape._latency.record(nanos);
+		if (rows < 0){
+			shape._errors.increment();
+		}else{
+			shape._rows.add(rows);
+		}
+		return nanos;
+	}
+
+	private Shape shapeOf(int operation, String sql){
+		ConcurrentHashMap<String, Shape> map = this._shapes.get(operation);
+		Shape shape = map.get(sql);
+		if (shape != null){
+			return shape;
+		}
+		String key = sql;
+		if (map.size() >= MAX_SHAPES){
+			//once full, unseen queries share OTHER, which is only created once
+			key = OTHER;
+			shape = map.get(OTHER);
+			if (shape != null){
+				return shape;
+			}
+		}
+		shape = new Shape(OPERATIONS[operation], key);
+		Shape raced = map.putIfAbsent(key, shape);
+		return raced != null ? raced : shape;
+	}
+
+	/**
+	 * @return a snapshot of every shape, slowest (by total time) first
+	 */
+	public List<Shape> getShapeList(){
+		List<Shape> list = new ArrayList<Shape>();
+		for (ConcurrentHashMap<String, Shape> map : this._shapes){
+			list.addAll(map.values());
+		}
+		Collections.sort(list, new Comparator<Shape>(){
+			public int compare(Shape a, Shape b){
+				return Long.compare(b.getTotalNanos(), a.getTotalNanos());
+			}
+		});
+		return list;
+	}
+
+	public long getCalls(){
+		long n = 0;
+		for (Shape s : getShapeList()) n += s.getCalls();
+		return n;
+	}
+
+	public long getErrors(){
+		long n = 0;
+		for (Shape s : getShapeList()) n += s.getErrors();
+		return n;
+	}
+
+	public long getRows(){
+		long n = 0;
+		for (Shape s : getShapeList()) n += s.getRows();
+		return n;
+	}
+
+	public int getShapeCount(){
+		return getShapeList().size();
+	}
+
+	public String[] getShapes(){
+		List<Shape> list = getShapeList();
+		String[] lines = new String[list.size()];
+		for (int i = 0; i < lines.length; i++){
+			lines[i] = line(list.get(i));
+		}
+		return lines;
+	}
+
+	private static String line(Shape s){
+		return s.operation + " errors=" + s.getErrors() + " rows=" + s.getRows() +
+			" " + s._latency.summary() + " | " + s.sql;
+	}
+
+	/**
+	 * Method to write the statistics as text, one line per shape.
+	 *
+	 * @return the text
+	 */
+	public String dumpText(){
+		StringBuilder sb = new StringBuilder();
+		for (String line : getShapes()){
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Method to write the statistics as {"shapes":[...]}, latencies in
+	 * microseconds.
+	 *
+	 * @return the JSON text
+	 */
+	public String dumpJson(){
+		StringBuilder sb = new StringBuilder("{\"shapes\":[");
+		boolean first = true;
+		for (Shape s : getShapeList()){
+			if (!first) sb.append(',');
+			first = false;
+			LatencyHistogram h = s._latency;
+			sb.append(Json.object("operation", s.operation, "sql", s.sql, "calls", s.getCalls(), "errors", s.getErrors(),
+				"rows", s.getRows(), "meanMicros", Math.round(h.getMean()), "p50Micros", h.getPercentile(50),
+				"p99Micros", h.getPercentile(99), "maxMicros", h.getMax()));
+		}
+		return sb.append("]}").toString();
+	}
+
+	/**
+	 * Method to drop every statistic gathered so far.
+	 */
+	public void reset(){
+		this._shapes = newMaps();
+	}
+
+	/**
+	 * Method to publish the statistics as an MBean.  A second DBproject in
+	 * the same JVM keeps the first one registered.
+	 */
+	public synchronized void register(){
+		try{
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)){
+				server.registerMBean(this, name);
+				this._registered = name;
+			}
+		}catch (Exception e){
+			System.err.println("Unable to register " + OBJECT_NAME + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Method to write the statistics periodically.
+	 *
+	 * @param seconds the period
+	 * @param file the file to overwrite, or null for standard error
+	 * @param json JSON instead of text
+	 */
+	public synchronized void startDump(long seconds, final String file, final boolean json){
+		if (this._dumper != null){
+			return;
+		}
+		this._dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "metrics-dump");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._dumper.scheduleAtFixedRate(new Runnable(){
+			public void run(){
+				String text = json ? dumpJson() + "\n" : dumpText();
+				if (file == null){
+					System.err.print(text);
+					return;
+				}
+				try{
+					PrintWriter out = new PrintWriter(new FileWriter(file));
+					out.print(text);
+					out.close();
+				}catch (IOException e){
+					System.err.println("Unable to write " + file + ": " + e.getMessage());
+				}
+			}
+		}, seconds, seconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Method to start the dump if -Dmetrics.dump asks for one.
+	 */
+	public void startDumpFromProperties(){
+		long seconds = Long.getLong("metrics.dump", 0);
+		if (seconds > 0){
+			startDump(seconds, System.getProperty("metrics.file"), "json".equalsIgnoreCase(System.getProperty("metrics.format")));
+		}
+	}
+
+	/**
+	 * Method to stop the dump and unregister the MBean.
+	 */
+	public synchronized void close(){
+		if (this._dumper != null){
+			this._dumper.shutdownNow();
+			this._dumper = null;
+		}
+		if (this._registered != null){
+			try{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(this._registered);
+			}catch (Exception e){
+				// ignored.
+			}
+			this._registered = null;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+/**
+ * This interface defines what QueryMetrics shows through JMX, e.g. in
+ * jconsole under airline/QueryMetrics.
+ *
+ */
+
+public interface QueryMetricsMBean{
+	long getCalls();
+
+	long getErrors();
+
+	long getRows();
+
+	int getShapeCount();
+
+	/**
+	 * @return one line per SQL shape, slowest (by total time) first
+	 */
+	String[] getShapes();
+
+	String dumpText();
+
+	String dumpJson();
+
+	void reset();
+}
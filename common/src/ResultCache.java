@@ -0,0 +1,327 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class defines a least-recently-used cache of query results, for the
+ * report queries that are read far more often than their tables change
+ * (repairs per plane and per year, passengers per status).  Entries are
+ * keyed by the normalized SQL string and the parameters, and leave the
+ * cache when they are evicted, when their time to live runs out, or when a
+ * table they depend on is written.
+ *
+ * Invalidation is by table version: every table has a counter that each
+ * write bumps, and an entry remembers the counters of its tables as they
+ * were before its query ran.  An entry whose counters moved is stale, so a
+ * write that lands while the query is still running is not missed.
+ * DBproject.executeUpdate bumps the table it writes to (or every table, for
+ * statements it can not read the target of); paths that write through
+ * other methods, like the booking engine, call invalidate() themselves.
+ *
+ * Only writes made through this process are seen.  Another process writing
+ * the same tables is covered by the time to live alone.
+ *
+ * Cached tables are shared between callers and must not be modified.
+ *
+ */
+
+public class ResultCache{
+	static final int DEFAULT_CAPACITY = 256;
+	//results with more rows are not cached
+	static final int MAX_ROWS = 10000;
+	//normalized SQL strings remembered, so normalizing costs a lookup
+	static final int MAX_NORMALIZED = 1024;
+
+	private static final Pattern WRITE_TARGET = Pattern.compile(
+		"^\\s*(?:insert\\s+into|update|delete\\s+from)\\s+(?:only\\s+)?([a-z_][a-z0-9_.]*)", Pattern.CASE_INSENSITIVE);
+	private static final String ALL_TABLES = "*";
+
+	/**
+	 * This class defines the key of a cached result.
+	 */
+	public static class Key{
+		final String sql;
+		final Object[] params;
+		final int hash;
+
+		Key(String sql, Object[] params){
+			this.sql = sql;
+			this.params = params;
+			this.hash = 31 * sql.hashCode() + Arrays.hashCode(params);
+		}
+
+		public int hashCode(){
+			return this.hash;
+		}
+
+		public boolean equals(Object o){
+			if (!(o instanceof Key)){
+				return false;
+			}
+			Key k = (Key) o;
+			return this.hash == k.hash && this.sql.equals(k.sql) && Arrays.equals(this.params, k.params);
+		}
+	}
+
+	//a cached result and what it depends on
+	private static class Cached{
+		final ResultTable table;
+		final long expires;
+		final String[] tables;
+		final long[] versions;
+
+		Cached(ResultTable table, long expires, String[] tables, long[] versions){
+			this.table = table;
+			this.expires = expires;
+			this.tables = tables;
+			this.versions = versions;
+		}
+	}
+
+	private final LinkedHashMap<Key, Cached> _entries;
+	private final Map<String, AtomicLong> _versions = new ConcurrentHashMap<String, AtomicLong>();
+	//bumped by invalidateAll(), and part of every table's version
+	private final AtomicLong _epoch = new AtomicLong();
+	private final Map<String, String> _normalized = new ConcurrentHashMap<String, String>();
+	private final Map<String, String> _targets = new ConcurrentHashMap<String, String>();
+
+	//statistics
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+	private final AtomicLong _expired = new AtomicLong();
+	private final AtomicLong _stale = new AtomicLong();
+	private final AtomicLong _evictions = new AtomicLong();
+	private final AtomicLong _invalidations = new AtomicLong();
+
+	public ResultCache(){
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity maximum number of results kept
+	 */
+	public ResultCache(final int capacity){
+		this._entries = new LinkedHashMap<Key, Cached>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest){
+				if (size() > capacity){
+					_evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Method to build the key of a query: the SQL string with whitespace
+	 * collapsed, keywords and names outside quotes lower-cased and the
+	 * trailing ';' dropped, so the same query written two ways shares an
+	 * entry.
+	 *
+	 * @param sql the SQL string
+	 * @param params the parameters
+	 * @return the key
+	 */
+	public Key key(String sql, Object[] params){
+		String normalized = this._normalized.get(sql);
+		if (normalized == null){
+			normalized = normalize(sql);
+			if (this._normalized.size() < MAX_NORMALIZED){
+				this._normalized.put(sql, normalized);
+			}
+		}
+		return new Key(normalized, params.clone());
+	}
+
+	static String normalize(String sql){
+		StringBuilder sb = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean space = false;
+		for (int i = 0; i < sql.length(); i++){
+			char c = sql.charAt(i);
+			if (quote != 0){
+				sb.append(c);
+				if (c == quote){
+					quote = 0;
+				}
+			}else if (Character.isWhitespace(c)){
+				space = sb.length() > 0;
+			}else{
+				if (space){
+					sb.append(' ');
+					space = false;
+				}
+				if (c == '\'' || c == '"'){
+					quote = c;
+				}
+				sb.append(Character.toLowerCase(c));
+			}
+		}
+		int end = sb.length();
+		while (end > 0 && sb.charAt(end - 1) == ';'){
+			end--;
+		}
+		return sb.substring(0, end).trim();
+	}
+
+	/**
+	 * Method to look a result up.
+	 *
+	 * @param key from key()
+	 * @return the result, or null if it is not cached, expired or stale
+	 */
+	public ResultTable get(Key key){
+		Cached entry;
+		synchronized (this._entries){
+			entry = this._entries.get(key);
+			if (entry != null && System.nanoTime() - entry.expires > 0){
+				this._entries.remove(key);
+				this._expired.incrementAndGet();
+				entry = null;
+			}else if (entry != null && !isCurrent(entry)){
+				this._entries.remove(key);
+				this._stale.incrementAndGet();
+				entry = null;
+			}
+		}
+		if (entry == null){
+			this._misses.incrementAndGet();
+			return null;
+		}
+		this._hits.incrementAndGet();
+		return entry.table;
+	}
+
+	/**
+	 * Method to read the versions of tables, before running the query whose
+	 * result will be cached.
+	 *
+	 * @param tables the tables the query depends on
+	 * @return their versions, to pass to put()
+	 */
+	public long[] versions(String[] tables){
+		long[] versions = new long[tables.length];
+		for (int i = 0; i < tables.length; i++){
+			versions[i] = versionOf(tables[i]);
+		}
+		return versions;
+	}
+
+	/**
+	 * Method to cache a result.
+	 *
+	 * @param key from key()
+	 * @param table the result
+	 * @param ttlMillis how long the result may be served
+	 * @param tables the tables the query depends on
+	 * @param versions from versions(), read before the query ran
+	 */
+	public void put(Key key, ResultTable table, long ttlMillis, String[] tables, long[] versions){
+		if (table.getRowCount() > MAX_ROWS){
+			return;
+		}
+		Cached entry = new Cached(table, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis), tables, versions);
+		if (!isCurrent(entry)){
+			return;
+		}
+		synchronized (this._entries){
+			this._entries.put(key, entry);
+		}
+	}
+
+	private boolean isCurrent(Cached entry){
+		for (int i = 0; i < entry.tables.length; i++){
+			if (versionOf(entry.tables[i]) != entry.versions[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private long versionOf(String table){
+		AtomicLong version = this._versions.get(table.toLowerCase());
+		return this._epoch.get() + (version == null ? 0 : version.get());
+	}
+
+	/**
+	 * Method to mark every result depending on a table as stale.
+	 *
+	 * @param table the table that was written
+	 */
+	public void invalidate(String table){
+		String name = table.toLowerCase();
+		AtomicLong version = this._versions.get(name);
+		if (version == null){
+			this._versions.putIfAbsent(name, new AtomicLong());
+			version = this._versions.get(name);
+		}
+		version.incrementAndGet();
+		this._invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Method to drop every cached result.
+	 */
+	public void invalidateAll(){
+		this._epoch.incrementAndGet();
+		this._invalidations.incrementAndGet();
+		synchronized (this._entries){
+			this._entries.clear();
+		}
+	}
+
+	/**
+	 * Method to invalidate whatever a statement run by executeUpdate may
+	 * have changed: the table it inserts into, updates or deletes from, or
+	 * everything for other statements (DDL, TRUNCATE, ...).
+	 *
+	 * @param sql the statement
+	 */
+	public void written(String sql){
+		String target = this._targets.get(sql);
+		if (target == null){
+			Matcher m = WRITE_TARGET.matcher(sql);
+			target = m.find() ? m.group(1).toLowerCase() : ALL_TABLES;
+			if (this._targets.size() < MAX_NORMALIZED){
+				this._targets.put(sql, target);
+			}
+		}
+		if (ALL_TABLES.equals(target)){
+			invalidateAll();
+		}else{
+			invalidate(target);
+		}
+	}
+
+	public long getHitCount(){
+		return this._hits.get();
+	}
+
+	public long getMissCount(){
+		return this._misses.get();
+	}
+
+	public int size(){
+		synchronized (this._entries){
+			return this._entries.size();
+		}
+	}
+
+	/**
+	 * Method to summarize the cache on one line.
+	 *
+	 * @return the cache statistics
+	 */
+	public String getStatistics(){
+		long hits = this._hits.get();
+		long lookups = hits + this._misses.get();
+		return String.format("size=%d hits=%d misses=%d hitRate=%.1f%% expired=%d stale=%d evictions=%d invalidations=%d",
+			size(), hits, this._misses.get(), lookups == 0 ? 0.0 : 100.0 * hits / lookups, this._expired.get(),
+			this._stale.get(), this._evictions.get(), this._invalidations.get());
+	}
+}
@@ -0,0 +1,399 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class defines a typed, column-oriented query result.  Each column is
+ * stored in a primitive array matching its SQL type:
+ *
+ *   INT     int[]    integer, smallint and count(*) values
+ *   LONG    long[]   bigint values
+ *   DATE    long[]   date and timestamp values as epoch milliseconds
+ *   DOUBLE  double[] numeric, real and double values (e.g. extract(year ...))
+ *   DICT    int[]    codes into a per-column dictionary, used for short
+ *                    CHAR columns such as airport codes and status
+ *   STRING  String[] everything else
+ *
+ * Values are read with the typed getters of the driver, so ids and counts
+ * are never turned into a String and parsed back.
+ *
+ */
+
+public class ResultTable{
+	public static final int INT = 0;
+	public static final int LONG = 1;
+	public static final int DATE = 2;
+	public static final int DOUBLE = 3;
+	public static final int DICT = 4;
+	public static final int STRING = 5;
+
+	//CHAR columns up to this length are dictionary encoded
+	static final int MAX_DICT_WIDTH = 8;
+
+	private final String[] _names;
+	private final int[] _types;
+	private final boolean[] _dateOnly;
+	private final int[][] _ints;
+	private final long[][] _longs;
+	private final double[][] _doubles;
+	private final String[][] _strings;
+	private final Dictionary[] _dicts;
+	private final BitSet[] _nulls;
+	private int _rowCount = 0;
+	private int _capacity;
+
+	//dictionary of distinct byte values for one DICT column
+	private static class Dictionary{
+		private byte[][] keys = new byte[16][];
+		private int[] slots = newSlots(32);
+		private String[] values = new String[16];
+		private int size = 0;
+
+		private static int[] newSlots(int n){
+			int[] slots = new int[n];
+			Arrays.fill(slots, -1);
+			return slots;
+		}
+
+		int encode(byte[] bytes){
+			int hash = Arrays.hashCode(bytes);
+			int mask = this.slots.length - 1;
+			for (int i = hash & mask; ; i = (i + 1) & mask){
+				int code = this.slots[i];
+				if (code < 0){
+					break;
+				}
+				if (Arrays.equals(this.keys[code], bytes)){
+					return code;
+				}
+			}
+			if (this.size == this.keys.length){
+				this.keys = Arrays.copyOf(this.keys, this.size * 2);
+				this.values = Arrays.copyOf(this.values, this.size * 2);
+			}
+			int code = this.size++;
+			this.keys[code] = bytes.clone();
+			this.values[code] = new String(bytes, StandardCharsets.UTF_8);
+			if (this.size * 2 > this.slots.length){
+				rehash(this.slots.length * 2);
+			}else{
+				insert(code, hash);
+			}
+			return code;
+		}
+
+		private void insert(int code, int hash){
+			int mask = this.slots.length - 1;
+			int i = hash & mask;
+			while (this.slots[i] >= 0){
+				i = (i + 1) & mask;
+			}
+			this.slots[i] = code;
+		}
+
+		private void rehash(int n){
+			this.slots = newSlots(n);
+			for (int code = 0; code < this.size; code++){
+				insert(code, Arrays.hashCode(this.keys[code]));
+			}
+		}
+	}
+
+	private ResultTable(ResultSetMetaData rsmd, int capacity) throws SQLException {
+		this(labelsOf(rsmd), typesOf(rsmd), dateOnlyOf(rsmd), capacity);
+	}
+
+	/**
+	 * Creates an empty table to be filled with addRow(), for results that
+	 * are computed without a database (see MemoryStore).
+	 *
+	 * @param names the column labels
+	 * @param types one of INT, LONG, DATE, DOUBLE, DICT or STRING per column
+	 */
+	ResultTable(String[] names, int[] types){
+		this(names.clone(), types.clone(), new boolean[names.length], 16);
+	}
+
+	private ResultTable(String[] names, int[] types, boolean[] dateOnly, int capacity){
+		int numCol = names.length;
+		this._names = names;
+		this._types = types;
+		this._dateOnly = dateOnly;
+		this._ints = new int[numCol][];
+		this._longs = new long[numCol][];
+		this._doubles = new double[numCol][];
+		this._strings = new String[numCol][];
+		this._dicts = new Dictionary[numCol];
+		this._nulls = new BitSet[numCol];
+		this._capacity = capacity;
+		for (int i = 0; i < numCol; i++){
+			this._nulls[i] = new BitSet();
+			switch (this._types[i]){
+				case INT: this._ints[i] = new int[capacity]; break;
+				case LONG: case DATE: this._longs[i] = new long[capacity]; break;
+				case DOUBLE: this._doubles[i] = new double[capacity]; break;
+				case DICT: this._ints[i] = new int[capacity]; this._dicts[i] = new Dictionary(); break;
+				default: this._strings[i] = new String[capacity]; break;
+			}
+		}
+	}
+
+	/**
+	 * Method to read every remaining row of a result set into a table.
+	 *
+	 * @param rs the result set, positioned before the first row
+	 * @return the typed table
+	 * @throws java.sql.SQLException when a value can not be read
+	 */
+	public static ResultTable read(ResultSet rs) throws SQLException {
+		ResultTable table = new ResultTable(rs.getMetaData(), 16);
+		while (rs.next()){
+			table.append(rs);
+		}//end while
+		return table;
+	}
+
+	private static String[] labelsOf(ResultSetMetaData rsmd) throws SQLException {
+		String[] names = new String[rsmd.getColumnCount()];
+		for (int i = 0; i < names.length; i++){
+			names[i] = rsmd.getColumnLabel(i + 1);
+		}
+		return names;
+	}
+
+	private static int[] typesOf(ResultSetMetaData rsmd) throws SQLException {
+		int[] types = new int[rsmd.getColumnCount()];
+		for (int i = 0; i < types.length; i++){
+			types[i] = typeOf(rsmd, i + 1);
+		}
+		return types;
+	}
+
+	private static boolean[] dateOnlyOf(ResultSetMetaData rsmd) throws SQLException {
+		boolean[] dateOnly = new boolean[rsmd.getColumnCount()];
+		for (int i = 0; i < dateOnly.length; i++){
+			dateOnly[i] = rsmd.getColumnType(i + 1) == Types.DATE;
+		}
+		return dateOnly;
+	}
+
+	private static int typeOf(ResultSetMetaData rsmd, int col) throws SQLException {
+		switch (rsmd.getColumnType(col)){
+			case Types.INTEGER: case Types.SMALLINT: case Types.TINYINT:
+				return INT;
+			case Types.BIGINT:
+				return LONG;
+			case Types.DATE: case Types.TIMESTAMP:
+				return DATE;
+			case Types.DOUBLE: case Types.FLOAT: case Types.REAL: case Types.NUMERIC: case Types.DECIMAL:
+				return DOUBLE;
+			case Types.CHAR:
+				return rsmd.getPrecision(col) <= MAX_DICT_WIDTH ? DICT : STRING;
+			default:
+				return STRING;
+		}
+	}
+
+	private void append(ResultSet rs) throws SQLException {
+		int row = this._rowCount;
+		if (row == this._capacity){
+			grow();
+		}
+		for (int i = 0; i < this._types.length; i++){
+			int col = i + 1;
+			switch (this._types[i]){
+				case INT:
+					this._ints[i][row] = rs.getInt(col);
+					break;
+				case LONG:
+					this._longs[i][row] = rs.getLong(col);
+					break;
+				case DATE:
+					Timestamp ts = rs.getTimestamp(col);
+					this._longs[i][row] = ts == null ? 0L : ts.getTime();
+					break;
+				case DOUBLE:
+					this._doubles[i][row] = rs.getDouble(col);
+					break;
+				case DICT:
+					byte[] bytes = rs.getBytes(col);
+					this._ints[i][row] = bytes == null ? -1 : this._dicts[i].encode(bytes);
+					break;
+				default:
+					this._strings[i][row] = rs.getString(col);
+					break;
+			}
+			if (rs.wasNull()){
+				this._nulls[i].set(row);
+			}
+		}
+		this._rowCount++;
+	}
+
+	/**
+	 * Method to append a row to a table created without a result set.
+	 * Values are Numbers for INT, LONG, DATE (epoch milliseconds) and
+	 * DOUBLE columns and Strings for DICT and STRING columns, or null.
+	 *
+	 * @param values one value per column
+	 */
+	void addRow(Object... values){
+		int row = this._rowCount;
+		if (row == this._capacity){
+			grow();
+		}
+		for (int i = 0; i < this._types.length; i++){
+			Object v = values[i];
+			if (v == null){
+				this._nulls[i].set(row);
+				if (this._types[i] == DICT){
+					this._ints[i][row] = -1;
+				}
+				continue;
+			}
+			switch (this._types[i]){
+				case INT: this._ints[i][row] = ((Number) v).intValue(); break;
+				case LONG: case DATE: this._longs[i][row] = ((Number) v).longValue(); break;
+				case DOUBLE: this._doubles[i][row] = ((Number) v).doubleValue(); break;
+				case DICT: this._ints[i][row] = this._dicts[i].encode(((String) v).getBytes(StandardCharsets.UTF_8)); break;
+				default: this._strings[i][row] = (String) v; break;
+			}
+		}
+		this._rowCount++;
+	}
+
+	private void grow(){
+		int n = this._capacity * 2;
+		for (int i = 0; i < this._types.length; i++){
+			if (this._ints[i] != null) this._ints[i] = Arrays.copyOf(this._ints[i], n);
+			if (this._longs[i] != null) this._longs[i] = Arrays.copyOf(this._longs[i], n);
+			if (this._doubles[i] != null) this._doubles[i] = Arrays.copyOf(this._doubles[i], n);
+			if (this._strings[i] != null) this._strings[i] = Arrays.copyOf(this._strings[i], n);
+		}
+		this._capacity = n;
+	}
+
+	public int getRowCount(){
+		return this._rowCount;
+	}
+
+	public int getColumnCount(){
+		return this._types.length;
+	}
+
+	/**
+	 * @param col zero-based column index
+	 * @return the column label from the query
+	 */
+	public String getColumnName(int col){
+		return this._names[col];
+	}
+
+	/**
+	 * @param col zero-based column index
+	 * @return one of INT, LONG, DATE, DOUBLE, DICT or STRING
+	 */
+	public int getColumnType(int col){
+		return this._types[col];
+	}
+
+	public boolean isNull(int row, int col){
+		return this._nulls[col].get(row);
+	}
+
+	/**
+	 * Method to read a numeric value as an int; bigint and double columns
+	 * are narrowed, so count(*) results can be read directly.
+	 *
+	 * @param row zero-based row index
+	 * @param col zero-based column index
+	 * @return the value, 0 for NULL
+	 */
+	public int getInt(int row, int col){
+		switch (this._types[col]){
+			case INT: return this._ints[col][row];
+			case LONG: return (int) this._longs[col][row];
+			case DOUBLE: return (int) this._doubles[col][row];
+			default: throw new IllegalArgumentException("Column " + this._names[col] + " is not numeric");
+		}
+	}
+
+	public long getLong(int row, int col){
+		switch (this._types[col]){
+			case INT: return this._ints[col][row];
+			case LONG: case DATE: return this._longs[col][row];
+			case DOUBLE: return (long) this._doubles[col][row];
+			default: throw new IllegalArgumentException("Column " + this._names[col] + " is not numeric");
+		}
+	}
+
+	public double getDouble(int row, int col){
+		switch (this._types[col]){
+			case INT: return this._ints[col][row];
+			case LONG: return this._longs[col][row];
+			case DOUBLE: return this._doubles[col][row];
+			default: throw new IllegalArgumentException("Column " + this._names[col] + " is not numeric");
+		}
+	}
+
+	/**
+	 * Method to read a date or timestamp column.
+	 *
+	 * @param row zero-based row index
+	 * @param col zero-based column index
+	 * @return the value as epoch milliseconds, 0 for NULL
+	 */
+	public long getDate(int row, int col){
+		if (this._types[col] != DATE){
+			throw new IllegalArgumentException("Column " + this._names[col] + " is not a date");
+		}
+		return this._longs[col][row];
+	}
+
+	/**
+	 * Method to read the dictionary code of a DICT column.  Equal values
+	 * share a code, so rows can be compared or grouped without strings.
+	 *
+	 * @param row zero-based row index
+	 * @param col zero-based column index
+	 * @return the code, -1 for NULL
+	 */
+	public int getCode(int row, int col){
+		if (this._types[col] != DICT){
+			throw new IllegalArgumentException("Column " + this._names[col] + " is not dictionary encoded");
+		}
+		return this._ints[col][row];
+	}
+
+	/**
+	 * Method to render any value as text, for display.  Only STRING columns
+	 * are stored as strings; DICT columns return the shared dictionary
+	 * entry and the other types are formatted on demand.
+	 *
+	 * @param row zero-based row index
+	 * @param col zero-based column index
+	 * @return the value as text, null for NULL
+	 */
+	public String getString(int row, int col){
+		if (isNull(row, col)){
+			return null;
+		}
+		switch (this._types[col]){
+			case INT: return Integer.toString(this._ints[col][row]);
+			case LONG: return Long.toString(this._longs[col][row]);
+			case DATE:
+				long ms = this._longs[col][row];
+				return this._dateOnly[col] ? new java.sql.Date(ms).toString() : new Timestamp(ms).toString();
+			case DOUBLE:
+				double d = this._doubles[col][row];
+				return d == Math.rint(d) && !Double.isInfinite(d) ? Long.toString((long) d) : Double.toString(d);
+			case DICT: return this._dicts[col].values[this._ints[col][row]];
+			default: return this._strings[col][row];
+		}
+	}
+}
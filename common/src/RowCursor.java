@@ -0,0 +1,128 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class defines a lazily consumed query result backed by a server-side
+ * cursor.  Rows are fetched fetchSize at a time, so memory use does not
+ * depend on how many rows the query returns.  The cursor holds a pooled
+ * connection until it is closed, which happens automatically once the last
+ * row has been read; callers that stop early must call close() themselves.
+ *
+ */
+
+public class RowCursor implements Iterator<String[]>, AutoCloseable{
+	private final ConnectionPool _pool;
+	private final Connection _connection;
+	private final PreparedStatement _stmt;
+	//the handle of the task that opened the cursor, whose fetches it cancels; null outside a task
+	private final CancelHandle _handle;
+	private final ResultSet _rs;
+	private final int _numCol;
+	private boolean _hasNext;
+	private boolean _closed = false;
+
+	/*
+	 * Opened by DBproject.openCursor, which has already switched the
+	 * connection out of autocommit and set the fetch size.
+	 */
+	RowCursor(ConnectionPool pool, Connection connection, PreparedStatement stmt) throws SQLException {
+		this._pool = pool;
+		this._connection = connection;
+		this._stmt = stmt;
+		this._handle = CancelHandle.current();
+		try{
+			if (this._handle != null){
+				this._handle.register(stmt);
+			}
+			this._rs = stmt.executeQuery();
+			this._numCol = this._rs.getMetaData().getColumnCount();
+			this._hasNext = this._rs.next();
+		}catch (SQLException e){
+			close();
+			throw e;
+		}
+		if (!this._hasNext){
+			close();
+		}
+	}
+
+	public int getColumnCount(){
+		return this._numCol;
+	}
+
+	public boolean hasNext(){
+		return this._hasNext;
+	}
+
+	/**
+	 * Method to fetch the current row and advance the cursor.
+	 *
+	 * @return the attribute values of the row
+	 */
+	public String[] next(){
+		if (!this._hasNext){
+			throw new NoSuchElementException();
+		}
+		try{
+			String[] record = new String[this._numCol];
+			for (int i = 0; i < this._numCol; i++){
+				record[i] = this._rs.getString(i + 1);
+			}
+			this._hasNext = this._rs.next();
+			if (!this._hasNext){
+				close();
+			}
+			return record;
+		}catch (SQLException e){
+			close();
+			throw new IllegalStateException("Failed to read row: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Method to expose the remaining rows as a sequential stream.  Closing
+	 * the stream closes the cursor.
+	 *
+	 * @return the remaining rows
+	 */
+	public Stream<String[]> stream(){
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+			.onClose(new Runnable(){
+				public void run(){
+					close();
+				}
+			});
+	}
+
+	/**
+	 * Method to close the result set and return the connection to the pool.
+	 */
+	public void close(){
+		if (this._closed){
+			return;
+		}
+		this._closed = true;
+		this._hasNext = false;
+		try{
+			if (this._rs != null){
+				this._rs.close();
+			}
+			this._stmt.setFetchSize(0);
+		}catch (SQLException e){
+			// ignored.
+		}finally{
+			if (this._handle != null){
+				this._handle.deregister(this._stmt);
+			}
+			this._pool.release(this._connection);
+		}
+	}
+}
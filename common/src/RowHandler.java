@@ -0,0 +1,20 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * This interface defines a callback that receives the rows of a streamed
+ * query one at a time, see DBproject.executeQueryAndStream.
+ *
+ */
+
+public interface RowHandler{
+	/**
+	 * Method called once per row.  The result set is positioned on the row
+	 * and is only valid for the duration of the call.
+	 *
+	 * @param row the result set positioned on the current row
+	 * @return true to keep reading, false to stop early
+	 * @throws java.sql.SQLException when a column can not be read
+	 */
+	boolean handleRow(ResultSet row) throws SQLException;
+}
@@ -0,0 +1,326 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * This class defines the slow-query log of DBproject.  Every call slower
+ * than the threshold is written with its method, SQL string, parameters,
+ * duration and row count.  A sample of them is also explained, at most
+ * once per SQL string per explainInterval, and the plan is written after
+ * it; that shows at a glance whether a query has fallen back to a
+ * sequential scan as its tables grew.
+ *
+ * Reads are run again under EXPLAIN (ANALYZE, BUFFERS), in a read-only
+ * transaction that is rolled back, on their own pooled connection.  That
+ * connection is only waited for PLAN_ACQUIRE_TIMEOUT: when the pool is
+ * saturated, which is often why queries are slow, the plan is skipped
+ * rather than holding up the log and loading the database further.
+ * Writes (INSERT, UPDATE, DELETE, a WITH holding one, SELECT ... FOR
+ * UPDATE) only get a plain EXPLAIN: executing them again would take the
+ * row locks of the booking path a second time and insert rnums that
+ * already exist.  A SELECT whose function writes fails in the read-only
+ * transaction and falls back to a plain EXPLAIN as well.  Writing and
+ * explaining happen on a background thread; the calling thread only
+ * compares the duration with the threshold and, for slow calls, hands the
+ * entry over.  When the background thread falls behind, entries are
+ * dropped and counted rather than queued without bound.
+ *
+ * The log file rotates (java.util.logging.FileHandler) once it reaches
+ * maxBytes, keeping the given number of files.  It is off unless a
+ * threshold is set:
+ *
+ *   -Dslowlog.threshold=<ms> [-Dslowlog.file=<path>] [-Dslowlog.maxBytes=<n>] [-Dslowlog.files=<n>]
+ *   [-Dslowlog.explain=<fraction of slow calls explained, 0..1>] [-Dslowlog.explainInterval=<seconds>]
+ *
+ */
+
+public class SlowQueryLog{
+	static final String DEFAULT_FILE = "slow-queries.log";
+	static final int DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+	static final int DEFAULT_FILES = 5;
+	static final long DEFAULT_EXPLAIN_INTERVAL = 60;	//seconds between plans of the same SQL string
+	static final int QUEUE_SIZE = 1000;
+	static final int MAX_PARAM_LENGTH = 200;
+	//statements that write or lock rows, which EXPLAIN ANALYZE would execute again
+	static final Pattern WRITES = Pattern.compile(
+		"\\b(INSERT|UPDATE|DELETE|MERGE|FOR\\s+(NO\\s+KEY\\s+)?UPDATE|FOR\\s+(KEY\\s+)?SHARE)\\b", Pattern.CASE_INSENSITIVE);
+	static final String READ_ONLY_SQLSTATE = "25006";
+	//ms the background thread waits for a pooled connection to explain on
+	static final long PLAN_ACQUIRE_TIMEOUT = 100;
+
+	private final ConnectionPool _pool;
+	private final long _thresholdNanos;
+	private final double _explainRate;
+	private final long _explainIntervalNanos;
+	private final FileHandler _file;
+	private final ThreadPoolExecutor _writer;
+	//when each SQL string was last explained
+	private final Map<String, Long> _explained = new ConcurrentHashMap<String, Long>();
+
+	private final AtomicLong _logged = new AtomicLong();
+	private final AtomicLong _plans = new AtomicLong();
+	private final AtomicLong _dropped = new AtomicLong();
+	private final AtomicLong _skipped = new AtomicLong();
+
+	/**
+	 * @param pool the pool EXPLAIN borrows its connection from
+	 * @param thresholdMillis calls taking at least this long are logged
+	 * @param file the log file
+	 * @param maxBytes size at which the file rotates
+	 * @param files number of rotated files kept
+	 * @param explainRate fraction of slow calls whose plan is captured, 0 for none
+	 * @param explainIntervalSeconds minimum time between plans of the same SQL string
+	 * @throws java.io.IOException when the log file can not be opened
+	 */
+	public SlowQueryLog(ConnectionPool pool, long thresholdMillis, String file, int maxBytes, int files,
+						double explainRate, long explainIntervalSeconds) throws IOException {
+		this._pool = pool;
+		this._thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this._explainRate = explainRate;
+		this._explainIntervalNanos = TimeUnit.SECONDS.toNanos(explainIntervalSeconds);
+		this._file = new FileHandler(file, maxBytes, files, true);
+		this._file.setFormatter(new Formatter(){
+			public String format(LogRecord record){
+				return record.getMessage();
+			}
+		});
+		this._writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+			new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r, "slow-query-log");
+					t.setDaemon(true);
+					return t;
+				}
+			}, new RejectedExecutionHandler(){
+				public void rejectedExecution(Runnable r, ThreadPoolExecutor executor){
+					_dropped.incrementAndGet();
+				}
+			});
+	}
+
+	/**
+	 * Method to create the log -D options ask for.
+	 *
+	 * @param pool the pool EXPLAIN borrows its connection from
+	 * @return the log, or null if no threshold is set or the file can not be opened
+	 */
+	public static SlowQueryLog fromProperties(ConnectionPool pool){
+		long threshold = Long.getLong("slowlog.threshold", 0);
+		if (threshold <= 0){
+			return null;
+		}
+		String file = System.getProperty("slowlog.file", DEFAULT_FILE);
+		try{
+			return new SlowQueryLog(pool, threshold, file,
+				Integer.getInteger("slowlog.maxBytes", DEFAULT_MAX_BYTES), Integer.getInteger("slowlog.files", DEFAULT_FILES),
+				Double.parseDouble(System.getProperty("slowlog.explain", "0")),
+				Long.getLong("slowlog.explainInterval", DEFAULT_EXPLAIN_INTERVAL));
+		}catch (Exception e){
+			System.err.println("Unable to open slow query log " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * @param nanos the duration of a call
+	 * @return whether the call is slow enough to be logged
+	 */
+	public boolean isSlow(long nanos){
+		return nanos >= this._thresholdNanos;
+	}
+
+	/**
+	 * Method to log a slow call.  Returns at once; the entry is written,
+	 * and possibly explained, on the background thread.
+	 *
+	 * @param operation the DBproject method
+	 * @param sql the SQL string
+	 * @param params the parameters it was called with
+	 * @param nanos its duration
+	 * @param rows rows returned or affected, or -1 if it failed
+	 */
+	public void log(final String operation, final String sql, Object[] params, final long nanos, final long rows){
+		final Object[] values = params.clone();
+		final long now = System.nanoTime();
+		final boolean explain = shouldExplain(sql, now);
+		this._writer.execute(new Runnable(){
+			public void run(){
+				StringBuilder sb = new StringBuilder();
+				sb.append(timestamp()).append(String.format(" slow query %.3f ms %s rows=%d%n", nanos / 1e6, operation, rows));
+				sb.append("  sql: ").append(sql).append(System.lineSeparator());
+				sb.append("  params: ").append(format(values)).append(System.lineSeparator());
+				if (explain){
+					sb.append(plan(sql, values));
+				}
+				write(sb.toString());
+			}
+		});
+	}
+
+	/*
+	 * Samples slow calls for EXPLAIN, and claims the SQL string for the
+	 * interval so concurrent slow calls of it are not all explained.
+	 */
+	private boolean shouldExplain(String sql, long now){
+		if (this._explainRate <= 0 || ThreadLocalRandom.current().nextDouble() >= this._explainRate || !isExplainable(sql)){
+			return false;
+		}
+		Long last = this._explained.get(sql);
+		if (last != null && now - last < this._explainIntervalNanos){
+			return false;
+		}
+		return last == null ? this._explained.putIfAbsent(sql, now) == null : this._explained.replace(sql, last, now);
+	}
+
+	static boolean isExplainable(String sql){
+		String s = sql.trim().toUpperCase();
+		return s.startsWith("SELECT") || s.startsWith("WITH") || s.startsWith("INSERT") ||
+			s.startsWith("UPDATE") || s.startsWith("DELETE") || s.startsWith("VALUES");
+	}
+
+	/*
+	 * Whether the statement only reads, so EXPLAIN ANALYZE may run it again.
+	 */
+	static boolean isRead(String sql){
+		String s = sql.trim().toUpperCase();
+		return (s.startsWith("SELECT") || s.startsWith("WITH") || s.startsWith("VALUES")) && !WRITES.matcher(s).find();
+	}
+
+	/*
+	 * Runs on the background thread: re-runs a read with the same
+	 * parameters under EXPLAIN ANALYZE in a read-only transaction and rolls
+	 * it back, or plans a write under a plain EXPLAIN without running it.
+	 */
+	private String plan(String sql, Object[] params){
+		StringBuilder sb = new StringBuilder("  plan:").append(System.lineSeparator());
+		Connection conn = null;
+		try{
+			conn = this._pool.tryBorrow(PLAN_ACQUIRE_TIMEOUT);
+			if (conn == null){
+				this._skipped.incrementAndGet();
+				return sb.append("    (plan skipped: pool busy)").append(System.lineSeparator()).toString();
+			}
+			conn.setAutoCommit(false);
+			boolean analyze = isRead(sql);
+			if (analyze){
+				conn.setReadOnly(true);
+			}
+			try{
+				try{
+					explain(conn, (analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ") + stripSemicolon(sql), params, sb);
+				}catch (SQLException e){
+					if (!analyze || !READ_ONLY_SQLSTATE.equals(e.getSQLState())){
+						throw e;
+					}
+					//a function of the SELECT writes
+					conn.rollback();
+					explain(conn, "EXPLAIN " + stripSemicolon(sql), params, sb);
+				}
+			}finally{
+				conn.rollback();
+				if (analyze){
+					conn.setReadOnly(false);
+				}
+			}
+			this._plans.incrementAndGet();
+		}catch (SQLException e){
+			sb.append("    (unable to explain: ").append(e.getMessage()).append(')').append(System.lineSeparator());
+		}finally{
+			if (conn != null){
+				this._pool.release(conn);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void explain(Connection conn, String explain, Object[] params, StringBuilder sb) throws SQLException {
+		PreparedStatement stmt = conn.prepareStatement(explain);
+		try{
+			StatementCache.bind(stmt, params);
+			ResultSet rs = CancelHandle.executeQuery(stmt);
+			while (rs.next()){
+				sb.append("    ").append(rs.getString(1)).append(System.lineSeparator());
+			}
+			rs.close();
+		}finally{
+			stmt.close();
+		}
+	}
+
+	private static String stripSemicolon(String sql){
+		String s = sql.trim();
+		return s.endsWith(";") ? s.substring(0, s.length() - 1) : s;
+	}
+
+	private static String format(Object[] params){
+		StringBuilder sb = new StringBuilder("[");
+		for (int i = 0; i < params.length; i++){
+			if (i > 0) sb.append(", ");
+			Object p = params[i];
+			if (p instanceof String){
+				String s = (String) p;
+				sb.append('\'').append(s.length() > MAX_PARAM_LENGTH ? s.substring(0, MAX_PARAM_LENGTH) + "..." : s).append('\'');
+			}else{
+				sb.append(p);
+			}
+		}
+		return sb.append(']').toString();
+	}
+
+	private static String timestamp(){
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS").format(new Date());
+	}
+
+	private void write(String entry){
+		this._file.publish(new LogRecord(Level.INFO, entry));
+		this._file.flush();
+		this._logged.incrementAndGet();
+	}
+
+	public long getLoggedCount(){
+		return this._logged.get();
+	}
+
+	public long getPlanCount(){
+		return this._plans.get();
+	}
+
+	public long getDroppedCount(){
+		return this._dropped.get();
+	}
+
+	public long getSkippedPlanCount(){
+		return this._skipped.get();
+	}
+
+	/**
+	 * Method to write the entries still queued and close the file.
+	 */
+	public void close(){
+		this._writer.shutdown();
+		try{
+			this._writer.awaitTermination(5, TimeUnit.SECONDS);
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		this._file.close();
+	}
+}
@@ -0,0 +1,129 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.postgresql.PGStatement;
+
+/**
+ * This class defines a least-recently-used cache of prepared statements
+ * for one physical connection, keyed by the SQL text with '?' placeholders.
+ * Statements stay open between calls so the driver does not have to parse
+ * them again, and once a shape has been executed prepareThreshold times the
+ * driver switches it to a named server-side prepared statement so
+ * Postgres stops re-planning it too.
+ *
+ * A cache belongs to a single connection and, like the connection, must
+ * only be used by the thread that borrowed it.
+ *
+ */
+
+public class StatementCache{
+	static final int DEFAULT_CAPACITY = 64;
+	static final int DEFAULT_PREPARE_THRESHOLD = 3;
+
+	private final Connection _connection;
+	private final int _prepareThreshold;
+	private final LinkedHashMap<String, PreparedStatement> _statements;
+
+	private long _hits = 0;
+	private long _misses = 0;
+	private long _evictions = 0;
+
+	public StatementCache(Connection connection){
+		this(connection, DEFAULT_CAPACITY, DEFAULT_PREPARE_THRESHOLD);
+	}
+
+	/**
+	 * @param connection the physical connection the statements are prepared on
+	 * @param capacity maximum number of statements kept open
+	 * @param prepareThreshold executions before a shape is prepared on the server
+	 */
+	public StatementCache(Connection connection, final int capacity, int prepareThreshold){
+		this._connection = connection;
+		this._prepareThreshold = prepareThreshold;
+		this._statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest){
+				if (size() > capacity){
+					_evictions++;
+					closeQuietly(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Method to fetch the prepared statement for a SQL shape, preparing and
+	 * caching it on first use.  The caller binds parameters and executes it
+	 * but must not close it.
+	 *
+	 * @param sql the SQL text with '?' placeholders
+	 * @return the cached prepared statement, with parameters cleared
+	 * @throws java.sql.SQLException when the statement can not be prepared
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException {
+		PreparedStatement stmt = this._statements.get(sql);
+		if (stmt != null && !stmt.isClosed()){
+			this._hits++;
+			stmt.clearParameters();
+			return stmt;
+		}
+		this._misses++;
+		stmt = this._connection.prepareStatement(sql);
+		if (stmt.isWrapperFor(PGStatement.class)){
+			stmt.unwrap(PGStatement.class).setPrepareThreshold(this._prepareThreshold);
+		}
+		this._statements.put(sql, stmt);
+		return stmt;
+	}
+
+	/**
+	 * Method to bind positional parameters to a prepared statement.
+	 *
+	 * @param stmt the statement to bind
+	 * @param params the values for the '?' placeholders, in order
+	 * @throws java.sql.SQLException when a value can not be bound
+	 */
+	public static void bind(PreparedStatement stmt, Object... params) throws SQLException {
+		for (int i = 0; i < params.length; i++){
+			stmt.setObject(i + 1, params[i]);
+		}
+	}
+
+	public int size(){
+		return this._statements.size();
+	}
+
+	public long getHits(){
+		return this._hits;
+	}
+
+	public long getMisses(){
+		return this._misses;
+	}
+
+	public long getEvictions(){
+		return this._evictions;
+	}
+
+	/**
+	 * Method to close every cached statement.
+	 */
+	public void close(){
+		for (PreparedStatement stmt : this._statements.values()){
+			closeQuietly(stmt);
+		}
+		this._statements.clear();
+	}
+
+	private static void closeQuietly(PreparedStatement stmt){
+		try{
+			stmt.close();
+		}catch (SQLException e){
+			// ignored.
+		}//end try
+	}
+}
@@ -1,3 +1,4 @@
 #! /bin/bash
 rm -rf bin/*.class
-javac -cp ".;lib/postgresql-42.1.4.jar;" src/DBproject.java -d bin/
+mkdir -p bin
+javac -cp "lib/*:." src/*.java ../common/src/*.java -d bin/
@@ -0,0 +1,117 @@
+import java.sql.SQLException;
+
+/**
+ * This interface defines the storage the menu options run against: the
+ * inserts of options 1 to 4, booking, seat availability, the reports of
+ * options 7 to 10 and cancellation, plus the id lookups and allocation
+ * they rely on.
+ *
+ * JdbcStore runs them on PostgreSQL through DBproject; MemoryStore runs
+ * them on tables loaded from the data/*.csv files, with no database.  Both
+ * report errors as SQLExceptions carrying the PostgreSQL SQLState (23505
+ * for a duplicate key, 23503 for a missing referenced row, ...), and
+ * StoreConformance checks that they give the same answers.
+ *
+ * The ids given to the add methods come from nextId: neither store moves
+ * its sequence past an id chosen some other way, so such an id may be
+ * handed out again and fail with 23505.
+ *
+ */
+
+public interface AirlineStore{
+	/**
+	 * Method to take the next free id of a table.
+	 *
+	 * @param sequence one of the IdAllocator sequences
+	 * @return an id no other caller receives
+	 * @throws java.sql.SQLException when no id can be reserved
+	 */
+	int nextId(String sequence) throws SQLException;
+
+	/**
+	 * Method to check that an id exists.
+	 *
+	 * @param table one of the IdDirectory tables
+	 * @param id the id (fnum for flights)
+	 * @return whether the table has a row with that id
+	 * @throws java.sql.SQLException when the lookup fails
+	 */
+	boolean exists(int table, int id) throws SQLException;
+
+	void addPlane(int id, String make, String model, int age, int seats) throws SQLException;
+
+	void addPilot(int id, String fullname, String nationality) throws SQLException;
+
+	void addFlightInfo(int fiid, int flightId, int pilotId, int planeId) throws SQLException;
+
+	void addTechnician(int id, String fullName) throws SQLException;
+
+	/**
+	 * Method to book a seat, see BookingEngine.book.
+	 *
+	 * @param cid the customer id
+	 * @param fnum the flight number
+	 * @param waitlistIfFull whether to add a 'W' reservation when no seat is left
+	 * @return the booking, or null when the flight is full and waitlistIfFull is false
+	 * @throws java.sql.SQLException when the customer or flight does not exist or the booking failed
+	 */
+	BookingEngine.Booking book(int cid, int fnum, boolean waitlistIfFull) throws SQLException;
+
+	/**
+	 * Method to cancel a reservation, see BookingEngine.cancel: a seat it
+	 * held goes to the oldest waitlisted reservation of the flight.
+	 *
+	 * @param rnum the reservation number
+	 * @return the outcome, or null if there is no such reservation
+	 * @throws java.sql.SQLException when the cancellation failed
+	 */
+	BookingEngine.Cancellation cancel(int rnum) throws SQLException;
+
+	/**
+	 * Method to cancel every reservation of a flight, see BookingEngine.cancelFlight.
+	 *
+	 * @param fnum the flight number
+	 * @return the outcome
+	 * @throws java.sql.SQLException when the flight does not exist or the cancellation failed
+	 */
+	BookingEngine.Cancellation cancelFlight(int fnum) throws SQLException;
+
+	/**
+	 * @param fnum the flight number
+	 * @return the number of seats left, or -1 if the flight does not exist or has no plane
+	 * @throws java.sql.SQLException when the inventory can not be read
+	 */
+	int getAvailableSeats(int fnum) throws SQLException;
+
+	/**
+	 * @return ("# Repairs", "Plane ID#") per plane with repairs, most repairs first
+	 * @throws java.sql.SQLException when the report can not be read
+	 */
+	ResultTable getRepairsPerPlane() throws SQLException;
+
+	/**
+	 * @return ("# Repairs", "Year") per year with repairs, fewest repairs first
+	 * @throws java.sql.SQLException when the report can not be read
+	 */
+	ResultTable getRepairsPerYear() throws SQLException;
+
+	/**
+	 * @param fnum the flight number
+	 * @param status R, W or C
+	 * @return one row with the number of reservations of the flight with that status
+	 * @throws java.sql.SQLException when the report can not be read
+	 */
+	ResultTable getPassengersWithStatus(int fnum, String status) throws SQLException;
+
+	/**
+	 * @param fnum the flight number
+	 * @return ("Status", "# Customers") per status the flight has reservations with, by status
+	 * @throws java.sql.SQLException when the report can not be read
+	 */
+	ResultTable getPassengersPerStatus(int fnum) throws SQLException;
+
+	/**
+	 * Method to release whatever the store holds open.
+	 */
+	void close();
+}
@@ -0,0 +1,461 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class defines an HTTP server exposing the menu options as JSON
+ * endpoints, on the JDK's built-in com.sun.net.httpserver.  It shares
+ * DBproject, its connection pool and the booking engine with the other
+ * entry points.
+ *
+ *   POST /planes                      {"make", "model", "age", "seats"}           option 1
+ *   POST /pilots                      {"fullname", "nationality"}                 option 2
+ *   POST /flights                     {"flight_id", "pilot_id", "plane_id"}       option 3
+ *   POST /technicians                 {"full_name"}                               option 4
+ *   POST /bookings                    {"cid", "fnum", "waitlist"}                 option 5
+ *   GET  /flights/{fnum}/seats                                                    option 6
+ *   GET  /repairs/per-plane                                                       option 7
+ *   GET  /repairs/per-year                                                        option 8
+ *   GET  /flights/{fnum}/passengers[?status=R|W|C]                                options 9 and 10
+ *   DELETE /reservations/{rnum}                                                   option 11
+ *   DELETE /flights/{fnum}/reservations   cancels every reservation of the flight
+ *   GET  /stats                       admission and connection pool counters
+ *   GET  /metrics                     per-query statistics, see QueryMetrics
+ *
+ * Each request runs on a virtual thread when the JVM has them (Java 21+),
+ * otherwise on a bounded thread pool.  In front of the database sits an
+ * admission limit: at most maxConcurrent requests use the database at once,
+ * at most maxQueued more wait for a slot, and none waits longer than the
+ * queue timeout.  Everything beyond that is answered 503 with Retry-After
+ * right away, so under overload latency stays bounded instead of every
+ * request queueing behind the connection pool.
+ *
+ * Usage: java ApiServer <dbname> <port> <user> [http port] [max concurrent] [max queued] [queue timeout ms]
+ *
+ */
+
+public class ApiServer{
+	static final int DEFAULT_HTTP_PORT = 8080;
+	static final int DEFAULT_MAX_QUEUED = 64;
+	static final long DEFAULT_QUEUE_TIMEOUT = 500;	//ms a request may wait for a database slot
+	static final int MAX_BODY = 64 * 1024;	//bytes accepted in a request body
+
+	/*
+	 * Thrown by a handler to answer with an HTTP error status.
+	 */
+	static class HttpError extends Exception{
+		private static final long serialVersionUID = 1L;
+
+		final int status;
+
+		HttpError(int status, String message){
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private final DBproject _esql;
+	private final int _maxConcurrent;
+	private final int _maxQueued;
+	private final long _queueTimeout;
+	private final Semaphore _slots;
+	private final AtomicInteger _queued = new AtomicInteger();
+	private HttpServer _server;
+	private ExecutorService _executor;
+	private boolean _virtualThreads = false;
+
+	//statistics
+	private final AtomicLong _requests = new AtomicLong();
+	private final AtomicLong _rejected = new AtomicLong();
+	private final AtomicLong _timedOut = new AtomicLong();
+	private final AtomicLong _errors = new AtomicLong();
+
+	public ApiServer(DBproject esql, int maxConcurrent, int maxQueued, long queueTimeout){
+		this._esql = esql;
+		this._maxConcurrent = maxConcurrent;
+		this._maxQueued = maxQueued;
+		this._queueTimeout = queueTimeout;
+		this._slots = new Semaphore(maxConcurrent, true);
+	}
+
+	/**
+	 * Method to start listening.
+	 *
+	 * @param port the HTTP port
+	 * @throws java.io.IOException when the port can not be bound
+	 */
+	public void start(int port) throws IOException {
+		this._server = HttpServer.create(new InetSocketAddress(port), this._maxQueued);
+		this._executor = newExecutor();
+		this._server.setExecutor(this._executor);
+		this._server.createContext("/", new HttpHandler(){
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+		this._server.start();
+		System.out.println("Listening on port " + port + (this._virtualThreads ? " (virtual threads)" : " (thread pool)") +
+			", " + this._maxConcurrent + " concurrent, " + this._maxQueued + " queued");
+	}
+
+	/**
+	 * Method to stop the server, giving requests in progress a second to finish.
+	 */
+	public void stop(){
+		if (this._server != null){
+			this._server.stop(1);
+		}
+		if (this._executor != null){
+			this._executor.shutdown();
+		}
+	}
+
+	/*
+	 * Virtual threads where available; the project targets Java 8, so the
+	 * factory is looked up reflectively.  Otherwise a pool with one thread
+	 * per admitted or queued request and a short hand-off queue; once that is
+	 * full the accepting thread serves the request itself, which stops it
+	 * from accepting more.
+	 */
+	private ExecutorService newExecutor(){
+		try{
+			ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			this._virtualThreads = true;
+			return executor;
+		}catch (Exception e){
+			// not available before Java 21.
+		}
+		int threads = this._maxConcurrent + this._maxQueued;
+		final AtomicInteger count = new AtomicInteger();
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<Runnable>(this._maxQueued), new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r, "http-" + count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		this._requests.incrementAndGet();
+		try{
+			String path = exchange.getRequestURI().getPath();
+			if (path.equals("/stats")){
+				reply(exchange, 200, stats());
+				return;
+			}
+			if (path.equals("/metrics")){
+				reply(exchange, 200, this._esql.getMetrics().dumpJson());
+				return;
+			}
+			if (!admit()){
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				reply(exchange, 503, Json.object("error", "server busy"));
+				return;
+			}
+			try{
+				route(exchange, exchange.getRequestMethod(), path.split("/"));
+			}finally{
+				this._slots.release();
+			}
+		}catch (HttpError e){
+			reply(exchange, e.status, Json.object("error", e.getMessage()));
+		}catch (SQLException e){
+			this._errors.incrementAndGet();
+			//integrity constraint violations (duplicate id, unknown foreign key) are the caller's fault
+			String state = e.getSQLState();
+			reply(exchange, state != null && state.startsWith("23") ? 409 : 500, Json.object("error", e.getMessage()));
+		}catch (RuntimeException e){
+			this._errors.incrementAndGet();
+			reply(exchange, 500, Json.object("error", String.valueOf(e.getMessage())));
+		}finally{
+			exchange.close();
+		}
+	}
+
+	/*
+	 * Takes a database slot, waiting for one only while the wait queue has room.
+	 */
+	private boolean admit(){
+		if (this._slots.tryAcquire()){
+			return true;
+		}
+		if (this._queued.incrementAndGet() > this._maxQueued){
+			this._queued.decrementAndGet();
+			this._rejected.incrementAndGet();
+			return false;
+		}
+		try{
+			if (this._slots.tryAcquire(this._queueTimeout, TimeUnit.MILLISECONDS)){
+				return true;
+			}
+			this._timedOut.incrementAndGet();
+			return false;
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			return false;
+		}finally{
+			this._queued.decrementAndGet();
+		}
+	}
+
+	private void route(HttpExchange exchange, String method, String[] parts) throws IOException, SQLException, HttpError {
+		//parts[0] is the empty string before the leading '/'
+		String resource = parts.length > 1 ? parts[1] : "";
+		if (method.equals("POST") && parts.length == 2){
+			Map<String, Object> body = readBody(exchange);
+			if (resource.equals("planes")){
+				int id = newId(body, "id", IdAllocator.PLANE);
+				this._esql.getStore().addPlane(id, stringOf(body, "make"), stringOf(body, "model"), intOf(body, "age"),
+					intOf(body, "seats"));
+				reply(exchange, 201, Json.object("id", id));
+				return;
+			}
+			if (resource.equals("pilots")){
+				int id = newId(body, "id", IdAllocator.PILOT);
+				this._esql.getStore().addPilot(id, stringOf(body, "fullname"), stringOf(body, "nationality"));
+				reply(exchange, 201, Json.object("id", id));
+				return;
+			}
+			if (resource.equals("flights")){
+				int fiid = newId(body, "fiid", IdAllocator.FLIGHT_INFO);
+				this._esql.getStore().addFlightInfo(fiid, intOf(body, "flight_id"), intOf(body, "pilot_id"),
+					intOf(body, "plane_id"));
+				reply(exchange, 201, Json.object("fiid", fiid));
+				return;
+			}
+			if (resource.equals("technicians")){
+				int id = newId(body, "id", IdAllocator.TECHNICIAN);
+				this._esql.getStore().addTechnician(id, stringOf(body, "full_name"));
+				reply(exchange, 201, Json.object("id", id));
+				return;
+			}
+			if (resource.equals("bookings")){
+				int cid = intOf(body, "cid");
+				int fnum = intOf(body, "fnum");
+				Object waitlist = body.get("waitlist");
+				BookingEngine.Booking booking = this._esql.getStore().book(cid, fnum, !Boolean.FALSE.equals(waitlist));
+				if (booking == null){
+					throw new HttpError(409, "flight " + fnum + " is sold out");
+				}
+				reply(exchange, 201, Json.object("rnum", booking.rnum, "cid", booking.cid, "fnum", booking.fnum,
+					"status", String.valueOf(booking.status)));
+				return;
+			}
+		}
+		if (method.equals("DELETE")){
+			if (resource.equals("reservations") && parts.length == 3){
+				int rnum = parseInt(parts[2], "reservation number");
+				BookingEngine.Cancellation cancellation = this._esql.getStore().cancel(rnum);
+				if (cancellation == null){
+					throw new HttpError(404, "reservation " + rnum + " does not exist");
+				}
+				reply(exchange, 200, cancelled(cancellation));
+				return;
+			}
+			if (resource.equals("flights") && parts.length == 4 && parts[3].equals("reservations")){
+				int fnum = parseInt(parts[2], "flight number");
+				if (!this._esql.getStore().exists(IdDirectory.FLIGHT, fnum)){
+					throw new HttpError(404, "flight " + fnum + " does not exist");
+				}
+				reply(exchange, 200, cancelled(this._esql.getStore().cancelFlight(fnum)));
+				return;
+			}
+		}
+		if (method.equals("GET")){
+			if (resource.equals("flights") && parts.length == 4){
+				int fnum = parseInt(parts[2], "flight number");
+				if (!this._esql.getStore().exists(IdDirectory.FLIGHT, fnum)){
+					throw new HttpError(404, "flight " + fnum + " does not exist");
+				}
+				if (parts[3].equals("seats")){
+					int seats = this._esql.getStore().getAvailableSeats(fnum);
+					reply(exchange, 200, Json.object("fnum", fnum, "seats", seats < 0 ? null : seats));
+					return;
+				}
+				if (parts[3].equals("passengers")){
+					String status = query(exchange).get("status");
+					if (status == null){
+						reply(exchange, 200, Json.rows(this._esql.getStore().getPassengersPerStatus(fnum)));
+						return;
+					}
+					status = status.trim().toUpperCase();
+					if (!status.equals("R") && !status.equals("W") && !status.equals("C")){
+						throw new HttpError(400, "status must be R, W or C");
+					}
+					ResultTable count = this._esql.getStore().getPassengersWithStatus(fnum, status);
+					reply(exchange, 200, Json.object("fnum", fnum, "status", status, "count", count.getInt(0, 0)));
+					return;
+				}
+			}
+			if (resource.equals("repairs") && parts.length == 3 && parts[2].equals("per-plane")){
+				reply(exchange, 200, Json.rows(this._esql.getStore().getRepairsPerPlane()));
+				return;
+			}
+			if (resource.equals("repairs") && parts.length == 3 && parts[2].equals("per-year")){
+				reply(exchange, 200, Json.rows(this._esql.getStore().getRepairsPerYear()));
+				return;
+			}
+		}
+		throw new HttpError(404, method + " " + exchange.getRequestURI().getPath() + " is not an endpoint");
+	}
+
+	private static String cancelled(BookingEngine.Cancellation cancellation){
+		List<Integer> promoted = new ArrayList<Integer>();
+		for (BookingEngine.Booking booking : cancellation.promoted){
+			promoted.add(booking.rnum);
+		}
+		return Json.object("fnum", cancellation.fnum, "cancelled", cancellation.cancelled,
+			"released", cancellation.released, "promoted", promoted);
+	}
+
+	private String stats(){
+		ConnectionPool pool = this._esql.getPool();
+		return Json.object("requests", this._requests.get(), "rejected", this._rejected.get(),
+			"timedOut", this._timedOut.get(), "errors", this._errors.get(),
+			"inUse", this._maxConcurrent - this._slots.availablePermits(), "queued", this._queued.get(),
+			"virtualThreads", this._virtualThreads,
+			"poolActive", pool.getActiveCount(), "poolIdle", pool.getIdleCount(),
+			"poolBorrows", pool.getBorrowCount(), "poolWaitMillis", pool.getTotalWaitMillis(),
+			"poolTimeouts", pool.getTimeoutCount(),
+			"cacheHits", this._esql.getResultCache().getHitCount(), "cacheMisses", this._esql.getResultCache().getMissCount());
+	}
+
+	private static Map<String, Object> readBody(HttpExchange exchange) throws IOException, HttpError {
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while ((n = in.read(buf)) > 0){
+			body.write(buf, 0, n);
+			if (body.size() > MAX_BODY){
+				throw new HttpError(413, "request body larger than " + MAX_BODY + " bytes");
+			}
+		}
+		try{
+			return Json.parseObject(new String(body.toByteArray(), StandardCharsets.UTF_8));
+		}catch (IllegalArgumentException e){
+			throw new HttpError(400, e.getMessage());
+		}
+	}
+
+	private static Map<String, String> query(HttpExchange exchange) throws IOException {
+		Map<String, String> params = new HashMap<String, String>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if (raw == null){
+			return params;
+		}
+		for (String pair : raw.split("&")){
+			int eq = pair.indexOf('=');
+			if (eq > 0){
+				params.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	private static int intOf(Map<String, Object> body, String name) throws HttpError {
+		Object value = body.get(name);
+		if (value instanceof Long){
+			return ((Long) value).intValue();
+		}
+		if (value instanceof String){
+			return parseInt((String) value, name);
+		}
+		throw new HttpError(400, "\"" + name + "\" must be an integer");
+	}
+
+	//the next free id of the sequence; ids are never chosen by the client, see IdAllocator
+	private int newId(Map<String, Object> body, String name, String sequence) throws HttpError, SQLException {
+		if (body.containsKey(name)){
+			throw new HttpError(400, "\"" + name + "\" is assigned by the server");
+		}
+		return this._esql.getStore().nextId(sequence);
+	}
+
+	private static String stringOf(Map<String, Object> body, String name) throws HttpError {
+		Object value = body.get(name);
+		if (value == null){
+			throw new HttpError(400, "\"" + name + "\" is required");
+		}
+		return value.toString();
+	}
+
+	private static int parseInt(String s, String name) throws HttpError {
+		try{
+			return Integer.parseInt(s.trim());
+		}catch (NumberFormatException e){
+			throw new HttpError(400, name + " must be an integer");
+		}
+	}
+
+	private static void reply(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	/**
+	 * The server entry point
+	 *
+	 * @param args <dbname> <port> <user> [http port] [max concurrent] [max queued] [queue timeout ms]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + ApiServer.class.getName () +
+					" <dbname> <port> <user> [http port] [max concurrent] [max queued] [queue timeout ms]");
+			return;
+		}//end if
+
+		DBproject esql = null;
+		try{
+			Class.forName("org.postgresql.Driver");
+			int httpPort = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_HTTP_PORT;
+			int maxConcurrent = args.length > 4 ? Integer.parseInt(args[4]) : DBproject.POOL_MAX_SIZE;
+			int maxQueued = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_MAX_QUEUED;
+			long queueTimeout = args.length > 6 ? Long.parseLong(args[6]) : DEFAULT_QUEUE_TIMEOUT;
+			esql = new DBproject(args[0], args[1], args[2], "");
+			final ApiServer server = new ApiServer(esql, maxConcurrent, maxQueued, queueTimeout);
+			final DBproject db = esql;
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable(){
+				public void run(){
+					server.stop();
+					db.cleanup();
+				}
+			}));
+			server.start(httpPort);
+		}catch(Exception e){
+			System.err.println ("Server failed: " + e.getMessage ());
+			if (esql != null){
+				esql.cleanup ();
+			}
+		}
+	}
+}
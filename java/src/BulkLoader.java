@@ -0,0 +1,357 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+
+/**
+ * This class defines a client-side loader for the data/*.csv files.  Each
+ * file is streamed to the server with COPY ... FROM STDIN, so the CSVs do
+ * not have to be copied into the server's data directory first.
+ *
+ * Tables without foreign keys are loaded in parallel, then the tables that
+ * reference them.  The secondary indexes are dropped before the load and
+ * built once at the end, and rows/sec is reported for every table.  Row
+ * triggers that maintain summary tables are disabled during the load and
+ * the summaries are recomputed once afterwards.
+ *
+ * Usage: java BulkLoader <dbname> <port> <user> [data dir] [-truncate]
+ *
+ */
+
+public class BulkLoader{
+	//a table, the CSV file it is loaded from and the columns of that file
+	static class TableLoad{
+		final String table;
+		final String file;
+		final String columns;
+		final AtomicLong rows = new AtomicLong();
+		volatile long startNanos = 0;
+		volatile long endNanos = 0;
+
+		TableLoad(String table, String file, String columns){
+			this.table = table;
+			this.file = file;
+			this.columns = columns;
+		}
+
+		String rate(){
+			long end = this.endNanos == 0 ? System.nanoTime() : this.endNanos;
+			double secs = Math.max(end - this.startNanos, 1) / 1e9;
+			return String.format("%s: %d rows in %.2fs (%.0f rows/sec)", this.table, this.rows.get(), secs, this.rows.get() / secs);
+		}
+	}
+
+	//tables without foreign keys, loaded in parallel first
+	static final TableLoad[] INDEPENDENT = {
+		new TableLoad("Customer", "customer.csv", "id, fname, lname, gtype, dob, address, phone, zipcode"),
+		new TableLoad("Pilot", "pilots.csv", "id, fullname, nationality"),
+		new TableLoad("Plane", "planes.csv", "id, make, model, age, seats"),
+		new TableLoad("Technician", "technician.csv", "id, full_name"),
+		new TableLoad("Flight", "flights.csv", "fnum, cost, num_sold, num_stops, actual_departure_date, actual_arrival_date, arrival_airport, departure_airport"),
+	};
+
+	//tables referencing the ones above, loaded in parallel once those are done
+	static final TableLoad[] DEPENDENT = {
+		new TableLoad("Reservation", "reservation.csv", "rnum, cid, fid, status"),
+		new TableLoad("FlightInfo", "flightinfo.csv", "fiid, flight_id, pilot_id, plane_id"),
+		new TableLoad("Repairs", "repairs.csv", "rid, repair_date, repair_code, pilot_id, plane_id, technician_id"),
+		new TableLoad("Schedule", "schedule.csv", "id, flightNum, departure_time, arrival_time"),
+	};
+
+	//secondary indexes from create.sql, built after the load
+	static final String[] INDEX_NAMES = { "index1", "index2", "index3" };
+	static final String[] INDEX_DEFINITIONS = {
+		"CREATE INDEX IF NOT EXISTS index1 ON Repairs USING BTREE(plane_id);",
+		"CREATE INDEX IF NOT EXISTS index2 ON Repairs USING BTREE(repair_date);",
+		"CREATE INDEX IF NOT EXISTS index3 ON Reservation USING BTREE(fid, status);",
+	};
+
+	//statements run before any table is loaded
+	static final String[] BEFORE_LOAD = {
+		"ALTER TABLE Repairs DISABLE TRIGGER repairs_summary;",
+		"ALTER TABLE Reservation DISABLE TRIGGER reservation_counts;",
+	};
+
+	//statements run once the tables are loaded, or the load failed
+	static final String[] AFTER_LOAD = {
+		"SELECT setval('reservation_rnum_seq', (SELECT coalesce(max(rnum), 0) + 1 FROM Reservation), false);",
+		"SELECT setval('plane_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM Plane), false);",
+		"SELECT setval('pilot_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM Pilot), false);",
+		"SELECT setval('flightinfo_fiid_seq', (SELECT coalesce(max(fiid), 0) + 1 FROM FlightInfo), false);",
+		"SELECT setval('technician_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM Technician), false);",
+		"SELECT repairs_summary_rebuild();",
+		"ALTER TABLE Repairs ENABLE TRIGGER repairs_summary;",
+		"SELECT reservation_counts_rebuild();",
+		"ALTER TABLE Reservation ENABLE TRIGGER reservation_counts;",
+	};
+
+	static final long PROGRESS_INTERVAL = 5000;	//ms between progress reports
+
+	private final DBproject _esql;
+	private final File _dataDir;
+
+	public BulkLoader(DBproject esql, File dataDir){
+		this._esql = esql;
+		this._dataDir = dataDir;
+	}
+
+	/**
+	 * Method to run the whole load: drop indexes, load both stages, build
+	 * indexes and fix up sequences.  The indexes are built and the triggers
+	 * re-enabled even when a stage fails, so a failed load leaves the
+	 * schema as it found it, with whatever rows were copied.
+	 *
+	 * @param truncate whether to empty every table first
+	 * @throws java.sql.SQLException when a statement or COPY fails
+	 * @throws java.io.IOException when a CSV file can not be read
+	 */
+	public void load(boolean truncate) throws SQLException, IOException {
+		long start = System.nanoTime();
+		if (truncate){
+			StringBuilder tables = new StringBuilder();
+			for (TableLoad t : concat(INDEPENDENT, DEPENDENT)){
+				tables.append(tables.length() == 0 ? "" : ", ").append(t.table);
+			}
+			System.out.println("Truncating " + tables);
+			execute("TRUNCATE " + tables + " CASCADE;");
+		}
+
+		boolean loaded = false;
+		try{
+			for (String sql : BEFORE_LOAD){
+				execute(sql);
+			}
+
+			System.out.println("Dropping secondary indexes...");
+			for (String index : INDEX_NAMES){
+				execute("DROP INDEX IF EXISTS " + index + ";");
+			}
+
+			runStage("independent tables", INDEPENDENT);
+			runStage("dependent tables", DEPENDENT);
+			loaded = true;
+		}finally{
+			if (loaded){
+				restore();
+			}else{
+				//keep the exception of the failed stage, not one of the clean up
+				try{
+					restore();
+				}catch (Exception e){
+					System.err.println("Unable to restore indexes and triggers: " + e.getMessage());
+				}
+			}
+		}
+
+		for (TableLoad t : concat(INDEPENDENT, DEPENDENT)){
+			execute("ANALYZE " + t.table + ";");
+		}
+		System.out.println(String.format("Load finished in %.2fs", (System.nanoTime() - start) / 1e9));
+	}
+
+	/*
+	 * Builds the secondary indexes that are missing and runs AFTER_LOAD,
+	 * which fixes up the sequences, rebuilds the summaries and re-enables
+	 * their triggers.
+	 */
+	private void restore() throws SQLException, IOException {
+		System.out.println("Building secondary indexes...");
+		List<Callable<Void>> builds = new ArrayList<Callable<Void>>();
+		for (final String definition : INDEX_DEFINITIONS){
+			builds.add(new Callable<Void>(){
+				public Void call() throws SQLException {
+					execute(definition);
+					return null;
+				}
+			});
+		}
+		runAll(builds);
+
+		for (String sql : AFTER_LOAD){
+			execute(sql);
+		}
+	}
+
+	/*
+	 * Loads the given tables in parallel and prints progress until all of
+	 * them are done.
+	 */
+	private void runStage(String name, final TableLoad[] tables) throws SQLException, IOException {
+		System.out.println("Loading " + name + "...");
+		List<Callable<Void>> copies = new ArrayList<Callable<Void>>();
+		for (final TableLoad t : tables){
+			copies.add(new Callable<Void>(){
+				public Void call() throws SQLException, IOException {
+					copy(t);
+					return null;
+				}
+			});
+		}
+
+		Thread progress = new Thread(new Runnable(){
+			public void run(){
+				try{
+					while (true){
+						Thread.sleep(PROGRESS_INTERVAL);
+						for (TableLoad t : tables){
+							if (t.startNanos != 0 && t.endNanos == 0){
+								System.out.println("  ... " + t.rate());
+							}
+						}
+					}
+				}catch (InterruptedException e){
+					// done.
+				}
+			}
+		}, "loader-progress");
+		progress.setDaemon(true);
+		progress.start();
+		try{
+			runAll(copies);
+		}finally{
+			progress.interrupt();
+		}
+		for (TableLoad t : tables){
+			System.out.println("  " + t.rate());
+		}
+	}
+
+	/*
+	 * Runs one DDL or maintenance statement.  These are not worth a slot in
+	 * the prepared statement cache, and some of them return a row.
+	 */
+	private void execute(String sql) throws SQLException {
+		ConnectionPool pool = this._esql.getPool();
+		Connection conn = pool.borrow();
+		try{
+			Statement stmt = conn.createStatement();
+			stmt.execute(sql);
+			stmt.close();
+		}finally{
+			pool.release(conn);
+		}
+	}
+
+	/*
+	 * Streams one CSV file into its table on a pooled connection.
+	 */
+	private void copy(TableLoad t) throws SQLException, IOException {
+		ConnectionPool pool = this._esql.getPool();
+		Connection conn = pool.borrow();
+		Reader reader = new CountingReader(new InputStreamReader(
+			new FileInputStream(new File(this._dataDir, t.file)), StandardCharsets.UTF_8), t.rows);
+		try{
+			CopyManager copyManager = conn.unwrap(PGConnection.class).getCopyAPI();
+			t.startNanos = System.nanoTime();
+			long rows = copyManager.copyIn("COPY " + t.table + " (" + t.columns + ") FROM STDIN WITH DELIMITER ','", reader, 1 << 16);
+			t.endNanos = System.nanoTime();
+			t.rows.set(rows);
+		}finally{
+			reader.close();
+			pool.release(conn);
+		}
+	}
+
+	private static void runAll(List<Callable<Void>> tasks) throws SQLException, IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+		try{
+			List<Future<Void>> futures = executor.invokeAll(tasks);
+			for (Future<Void> f : futures){
+				try{
+					f.get();
+				}catch (ExecutionException e){
+					Throwable cause = e.getCause();
+					if (cause instanceof SQLException) throw (SQLException) cause;
+					if (cause instanceof IOException) throw (IOException) cause;
+					throw new RuntimeException(cause);
+				}
+			}
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading");
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+	private static TableLoad[] concat(TableLoad[] a, TableLoad[] b){
+		TableLoad[] all = new TableLoad[a.length + b.length];
+		System.arraycopy(a, 0, all, 0, a.length);
+		System.arraycopy(b, 0, all, a.length, b.length);
+		return all;
+	}
+
+	/*
+	 * Counts the lines read so far, for progress reports while a large
+	 * file is still being copied.
+	 */
+	static class CountingReader extends FilterReader{
+		private final AtomicLong _lines;
+
+		CountingReader(Reader in, AtomicLong lines){
+			super(in);
+			this._lines = lines;
+		}
+
+		public int read(char[] buf, int off, int len) throws IOException {
+			int n = super.read(buf, off, len);
+			int lines = 0;
+			for (int i = off; i < off + n; i++){
+				if (buf[i] == '\n') lines++;
+			}
+			if (lines > 0) this._lines.addAndGet(lines);
+			return n;
+		}
+	}
+
+	/**
+	 * The loader entry point
+	 *
+	 * @param args <dbname> <port> <user> [data dir] [-truncate]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + BulkLoader.class.getName () +
+					" <dbname> <port> <user> [data dir] [-truncate]");
+			return;
+		}//end if
+
+		File dataDir = new File("../data");
+		boolean truncate = false;
+		for (int i = 3; i < args.length; i++){
+			if (args[i].equals("-truncate")) truncate = true;
+			else dataDir = new File(args[i]);
+		}
+
+		DBproject esql = null;
+		try{
+			Class.forName("org.postgresql.Driver");
+			esql = new DBproject(args[0], args[1], args[2], "");
+			new BulkLoader(esql, dataDir).load(truncate);
+		}catch(Exception e){
+			System.err.println ("Load failed: " + e.getMessage ());
+		}finally{
+			if (esql != null){
+				esql.cleanup ();
+			}
+		}
+	}
+}
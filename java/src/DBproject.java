@@ -14,6 +14,7 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -22,6 +23,7 @@ import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.Collection;
 import java.util.ArrayList;
 
 import java.io.IOException;
@@ -32,21 +34,61 @@ import java.io.IOException;
  *
  */
 
-public class DBproject{
-	//reference to physical database connection
-	private Connection _connection = null;
+public class DBproject implements Database{
+	//pool of physical database connections shared by all data-access methods
+	private ConnectionPool _pool = null;
+	//atomic booking path shared by the menu options
+	private BookingEngine _booking = new BookingEngine(this);
+	//in-memory seat inventory, kept current by the booking path
+	private InventoryCache _inventory = new InventoryCache(this);
+	//calls, rows and latency per data-access method and SQL string
+	private final QueryMetrics _metrics = new QueryMetrics();
+	//results of the report queries, invalidated by writes
+	private final ResultCache _cache = new ResultCache();
+	//the menu options' view of this database
+	private final JdbcStore _store = new JdbcStore(this);
+	//primary keys handed out from blocks of the id sequences
+	private final IdAllocator _allocator = new IdAllocator(this);
+	//ids of Customer, Flight, Plane, Pilot and Technician, for the validation loops
+	private final IdDirectory _ids = new IdDirectory(this);
+	//calls slower than -Dslowlog.threshold, with sampled plans; null when off
+	private SlowQueryLog _slowLog = null;
+	static final int POOL_MIN_SIZE = 2;
+	static final int POOL_MAX_SIZE = 16;
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+
+	//statements of the menu options, shared with the HTTP server
+	static final String INSERT_PLANE_SQL = "INSERT INTO plane(id, make, model, age, seats) VALUES (?, ?, ?, ?, ?);";
+	static final String INSERT_PILOT_SQL = "INSERT INTO pilot(id, fullname, nationality) VALUES (?, ?, ?);";
+	static final String INSERT_FLIGHT_INFO_SQL = "INSERT INTO FlightInfo(fiid, flight_id, pilot_id, plane_id) VALUES (?, ?, ?, ?);";
+	static final String INSERT_TECHNICIAN_SQL = "INSERT INTO technician(id, full_name) VALUES (?, ?);";
+	static final String REPAIRS_PER_PLANE_SQL = "SELECT num_repairs as \"# Repairs\", plane_id as \"Plane ID#\" FROM RepairsPerPlane ORDER BY \"# Repairs\" DESC";
+	static final String REPAIRS_PER_YEAR_SQL = "SELECT num_repairs as \"# Repairs\", repair_year as \"Year\" FROM RepairsPerYear ORDER BY \"# Repairs\" ASC;";
+	static final String PASSENGERS_WITH_STATUS_SQL = "SELECT coalesce((SELECT num FROM FlightStatusCounts WHERE fid = ? AND status = ?), 0) as \"# Customers with Status\";";
+	//how long report results are served from the cache, and the tables they read
+	static final long REPORT_CACHE_TTL = 30000;
+	static final String[] REPAIRS_TABLES = { "repairs", "repairsperplane", "repairsperyear" };
+	static final String[] RESERVATION_TABLES = { "reservation", "flightstatuscounts" };
+	static final String PASSENGERS_PER_STATUS_SQL = "SELECT status as \"Status\", num as \"# Customers\" FROM FlightStatusCounts WHERE fid = ? AND num > 0 ORDER BY status;";
 	
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
 		System.out.print("Connecting to database...");
 		try{
-			// constructs the connection URL
-			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+			// constructs the connection URL, asking for binary transfer of typed values
+			// and for batched inserts to be sent as multi-row inserts
+			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname + "?binaryTransfer=true&reWriteBatchedInserts=true";
 			System.out.println ("Connection URL: " + url + "\n");
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// obtain a pool of physical connections
+	        this._pool = new ConnectionPool(url, user, passwd, POOL_MIN_SIZE, POOL_MAX_SIZE);
 	        System.out.println("Done");
+
+	        // publish the query statistics through JMX, and dump them if -Dmetrics.dump is set
+	        this._metrics.register ();
+	        this._metrics.startDumpFromProperties ();
+	        this._slowLog = SlowQueryLog.fromProperties (this._pool);
+	        // map the inventory snapshot shared with other processes, if -Dinventory.snapshot is set
+	        this._inventory.setSnapshotFile (InventorySnapshot.fromProperties ());
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
 	        System.out.println("Make sure you started postgres on this machine");
@@ -57,62 +99,99 @@ public class DBproject{
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
 	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * The statement is prepared once per connection and cached, so any
+	 * user input should be passed as parameters bound to '?' placeholders
+	 * instead of being concatenated into the SQL string.
 	 * 
 	 * @param sql the input SQL string
+	 * @param params values for the '?' placeholders, in order
+	 * @return the number of rows affected
 	 * @throws java.sql.SQLException when update failed
 	 * */
-	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeUpdate (String sql, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			// fetches the cached prepared statement
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (sql);
+			StatementCache.bind (stmt, params);
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+			// issues the update instruction
+			int count = stmt.executeUpdate ();
+			rows = count;
 
-		// close the instruction
-	    stmt.close ();
+			// drops cached results that read the table just written
+			this._cache.written (sql);
+			return count;
+		}finally{
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.UPDATE, sql, params, start, rows);
+		}
 	}//end executeUpdate
 
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and outputs the results to
-	 * standard out.
+	 * standard out.  Rows are read through a cursor DEFAULT_FETCH_SIZE at
+	 * a time, so large results are not held in memory.
 	 * 
 	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = false;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			// cursors only exist inside a transaction
+			conn.setAutoCommit (false);
+
+			// fetches the cached prepared statement
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			stmt.setFetchSize (DEFAULT_FETCH_SIZE);
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
+
+			try{
+				/*
+				 *  obtains the metadata object for the returned result set.  The metadata
+				 *  contains row and column info.
+				 */
+				ResultSetMetaData rsmd = rs.getMetaData ();
+				int numCol = rsmd.getColumnCount ();
+				int rowCount = 0;
+			
+				//iterates through the result set and output them to standard out.
+				boolean outputHeader = false;
+				while (rs.next()){
+					if(outputHeader){
+						for(int i = 1; i <= numCol; i++){
+							System.out.print(rsmd.getColumnName(i) + "\t");
+					    }
+					    System.out.println();
+					    outputHeader = false;
+					}
+					for (int i=1; i<=numCol; ++i)
+						System.out.print (rs.getString (i) + "\t");
+					System.out.println ();
+					++rowCount;
+				}//end while
+				conn.commit ();
+				rows = rowCount;
+				return rowCount;
+			}finally{
+				rs.close ();
+				stmt.setFetchSize (0);
 			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
+		}finally{
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.PRINT, query, params, start, rows);
+		}
 	}
 	
 	/**
@@ -121,66 +200,238 @@ public class DBproject{
 	 * a list of records. Each record in turn is a list of attribute values
 	 * 
 	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
 	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
-		
-		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			// fetches the cached prepared statement
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			
+			//issues the query instruction 
+			ResultSet rs = stmt.executeQuery (); 
+		 
+			try{
+				/*
+				 * obtains the metadata object for the returned result set.  The metadata 
+				 * contains row and column info. 
+				*/ 
+				ResultSetMetaData rsmd = rs.getMetaData (); 
+				int numCol = rsmd.getColumnCount (); 
+		 
+				//iterates through the result set and saves the data returned by the query. 
+				List<List<String>> result  = new ArrayList<List<String>>(); 
+				while (rs.next()){
+					List<String> record = new ArrayList<String>(); 
+					for (int i=1; i<=numCol; ++i) 
+						record.add(rs.getString (i)); 
+					result.add(record); 
+				}//end while 
+				rows = result.size ();
+				return result; 
+			}finally{
+				rs.close ();
+			}
+		}finally{
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.RESULT, query, params, start, rows);
+		}
 	}//end executeQueryAndReturnResult
 	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the results as a
+	 * typed, column-oriented table, see ResultTable.
+	 * 
+	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
+	 * @return the query result as a typed table
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultTable executeQueryAndReturnTable (String query, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			// fetches the cached prepared statement
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+
+			ResultSet rs = stmt.executeQuery ();
+			try{
+				ResultTable result = ResultTable.read (rs);
+				rows = result.getRowCount ();
+				return result;
+			}finally{
+				rs.close ();
+			}
+		}finally{
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.TABLE, query, params, start, rows);
+		}
+	}//end executeQueryAndReturnTable
+	
+	/**
+	 * Method to execute a report query (i.e. SELECT) through the result
+	 * cache, see ResultCache.  A cached result is returned without running
+	 * the query while it is younger than ttlMillis and none of its tables
+	 * has been written by this process since.
+	 * 
+	 * @param query the input query string
+	 * @param ttlMillis how long the result may be served from the cache
+	 * @param tables the tables whose writes change the result
+	 * @param params values for the '?' placeholders, in order
+	 * @return the query result as a typed table, shared with other callers
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultTable executeCachedQuery (String query, long ttlMillis, String[] tables, Object... params) throws SQLException {
+		ResultCache.Key key = this._cache.key (query, params);
+		ResultTable result = this._cache.get (key);
+		if (result == null){
+			// read the table versions first, so a write during the query marks the result stale
+			long[] versions = this._cache.versions (tables);
+			result = this.executeQueryAndReturnTable (query, params);
+			this._cache.put (key, result, ttlMillis, tables, versions);
+		}//end if
+		return result;
+	}//end executeCachedQuery
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * push each row to a handler as it arrives.  The query runs inside a
+	 * transaction with the given fetch size, so Postgres returns the rows
+	 * through a cursor and at most fetchSize rows are held in memory.
+	 * 
+	 * @param query the input query string
+	 * @param fetchSize number of rows fetched per round trip
+	 * @param handler the callback receiving each row
+	 * @param params values for the '?' placeholders, in order
+	 * @return the number of rows handed to the handler
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndStream (String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			// cursors only exist inside a transaction
+			conn.setAutoCommit (false);
+
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			stmt.setFetchSize (fetchSize);
+
+			int rowCount = 0;
+			ResultSet rs = stmt.executeQuery ();
+			try{
+				while (rs.next ()){
+					++rowCount;
+					if (!handler.handleRow (rs)){
+						break;
+					}
+				}//end while
+			}finally{
+				rs.close ();
+				stmt.setFetchSize (0);
+			}
+			conn.commit ();
+			rows = rowCount;
+			return rowCount;
+		}finally{
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.STREAM, query, params, start, rows);
+		}
+	}//end executeQueryAndStream
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * return a cursor over its rows.  Rows are fetched lazily fetchSize at a
+	 * time; the cursor keeps its connection until it is exhausted or closed.
+	 * 
+	 * @param query the input query string
+	 * @param fetchSize number of rows fetched per round trip
+	 * @param params values for the '?' placeholders, in order
+	 * @return the open cursor
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public RowCursor openCursor (String query, int fetchSize, Object... params) throws SQLException {
+		Connection conn = this._pool.borrow ();
+		try{
+			// cursors only exist inside a transaction
+			conn.setAutoCommit (false);
+
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			stmt.setFetchSize (fetchSize);
+			return new RowCursor (this._pool, conn, stmt);
+		}catch (SQLException e){
+			// a no-op if the cursor already handed the connection back
+			this._pool.release (conn);
+			throw e;
+		}
+	}//end openCursor
+	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the number of results
 	 * 
 	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+	public int executeQuery (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			// fetches the cached prepared statement
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
 
-		int rowCount = 0;
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+			try{
+				int rowCount = 0;
+
+				//iterates through the result set and count nuber of results.
+				if(rs.next()){
+					rowCount++;
+				}//end while
+				rows = rowCount;
+				return rowCount;
+			}finally{
+				rs.close ();
+			}
+		}finally{
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.QUERY, query, params, start, rows);
+		}
 	}
 	
+	/*
+	 * Counts a finished call in the query statistics, and writes it to the
+	 * slow-query log if it took longer than the threshold.
+	 */
+	private void recorded (int operation, String sql, Object[] params, long start, long rows){
+		long nanos = this._metrics.record (operation, sql, start, rows);
+		if (this._slowLog != null && this._slowLog.isSlow (nanos)){
+			this._slowLog.log (QueryMetrics.OPERATIONS[operation], sql, params, nanos, rows);
+		}
+	}
+
 	/**
 	 * Method to fetch the last value from sequence. This
 	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * value of sequence used for autogenerated keys.
+	 * Note that currval is per session, so with pooled connections this
+	 * only sees values produced on the connection it happens to borrow.
 	 * 
 	 * @param sequence name of the DB sequence
 	 * @return current value of a sequence
@@ -188,22 +439,120 @@ public class DBproject{
 	 */
 	
 	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+		Connection conn = this._pool.borrow ();
+		try{
+			Statement stmt = conn.createStatement ();
+			try{
+				ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
+				return rs.next() ? rs.getInt(1) : -1;
+			}finally{
+				stmt.close ();
+			}
+		}finally{
+			this._pool.release (conn);
+		}
+	}
+
+	/**
+	 * Method to fetch the engine that books seats, see BookingEngine.
+	 * 
+	 * @return the booking engine backed by this object
+	 */
+	public BookingEngine getBookingEngine(){
+		return this._booking;
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to book many seats at once, e.g. for a partner channel.
+	 * Requests are grouped by flight; each flight takes its seats with one
+	 * conditional UPDATE and inserts its reservations with one batch, see
+	 * BookingEngine.bookFlights.
+	 * 
+	 * @param requests the booking requests
+	 * @return one outcome per request, in the order of the requests
+	 * @throws java.sql.SQLException when no connection could be obtained
+	 */
+	public List<BookingEngine.Outcome> bookFlights(Collection<BookingEngine.BookingRequest> requests) throws SQLException {
+		return this._booking.bookFlights(requests);
+	}
+
+	/**
+	 * Method to fetch the storage interface the menu options run on.
+	 * 
+	 * @return the store backed by this object
+	 */
+	public JdbcStore getStore(){
+		return this._store;
+	}
+
+	/**
+	 * Method to fetch the in-memory seat inventory, see InventoryCache.
+	 * 
+	 * @return the seat inventory backed by this object
+	 */
+	public InventoryCache getInventory(){
+		return this._inventory;
+	}
+
+	/**
+	 * Method to fetch the connection pool, e.g. to read its statistics.
+	 * 
+	 * @return the connection pool backing this object
+	 */
+	public ConnectionPool getPool(){
+		return this._pool;
+	}
+
+	/**
+	 * Method to fetch the per-query statistics, see QueryMetrics.
+	 * 
+	 * @return the statistics of the data-access methods of this object
+	 */
+	public QueryMetrics getMetrics(){
+		return this._metrics;
+	}
+
+	/**
+	 * Method to fetch the cache of report results, e.g. to invalidate it
+	 * after writing through another path.
+	 * 
+	 * @return the result cache of this object
+	 */
+	public ResultCache getResultCache(){
+		return this._cache;
+	}
+
+	/**
+	 * Method to fetch the allocator of primary keys, see IdAllocator.
+	 * 
+	 * @return the id allocator of this object
+	 */
+	public IdAllocator getIdAllocator(){
+		return this._allocator;
+	}
+
+	/**
+	 * Method to fetch the directory of existing ids, see IdDirectory.
+	 * 
+	 * @return the id directory of this object
+	 */
+	public IdDirectory getIdDirectory(){
+		return this._ids;
+	}
+
+	/**
+	 * Method to close the pooled physical connections if they are open.
 	 */
 	public void cleanup(){
 		try{
-			if (this._connection != null){
-				this._connection.close ();
+			if (this._pool != null){
+				this._pool.close ();
 			}//end if
-		}catch (SQLException e){
+			this._metrics.close ();
+			if (this._slowLog != null){
+				this._slowLog.close ();
+			}//end if
+		}catch (Exception e){
 	         // ignored.
 		}//end try
 	}//end cleanup
@@ -214,33 +563,53 @@ public class DBproject{
 	 * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
 	 */
 	public static void main (String[] args) {
-		if (args.length != 3) {
+		boolean memory = "memory".equals (System.getProperty ("store"));
+		if (args.length != 3 && !memory) {
 			System.err.println (
 				"Usage: " + "java [-classpath <classpath>] " + DBproject.class.getName () +
-		            " <dbname> <port> <user>");
+		            " <dbname> <port> <user>\n" +
+		            "   or: java [-classpath <classpath>] -Dstore=memory [-Dstore.data=<csv directory>] " +
+		            DBproject.class.getName ());
 			return;
 		}//end if
 		
 		DBproject esql = null;
+		AirlineStore store = null;
 		
 		try{
-			System.out.println("(1)");
+			if (memory){
+				// run the menu on the csv files, with no database
+				String dir = System.getProperty ("store.data", MemoryStore.DEFAULT_DATA_DIR);
+				System.out.print ("Loading " + dir + "...");
+				store = new MemoryStore (new File (dir));
+				System.out.println ("Done");
+			}else{
+				System.out.println("(1)");
 			
-			try {
-				Class.forName("org.postgresql.Driver");
-			}catch(Exception e){
+				try {
+					Class.forName("org.postgresql.Driver");
+				}catch(Exception e){
 
-				System.out.println("Where is your PostgreSQL JDBC Driver? " + "Include in your library path!");
-				e.printStackTrace();
-				return;
-			}
+					System.out.println("Where is your PostgreSQL JDBC Driver? " + "Include in your library path!");
+					e.printStackTrace();
+					return;
+				}
 			
-			System.out.println("(2)");
-			String dbname = args[0];
-			String dbport = args[1];
-			String user = args[2];
+				System.out.println("(2)");
+				String dbname = args[0];
+				String dbport = args[1];
+				String user = args[2];
 			
-			esql = new DBproject (dbname, dbport, user, "");
+				esql = new DBproject (dbname, dbport, user, "");
+
+				// read the ids the menu options validate against; a table that fails is read on first use
+				try{
+					esql.getIdDirectory ().loadAll ();
+				}catch (SQLException e){
+					System.err.println ("Unable to load the id directory: " + e.getMessage ());
+				}
+				store = esql.getStore ();
+			}
 			
 			boolean keepon = true;
 			while(keepon){
@@ -255,19 +624,23 @@ public class DBproject{
 				System.out.println("7. List total number of repairs per plane in descending order");
 				System.out.println("8. List total number of repairs per year in ascending order");
 				System.out.println("9. Find total number of passengers with a given status");
-				System.out.println("10. < EXIT");
+				System.out.println("10. List number of passengers with each status for a given flight");
+				System.out.println("11. Cancel Reservation");
+				System.out.println("12. < EXIT");
 				
 				switch (readChoice()){
-					case 1: AddPlane(esql); break;
-					case 2: AddPilot(esql); break;
-					case 3: AddFlight(esql); break;
-					case 4: AddTechnician(esql); break;
-					case 5: BookFlight(esql); break;
-					case 6: ListNumberOfAvailableSeats(esql); break;
-					case 7: ListsTotalNumberOfRepairsPerPlane(esql); break;
-					case 8: ListTotalNumberOfRepairsPerYear(esql); break;
-					case 9: FindPassengersCountWithStatus(esql); break;
-					case 10: keepon = false; break;
+					case 1: AddPlane(store); break;
+					case 2: AddPilot(store); break;
+					case 3: AddFlight(store); break;
+					case 4: AddTechnician(store); break;
+					case 5: BookFlight(store); break;
+					case 6: ListNumberOfAvailableSeats(store); break;
+					case 7: ListsTotalNumberOfRepairsPerPlane(store); break;
+					case 8: ListTotalNumberOfRepairsPerYear(store); break;
+					case 9: FindPassengersCountWithStatus(store); break;
+					case 10: ListPassengersCountPerStatus(store); break;
+					case 11: CancelReservation(store); break;
+					case 12: keepon = false; break;
 				}
 			}
 		}catch(Exception e){
@@ -278,6 +651,8 @@ public class DBproject{
 					System.out.print("Disconnecting from database...");
 					esql.cleanup ();
 					System.out.println("Done\n\nBye !");
+				}else if (store != null){
+					store.close ();
 				}//end if				
 			}catch(Exception e){
 				// ignored.
@@ -301,130 +676,119 @@ public class DBproject{
 		return input;
 	}//end readChoice
 
-	public static void AddPlane(DBproject esql) throws SQLException, IOException{//1
-		String[] prompt = new String[]{"Enter plane id: ", "make: ", "model: ", "age: ", "seats: "};
+	/*
+	 * Prints a result the way executeQueryAndPrintResult does.
+	 */
+	static void printTable(ResultTable table){
+		for (int row = 0; row < table.getRowCount(); row++){
+			for (int col = 0; col < table.getColumnCount(); col++){
+				System.out.print((table.isNull(row, col) ? null : table.getString(row, col)) + "\t");
+			}
+			System.out.println();
+		}
+	}
+
+	public static void AddPlane(AirlineStore store) throws SQLException, IOException{//1
+		String[] prompt = new String[]{"Enter plane make: ", "model: ", "age: ", "seats: "};
 		String[] input = new String[prompt.length];
 		for (int i = 0; i < prompt.length; i++){
 			System.out.print(prompt[i]);
 			input[i] = in.readLine();
 		}
 
-		String query = "INSERT INTO plane(id, make, model, age, seats) VALUES (" + input[0] + ", "
-																					+ "'" + input[1] + "', "
-																					+ "'" + input[2] + "', "
-																					+ "'" + input[3] + "', "
-																					+ input[4] + ");";
-		esql.executeUpdate(query);
-		System.out.println("Success...!");
+		int id = store.nextId(IdAllocator.PLANE);
+		store.addPlane(id, input[0], input[1], Integer.parseInt(input[2].trim()), Integer.parseInt(input[3].trim()));
+		System.out.println("Success...! (plane id " + id + ")");
 	}
 
-	public static void AddPilot(DBproject esql) throws SQLException, IOException{//2
-		String[] prompt = new String[]{"Enter pilot id: ", "fullname: ", "nationality: "};
+	public static void AddPilot(AirlineStore store) throws SQLException, IOException{//2
+		String[] prompt = new String[]{"Enter pilot fullname: ", "nationality: "};
 		String[] input = new String[prompt.length];
 		for (int i = 0; i < prompt.length; i++){
 			System.out.print(prompt[i]);
 			input[i] = in.readLine();
 		}
 
-		String query = "INSERT INTO pilot(id, fullname, nationality) VALUES (" + input[0] + ", "
-																					+ "'" + input[1] + "', "
-																					+ "'" + input[2] + "');";
-		esql.executeUpdate(query);
-		System.out.println("Success...!");
+		int id = store.nextId(IdAllocator.PILOT);
+		store.addPilot(id, input[0], input[1]);
+		System.out.println("Success...! (pilot id " + id + ")");
 	}
 
-	public static void AddFlight(DBproject esql) throws SQLException, IOException {//3
+	public static void AddFlight(AirlineStore store) throws SQLException, IOException {//3
 		// Given a pilot, plane and flight, adds a flight in the DB -- details of fligth also?
-		String[] prompt = new String[]{"Enter fiid: ", "flight_id: ", "pilot_id: ", "plane_id: "};
+		String[] prompt = new String[]{"Enter flight_id: ", "pilot_id: ", "plane_id: "};
 		String[] input = new String[prompt.length];
 		for (int i = 0; i < prompt.length; i++){
 			System.out.print(prompt[i]);
 			input[i] = in.readLine();
 		}
 
-		String query = "INSERT INTO FlightInfo(fiid, flight_id, pilot_id, plane_id) VALUES (" + input[0] + ", "
-																					+ input[1] + ", "
-																					+ input[2] + ", "
-																					+ input[3] + ");";
-		esql.executeUpdate(query);
-		System.out.println("Success...!");
+		int fiid = store.nextId(IdAllocator.FLIGHT_INFO);
+		store.addFlightInfo(fiid, Integer.parseInt(input[0].trim()),
+							Integer.parseInt(input[1].trim()), Integer.parseInt(input[2].trim()));
+		System.out.println("Success...! (fiid " + fiid + ")");
 	}
 
-	public static void AddTechnician(DBproject esql) throws SQLException,IOException{//4
-		String[] prompt = new String[]{"Enter technician id: ", "full_name: "};
+	public static void AddTechnician(AirlineStore store) throws SQLException,IOException{//4
+		String[] prompt = new String[]{"Enter technician full_name: "};
 		String[] input = new String[prompt.length];
 		for (int i = 0; i < prompt.length; i++){
 			System.out.print(prompt[i]);
 			input[i] = in.readLine();
 		}
 
-		String query = "INSERT INTO technician(id, full_name) VALUES (" + input[0] + ", " + "'" + input[1] + "');";
-		esql.executeUpdate(query);
-		System.out.println("Success...!");
+		int id = store.nextId(IdAllocator.TECHNICIAN);
+		store.addTechnician(id, input[0]);
+		System.out.println("Success...! (technician id " + id + ")");
 	}
 
-	public static void BookFlight(DBproject esql) throws SQLException, IOException{//5
-		List<List<String>> result  = new ArrayList<List<String>>(); //container for returned info
-		List<List<String>> customerCheck = new ArrayList<List<String>>();
-		List<List<String>> reservationNum = esql.executeQueryAndReturnResult("select count(*) from Reservation;");
-		int custCheck = 0;
-		int flyCheck = 0;
+	public static void BookFlight(AirlineStore store) throws SQLException, IOException{//5
+		boolean custCheck = false;
+		boolean flyCheck = false;
 		// Given a customer and a flight that he/she wants to book, add a reservation to the DB
 		
 		//Get cust id from user	
 		
 		System.out.print("Enter a customer ID: ");
 		String custID = in.readLine();
-		customerCheck = esql.executeQueryAndReturnResult("select count(*) from Customer C where C.id = " + custID + ";");
-		custCheck = Integer.parseInt(customerCheck.get(0).get(0));
+		custCheck = store.exists(IdDirectory.CUSTOMER, Integer.parseInt(custID.trim()));
 		
 		//check to see if valid
-		while(custCheck == 0){
+		while(!custCheck){
 			System.out.print("Sorry, that customer cannot be found. Please enter a valid customer ID: ");
 			custID = in.readLine();
-			customerCheck = esql.executeQueryAndReturnResult("select count(*) from Customer C where C.id = " + custID + ";");
-			custCheck = Integer.parseInt(customerCheck.get(0).get(0));
+			custCheck = store.exists(IdDirectory.CUSTOMER, Integer.parseInt(custID.trim()));
 		}
 
 		//get flight number 
 		System.out.print("Enter a flight number: ");
 		String fnum = in.readLine();
-		List<List<String>> flightCheck = esql.executeQueryAndReturnResult("select count(*) from Flight F where F.fnum = " + fnum + ";");
-		flyCheck = Integer.parseInt(flightCheck.get(0).get(0));
+		flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
 		
 		//make sure flight number exists
-		while(flyCheck == 0){
+		while(!flyCheck){
 			System.out.print("Sorry, that flight cannot be found. Please enter a valid flight number: ");
 			fnum = in.readLine();
-			flightCheck = esql.executeQueryAndReturnResult("select count(*) from Flight F where F.fnum = " + fnum + ";");
-			
-			flyCheck = Integer.parseInt(flightCheck.get(0).get(0));
+			flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
 			//System.out.println(flyCheck);
 		}
 		String waitlist = "Unfortunately this flight is sold out, would you like to be added to the wait list? (y/n): ";
 		
-		//check to see if valid entries
-		String seatQuery = "SELECT P.seats - F.num_sold FROM Flight F, FlightInfo FI, Plane P WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND fnum = " + fnum + ";";
-		
-		//return # 0f seats on given flight
-		result = esql.executeQueryAndReturnResult(seatQuery);
-		
-		int seatsLeft = Integer.parseInt(result.get(0).get(0));
-		//System.out.println("Remaining seats: " + seatsLeft);
+		//reserve a seat and add the reservation in one atomic statement
+		System.out.println("Thank you for choosing our airline, we are booking your flight as we speak!");
+		BookingEngine.Booking booking = store.book(Integer.parseInt(custID.trim()), Integer.parseInt(fnum.trim()), false);
 		
-		//if numseats = 0, add to waitlist
-		if (seatsLeft == 0){
+		//if no seat was left, offer the waitlist
+		if (booking == null){
 			System.out.print(waitlist);
 		}
-		while(seatsLeft == 0){
+		while(booking == null){
 			String response = in.readLine();
 			String lower = response.toLowerCase();
 			if ( lower.equals("y")){
 				System.out.println("Adding you to the Waitlist!" );
-				//int reserveNum = Integer.parseInt(reservationNum.get(0).get(0));
-				System.out.println(reservationNum.get(0).get(0));
-				String addWaitlist = "INSERT INTO Reservation(rnum, cid, fid, status) VALUES (" + reservationNum.get(0).get(0) + ", " + custID + ", " + fnum + ","+"'W');";
-				esql.executeUpdate(addWaitlist);
+				//a seat may have been released meanwhile, in which case this reserves it
+				booking = store.book(Integer.parseInt(custID.trim()), Integer.parseInt(fnum.trim()), true);
 				break;
 			}
 			else if (lower.equals("n")){
@@ -435,46 +799,35 @@ public class DBproject{
 				System.out.print("Sorry, response not recognized. Please enter either y or n: " );
 			}
 		}
-		//else if numseats > 0, add to reservation
-		if (seatsLeft > 0){
-			System.out.println("Thank you for choosing our airline, we are booking your flight as we speak!");
-			String addReservation = "INSERT INTO Reservation(rnum, cid, fid, status) VALUES (" + reservationNum.get(0).get(0) + ", " + custID + ", " + fnum + ","+"'R');";
-			esql.executeUpdate(addReservation);
-
-			List<List<String>> numSold = esql.executeQueryAndReturnResult("select num_sold from Flight F where F.fnum = " + fnum + ";");
-			int numSoldInt = Integer.parseInt(numSold.get(0).get(0));
-			numSoldInt++;
-			//System.out.println(numSoldInt);
-			
-			esql.executeUpdate("UPDATE flight SET num_sold = " + numSoldInt + " WHERE fnum = " + fnum + ";");
-			
-			System.out.println("Success! Your travel arrangements are confirmed");
+		if (booking != null && booking.isReserved()){
+			System.out.println("Success! Your travel arrangements are confirmed (reservation #" + booking.rnum + ")");
+		}
+		else if (booking != null){
+			System.out.println("You are on the wait list (reservation #" + booking.rnum + ")");
 		}
 	}
 
-	public static void ListNumberOfAvailableSeats(DBproject esql) throws SQLException, IOException{//6
+	public static void ListNumberOfAvailableSeats(AirlineStore store) throws SQLException, IOException{//6
 		//List<List<String>> result  = new ArrayList<List<String>>();
 		// For flight number and date, find the number of availalbe seats (i.e. total plane capacity minus booked seats )
 		System.out.print("Enter a flight number: ");
 		String fnum = in.readLine();
-		List<List<String>> flightCheck = esql.executeQueryAndReturnResult("select count(*) from Flight F where F.fnum = " + fnum + ";");
-		int flyCheck = Integer.parseInt(flightCheck.get(0).get(0));
+		boolean flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
 		
 		//make sure flight number exists
-		while(flyCheck == 0){
+		while(!flyCheck){
 			System.out.print("Sorry, that flight cannot be found. Please enter a valid flight number: ");
 			fnum = in.readLine();
-			flightCheck = esql.executeQueryAndReturnResult("select count(*) from Flight F where F.fnum = " + fnum + ";");
-			
-			flyCheck = Integer.parseInt(flightCheck.get(0).get(0));
+			flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
 			//System.out.println(flyCheck);
 		}
 		//System.out.print("Enter a departure date");
 		//String date = in.readLine();
 
-		String query = "SELECT P.seats - F.num_sold FROM Flight F, FlightInfo FI, Plane P WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND fnum = " + fnum + ";";
+		//answered from the in-memory inventory instead of joining Flight, FlightInfo and Plane
+		int seatsLeft = store.getAvailableSeats(Integer.parseInt(fnum.trim()));
 		System.out.print("Number of remaining seats: ");
-		esql.executeQueryAndPrintResult(query);
+		System.out.println(seatsLeft < 0 ? "unknown (no plane assigned)" : String.valueOf(seatsLeft));
 		/*for (int i = 0; i < result.size(); i++){
 			for (int j = 0; j < result.get(i).size(); j++){
 				System.out.print(result.get(i).get(j));
@@ -484,39 +837,34 @@ public class DBproject{
 		//return result;
 	}
 
-	public static void ListsTotalNumberOfRepairsPerPlane(DBproject esql) throws SQLException {//7
+	public static void ListsTotalNumberOfRepairsPerPlane(AirlineStore store) throws SQLException {//7
 		//List<List<String>> result  = new ArrayList<List<String>>();
 		// Count number of repairs per planes and list them in descending order
 		System.out.println("Number of repairs || Plane ID");
-		String query = "SELECT count(*) as \"# Repairs\", plane_id as \"Plane ID#\" FROM repairs group by \"Plane ID#\" ORDER BY \"# Repairs\" DESC";
-		esql.executeQueryAndPrintResult(query);
+		printTable(store.getRepairsPerPlane());
 		//return result;
 	}
 
-	public static void ListTotalNumberOfRepairsPerYear(DBproject esql) throws SQLException{//8
+	public static void ListTotalNumberOfRepairsPerYear(AirlineStore store) throws SQLException{//8
 		//List<List<String>> result  = new ArrayList<List<String>>();
 		// Count repairs per year and list them in ascending order
 		System.out.println("Number of repairs || Year");
-		String query = "SELECT count(*) as \"# Repairs\", extract(year from repair_date) as \"Year\" FROM repairs GROUP BY \"Year\" ORDER BY \"# Repairs\" ASC;";
-		esql.executeQueryAndPrintResult(query);
+		printTable(store.getRepairsPerYear());
 		//return result;
 	}
 	
-	public static void FindPassengersCountWithStatus(DBproject esql) throws SQLException, IOException{//9
+	public static void FindPassengersCountWithStatus(AirlineStore store) throws SQLException, IOException{//9
 		//List<List<String>> result  = new ArrayList<List<String>>();
 		// Find how many passengers there are with a status (i.e. W,C,R) and list that number.
 		System.out.print("Enter a flight number: ");
 		String fnum = in.readLine();
-		List<List<String>> flightCheck = esql.executeQueryAndReturnResult("select count(*) from Flight F where F.fnum = " + fnum + ";");
-		int flyCheck = Integer.parseInt(flightCheck.get(0).get(0));
+		boolean flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
 		
 		//make sure flight number exists
-		while(flyCheck == 0){
+		while(!flyCheck){
 			System.out.print("Sorry, that flight cannot be found. Please enter a valid flight number: ");
 			fnum = in.readLine();
-			flightCheck = esql.executeQueryAndReturnResult("select count(*) from Flight F where F.fnum = " + fnum + ";");
-			
-			flyCheck = Integer.parseInt(flightCheck.get(0).get(0));
+			flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
 			//System.out.println(flyCheck);
 		}
 		System.out.print("Enter a status(R, W, C): ");
@@ -530,9 +878,43 @@ public class DBproject{
 			temp = temp.toUpperCase();
 		}
 		System.out.print("Number of records found: ");
-		String query = "SELECT count(*) as \"# Customers with Status\" FROM reservation R WHERE R.fid = " + fnum + " AND R.status = \'" + status.toUpperCase() + "\';";
-		esql.executeQueryAndPrintResult(query);
+		printTable(store.getPassengersWithStatus(Integer.parseInt(fnum.trim()), temp));
 		
 		//return result;
 	}
+
+	public static void ListPassengersCountPerStatus(AirlineStore store) throws SQLException, IOException{//10
+		// For a flight, list how many passengers there are with each status (i.e. W,C,R).
+		System.out.print("Enter a flight number: ");
+		String fnum = in.readLine();
+		boolean flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
+		
+		//make sure flight number exists
+		while(!flyCheck){
+			System.out.print("Sorry, that flight cannot be found. Please enter a valid flight number: ");
+			fnum = in.readLine();
+			flyCheck = store.exists(IdDirectory.FLIGHT, Integer.parseInt(fnum.trim()));
+		}
+		System.out.println("Status || Number of passengers");
+		printTable(store.getPassengersPerStatus(Integer.parseInt(fnum.trim())));
+	}
+
+	public static void CancelReservation(AirlineStore store) throws SQLException, IOException{//11
+		// Cancel a reservation; a seat it held goes to the oldest waitlisted passenger of the flight
+		System.out.print("Enter a reservation number: ");
+		String rnum = in.readLine();
+		BookingEngine.Cancellation cancellation = store.cancel(Integer.parseInt(rnum.trim()));
+		if (cancellation == null){
+			System.out.println("Sorry, that reservation cannot be found.");
+		}
+		else if (cancellation.cancelled == 0){
+			System.out.println("Reservation #" + rnum.trim() + " was already cancelled.");
+		}
+		else{
+			System.out.println("Reservation #" + rnum.trim() + " is cancelled.");
+			for (BookingEngine.Booking booking : cancellation.promoted){
+				System.out.println(booking);
+			}
+		}
+	}
 }
\ No newline at end of file
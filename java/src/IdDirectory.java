@@ -0,0 +1,177 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class defines an in-memory directory of the ids that exist in
+ * Customer, Flight, Plane, Pilot and Technician, so the menu options can
+ * validate an id without a round trip per attempt.
+ *
+ * Each table's ids are kept in a bitset split into chunks of CHUNK_BITS
+ * ids (8 KB each), created only where ids exist, in the manner of roaring
+ * bitmaps: dense id ranges cost one bit per id and sparse ones cost
+ * nothing for the gaps.  Bits are set with atomic word updates, so lookups
+ * take no lock.
+ *
+ * A table is loaded on its first lookup (or by load()), and the Add* paths
+ * add the ids they insert.  A set bit answers "exists" on its own; the
+ * application never deletes these rows.  A clear bit may be an id another
+ * program inserted since the load, so it is checked against the database
+ * and added if it is there.  Valid ids are answered from memory and only
+ * wrong ones cost a query.
+ *
+ */
+
+public class IdDirectory{
+	public static final int CUSTOMER = 0;
+	public static final int FLIGHT = 1;
+	public static final int PLANE = 2;
+	public static final int PILOT = 3;
+	public static final int TECHNICIAN = 4;
+	static final String[] TABLES = { "Customer", "Flight", "Plane", "Pilot", "Technician" };
+	static final String[] COLUMNS = { "id", "fnum", "id", "id", "id" };
+
+	static final int CHUNK_SHIFT = 16;
+	static final int CHUNK_BITS = 1 << CHUNK_SHIFT;
+	static final int CHUNK_WORDS = CHUNK_BITS / 64;
+
+	private final DBproject _esql;
+	//per table: chunk number -> bits of the ids in that chunk
+	private final List<ConcurrentHashMap<Integer, AtomicLongArray>> _chunks;
+	//bit t is set once table t has been read
+	private volatile int _loaded = 0;
+
+	//statistics
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _fallbacks = new AtomicLong();
+
+	public IdDirectory(DBproject esql){
+		this._esql = esql;
+		this._chunks = new ArrayList<ConcurrentHashMap<Integer, AtomicLongArray>>(TABLES.length);
+		for (int i = 0; i < TABLES.length; i++){
+			this._chunks.add(new ConcurrentHashMap<Integer, AtomicLongArray>());
+		}
+	}
+
+	/**
+	 * Method to check that an id exists.
+	 *
+	 * @param table CUSTOMER, FLIGHT, PLANE, PILOT or TECHNICIAN
+	 * @param id the id (fnum for flights)
+	 * @return whether the table has a row with that id
+	 * @throws java.sql.SQLException when the directory or the fallback query can not be read
+	 */
+	public boolean exists(int table, int id) throws SQLException {
+		if (!isLoaded(table)){
+			load(table);
+		}
+		if (contains(table, id)){
+			this._hits.incrementAndGet();
+			return true;
+		}
+		//not known here, but another program may have inserted it
+		this._fallbacks.incrementAndGet();
+		ResultTable count = this._esql.executeQueryAndReturnTable(
+			"SELECT count(*) FROM " + TABLES[table] + " WHERE " + COLUMNS[table] + " = ?;", id);
+		if (count.getInt(0, 0) == 0){
+			return false;
+		}
+		add(table, id);
+		return true;
+	}
+
+	/**
+	 * Method to record an id that was just inserted.
+	 *
+	 * @param table CUSTOMER, FLIGHT, PLANE, PILOT or TECHNICIAN
+	 * @param id the id
+	 */
+	public void add(int table, int id){
+		if (id < 0){
+			return;
+		}
+		AtomicLongArray chunk = this._chunks.get(table).get(id >>> CHUNK_SHIFT);
+		if (chunk == null){
+			AtomicLongArray created = new AtomicLongArray(CHUNK_WORDS);
+			chunk = this._chunks.get(table).putIfAbsent(id >>> CHUNK_SHIFT, created);
+			if (chunk == null){
+				chunk = created;
+			}
+		}
+		int word = (id & (CHUNK_BITS - 1)) >>> 6;
+		long bit = 1L << (id & 63);
+		long bits;
+		while (((bits = chunk.get(word)) & bit) == 0 && !chunk.compareAndSet(word, bits, bits | bit));
+	}
+
+	private boolean contains(int table, int id){
+		if (id < 0){
+			return false;
+		}
+		AtomicLongArray chunk = this._chunks.get(table).get(id >>> CHUNK_SHIFT);
+		return chunk != null && (chunk.get((id & (CHUNK_BITS - 1)) >>> 6) & (1L << (id & 63))) != 0;
+	}
+
+	private boolean isLoaded(int table){
+		return (this._loaded & (1 << table)) != 0;
+	}
+
+	/**
+	 * Method to read every id of a table, streaming them through a cursor.
+	 *
+	 * @param table CUSTOMER, FLIGHT, PLANE, PILOT or TECHNICIAN
+	 * @throws java.sql.SQLException when the ids can not be read
+	 */
+	public synchronized void load(final int table) throws SQLException {
+		if (isLoaded(table)){
+			return;
+		}
+		this._esql.executeQueryAndStream("SELECT " + COLUMNS[table] + " FROM " + TABLES[table] + ";",
+			DBproject.DEFAULT_FETCH_SIZE, new RowHandler(){
+				public boolean handleRow(ResultSet row) throws SQLException {
+					add(table, row.getInt(1));
+					return true;
+				}
+			});
+		this._loaded |= 1 << table;
+	}
+
+	/**
+	 * Method to load every table, e.g. at startup.
+	 *
+	 * @throws java.sql.SQLException when the ids can not be read
+	 */
+	public void loadAll() throws SQLException {
+		for (int table = 0; table < TABLES.length; table++){
+			load(table);
+		}
+	}
+
+	/**
+	 * Method to forget every id, e.g. after a bulk load; tables are read
+	 * again on their next lookup.
+	 */
+	public synchronized void clear(){
+		for (int table = 0; table < TABLES.length; table++){
+			this._chunks.get(table).clear();
+		}
+		this._loaded = 0;
+	}
+
+	/**
+	 * Method to summarize the directory on one line.
+	 *
+	 * @return the number of chunks per table and how many lookups needed the database
+	 */
+	public synchronized String getStatistics(){
+		StringBuilder sb = new StringBuilder();
+		for (int table = 0; table < TABLES.length; table++){
+			sb.append(TABLES[table]).append("=").append(this._chunks.get(table).size()).append(" chunks ");
+		}
+		return sb.append("hits=").append(this._hits.get()).append(" fallbacks=").append(this._fallbacks.get()).toString();
+	}
+}
@@ -0,0 +1,91 @@
+import java.sql.SQLException;
+
+/**
+ * This class defines the PostgreSQL storage of the menu options.  It runs
+ * the statements of DBproject through its pool, with the booking engine,
+ * seat inventory, id directory, id allocator and result cache in front.
+ *
+ */
+
+public class JdbcStore implements AirlineStore{
+	private final DBproject _esql;
+
+	public JdbcStore(DBproject esql){
+		this._esql = esql;
+	}
+
+	public int nextId(String sequence) throws SQLException {
+		return this._esql.getIdAllocator().next(sequence);
+	}
+
+	public boolean exists(int table, int id) throws SQLException {
+		return this._esql.getIdDirectory().exists(table, id);
+	}
+
+	public void addPlane(int id, String make, String model, int age, int seats) throws SQLException {
+		this._esql.executeUpdate(DBproject.INSERT_PLANE_SQL, id, make, model, age, seats);
+		this._esql.getIdDirectory().add(IdDirectory.PLANE, id);
+	}
+
+	public void addPilot(int id, String fullname, String nationality) throws SQLException {
+		this._esql.executeUpdate(DBproject.INSERT_PILOT_SQL, id, fullname, nationality);
+		this._esql.getIdDirectory().add(IdDirectory.PILOT, id);
+	}
+
+	public void addFlightInfo(int fiid, int flightId, int pilotId, int planeId) throws SQLException {
+		this._esql.executeUpdate(DBproject.INSERT_FLIGHT_INFO_SQL, fiid, flightId, pilotId, planeId);
+	}
+
+	public void addTechnician(int id, String fullName) throws SQLException {
+		this._esql.executeUpdate(DBproject.INSERT_TECHNICIAN_SQL, id, fullName);
+		this._esql.getIdDirectory().add(IdDirectory.TECHNICIAN, id);
+	}
+
+	public BookingEngine.Booking book(int cid, int fnum, boolean waitlistIfFull) throws SQLException {
+		return this._esql.getBookingEngine().book(cid, fnum, waitlistIfFull);
+	}
+
+	public BookingEngine.Cancellation cancel(int rnum) throws SQLException {
+		return this._esql.getBookingEngine().cancel(rnum);
+	}
+
+	public BookingEngine.Cancellation cancelFlight(int fnum) throws SQLException {
+		return this._esql.getBookingEngine().cancelFlight(fnum);
+	}
+
+	public int getAvailableSeats(int fnum) throws SQLException {
+		return this._esql.getInventory().getAvailableSeats(fnum);
+	}
+
+	//read from the RepairsPerPlane summary table maintained by triggers on Repairs
+	public ResultTable getRepairsPerPlane() throws SQLException {
+		return this._esql.executeCachedQuery(DBproject.REPAIRS_PER_PLANE_SQL, DBproject.REPORT_CACHE_TTL, DBproject.REPAIRS_TABLES);
+	}
+
+	//read from the RepairsPerYear summary table maintained by triggers on Repairs
+	public ResultTable getRepairsPerYear() throws SQLException {
+		return this._esql.executeCachedQuery(DBproject.REPAIRS_PER_YEAR_SQL, DBproject.REPORT_CACHE_TTL, DBproject.REPAIRS_TABLES);
+	}
+
+	//read from the FlightStatusCounts table maintained by triggers on Reservation
+	public ResultTable getPassengersWithStatus(int fnum, String status) throws SQLException {
+		return this._esql.executeCachedQuery(DBproject.PASSENGERS_WITH_STATUS_SQL, DBproject.REPORT_CACHE_TTL,
+			DBproject.RESERVATION_TABLES, fnum, status);
+	}
+
+	public ResultTable getPassengersPerStatus(int fnum) throws SQLException {
+		return this._esql.executeCachedQuery(DBproject.PASSENGERS_PER_STATUS_SQL, DBproject.REPORT_CACHE_TTL,
+			DBproject.RESERVATION_TABLES, fnum);
+	}
+
+	public void close(){
+		this._esql.cleanup();
+	}
+
+	/**
+	 * @return the DBproject this store runs on
+	 */
+	public DBproject getDBproject(){
+		return this._esql;
+	}
+}
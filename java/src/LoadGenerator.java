@@ -0,0 +1,392 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines a load generator for the booking path.  N simulated
+ * customers book seats (option 5, through BookingEngine) and read seat
+ * availability (option 6) and passenger counts (option 9) concurrently for
+ * a fixed time.  Flights are picked from a Zipfian distribution, so a few
+ * hot flights take most of the traffic, as in a sales spike.
+ *
+ * While it runs it prints throughput once per interval; at the end it
+ * prints a latency histogram per operation, checks that no rnum was
+ * handed out twice and that no flight was oversold, and compares the
+ * change in Flight.num_sold of every flight with the reservations that
+ * were made.
+ *
+ * Usage: java LoadGenerator <dbname> <port> <user> [options]
+ *
+ *   -threads N     simulated customers (default 16)
+ *   -duration S    seconds to run (default 30)
+ *   -zipf X        flight skew, 0 for uniform (default 1.0)
+ *   -think MS      mean think time between requests in ms (default 0)
+ *   -reads PCT     share of requests that are reads (default 50)
+ *   -interval S    seconds between throughput reports (default 1)
+ *   -waitlist B    whether customers join the wait list when a flight is full (default true)
+ *
+ */
+
+public class LoadGenerator{
+	static final int BOOK = 0;
+	static final int SEATS = 1;
+	static final int STATUS = 2;
+	static final String[] OPERATIONS = { "book (option 5)", "seats (option 6)", "status (option 9)" };
+
+	static final String FLIGHTS_SQL = "SELECT fnum FROM Flight ORDER BY fnum;";
+	static final String CUSTOMERS_SQL = "SELECT id FROM Customer ORDER BY id;";
+	//the query of option 9
+	static final String STATUS_SQL =
+		"SELECT coalesce((SELECT num FROM FlightStatusCounts WHERE fid = ? AND status = ?), 0) as \"# Customers with Status\";";
+	static final String SOLD_SQL = "SELECT fnum, num_sold FROM Flight;";
+	static final String RESERVED_SQL = "SELECT fid, count(*) FROM Reservation WHERE status = 'R' GROUP BY fid;";
+	static final String OVERSOLD_SQL =
+		"SELECT F.fnum, F.num_sold, P.seats FROM Flight F, FlightInfo FI, Plane P " +
+		"WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND F.num_sold > P.seats ORDER BY F.fnum;";
+	static final String DUPLICATE_RNUM_SQL =
+		"SELECT rnum, count(*) FROM Reservation GROUP BY rnum HAVING count(*) > 1 ORDER BY rnum;";
+	static final String[] STATUSES = { "R", "W", "C" };
+
+	//problems listed in full before the report only gives a count
+	static final int MAX_LISTED = 20;
+
+	private final DBproject _esql;
+	private int _threads = 16;
+	private long _durationMillis = 30000;
+	private double _zipf = 1.0;
+	private long _thinkMillis = 0;
+	private int _readPercent = 50;
+	private long _intervalMillis = 1000;
+	private boolean _waitlist = true;
+
+	private int[] _flights;
+	private int[] _customers;
+	private double[] _cdf;
+
+	private final LatencyHistogram[] _histograms = {
+		new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()
+	};
+	private final AtomicLong[] _completed = { new AtomicLong(), new AtomicLong(), new AtomicLong() };
+	private final AtomicLong _errors = new AtomicLong();
+	private final AtomicLong _waitlisted = new AtomicLong();
+	private final AtomicLong _rejected = new AtomicLong();
+	private final AtomicLong _duplicates = new AtomicLong();
+	//every rnum handed out during the run, to catch duplicates
+	private final ConcurrentHashMap<Integer, Integer> _rnums = new ConcurrentHashMap<Integer, Integer>();
+	//seats this run reserved, by position in _flights
+	private AtomicIntegerArray _reserved;
+	private volatile String _lastError = null;
+
+	public LoadGenerator(DBproject esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to run the load and print the report.
+	 *
+	 * @throws java.sql.SQLException when the data needed for the run or the checks can not be read
+	 * @throws java.lang.InterruptedException when interrupted while waiting for the customers
+	 */
+	public void run() throws SQLException, InterruptedException {
+		this._flights = loadIds(FLIGHTS_SQL);
+		this._customers = loadIds(CUSTOMERS_SQL);
+		if (this._flights.length == 0 || this._customers.length == 0){
+			throw new SQLException("Flight and Customer must not be empty");
+		}
+		this._cdf = zipfCdf(this._flights.length, this._zipf);
+		this._reserved = new AtomicIntegerArray(this._flights.length);
+
+		//a random order of flights, so the hot ones are not simply the lowest numbers
+		int[] shuffled = this._flights.clone();
+		Random random = new Random(42);
+		for (int i = shuffled.length - 1; i > 0; i--){
+			int j = random.nextInt(i + 1);
+			int t = shuffled[i];
+			shuffled[i] = shuffled[j];
+			shuffled[j] = t;
+		}
+		this._flights = shuffled;
+
+		int[] soldBefore = loadPerFlight(SOLD_SQL);
+		int[] reservedBefore = loadPerFlight(RESERVED_SQL);
+
+		System.out.println(String.format("Running %d customers for %ds: %d flights (zipf %.2f), %d customers, %d%% reads, think %dms",
+			this._threads, this._durationMillis / 1000, this._flights.length, this._zipf, this._customers.length,
+			this._readPercent, this._thinkMillis));
+		final long start = System.nanoTime();
+		final long deadline = start + this._durationMillis * 1000000L;
+		List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < this._threads; i++){
+			Thread t = new Thread(new Runnable(){
+				public void run(){
+					while (System.nanoTime() < deadline){
+						step();
+					}
+				}
+			}, "customer-" + i);
+			workers.add(t);
+			t.start();
+		}
+
+		long[] last = new long[this._completed.length];
+		long lastErrors = 0;
+		long next = start + this._intervalMillis * 1000000L;
+		while (System.nanoTime() < deadline){
+			long sleep = (next - System.nanoTime()) / 1000000L;
+			if (sleep > 0){
+				Thread.sleep(sleep);
+			}
+			StringBuilder line = new StringBuilder(String.format("t=%6.1fs", (System.nanoTime() - start) / 1e9));
+			double secs = this._intervalMillis / 1000.0;
+			for (int op = 0; op < this._completed.length; op++){
+				long done = this._completed[op].get();
+				line.append(String.format("  %s=%.0f/s", OPERATIONS[op].substring(0, OPERATIONS[op].indexOf(' ')), (done - last[op]) / secs));
+				last[op] = done;
+			}
+			long errors = this._errors.get();
+			line.append(String.format("  errors=%d  pool: %s", errors - lastErrors, this._esql.getPool().getStatistics()));
+			lastErrors = errors;
+			System.out.println(line);
+			next += this._intervalMillis * 1000000L;
+		}
+		for (Thread t : workers){
+			t.join();
+		}
+		double elapsed = (System.nanoTime() - start) / 1e9;
+
+		report(elapsed);
+		checkConsistency(soldBefore, reservedBefore);
+	}
+
+	/*
+	 * One request of one simulated customer: think, then read or book.
+	 */
+	private void step(){
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		try{
+			if (this._thinkMillis > 0){
+				//exponential think time around the mean, like independent arrivals
+				Thread.sleep((long) (-Math.log(1 - random.nextDouble()) * this._thinkMillis));
+			}
+			int index = pickFlight(random.nextDouble());
+			int fnum = this._flights[index];
+			int op = random.nextInt(100) < this._readPercent ? (random.nextBoolean() ? SEATS : STATUS) : BOOK;
+			long begin = System.nanoTime();
+			switch (op){
+				case SEATS:
+					this._esql.getInventory().getAvailableSeats(fnum);
+					break;
+				case STATUS:
+					this._esql.executeQueryAndReturnTable(STATUS_SQL, fnum, STATUSES[random.nextInt(STATUSES.length)]);
+					break;
+				default:
+					int cid = this._customers[random.nextInt(this._customers.length)];
+					BookingEngine.Booking booking = this._esql.getBookingEngine().book(cid, fnum, this._waitlist);
+					this._histograms[op].record(System.nanoTime() - begin);
+					this._completed[op].incrementAndGet();
+					recordBooking(index, booking);
+					return;
+			}
+			this._histograms[op].record(System.nanoTime() - begin);
+			this._completed[op].incrementAndGet();
+		}catch (SQLException e){
+			this._errors.incrementAndGet();
+			this._lastError = e.getMessage();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void recordBooking(int index, BookingEngine.Booking booking){
+		if (booking == null){
+			this._rejected.incrementAndGet();
+			return;
+		}
+		if (this._rnums.putIfAbsent(booking.rnum, booking.fnum) != null){
+			this._duplicates.incrementAndGet();
+			System.err.println("Duplicate rnum " + booking.rnum + " on flight " + booking.fnum);
+		}
+		if (booking.isReserved()){
+			this._reserved.incrementAndGet(index);
+		}else{
+			this._waitlisted.incrementAndGet();
+		}
+	}
+
+	private void report(double elapsed){
+		System.out.println();
+		System.out.println(String.format("Finished in %.1fs", elapsed));
+		long total = 0;
+		for (int op = 0; op < this._histograms.length; op++){
+			LatencyHistogram h = this._histograms[op];
+			total += h.getCount();
+			System.out.println(String.format("%-18s %8.1f ops/s  %s", OPERATIONS[op], h.getCount() / elapsed, h.summary()));
+		}
+		System.out.println(String.format("%-18s %8.1f ops/s", "total", total / elapsed));
+		long reserved = 0;
+		for (int i = 0; i < this._reserved.length(); i++){
+			reserved += this._reserved.get(i);
+		}
+		System.out.println(String.format("Bookings: %d reserved, %d waitlisted, %d turned away; %d errors",
+			reserved, this._waitlisted.get(), this._rejected.get(), this._errors.get()));
+		if (this._lastError != null){
+			System.out.println("Last error: " + this._lastError);
+		}
+		for (int op = 0; op < this._histograms.length; op++){
+			if (this._histograms[op].getCount() > 0){
+				System.out.println();
+				this._histograms[op].printDistribution("Latency distribution of " + OPERATIONS[op] + ":");
+			}
+		}
+	}
+
+	/*
+	 * Checks the database after the run: duplicate rnums, oversold flights
+	 * and whether num_sold moved by exactly the number of new 'R'
+	 * reservations.  The last check assumes nothing else wrote to the
+	 * database during the run.
+	 */
+	private void checkConsistency(int[] soldBefore, int[] reservedBefore) throws SQLException {
+		System.out.println();
+		System.out.println("Consistency report");
+		System.out.println("  duplicate rnums handed out: " + this._duplicates.get());
+
+		ResultTable duplicates = this._esql.executeQueryAndReturnTable(DUPLICATE_RNUM_SQL);
+		System.out.println("  duplicate rnums in Reservation: " + duplicates.getRowCount());
+		for (int i = 0; i < Math.min(duplicates.getRowCount(), MAX_LISTED); i++){
+			System.out.println("    rnum " + duplicates.getString(i, 0) + " appears " + duplicates.getString(i, 1) + " times");
+		}
+
+		ResultTable oversold = this._esql.executeQueryAndReturnTable(OVERSOLD_SQL);
+		System.out.println("  oversold flights: " + oversold.getRowCount());
+		for (int i = 0; i < Math.min(oversold.getRowCount(), MAX_LISTED); i++){
+			System.out.println("    flight " + oversold.getString(i, 0) + ": " + oversold.getString(i, 1) + " sold, " + oversold.getString(i, 2) + " seats");
+		}
+
+		int[] soldAfter = loadPerFlight(SOLD_SQL);
+		int[] reservedAfter = loadPerFlight(RESERVED_SQL);
+		int mismatches = 0;
+		for (int i = 0; i < this._flights.length; i++){
+			int fnum = this._flights[i];
+			int sold = at(soldAfter, fnum) - at(soldBefore, fnum);
+			int rows = at(reservedAfter, fnum) - at(reservedBefore, fnum);
+			int ours = this._reserved.get(i);
+			if (sold != rows || sold != ours){
+				if (mismatches < MAX_LISTED){
+					System.out.println(String.format("    flight %d: num_sold +%d, 'R' reservations +%d, booked by this run %d", fnum, sold, rows, ours));
+				}
+				mismatches++;
+			}
+		}
+		System.out.println("  flights where num_sold does not match the reservations made: " + mismatches);
+		boolean ok = this._duplicates.get() == 0 && duplicates.getRowCount() == 0 && oversold.getRowCount() == 0 && mismatches == 0;
+		System.out.println(ok ? "  OK" : "  FAILED");
+	}
+
+	private static int at(int[] values, int fnum){
+		return fnum >= 0 && fnum < values.length ? values[fnum] : 0;
+	}
+
+	private int pickFlight(double u){
+		int i = Arrays.binarySearch(this._cdf, u);
+		i = i < 0 ? -i - 1 : i;
+		return Math.min(i, this._cdf.length - 1);
+	}
+
+	/*
+	 * Cumulative probabilities of ranks 1..n under a Zipf distribution with
+	 * the given exponent.
+	 */
+	static double[] zipfCdf(int n, double exponent){
+		double[] cdf = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; i++){
+			sum += 1 / Math.pow(i + 1, exponent);
+			cdf[i] = sum;
+		}
+		for (int i = 0; i < n; i++){
+			cdf[i] /= sum;
+		}
+		return cdf;
+	}
+
+	private int[] loadIds(String sql) throws SQLException {
+		final int[][] ids = { new int[1024] };
+		final int[] count = { 0 };
+		this._esql.executeQueryAndStream(sql, DBproject.DEFAULT_FETCH_SIZE, new RowHandler(){
+			public boolean handleRow(ResultSet row) throws SQLException {
+				if (count[0] == ids[0].length){
+					ids[0] = Arrays.copyOf(ids[0], count[0] * 2);
+				}
+				ids[0][count[0]++] = row.getInt(1);
+				return true;
+			}
+		});
+		return Arrays.copyOf(ids[0], count[0]);
+	}
+
+	//reads (fnum, value) rows into an array indexed by fnum
+	private int[] loadPerFlight(String sql) throws SQLException {
+		final int[][] values = { new int[1024] };
+		this._esql.executeQueryAndStream(sql, DBproject.DEFAULT_FETCH_SIZE, new RowHandler(){
+			public boolean handleRow(ResultSet row) throws SQLException {
+				int fnum = row.getInt(1);
+				if (fnum < 0){
+					return true;
+				}
+				if (fnum >= values[0].length){
+					values[0] = Arrays.copyOf(values[0], Math.max(values[0].length * 2, fnum + 1));
+				}
+				values[0][fnum] = row.getInt(2);
+				return true;
+			}
+		});
+		return values[0];
+	}
+
+	/**
+	 * The load generator entry point
+	 *
+	 * @param args <dbname> <port> <user> [options]
+	 */
+	public static void main(String[] args){
+		if (args.length < 3 || (args.length - 3) % 2 != 0){
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + LoadGenerator.class.getName () +
+					" <dbname> <port> <user> [-threads N] [-duration S] [-zipf X] [-think MS] [-reads PCT] [-interval S] [-waitlist true|false]");
+			return;
+		}//end if
+
+		DBproject esql = null;
+		try{
+			Class.forName("org.postgresql.Driver");
+			esql = new DBproject(args[0], args[1], args[2], "");
+			LoadGenerator generator = new LoadGenerator(esql);
+			for (int i = 3; i < args.length; i += 2){
+				String value = args[i + 1];
+				if (args[i].equals("-threads")) generator._threads = Integer.parseInt(value);
+				else if (args[i].equals("-duration")) generator._durationMillis = Long.parseLong(value) * 1000;
+				else if (args[i].equals("-zipf")) generator._zipf = Double.parseDouble(value);
+				else if (args[i].equals("-think")) generator._thinkMillis = Long.parseLong(value);
+				else if (args[i].equals("-reads")) generator._readPercent = Integer.parseInt(value);
+				else if (args[i].equals("-interval")) generator._intervalMillis = Long.parseLong(value) * 1000;
+				else if (args[i].equals("-waitlist")) generator._waitlist = Boolean.parseBoolean(value);
+				else throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+			generator.run();
+		}catch(Exception e){
+			System.err.println ("Load generator failed: " + e.getMessage ());
+		}finally{
+			if (esql != null){
+				esql.cleanup ();
+			}
+		}
+	}
+}
@@ -0,0 +1,529 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class defines a parser of the data/*.csv files (COPY text format:
+ * ',' delimited, one row per line, no quoting) that reads them through
+ * memory-mapped buffers and parses each field in place into a primitive
+ * column, without building a String per line or per field.  Only STRING
+ * fields allocate.
+ *
+ * The field types cover the formats in the files:
+ *
+ *   INT        -12                    int
+ *   DATE       2015-03-23             int, days since 1970-01-01 (a time after the date is ignored)
+ *   DATE_MDY   2/8/1953               int, days since 1970-01-01
+ *   TIMESTAMP  2014-05-01 16:45[:ss]  long, epoch milliseconds in UTC
+ *   CHAR       R                      int, the character, -1 if empty
+ *   CODE       TDOBK                  long, up to 8 ASCII characters packed, see decode()
+ *   STRING     anything               String, trimmed
+ *   SKIP                              not stored
+ *
+ * Large files are cut into chunks at line boundaries and the chunks are
+ * parsed in parallel, each into its own columns, which are concatenated
+ * in file order at the end.  Each chunk is mapped on its own, so files
+ * larger than 2 GB are read too.
+ *
+ */
+
+public class MappedCsv{
+	public static final int SKIP = 0;
+	public static final int INT = 1;
+	public static final int DATE = 2;
+	public static final int DATE_MDY = 3;
+	public static final int TIMESTAMP = 4;
+	public static final int CHAR = 5;
+	public static final int CODE = 6;
+	public static final int STRING = 7;
+	static final String[] TYPE_NAMES = { "skip", "int", "date", "date_mdy", "timestamp", "char", "code", "string" };
+
+	//files smaller than this are parsed by the calling thread in one chunk
+	static final long MIN_PARALLEL_BYTES = 4L * 1024 * 1024;
+	//upper bound on the bytes of one chunk (and one mapping)
+	static final long MAX_CHUNK_BYTES = 256L * 1024 * 1024;
+	//bytes read around a chunk boundary to find the end of the line
+	static final int BOUNDARY_WINDOW = 64 * 1024;
+
+	/**
+	 * This class defines the parsed columns of a file, one per field of the
+	 * requested types; the arrays are exactly getRowCount() long.
+	 */
+	public static class Columns{
+		final int[] types;
+		final int[][] ints;
+		final long[][] longs;
+		final String[][] strings;
+		int rows = 0;
+		int capacity;
+
+		Columns(int[] types, int capacity){
+			this.types = types;
+			this.capacity = capacity;
+			this.ints = new int[types.length][];
+			this.longs = new long[types.length][];
+			this.strings = new String[types.length][];
+			for (int f = 0; f < types.length; f++){
+				switch (types[f]){
+					case INT: case DATE: case DATE_MDY: case CHAR: this.ints[f] = new int[capacity]; break;
+					case TIMESTAMP: case CODE: this.longs[f] = new long[capacity]; break;
+					case STRING: this.strings[f] = new String[capacity]; break;
+					default: break;
+				}
+			}
+		}
+
+		public int getRowCount(){
+			return this.rows;
+		}
+
+		/**
+		 * @param field zero-based field index, of type INT, DATE, DATE_MDY or CHAR
+		 * @return the column
+		 */
+		public int[] getInts(int field){
+			return this.ints[field];
+		}
+
+		/**
+		 * @param field zero-based field index, of type TIMESTAMP or CODE
+		 * @return the column
+		 */
+		public long[] getLongs(int field){
+			return this.longs[field];
+		}
+
+		/**
+		 * @param field zero-based field index, of type STRING
+		 * @return the column
+		 */
+		public String[] getStrings(int field){
+			return this.strings[field];
+		}
+
+		//makes room for one more row
+		void ensureRow(){
+			if (this.rows == this.capacity){
+				resize(Math.max(this.capacity * 2, 16));
+			}
+		}
+
+		void resize(int n){
+			this.capacity = n;
+			for (int f = 0; f < this.types.length; f++){
+				if (this.ints[f] != null) this.ints[f] = Arrays.copyOf(this.ints[f], n);
+				if (this.longs[f] != null) this.longs[f] = Arrays.copyOf(this.longs[f], n);
+				if (this.strings[f] != null) this.strings[f] = Arrays.copyOf(this.strings[f], n);
+			}
+		}
+
+		//concatenates the columns of the chunks, in order
+		static Columns concat(int[] types, List<Columns> parts){
+			int rows = 0;
+			for (Columns part : parts){
+				rows += part.rows;
+			}
+			Columns all = new Columns(types, rows);
+			for (Columns part : parts){
+				for (int f = 0; f < types.length; f++){
+					if (all.ints[f] != null) System.arraycopy(part.ints[f], 0, all.ints[f], all.rows, part.rows);
+					if (all.longs[f] != null) System.arraycopy(part.longs[f], 0, all.longs[f], all.rows, part.rows);
+					if (all.strings[f] != null) System.arraycopy(part.strings[f], 0, all.strings[f], all.rows, part.rows);
+				}
+				all.rows += part.rows;
+			}
+			return all;
+		}
+	}
+
+	private MappedCsv(){
+	}
+
+	/**
+	 * Method to parse a file with one thread per available processor.
+	 *
+	 * @param file the csv file
+	 * @param types the type of each field; fields past the last are skipped
+	 * @return the columns
+	 * @throws java.io.IOException when the file can not be read or a field can not be parsed
+	 */
+	public static Columns parse(File file, int[] types) throws IOException {
+		return parse(file, types, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Method to parse a file.
+	 *
+	 * @param file the csv file
+	 * @param types the type of each field; fields past the last are skipped
+	 * @param threads the number of chunks parsed at once
+	 * @return the columns
+	 * @throws java.io.IOException when the file can not be read or a field can not be parsed
+	 */
+	public static Columns parse(final File file, final int[] types, int threads) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			final FileChannel channel = raf.getChannel();
+			final long[] bounds = chunkBounds(channel, threads);
+			if (bounds.length == 2){
+				return parseChunk(file, channel, bounds[0], bounds[1], types);
+			}
+			ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, bounds.length - 1), new ThreadFactory(){
+				public Thread newThread(Runnable r){
+					Thread t = new Thread(r, "csv-parser");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			try{
+				List<Future<Columns>> futures = new ArrayList<Future<Columns>>();
+				for (int i = 0; i + 1 < bounds.length; i++){
+					final long start = bounds[i];
+					final long end = bounds[i + 1];
+					futures.add(pool.submit(new java.util.concurrent.Callable<Columns>(){
+						public Columns call() throws IOException {
+							return parseChunk(file, channel, start, end, types);
+						}
+					}));
+				}
+				List<Columns> parts = new ArrayList<Columns>();
+				for (Future<Columns> future : futures){
+					parts.add(future.get());
+				}
+				return Columns.concat(types, parts);
+			}catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while parsing " + file, e);
+			}catch (ExecutionException e){
+				Throwable cause = e.getCause();
+				throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+			}finally{
+				pool.shutdown();
+			}
+		}finally{
+			raf.close();
+		}
+	}
+
+	/*
+	 * Cuts the file into chunks of about equal size, moving each cut to the
+	 * start of the next line.  Returns the n + 1 offsets of n chunks.
+	 */
+	private static long[] chunkBounds(FileChannel channel, int threads) throws IOException {
+		long size = channel.size();
+		int chunks = 1;
+		if (size >= MIN_PARALLEL_BYTES){
+			chunks = (int) Math.max(Math.max(threads, 1), (size + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+		}
+		long[] bounds = new long[chunks + 1];
+		int n = 1;
+		for (int i = 1; i < chunks; i++){
+			long cut = nextLine(channel, Math.max(size * i / chunks, bounds[n - 1]), size);
+			if (cut > bounds[n - 1] && cut < size){
+				bounds[n++] = cut;
+			}
+		}
+		bounds[n++] = size;
+		return Arrays.copyOf(bounds, n);
+	}
+
+	//the offset just past the first '\n' at or after from, or size
+	private static long nextLine(FileChannel channel, long from, long size) throws IOException {
+		for (long at = from; at < size; at += BOUNDARY_WINDOW){
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, at, Math.min(BOUNDARY_WINDOW, size - at));
+			for (int i = 0; i < window.limit(); i++){
+				if (window.get(i) == '\n'){
+					return at + i + 1;
+				}
+			}
+		}
+		return size;
+	}
+
+	/*
+	 * Parses the lines of [start, end), which begins at the start of a line.
+	 */
+	static Columns parseChunk(File file, FileChannel channel, long start, long end, int[] types) throws IOException {
+		if (end - start > Integer.MAX_VALUE){
+			throw new IOException(file + ": chunk of " + (end - start) + " bytes is too large to map");
+		}
+		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+		int limit = buf.limit();
+		Columns columns = new Columns(types, Math.min(Math.max(limit / 32, 16), 1 << 20));
+		byte[] scratch = new byte[256];
+		int pos = 0;
+		while (pos < limit){
+			//blank lines are skipped
+			if (buf.get(pos) == '\n' || buf.get(pos) == '\r'){
+				pos++;
+				continue;
+			}
+			columns.ensureRow();
+			int row = columns.rows;
+			int field = 0;
+			boolean endOfLine = false;
+			while (!endOfLine){
+				//[pos, stop) is the field
+				int stop = pos;
+				byte b = 0;
+				while (stop < limit && (b = buf.get(stop)) != ',' && b != '\n'){
+					stop++;
+				}
+				endOfLine = stop >= limit || b == '\n';
+				int fieldEnd = stop;
+				if (endOfLine && fieldEnd > pos && buf.get(fieldEnd - 1) == '\r'){
+					fieldEnd--;
+				}
+				if (field < types.length && types[field] != SKIP){
+					try{
+						store(buf, pos, fieldEnd, types[field], columns, field, row, scratch);
+					}catch (IllegalArgumentException e){
+						throw new IOException(file + " at byte " + (start + pos) + ": " + e.getMessage());
+					}
+				}
+				field++;
+				pos = stop + 1;
+			}
+			//fields missing at the end of the line keep their defaults
+			for (int f = field; f < types.length; f++){
+				if (types[f] == CHAR) columns.ints[f][row] = -1;
+			}
+			columns.rows++;
+		}
+		columns.resize(columns.rows);
+		return columns;
+	}
+
+	private static void store(MappedByteBuffer buf, int from, int to, int type, Columns columns, int field, int row,
+							  byte[] scratch){
+		//surrounding spaces are not part of any value
+		while (from < to && buf.get(from) == ' ') from++;
+		while (to > from && buf.get(to - 1) == ' ') to--;
+		switch (type){
+			case INT:
+				columns.ints[field][row] = parseInt(buf, from, to);
+				break;
+			case DATE:
+				columns.ints[field][row] = parseDate(buf, from, to);
+				break;
+			case DATE_MDY:
+				columns.ints[field][row] = parseDateMdy(buf, from, to);
+				break;
+			case TIMESTAMP:
+				columns.longs[field][row] = parseTimestamp(buf, from, to);
+				break;
+			case CHAR:
+				columns.ints[field][row] = from < to ? buf.get(from) & 0xFF : -1;
+				break;
+			case CODE:
+				columns.longs[field][row] = parseCode(buf, from, to);
+				break;
+			default:
+				int n = to - from;
+				byte[] bytes = n <= scratch.length ? scratch : new byte[n];
+				for (int i = 0; i < n; i++){
+					bytes[i] = buf.get(from + i);
+				}
+				columns.strings[field][row] = new String(bytes, 0, n, StandardCharsets.UTF_8);
+				break;
+		}
+	}
+
+	static int parseInt(MappedByteBuffer buf, int from, int to){
+		if (from == to){
+			throw new IllegalArgumentException("empty integer");
+		}
+		boolean negative = buf.get(from) == '-';
+		int i = negative ? from + 1 : from;
+		if (i == to){
+			throw new IllegalArgumentException("bad integer");
+		}
+		long value = 0;
+		for (; i < to; i++){
+			int d = buf.get(i) - '0';
+			if (d < 0 || d > 9){
+				throw new IllegalArgumentException("bad integer");
+			}
+			value = value * 10 + d;
+			if (value > Integer.MAX_VALUE + 1L){
+				throw new IllegalArgumentException("integer out of range");
+			}
+		}
+		value = negative ? -value : value;
+		if (value > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("integer out of range");
+		}
+		return (int) value;
+	}
+
+	//digits of [from, to), which must all be digits, at most 9 of them
+	private static int digits(MappedByteBuffer buf, int from, int to){
+		if (from >= to){
+			throw new IllegalArgumentException("missing number");
+		}
+		if (to - from > 9){
+			throw new IllegalArgumentException("number too long");
+		}
+		int value = 0;
+		for (int i = from; i < to; i++){
+			int d = buf.get(i) - '0';
+			if (d < 0 || d > 9){
+				throw new IllegalArgumentException("bad number");
+			}
+			value = value * 10 + d;
+		}
+		return value;
+	}
+
+	//the offset of the first byte c in [from, to), or to
+	private static int indexOf(MappedByteBuffer buf, int from, int to, char c){
+		while (from < to && buf.get(from) != c){
+			from++;
+		}
+		return from;
+	}
+
+	//yyyy-mm-dd, anything after it ignored
+	static int parseDate(MappedByteBuffer buf, int from, int to){
+		if (to - from < 10 || buf.get(from + 4) != '-' || buf.get(from + 7) != '-'){
+			throw new IllegalArgumentException("bad date");
+		}
+		return epochDay(digits(buf, from, from + 4), digits(buf, from + 5, from + 7), digits(buf, from + 8, from + 10));
+	}
+
+	//m/d/yyyy
+	static int parseDateMdy(MappedByteBuffer buf, int from, int to){
+		int slash1 = indexOf(buf, from, to, '/');
+		int slash2 = indexOf(buf, slash1 + 1, to, '/');
+		if (slash2 >= to){
+			throw new IllegalArgumentException("bad date");
+		}
+		return epochDay(digits(buf, slash2 + 1, to), digits(buf, from, slash1), digits(buf, slash1 + 1, slash2));
+	}
+
+	//yyyy-mm-dd hh:mm[:ss]
+	static long parseTimestamp(MappedByteBuffer buf, int from, int to){
+		long day = parseDate(buf, from, to);
+		int at = from + 10;
+		while (at < to && (buf.get(at) == ' ' || buf.get(at) == 'T')) at++;
+		long seconds = 0;
+		if (at < to){
+			if ((to - at != 5 && (to - at != 8 || buf.get(at + 5) != ':')) || buf.get(at + 2) != ':'){
+				throw new IllegalArgumentException("bad time");
+			}
+			int hour = digits(buf, at, at + 2);
+			int minute = digits(buf, at + 3, at + 5);
+			int second = to - at == 8 ? digits(buf, at + 6, at + 8) : 0;
+			if (hour > 23 || minute > 59 || second > 59){
+				throw new IllegalArgumentException("bad time");
+			}
+			seconds = hour * 3600L + minute * 60L + second;
+		}
+		return (day * 86400L + seconds) * 1000L;
+	}
+
+	/*
+	 * Days since 1970-01-01 of a proleptic Gregorian date (the days_from_civil
+	 * algorithm), so no Calendar or LocalDate is created per value.
+	 */
+	static int epochDay(int year, int month, int day){
+		if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)){
+			throw new IllegalArgumentException("bad date");
+		}
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yoe = y - era * 400;
+		int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	static int daysInMonth(int year, int month){
+		if (month == 2){
+			boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+			return leap ? 29 : 28;
+		}
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	static long parseCode(MappedByteBuffer buf, int from, int to){
+		if (to - from > 8){
+			throw new IllegalArgumentException("code longer than 8 characters");
+		}
+		long code = 0;
+		for (int i = from; i < to; i++){
+			code = (code << 8) | (buf.get(i) & 0xFF);
+		}
+		return code;
+	}
+
+	/**
+	 * Method to turn a CODE value back into its characters.
+	 *
+	 * @param code the packed code
+	 * @return the code as text
+	 */
+	public static String decode(long code){
+		char[] chars = new char[8];
+		int n = 8;
+		while (code != 0){
+			chars[--n] = (char) (code & 0xFF);
+			code >>>= 8;
+		}
+		return new String(chars, n, 8 - n);
+	}
+
+	/**
+	 * Method to parse type names, e.g. "int,date,skip,code".
+	 *
+	 * @param names comma-separated type names
+	 * @return the types
+	 */
+	public static int[] types(String names){
+		String[] parts = names.split(",");
+		int[] types = new int[parts.length];
+		for (int i = 0; i < parts.length; i++){
+			int type = Arrays.asList(TYPE_NAMES).indexOf(parts[i].trim().toLowerCase());
+			if (type < 0){
+				throw new IllegalArgumentException("Unknown field type " + parts[i]);
+			}
+			types[i] = type;
+		}
+		return types;
+	}
+
+	/*
+	 * Times the parse of one file, e.g.
+	 * java MappedCsv ../data/flights.csv int,int,int,int,timestamp,timestamp,code,code 8
+	 */
+	public static void main(String[] args){
+		if (args.length < 2){
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + MappedCsv.class.getName () +
+					" <file> <type,type,...> [threads]   types: " + Arrays.toString(TYPE_NAMES));
+			return;
+		}//end if
+		try{
+			File file = new File(args[0]);
+			int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+			long start = System.nanoTime();
+			Columns columns = parse(file, types(args[1]), threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.println(String.format("%d rows, %.1f MB in %.3f s (%.1f MB/s) with %d threads", columns.getRowCount(),
+				file.length() / 1e6, seconds, file.length() / 1e6 / seconds, threads));
+		}catch (Exception e){
+			System.err.println ("Parse failed: " + e.getMessage ());
+		}
+	}
+}
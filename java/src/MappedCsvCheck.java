@@ -0,0 +1,219 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class defines the checks of the field parsers of MappedCsv, which
+ * parse bytes in place and so do not get the checking of Integer.parseInt
+ * or LocalDate: the bounds and signs of INT, the calendar of epochDay
+ * (compared with LocalDate day by day over several centuries), and the
+ * accepted and rejected forms of DATE_MDY and TIMESTAMP.  Each value is
+ * parsed out of a mapped file, as MappedCsv reads it.
+ *
+ * Usage: java MappedCsvCheck
+ *
+ */
+
+public class MappedCsvCheck{
+	//problems listed in full before the report only gives a count
+	static final int MAX_LISTED = 20;
+	//years compared with LocalDate
+	static final int FIRST_YEAR = 1600;
+	static final int LAST_YEAR = 2400;
+
+	private final File _scratch;
+	private int _checks = 0;
+	private int _failures = 0;
+	private final List<String> _problems = new ArrayList<String>();
+
+	public MappedCsvCheck(File scratch){
+		this._scratch = scratch;
+	}
+
+	/*
+	 * Maps a file holding just the value, so the parsers read it from
+	 * offset 0 to its length.
+	 */
+	private MappedByteBuffer map(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		RandomAccessFile raf = new RandomAccessFile(this._scratch, "rw");
+		try{
+			raf.setLength(0);
+			raf.write(bytes);
+			return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, bytes.length);
+		}finally{
+			raf.close();
+		}
+	}
+
+	//parses the value as the given MappedCsv type, boxed
+	private Object parse(int type, String value) throws IOException {
+		MappedByteBuffer buf = map(value);
+		int to = value.getBytes(StandardCharsets.UTF_8).length;
+		switch (type){
+			case MappedCsv.INT:
+				return MappedCsv.parseInt(buf, 0, to);
+			case MappedCsv.DATE_MDY:
+				return MappedCsv.parseDateMdy(buf, 0, to);
+			default:
+				return MappedCsv.parseTimestamp(buf, 0, to);
+		}
+	}
+
+	private void record(boolean ok, String problem){
+		this._checks++;
+		if (!ok){
+			this._failures++;
+			if (this._problems.size() < MAX_LISTED){
+				this._problems.add(problem);
+			}
+		}
+	}
+
+	private void accepts(int type, String value, Object expected) throws IOException {
+		Object actual;
+		try{
+			actual = parse(type, value);
+		}catch (IllegalArgumentException e){
+			actual = "rejected (" + e.getMessage() + ")";
+		}
+		record(expected.equals(actual), MappedCsv.TYPE_NAMES[type] + " \"" + value + "\": expected " + expected + " but got " + actual);
+	}
+
+	private void rejects(int type, String value) throws IOException {
+		Object actual = null;
+		try{
+			actual = parse(type, value);
+		}catch (IllegalArgumentException e){
+		}
+		record(actual == null, MappedCsv.TYPE_NAMES[type] + " \"" + value + "\": expected a rejection but got " + actual);
+	}
+
+	public void checkInts() throws IOException {
+		accepts(MappedCsv.INT, "0", 0);
+		accepts(MappedCsv.INT, "-0", 0);
+		accepts(MappedCsv.INT, "42", 42);
+		accepts(MappedCsv.INT, "-12", -12);
+		accepts(MappedCsv.INT, "007", 7);
+		accepts(MappedCsv.INT, "2147483647", Integer.MAX_VALUE);
+		accepts(MappedCsv.INT, "-2147483648", Integer.MIN_VALUE);
+		rejects(MappedCsv.INT, "2147483648");
+		rejects(MappedCsv.INT, "-2147483649");
+		rejects(MappedCsv.INT, "99999999999999999999");
+		rejects(MappedCsv.INT, "");
+		rejects(MappedCsv.INT, "-");
+		rejects(MappedCsv.INT, "+");
+		rejects(MappedCsv.INT, "--1");
+		rejects(MappedCsv.INT, "1-");
+		rejects(MappedCsv.INT, "1.5");
+		rejects(MappedCsv.INT, "x");
+	}
+
+	public void checkEpochDays(){
+		LocalDate date = LocalDate.of(FIRST_YEAR, 1, 1);
+		LocalDate end = LocalDate.of(LAST_YEAR + 1, 1, 1);
+		for (; date.isBefore(end); date = date.plusDays(1)){
+			long expected = date.toEpochDay();
+			long actual = MappedCsv.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+			record(expected == actual, "epochDay " + date + ": expected " + expected + " but got " + actual);
+		}
+		int[][] invalid = { { 1970, 0, 1 }, { 1970, 13, 1 }, { 1970, 1, 0 }, { 1970, 1, 32 }, { 1970, 4, 31 },
+			{ 1900, 2, 29 }, { 2014, 2, 29 }, { 2000, 2, 30 } };
+		for (int[] d : invalid){
+			boolean rejected = false;
+			try{
+				MappedCsv.epochDay(d[0], d[1], d[2]);
+			}catch (IllegalArgumentException e){
+				rejected = true;
+			}
+			record(rejected, "epochDay " + d[0] + "-" + d[1] + "-" + d[2] + ": expected a rejection");
+		}
+	}
+
+	public void checkDatesMdy() throws IOException {
+		accepts(MappedCsv.DATE_MDY, "2/8/1953", (int) LocalDate.of(1953, 2, 8).toEpochDay());
+		accepts(MappedCsv.DATE_MDY, "12/31/1969", -1);
+		accepts(MappedCsv.DATE_MDY, "1/1/1970", 0);
+		accepts(MappedCsv.DATE_MDY, "02/29/2000", (int) LocalDate.of(2000, 2, 29).toEpochDay());
+		rejects(MappedCsv.DATE_MDY, "2/29/1900");
+		rejects(MappedCsv.DATE_MDY, "13/1/2000");
+		rejects(MappedCsv.DATE_MDY, "2/8");
+		rejects(MappedCsv.DATE_MDY, "2/8/");
+		rejects(MappedCsv.DATE_MDY, "/8/1953");
+		rejects(MappedCsv.DATE_MDY, "2//1953");
+		rejects(MappedCsv.DATE_MDY, "2-8-1953");
+		rejects(MappedCsv.DATE_MDY, "2/8/1953x");
+		rejects(MappedCsv.DATE_MDY, "2/8/99999999999");
+		rejects(MappedCsv.DATE_MDY, "");
+	}
+
+	private static long millis(int year, int month, int day, int hour, int minute, int second){
+		return LocalDateTime.of(year, month, day, hour, minute, second).toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+	public void checkTimestamps() throws IOException {
+		accepts(MappedCsv.TIMESTAMP, "2014-05-01 16:45", millis(2014, 5, 1, 16, 45, 0));
+		accepts(MappedCsv.TIMESTAMP, "2014-05-01 16:45:30", millis(2014, 5, 1, 16, 45, 30));
+		accepts(MappedCsv.TIMESTAMP, "2014-05-01T16:45", millis(2014, 5, 1, 16, 45, 0));
+		accepts(MappedCsv.TIMESTAMP, "2014-05-01", millis(2014, 5, 1, 0, 0, 0));
+		accepts(MappedCsv.TIMESTAMP, "2014-05-01 00:00", millis(2014, 5, 1, 0, 0, 0));
+		accepts(MappedCsv.TIMESTAMP, "1969-12-31 23:59:59", -1000L);
+		accepts(MappedCsv.TIMESTAMP, "2016-02-29 12:00", millis(2016, 2, 29, 12, 0, 0));
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 1:45");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 16-45");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 24:00");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 16:60");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 16:45:60");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 16:45:3");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-01 16:45x");
+		rejects(MappedCsv.TIMESTAMP, "2014-02-30 16:45");
+		rejects(MappedCsv.TIMESTAMP, "2014/05/01 16:45");
+		rejects(MappedCsv.TIMESTAMP, "2014-05-1 16:45");
+		rejects(MappedCsv.TIMESTAMP, "");
+	}
+
+	/**
+	 * Method to print the outcome of the checks.
+	 *
+	 * @return whether every check passed
+	 */
+	public boolean report(){
+		for (String problem : this._problems){
+			System.out.println("  " + problem);
+		}
+		if (this._failures > this._problems.size()){
+			System.out.println("  ... and " + (this._failures - this._problems.size()) + " more");
+		}
+		System.out.println(this._checks + " checks, " + this._failures + " failed");
+		return this._failures == 0;
+	}
+
+	public static void main(String[] args){
+		File scratch = null;
+		boolean ok = false;
+		try{
+			scratch = File.createTempFile("mappedcsv", ".csv");
+			MappedCsvCheck check = new MappedCsvCheck(scratch);
+			check.checkInts();
+			check.checkEpochDays();
+			check.checkDatesMdy();
+			check.checkTimestamps();
+			ok = check.report();
+		}catch (IOException e){
+			System.err.println ("Unable to run the checks: " + e.getMessage ());
+		}finally{
+			if (scratch != null){
+				scratch.delete();
+			}
+		}
+		System.exit(ok ? 0 : 1);
+	}
+}
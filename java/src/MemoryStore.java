@@ -0,0 +1,554 @@
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class defines an embedded storage that runs the menu options with
+ * no database: the data/*.csv files are loaded into tables whose columns
+ * are primitive arrays (Strings for the text columns), with hash indexes
+ * on the primary keys and on the foreign key columns.  Every operation is
+ * a few index probes, so it answers in microseconds; this is the storage
+ * of the no-database mode (-Dstore=memory) and the reference StoreConformance
+ * compares PostgreSQL against.
+ *
+ * The constraints of create.sql are checked the way PostgreSQL checks them
+ * and reported with the same SQLStates.  Columns no operation reads (most
+ * of Customer, and Schedule) are not loaded.  Changes live as long as the
+ * process; nothing is written back to the files.  Operations are
+ * serialized on the store.
+ *
+ */
+
+public class MemoryStore implements AirlineStore{
+	static final String DEFAULT_DATA_DIR = "../data";
+
+	//int columns
+	static final int CUSTOMER_ID = 0;
+	static final int PILOT_ID = 0;
+	static final int PLANE_ID = 0, PLANE_AGE = 1, PLANE_SEATS = 2;
+	static final int TECHNICIAN_ID = 0;
+	static final int FLIGHT_FNUM = 0, FLIGHT_COST = 1, FLIGHT_SOLD = 2, FLIGHT_STOPS = 3, FLIGHT_DEPARTURE = 4, FLIGHT_ARRIVAL = 5;
+	static final int RESERVATION_RNUM = 0, RESERVATION_CID = 1, RESERVATION_FID = 2, RESERVATION_STATUS = 3;
+	static final int INFO_FIID = 0, INFO_FLIGHT = 1, INFO_PILOT = 2, INFO_PLANE = 3;
+	static final int REPAIR_RID = 0, REPAIR_DATE = 1, REPAIR_PILOT = 2, REPAIR_PLANE = 3, REPAIR_TECHNICIAN = 4;
+	//String columns
+	static final int PILOT_FULLNAME = 0, PILOT_NATIONALITY = 1;
+	static final int PLANE_MAKE = 0, PLANE_MODEL = 1;
+	static final int TECHNICIAN_NAME = 0;
+	static final int FLIGHT_ARRIVAL_AIRPORT = 0, FLIGHT_DEPARTURE_AIRPORT = 1;
+	static final int REPAIR_CODE = 0;
+
+	//status column value of a reservation without status
+	static final int NO_STATUS = -1;
+	static final String STATUSES = "CRW";	//in the order option 10 lists them
+
+	/**
+	 * This class defines a table: a row is an index into every column array.
+	 */
+	static final class Table{
+		final String name;
+		final int[][] ints;
+		final String[][] strings;
+		int size = 0;
+
+		Table(String name, int intColumns, int stringColumns){
+			this.name = name;
+			this.ints = new int[intColumns][64];
+			this.strings = new String[stringColumns][64];
+		}
+
+		//adds an empty row and returns it
+		int append(){
+			if (this.size == this.ints[0].length){
+				int n = Math.max(this.size * 2, 64);
+				for (int i = 0; i < this.ints.length; i++) this.ints[i] = Arrays.copyOf(this.ints[i], n);
+				for (int i = 0; i < this.strings.length; i++) this.strings[i] = Arrays.copyOf(this.strings[i], n);
+			}
+			return this.size++;
+		}
+	}
+
+	/**
+	 * This class defines a hash index on an int column.  Rows whose keys
+	 * fall in the same bucket are chained through next[], so an index costs
+	 * two int arrays and a lookup touches only the rows of its bucket.
+	 */
+	static final class HashIndex{
+		final Table table;
+		final int column;
+		private int[] heads;
+		private int[] next;
+
+		HashIndex(Table table, int column){
+			this.table = table;
+			this.column = column;
+			rebuild();
+		}
+
+		private static int hash(int key){
+			int h = key * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+
+		private void rebuild(){
+			int n = 16;
+			while (n < this.table.size * 2){
+				n <<= 1;
+			}
+			this.heads = new int[n];
+			Arrays.fill(this.heads, -1);
+			this.next = new int[Math.max(this.table.ints[this.column].length, 1)];
+			for (int row = this.table.size - 1; row >= 0; row--){
+				link(row);
+			}
+		}
+
+		private void link(int row){
+			int bucket = hash(this.table.ints[this.column][row]) & (this.heads.length - 1);
+			this.next[row] = this.heads[bucket];
+			this.heads[bucket] = row;
+		}
+
+		//indexes a row just appended to the table
+		void add(int row){
+			if (row >= this.next.length || this.table.size * 2 > this.heads.length){
+				rebuild();
+			}else{
+				link(row);
+			}
+		}
+
+		//the first row with the key, or -1
+		int first(int key){
+			return scan(this.heads[hash(key) & (this.heads.length - 1)], key);
+		}
+
+		//the row with the key after the given one, or -1
+		int next(int row, int key){
+			return scan(this.next[row], key);
+		}
+
+		private int scan(int row, int key){
+			int[] keys = this.table.ints[this.column];
+			while (row >= 0 && keys[row] != key){
+				row = this.next[row];
+			}
+			return row;
+		}
+	}
+
+	private final Table _customers = new Table("customer", 1, 0);
+	private final Table _pilots = new Table("pilot", 1, 2);
+	private final Table _planes = new Table("plane", 3, 2);
+	private final Table _technicians = new Table("technician", 1, 1);
+	private final Table _flights = new Table("flight", 6, 2);
+	private final Table _reservations = new Table("reservation", 4, 0);
+	private final Table _flightInfo = new Table("flightinfo", 4, 0);
+	private final Table _repairs = new Table("repairs", 5, 1);
+
+	//primary keys
+	private HashIndex _customerIds, _pilotIds, _planeIds, _technicianIds, _flightIds, _rnums, _fiids, _rids;
+	//foreign keys
+	private HashIndex _reservationsByCustomer, _reservationsByFlight;
+	private HashIndex _infoByFlight, _infoByPilot, _infoByPlane;
+	private HashIndex _repairsByPilot, _repairsByPlane, _repairsByTechnician;
+	//primary key index per IdDirectory table
+	private HashIndex[] _byDirectoryTable;
+
+	//next id per IdAllocator sequence
+	private final String[] _sequences = { IdAllocator.RESERVATION, IdAllocator.PLANE, IdAllocator.PILOT,
+		IdAllocator.FLIGHT_INFO, IdAllocator.TECHNICIAN };
+	private final int[] _nextIds = new int[this._sequences.length];
+
+	//Repairs is never written here, so its reports are computed once
+	private ResultTable _repairsPerPlane = null;
+	private ResultTable _repairsPerYear = null;
+	private final long _loadMillis;
+
+	/**
+	 * Loads the csv files of a directory.
+	 *
+	 * @param dataDir the directory holding customer.csv, flights.csv, ...
+	 * @throws java.io.IOException when a file can not be read or parsed
+	 */
+	public MemoryStore(File dataDir) throws IOException {
+		long start = System.currentTimeMillis();
+		int INT = MappedCsv.INT, DATE = MappedCsv.DATE, CHAR = MappedCsv.CHAR, STRING = MappedCsv.STRING;
+		load(new File(dataDir, "customer.csv"), this._customers, INT);
+		load(new File(dataDir, "pilots.csv"), this._pilots, INT, STRING, STRING);
+		load(new File(dataDir, "planes.csv"), this._planes, INT, STRING, STRING, INT, INT);
+		load(new File(dataDir, "technician.csv"), this._technicians, INT, STRING);
+		load(new File(dataDir, "flights.csv"), this._flights, INT, INT, INT, INT, DATE, DATE, STRING, STRING);
+		load(new File(dataDir, "reservation.csv"), this._reservations, INT, INT, INT, CHAR);
+		load(new File(dataDir, "flightinfo.csv"), this._flightInfo, INT, INT, INT, INT);
+		load(new File(dataDir, "repairs.csv"), this._repairs, INT, DATE, STRING, INT, INT, INT);
+
+		this._customerIds = new HashIndex(this._customers, CUSTOMER_ID);
+		this._pilotIds = new HashIndex(this._pilots, PILOT_ID);
+		this._planeIds = new HashIndex(this._planes, PLANE_ID);
+		this._technicianIds = new HashIndex(this._technicians, TECHNICIAN_ID);
+		this._flightIds = new HashIndex(this._flights, FLIGHT_FNUM);
+		this._rnums = new HashIndex(this._reservations, RESERVATION_RNUM);
+		this._fiids = new HashIndex(this._flightInfo, INFO_FIID);
+		this._rids = new HashIndex(this._repairs, REPAIR_RID);
+		this._reservationsByCustomer = new HashIndex(this._reservations, RESERVATION_CID);
+		this._reservationsByFlight = new HashIndex(this._reservations, RESERVATION_FID);
+		this._infoByFlight = new HashIndex(this._flightInfo, INFO_FLIGHT);
+		this._infoByPilot = new HashIndex(this._flightInfo, INFO_PILOT);
+		this._infoByPlane = new HashIndex(this._flightInfo, INFO_PLANE);
+		this._repairsByPilot = new HashIndex(this._repairs, REPAIR_PILOT);
+		this._repairsByPlane = new HashIndex(this._repairs, REPAIR_PLANE);
+		this._repairsByTechnician = new HashIndex(this._repairs, REPAIR_TECHNICIAN);
+		this._byDirectoryTable = new HashIndex[]{ this._customerIds, this._flightIds, this._planeIds, this._pilotIds, this._technicianIds };
+
+		Table[] sequenceTables = { this._reservations, this._planes, this._pilots, this._flightInfo, this._technicians };
+		for (int i = 0; i < sequenceTables.length; i++){
+			int max = 0;
+			for (int row = 0; row < sequenceTables[i].size; row++){
+				max = Math.max(max, sequenceTables[i].ints[0][row]);
+			}
+			this._nextIds[i] = max + 1;
+		}
+		this._loadMillis = System.currentTimeMillis() - start;
+	}
+
+	/*
+	 * Reads one csv file through MappedCsv.  The int and String columns of
+	 * the table are the INT/DATE/CHAR and STRING fields of types, in field
+	 * order; dates hold days since 1970-01-01 and a status the character
+	 * code of its one-letter value (NO_STATUS when empty).
+	 */
+	private static void load(File file, Table table, int... types) throws IOException {
+		MappedCsv.Columns columns = MappedCsv.parse(file, types);
+		int intColumn = 0;
+		int stringColumn = 0;
+		for (int field = 0; field < types.length; field++){
+			switch (types[field]){
+				case MappedCsv.INT: case MappedCsv.DATE: case MappedCsv.CHAR:
+					table.ints[intColumn++] = columns.getInts(field);
+					break;
+				case MappedCsv.STRING:
+					table.strings[stringColumn++] = columns.getStrings(field);
+					break;
+				default:
+					break;
+			}
+		}
+		table.size = columns.getRowCount();
+	}
+
+	public synchronized int nextId(String sequence) throws SQLException {
+		for (int i = 0; i < this._sequences.length; i++){
+			if (this._sequences[i].equals(sequence)){
+				return this._nextIds[i]++;
+			}
+		}
+		throw new SQLException("relation \"" + sequence + "\" does not exist", "42P01");
+	}
+
+	public synchronized boolean exists(int table, int id){
+		return this._byDirectoryTable[table].first(id) >= 0;
+	}
+
+	public synchronized void addPlane(int id, String make, String model, int age, int seats) throws SQLException {
+		checkLength(make, 32);
+		checkLength(model, 64);
+		checkDomain(age >= 0, "_year_1970");
+		checkDomain(seats > 0 && seats < 500, "_seats");
+		checkNotNull(make, "make", "plane");
+		checkNotNull(model, "model", "plane");
+		checkUnique(this._planeIds, id, "plane");
+		int row = this._planes.append();
+		this._planes.ints[PLANE_ID][row] = id;
+		this._planes.ints[PLANE_AGE][row] = age;
+		this._planes.ints[PLANE_SEATS][row] = seats;
+		this._planes.strings[PLANE_MAKE][row] = make;
+		this._planes.strings[PLANE_MODEL][row] = model;
+		this._planeIds.add(row);
+	}
+
+	public synchronized void addPilot(int id, String fullname, String nationality) throws SQLException {
+		checkLength(fullname, 128);
+		checkLength(nationality, 24);
+		checkUnique(this._pilotIds, id, "pilot");
+		int row = this._pilots.append();
+		this._pilots.ints[PILOT_ID][row] = id;
+		this._pilots.strings[PILOT_FULLNAME][row] = fullname;
+		this._pilots.strings[PILOT_NATIONALITY][row] = nationality;
+		this._pilotIds.add(row);
+	}
+
+	public synchronized void addFlightInfo(int fiid, int flightId, int pilotId, int planeId) throws SQLException {
+		checkUnique(this._fiids, fiid, "flightinfo");
+		checkReference(this._flightIds, flightId, "flightinfo", "flight_id", "flight", "fnum");
+		checkReference(this._pilotIds, pilotId, "flightinfo", "pilot_id", "pilot", "id");
+		checkReference(this._planeIds, planeId, "flightinfo", "plane_id", "plane", "id");
+		int row = this._flightInfo.append();
+		this._flightInfo.ints[INFO_FIID][row] = fiid;
+		this._flightInfo.ints[INFO_FLIGHT][row] = flightId;
+		this._flightInfo.ints[INFO_PILOT][row] = pilotId;
+		this._flightInfo.ints[INFO_PLANE][row] = planeId;
+		this._fiids.add(row);
+		this._infoByFlight.add(row);
+		this._infoByPilot.add(row);
+		this._infoByPlane.add(row);
+	}
+
+	public synchronized void addTechnician(int id, String fullName) throws SQLException {
+		checkLength(fullName, 128);
+		checkNotNull(fullName, "full_name", "technician");
+		checkUnique(this._technicianIds, id, "technician");
+		int row = this._technicians.append();
+		this._technicians.ints[TECHNICIAN_ID][row] = id;
+		this._technicians.strings[TECHNICIAN_NAME][row] = fullName;
+		this._technicianIds.add(row);
+	}
+
+	/*
+	 * Same outcome as BookingEngine.BOOK_SQL: a seat is taken if the plane
+	 * of the flight has one left, otherwise the customer is waitlisted or
+	 * turned away; nothing changes unless the reservation can be inserted.
+	 */
+	public synchronized BookingEngine.Booking book(int cid, int fnum, boolean waitlistIfFull) throws SQLException {
+		int flight = this._flightIds.first(fnum);
+		int capacity = flight < 0 ? -1 : capacityOf(fnum);
+		boolean seat = capacity >= 0 && capacity - this._flights.ints[FLIGHT_SOLD][flight] > 0;
+		if (!seat && !waitlistIfFull){
+			return null;
+		}
+		checkReference(this._customerIds, cid, "reservation", "cid", "customer", "id");
+		checkReference(this._flightIds, fnum, "reservation", "fid", "flight", "fnum");
+		if (seat){
+			this._flights.ints[FLIGHT_SOLD][flight]++;
+		}
+		char status = seat ? BookingEngine.RESERVED : BookingEngine.WAITLISTED;
+		int rnum = nextId(IdAllocator.RESERVATION);
+		int row = this._reservations.append();
+		this._reservations.ints[RESERVATION_RNUM][row] = rnum;
+		this._reservations.ints[RESERVATION_CID][row] = cid;
+		this._reservations.ints[RESERVATION_FID][row] = fnum;
+		this._reservations.ints[RESERVATION_STATUS][row] = status;
+		this._rnums.add(row);
+		this._reservationsByCustomer.add(row);
+		this._reservationsByFlight.add(row);
+		return new BookingEngine.Booking(rnum, cid, fnum, status);
+	}
+
+	public synchronized BookingEngine.Cancellation cancel(int rnum) throws SQLException {
+		int row = this._rnums.first(rnum);
+		return row < 0 ? null : cancel(this._reservations.ints[RESERVATION_FID][row], rnum, false);
+	}
+
+	public synchronized BookingEngine.Cancellation cancelFlight(int fnum) throws SQLException {
+		return cancel(fnum, 0, true);
+	}
+
+	/*
+	 * Cancels reservation rnum of a flight, or all of its reservations, and
+	 * promotes the oldest waitlisted ones into the free seats, as
+	 * BookingEngine does.
+	 */
+	private BookingEngine.Cancellation cancel(int fnum, int rnum, boolean all) throws SQLException {
+		int flight = this._flightIds.first(fnum);
+		if (flight < 0){
+			throw new SQLException("flight " + fnum + " does not exist", "P0002");
+		}
+		int[] status = this._reservations.ints[RESERVATION_STATUS];
+		int cancelled = 0;
+		int released = 0;
+		int waiting = 0;
+		for (int row = this._reservationsByFlight.first(fnum); row >= 0; row = this._reservationsByFlight.next(row, fnum)){
+			boolean live = status[row] == BookingEngine.RESERVED || status[row] == BookingEngine.WAITLISTED;
+			if (live && (all || this._reservations.ints[RESERVATION_RNUM][row] == rnum)){
+				released += status[row] == BookingEngine.RESERVED ? 1 : 0;
+				status[row] = BookingEngine.CANCELLED;
+				cancelled++;
+			}else if (status[row] == BookingEngine.WAITLISTED){
+				waiting++;
+			}
+		}
+
+		//rows of the waitlisted reservations, oldest first: rows are only ever
+		//appended, so row order is booking order (file order for loaded rows),
+		//as the booked column is in Reservation; rnums come in per-process blocks
+		int[] queue = new int[waiting];
+		int n = 0;
+		for (int row = this._reservationsByFlight.first(fnum); row >= 0; row = this._reservationsByFlight.next(row, fnum)){
+			if (status[row] == BookingEngine.WAITLISTED){
+				queue[n++] = row;
+			}
+		}
+		Arrays.sort(queue);
+		int capacity = capacityOf(fnum);
+		int sold = this._flights.ints[FLIGHT_SOLD][flight];
+		int seats = capacity < 0 ? 0 : Math.max(capacity - sold + released, 0);
+		List<BookingEngine.Booking> promoted = new ArrayList<BookingEngine.Booking>();
+		for (int i = 0; i < queue.length && i < seats; i++){
+			int row = queue[i];
+			status[row] = BookingEngine.RESERVED;
+			promoted.add(new BookingEngine.Booking(this._reservations.ints[RESERVATION_RNUM][row],
+				this._reservations.ints[RESERVATION_CID][row], fnum, BookingEngine.RESERVED));
+		}
+		this._flights.ints[FLIGHT_SOLD][flight] = Math.max(sold - released + promoted.size(), 0);
+		return new BookingEngine.Cancellation(fnum, cancelled, released, promoted);
+	}
+
+	//the seats of the plane of the flight's first FlightInfo row, or -1
+	private int capacityOf(int fnum){
+		int info = this._infoByFlight.first(fnum);
+		if (info < 0){
+			return -1;
+		}
+		int plane = this._planeIds.first(this._flightInfo.ints[INFO_PLANE][info]);
+		return plane < 0 ? -1 : this._planes.ints[PLANE_SEATS][plane];
+	}
+
+	public synchronized int getAvailableSeats(int fnum){
+		int flight = this._flightIds.first(fnum);
+		int capacity = flight < 0 ? -1 : capacityOf(fnum);
+		return capacity < 0 ? -1 : capacity - this._flights.ints[FLIGHT_SOLD][flight];
+	}
+
+	public synchronized ResultTable getRepairsPerPlane(){
+		if (this._repairsPerPlane == null){
+			this._repairsPerPlane = countRepairs(REPAIR_PLANE, "Plane ID#", false);
+		}
+		return this._repairsPerPlane;
+	}
+
+	public synchronized ResultTable getRepairsPerYear(){
+		if (this._repairsPerYear == null){
+			this._repairsPerYear = countRepairs(REPAIR_DATE, "Year", true);
+		}
+		return this._repairsPerYear;
+	}
+
+	/*
+	 * Counts repairs per value of a column (per year of the date column),
+	 * ordered by count, ties by value.
+	 */
+	private ResultTable countRepairs(int column, String label, boolean ascending){
+		int n = this._repairs.size;
+		int[] values = new int[n];
+		for (int row = 0; row < n; row++){
+			int v = this._repairs.ints[column][row];
+			values[row] = column == REPAIR_DATE ? LocalDate.ofEpochDay(v).getYear() : v;
+		}
+		Arrays.sort(values);
+		//(count, value) pairs packed so one sort orders them
+		long[] groups = new long[n];
+		int g = 0;
+		for (int i = 0; i < n; ){
+			int j = i;
+			while (j < n && values[j] == values[i]){
+				j++;
+			}
+			long count = ascending ? j - i : Integer.MAX_VALUE - (j - i);
+			groups[g++] = (count << 32) | (values[i] & 0xFFFFFFFFL);
+			i = j;
+		}
+		Arrays.sort(groups, 0, g);
+		ResultTable table = new ResultTable(new String[]{ "# Repairs", label }, new int[]{ ResultTable.INT, ResultTable.INT });
+		for (int i = 0; i < g; i++){
+			long count = groups[i] >>> 32;
+			table.addRow(ascending ? count : Integer.MAX_VALUE - count, (int) groups[i]);
+		}
+		return table;
+	}
+
+	public synchronized ResultTable getPassengersWithStatus(int fnum, String status){
+		int[] counts = countStatuses(fnum);
+		int i = status.length() == 1 ? STATUSES.indexOf(status.charAt(0)) : -1;
+		ResultTable table = new ResultTable(new String[]{ "# Customers with Status" }, new int[]{ ResultTable.INT });
+		table.addRow(i < 0 ? 0 : counts[i]);
+		return table;
+	}
+
+	public synchronized ResultTable getPassengersPerStatus(int fnum){
+		int[] counts = countStatuses(fnum);
+		ResultTable table = new ResultTable(new String[]{ "Status", "# Customers" }, new int[]{ ResultTable.DICT, ResultTable.INT });
+		for (int i = 0; i < STATUSES.length(); i++){
+			if (counts[i] > 0){
+				table.addRow(String.valueOf(STATUSES.charAt(i)), counts[i]);
+			}
+		}
+		return table;
+	}
+
+	//reservations of a flight per status, in the order of STATUSES
+	private int[] countStatuses(int fnum){
+		int[] counts = new int[STATUSES.length()];
+		for (int row = this._reservationsByFlight.first(fnum); row >= 0; row = this._reservationsByFlight.next(row, fnum)){
+			int status = this._reservations.ints[RESERVATION_STATUS][row];
+			int i = status == NO_STATUS ? -1 : STATUSES.indexOf((char) status);
+			if (i >= 0){
+				counts[i]++;
+			}
+		}
+		return counts;
+	}
+
+	private static void checkLength(String value, int length) throws SQLException {
+		//like CHAR(n), trailing spaces past the length are dropped rather than rejected
+		if (value != null && value.length() > length && value.substring(length).trim().length() > 0){
+			throw new SQLException("value too long for type character(" + length + ")", "22001");
+		}
+	}
+
+	private static void checkDomain(boolean valid, String domain) throws SQLException {
+		if (!valid){
+			throw new SQLException("value for domain " + domain + " violates check constraint \"" + domain + "_check\"", "23514");
+		}
+	}
+
+	private static void checkNotNull(String value, String column, String table) throws SQLException {
+		if (value == null){
+			throw new SQLException("null value in column \"" + column + "\" of relation \"" + table + "\" violates not-null constraint", "23502");
+		}
+	}
+
+	private static void checkUnique(HashIndex index, int id, String table) throws SQLException {
+		if (index.first(id) >= 0){
+			throw new SQLException("duplicate key value violates unique constraint \"" + table + "_pkey\"", "23505");
+		}
+	}
+
+	private static void checkReference(HashIndex index, int id, String table, String column, String referenced,
+									   String key) throws SQLException {
+		if (index.first(id) < 0){
+			throw new SQLException("insert or update on table \"" + table + "\" violates foreign key constraint \"" +
+				table + "_" + column + "_fkey\": Key (" + column + ")=(" + id + ") is not present in table \"" +
+				referenced + "\"", "23503");
+		}
+	}
+
+	/**
+	 * @param table one of the IdDirectory tables
+	 * @return the number of rows of the table
+	 */
+	public synchronized int getRowCount(int table){
+		return this._byDirectoryTable[table].table.size;
+	}
+
+	public void close(){
+	}
+
+	/**
+	 * Method to summarize the store on one line.
+	 *
+	 * @return the row count of every table and the load time
+	 */
+	public synchronized String getStatistics(){
+		StringBuilder sb = new StringBuilder();
+		Table[] tables = { this._customers, this._pilots, this._planes, this._technicians, this._flights,
+			this._reservations, this._flightInfo, this._repairs };
+		for (Table t : tables){
+			sb.append(t.name).append('=').append(t.size).append(' ');
+		}
+		return sb.append("loadMs=").append(this._loadMillis).toString();
+	}
+}
@@ -0,0 +1,110 @@
+import java.sql.Date;
+import java.sql.SQLException;
+
+/**
+ * This class defines the maintenance commands of the Reservation
+ * partitions, on top of the functions of create.sql:
+ *
+ *   status                      the partitioning of Reservation and its partitions with their bounds and sizes
+ *   hash <partitions>           rebuild Reservation hash partitioned on fid
+ *   range <flights>             rebuild Reservation range partitioned on fid, <flights> flight numbers per partition
+ *   none                        rebuild Reservation as a plain table
+ *   attach <table> <bound>      attach a table, e.g. attach reservation_p9 "FROM (9000) TO (10000)"
+ *   detach <partition>          detach a partition, which stays a table of its own
+ *   archive <yyyy-mm-dd>        detach the partitions of flights that all departed before the date
+ *   explain <fnum>              the plan of a per-flight lookup, which should read one partition
+ *
+ * Rebuilding copies every reservation and holds an exclusive lock on
+ * Reservation until it commits, so run it while nothing is booking.
+ *
+ * Usage: java ReservationPartitions <dbname> <port> <user> <command> [arguments]
+ *
+ */
+
+public class ReservationPartitions{
+	static final String MODE_SQL =
+		"SELECT coalesce((SELECT CASE partstrat WHEN 'h' THEN 'hash' WHEN 'r' THEN 'range' WHEN 'l' THEN 'list' END " +
+		"FROM pg_partitioned_table WHERE partrelid = 'reservation'::regclass), 'none') AS \"Partitioning\";";
+	static final String PARTITIONS_SQL =
+		"SELECT c.relname AS \"Partition\", pg_get_expr(c.relpartbound, c.oid) AS \"Bound\", " +
+			"c.reltuples::bigint AS \"Rows (estimate)\", pg_size_pretty(pg_total_relation_size(c.oid)) AS \"Size\" " +
+		"FROM pg_inherits I JOIN pg_class c ON c.oid = I.inhrelid " +
+		"WHERE I.inhparent = 'reservation'::regclass ORDER BY c.oid;";
+	static final String PARTITION_SQL = "SELECT reservation_partition(?, ?);";
+	static final String ATTACH_SQL = "SELECT reservation_attach(?::regclass, ?);";
+	static final String DETACH_SQL = "SELECT reservation_detach(?::regclass);";
+	static final String ARCHIVE_SQL = "SELECT reservation_archive(?) AS \"Detached\";";
+	//the lookup the per-flight queries of BookingEngine and the benchmarks make
+	static final String EXPLAIN_SQL = "EXPLAIN SELECT rnum, cid, status FROM Reservation WHERE fid = ?;";
+
+	private final DBproject _esql;
+
+	public ReservationPartitions(DBproject esql){
+		this._esql = esql;
+	}
+
+	/**
+	 * Method to run one command.
+	 *
+	 * @param command the command name
+	 * @param args its arguments
+	 * @throws java.sql.SQLException when the command failed
+	 */
+	public void run(String command, String[] args) throws SQLException {
+		if (command.equals("status")){
+			DBproject.printTable(this._esql.executeQueryAndReturnTable(MODE_SQL));
+			DBproject.printTable(this._esql.executeQueryAndReturnTable(PARTITIONS_SQL));
+		}else if (command.equals("hash") || command.equals("range")){
+			long start = System.nanoTime();
+			this._esql.executeQueryAndReturnTable(PARTITION_SQL, command, Integer.parseInt(argument(args, 0, command)));
+			System.out.println(String.format("Reservation rebuilt in %.2fs", (System.nanoTime() - start) / 1e9));
+		}else if (command.equals("none")){
+			long start = System.nanoTime();
+			this._esql.executeQueryAndReturnTable(PARTITION_SQL, command, 1);
+			System.out.println(String.format("Reservation rebuilt in %.2fs", (System.nanoTime() - start) / 1e9));
+		}else if (command.equals("attach")){
+			this._esql.executeQueryAndReturnTable(ATTACH_SQL, argument(args, 0, command), argument(args, 1, command));
+			System.out.println("Attached " + args[0]);
+		}else if (command.equals("detach")){
+			this._esql.executeQueryAndReturnTable(DETACH_SQL, argument(args, 0, command));
+			System.out.println("Detached " + args[0]);
+		}else if (command.equals("archive")){
+			DBproject.printTable(this._esql.executeQueryAndReturnTable(ARCHIVE_SQL, Date.valueOf(argument(args, 0, command))));
+		}else if (command.equals("explain")){
+			DBproject.printTable(this._esql.executeQueryAndReturnTable(EXPLAIN_SQL, Integer.parseInt(argument(args, 0, command))));
+		}else{
+			throw new IllegalArgumentException("Unknown command " + command);
+		}
+	}
+
+	private static String argument(String[] args, int i, String command){
+		if (i >= args.length){
+			throw new IllegalArgumentException(command + " needs " + (i + 1) + (i == 0 ? " argument" : " arguments"));
+		}
+		return args[i];
+	}
+
+	public static void main(String[] args){
+		if (args.length < 4){
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + ReservationPartitions.class.getName () +
+					" <dbname> <port> <user> status|hash <n>|range <n>|none|attach <table> <bound>|detach <table>|archive <date>|explain <fnum>");
+			return;
+		}//end if
+
+		DBproject esql = null;
+		try{
+			Class.forName("org.postgresql.Driver");
+			esql = new DBproject(args[0], args[1], args[2], "");
+			String[] rest = new String[args.length - 4];
+			System.arraycopy(args, 4, rest, 0, rest.length);
+			new ReservationPartitions(esql).run(args[3], rest);
+		}catch(Exception e){
+			System.err.println ("Partition command failed: " + e.getMessage ());
+		}finally{
+			if (esql != null){
+				esql.cleanup ();
+			}
+		}
+	}
+}
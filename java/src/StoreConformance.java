@@ -0,0 +1,296 @@
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class defines the conformance check of the storage backends: it
+ * runs the same operations on the PostgreSQL store and on a MemoryStore
+ * loaded from the csv files the database was created from, and reports
+ * every answer that differs.  Answers are compared by value; errors by
+ * SQLState; bookings by status, since the stores number reservations
+ * independently; and report rows that tie on the ORDER BY column in any
+ * order.
+ *
+ * The read checks probe every id of every table (and a few past the ends),
+ * the seats and passenger counts of every flight and both repair reports.
+ * The error checks insert rows that violate each constraint, which changes
+ * nothing.  The write checks (-writes) book seats, cancel reservations
+ * and a whole flight and add a plane in both stores, then read them back;
+ * they change the database, which should then be reloaded before the next
+ * run.
+ *
+ * Usage: java StoreConformance <dbname> <port> <user> [-data DIR] [-writes]
+ *
+ */
+
+public class StoreConformance{
+	//problems listed in full before the report only gives a count
+	static final int MAX_LISTED = 20;
+	//flights booked by the write checks
+	static final int BOOKED_FLIGHTS = 20;
+	static final String[] STATUSES = { "R", "W", "C" };
+	static final String[] TABLES = { "customer", "flight", "plane", "pilot", "technician" };
+
+	//the operations
+	static final int EXISTS = 0;
+	static final int SEATS = 1;
+	static final int PER_PLANE = 2;
+	static final int PER_YEAR = 3;
+	static final int WITH_STATUS = 4;
+	static final int PER_STATUS = 5;
+	static final int ADD_PLANE = 6;
+	static final int ADD_PILOT = 7;
+	static final int ADD_FLIGHT_INFO = 8;
+	static final int ADD_TECHNICIAN = 9;
+	static final int BOOK = 10;
+	static final int CANCEL = 11;
+	static final int CANCEL_FLIGHT = 12;
+
+	private final AirlineStore _expected;
+	private final MemoryStore _actual;
+	private int _checks = 0;
+	private final List<String> _problems = new ArrayList<String>();
+	private int _failures = 0;
+	//time spent in each store
+	private long _expectedNanos = 0;
+	private long _actualNanos = 0;
+
+	public StoreConformance(AirlineStore expected, MemoryStore actual){
+		this._expected = expected;
+		this._actual = actual;
+	}
+
+	/*
+	 * Runs an operation on both stores and records a problem if the
+	 * answers differ.
+	 */
+	private void check(String what, int op, Object... args){
+		long start = System.nanoTime();
+		String expected = answer(this._expected, op, args);
+		long middle = System.nanoTime();
+		String actual = answer(this._actual, op, args);
+		this._expectedNanos += middle - start;
+		this._actualNanos += System.nanoTime() - middle;
+		this._checks++;
+		if (!expected.equals(actual)){
+			this._failures++;
+			if (this._problems.size() < MAX_LISTED){
+				this._problems.add(what + ": expected " + expected + " but the memory store gave " + actual);
+			}
+		}
+	}
+
+	//the answer of one store, rendered so equal answers give equal strings
+	private static String answer(AirlineStore store, int op, Object[] a){
+		try{
+			switch (op){
+				case EXISTS: return String.valueOf(store.exists((Integer) a[0], (Integer) a[1]));
+				case SEATS: return String.valueOf(store.getAvailableSeats((Integer) a[0]));
+				case PER_PLANE: return render(store.getRepairsPerPlane(), 0);
+				case PER_YEAR: return render(store.getRepairsPerYear(), 0);
+				case WITH_STATUS: return render(store.getPassengersWithStatus((Integer) a[0], (String) a[1]), -1);
+				case PER_STATUS: return render(store.getPassengersPerStatus((Integer) a[0]), -1);
+				case ADD_PLANE:
+					store.addPlane((Integer) a[0], (String) a[1], (String) a[2], (Integer) a[3], (Integer) a[4]);
+					return "ok";
+				case ADD_PILOT:
+					store.addPilot((Integer) a[0], (String) a[1], (String) a[2]);
+					return "ok";
+				case ADD_FLIGHT_INFO:
+					store.addFlightInfo((Integer) a[0], (Integer) a[1], (Integer) a[2], (Integer) a[3]);
+					return "ok";
+				case ADD_TECHNICIAN:
+					store.addTechnician((Integer) a[0], (String) a[1]);
+					return "ok";
+				case BOOK:
+					BookingEngine.Booking booking = store.book((Integer) a[0], (Integer) a[1], (Boolean) a[2]);
+					return booking == null ? "not booked" : "booked " + booking.status;
+				case CANCEL: return render(store.cancel((Integer) a[0]));
+				case CANCEL_FLIGHT: return render(store.cancelFlight((Integer) a[0]));
+				default: throw new IllegalArgumentException("Unknown operation " + op);
+			}
+		}catch (SQLException e){
+			return "SQLSTATE " + e.getSQLState();
+		}
+	}
+
+	/*
+	 * Renders a table as its header and rows.  With an order column, rows
+	 * are listed sorted (rows tied on that column may come in any order)
+	 * after the sequence of values of the order column.
+	 */
+	static String render(ResultTable table, int orderColumn){
+		StringBuilder sb = new StringBuilder("[");
+		for (int col = 0; col < table.getColumnCount(); col++){
+			sb.append(col > 0 ? "|" : "").append(table.getColumnName(col));
+		}
+		String[] rows = new String[table.getRowCount()];
+		StringBuilder order = new StringBuilder();
+		for (int row = 0; row < rows.length; row++){
+			StringBuilder r = new StringBuilder();
+			for (int col = 0; col < table.getColumnCount(); col++){
+				r.append(col > 0 ? "|" : "").append(table.getString(row, col));
+			}
+			rows[row] = r.toString();
+			if (orderColumn >= 0){
+				order.append(table.getString(row, orderColumn)).append(',');
+			}
+		}
+		if (orderColumn >= 0){
+			Arrays.sort(rows);
+			sb.append(" order ").append(order);
+		}
+		for (String row : rows){
+			sb.append("; ").append(row);
+		}
+		return sb.append(']').toString();
+	}
+
+	//a cancellation by its counts and the reservations promoted
+	static String render(BookingEngine.Cancellation cancellation){
+		if (cancellation == null){
+			return "no reservation";
+		}
+		StringBuilder sb = new StringBuilder();
+		sb.append("flight ").append(cancellation.fnum).append(" cancelled ").append(cancellation.cancelled)
+			.append(" released ").append(cancellation.released).append(" promoted");
+		for (BookingEngine.Booking booking : cancellation.promoted){
+			sb.append(' ').append(booking.rnum).append('/').append(booking.cid);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Method to compare the answers of the read operations.
+	 */
+	public void checkReads(){
+		for (int table = 0; table < TABLES.length; table++){
+			int rows = this._actual.getRowCount(table);
+			for (int id = -1; id <= rows + 5; id++){
+				check(TABLES[table] + " " + id + " exists", EXISTS, table, id);
+			}
+		}
+		int flights = this._actual.getRowCount(IdDirectory.FLIGHT);
+		for (int fnum = -1; fnum <= flights + 5; fnum++){
+			check("seats of flight " + fnum, SEATS, fnum);
+			check("passengers per status of flight " + fnum, PER_STATUS, fnum);
+			for (String status : STATUSES){
+				check("passengers with status " + status + " on flight " + fnum, WITH_STATUS, fnum, status);
+			}
+		}
+		check("repairs per plane", PER_PLANE);
+		check("repairs per year", PER_YEAR);
+	}
+
+	/**
+	 * Method to compare the errors of inserts that violate a constraint.
+	 * None of them inserts anything.
+	 */
+	public void checkErrors(){
+		int unused = Integer.MAX_VALUE;
+		char[] longName = new char[200];
+		Arrays.fill(longName, 'x');
+		check("plane with a duplicate id", ADD_PLANE, 0, "Boeing", "747", 10, 300);
+		check("plane with no seats", ADD_PLANE, unused, "Boeing", "747", 10, 0);
+		check("plane with 500 seats", ADD_PLANE, unused, "Boeing", "747", 10, 500);
+		check("plane with a negative age", ADD_PLANE, unused, "Boeing", "747", -1, 300);
+		check("plane with a long make", ADD_PLANE, unused, new String(longName), "747", 10, 300);
+		check("plane without make", ADD_PLANE, unused, null, "747", 10, 300);
+		check("pilot with a duplicate id", ADD_PILOT, 0, "Jane Doe", "France");
+		check("pilot with a long nationality", ADD_PILOT, unused, "Jane Doe", new String(longName));
+		check("technician with a duplicate id", ADD_TECHNICIAN, 0, "John Doe");
+		check("technician without name", ADD_TECHNICIAN, unused, null);
+		check("flight info with a duplicate fiid", ADD_FLIGHT_INFO, 0, 0, 0, 0);
+		check("flight info of an unknown flight", ADD_FLIGHT_INFO, unused, -1, 0, 0);
+		check("flight info of an unknown pilot", ADD_FLIGHT_INFO, unused, 0, -1, 0);
+		check("flight info of an unknown plane", ADD_FLIGHT_INFO, unused, 0, 0, -1);
+		check("booking of an unknown customer", BOOK, -1, 0, true);
+		check("booking on an unknown flight", BOOK, 0, -1, true);
+		check("booking on an unknown flight without wait list", BOOK, 0, -1, false);
+	}
+
+	/**
+	 * Method to compare bookings, cancellations and an insert, and what they change.
+	 *
+	 * @throws java.sql.SQLException when no plane id can be reserved
+	 */
+	public void checkWrites() throws SQLException {
+		int customers = this._actual.getRowCount(IdDirectory.CUSTOMER);
+		for (int fnum = 0; fnum < BOOKED_FLIGHTS; fnum++){
+			check("booking on flight " + fnum, BOOK, fnum % customers, fnum, fnum % 2 == 0);
+			check("seats of flight " + fnum + " after booking", SEATS, fnum);
+			check("passengers per status of flight " + fnum + " after booking", PER_STATUS, fnum);
+		}
+		//the reservations of the data files are numbered the same in both stores
+		for (int rnum = -1; rnum < BOOKED_FLIGHTS; rnum++){
+			check("cancellation of reservation " + rnum, CANCEL, rnum);
+		}
+		check("cancellation of reservation 0 again", CANCEL, 0);
+		check("cancellation of flight " + BOOKED_FLIGHTS, CANCEL_FLIGHT, BOOKED_FLIGHTS);
+		check("cancellation of flight -1", CANCEL_FLIGHT, -1);
+		for (int fnum = 0; fnum <= BOOKED_FLIGHTS; fnum++){
+			check("seats of flight " + fnum + " after cancelling", SEATS, fnum);
+			check("passengers per status of flight " + fnum + " after cancelling", PER_STATUS, fnum);
+		}
+		int id = Math.max(this._expected.nextId(IdAllocator.PLANE), this._actual.nextId(IdAllocator.PLANE));
+		check("new plane " + id, ADD_PLANE, id, "Boeing", "747", 10, 300);
+		check("new plane " + id + " exists", EXISTS, IdDirectory.PLANE, id);
+	}
+
+	/**
+	 * Method to print the outcome.
+	 *
+	 * @return whether every answer matched
+	 */
+	public boolean report(){
+		System.out.println(String.format("%d checks, %d differences", this._checks, this._failures));
+		for (String problem : this._problems){
+			System.out.println("  " + problem);
+		}
+		if (this._failures > this._problems.size()){
+			System.out.println("  ... and " + (this._failures - this._problems.size()) + " more");
+		}
+		System.out.println(String.format("mean time per operation: postgresql %.1f us, memory %.1f us",
+			this._expectedNanos / 1e3 / Math.max(this._checks, 1), this._actualNanos / 1e3 / Math.max(this._checks, 1)));
+		return this._failures == 0;
+	}
+
+	public static void main(String[] args){
+		if (args.length < 3){
+			System.err.println (
+				"Usage: " + "java [-classpath <classpath>] " + StoreConformance.class.getName () +
+					" <dbname> <port> <user> [-data DIR] [-writes]");
+			return;
+		}//end if
+
+		DBproject esql = null;
+		boolean passed = false;
+		try{
+			String data = MemoryStore.DEFAULT_DATA_DIR;
+			boolean writes = false;
+			for (int i = 3; i < args.length; i++){
+				if (args[i].equals("-data")) data = args[++i];
+				else if (args[i].equals("-writes")) writes = true;
+				else throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+			Class.forName("org.postgresql.Driver");
+			esql = new DBproject(args[0], args[1], args[2], "");
+			StoreConformance conformance = new StoreConformance(esql.getStore(), new MemoryStore(new File(data)));
+			conformance.checkReads();
+			conformance.checkErrors();
+			if (writes){
+				conformance.checkWrites();
+			}
+			passed = conformance.report();
+		}catch(Exception e){
+			System.err.println ("Conformance check failed: " + e.getMessage ());
+		}finally{
+			if (esql != null){
+				esql.cleanup ();
+			}
+		}
+		System.exit(passed ? 0 : 1);
+	}
+}
@@ -0,0 +1,203 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * This class defines how the GUI runs database operations without blocking
+ * the Swing event dispatch thread (EDT).  Each operation is submitted under
+ * a key (e.g. its menu option) and runs on a small worker pool; its result
+ * is handed back on the EDT with SwingUtilities.invokeLater.
+ *
+ * Only one operation per key is in flight at a time, so clicking a button
+ * again while its query runs is ignored instead of queueing a duplicate.
+ * A running operation can be cancelled: each operation runs under its own
+ * CancelHandle, which every statement it executes is registered with, so
+ * cancelling cancels the statements of that operation (Statement.cancel)
+ * and fails the next one it starts, and nothing else on the worker.  The
+ * cancel requests are sent from a thread of their own, so a slow or
+ * unreachable server never freezes the window.
+ *
+ * submit(), cancel() and the listeners are used on the EDT only.
+ *
+ */
+
+public class AsyncRunner{
+	/**
+	 * This class defines one operation: run() is called on a worker thread,
+	 * the other methods on the EDT once it is over.
+	 */
+	public static abstract class Job<T>{
+		public abstract T run() throws Exception;
+
+		public abstract void done(T result);
+
+		public void failed(Exception e){
+			done(null);
+		}
+
+		public void cancelled(){
+		}
+	}
+
+	/**
+	 * This class defines a callback told, on the EDT, whenever an operation
+	 * starts or ends.
+	 */
+	public interface Listener{
+		void inFlightChanged(List<String> keys);
+	}
+
+	//an operation that was submitted and has not been handed back yet
+	private static class InFlight{
+		final CancelHandle handle = new CancelHandle();
+		volatile boolean cancelled = false;
+		volatile boolean started = false;
+	}
+
+	static final int DEFAULT_WORKERS = 4;
+
+	private final ExecutorService _workers;
+	//sends cancel requests, which open a connection to the server each
+	private final ExecutorService _canceller;
+	private final Map<String, InFlight> _inFlight = new LinkedHashMap<String, InFlight>();
+	private final List<Listener> _listeners = new ArrayList<Listener>();
+
+	public AsyncRunner(){
+		this(DEFAULT_WORKERS);
+	}
+
+	/**
+	 * Creates the runner and its worker pool.
+	 *
+	 * @param workers number of operations that may run at the same time
+	 */
+	public AsyncRunner(int workers){
+		final AtomicInteger count = new AtomicInteger();
+		this._workers = Executors.newFixedThreadPool(workers, new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "gui-worker-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		this._canceller = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "gui-cancel");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void addListener(Listener listener){
+		this._listeners.add(listener);
+	}
+
+	/**
+	 * Method to start an operation unless one with the same key is still in
+	 * flight.
+	 *
+	 * @param key identifies the operation, e.g. "Option #6"
+	 * @param job the operation
+	 * @return false if the request was coalesced into the running operation
+	 */
+	public <T> boolean submit(final String key, final Job<T> job){
+		if (this._inFlight.containsKey(key)){
+			return false;
+		}
+		final InFlight op = new InFlight();
+		this._inFlight.put(key, op);
+		fireChanged();
+		this._workers.execute(new Runnable(){
+			public void run(){
+				T result = null;
+				Exception error = null;
+				op.handle.enter();
+				try{
+					if (!op.cancelled){
+						op.started = true;
+						result = job.run();
+					}
+				}catch (Exception e){
+					error = e;
+				}finally{
+					op.handle.exit();
+				}
+				final T r = result;
+				final Exception x = error;
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						_inFlight.remove(key);
+						fireChanged();
+						//a cancel that came too late to stop the statement still reports its result
+						if (op.cancelled && (!op.started || (r == null && x == null) || x instanceof SQLException)){
+							job.cancelled();
+						}else if (x != null){
+							job.failed(x);
+						}else{
+							job.done(r);
+						}
+					}
+				});
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Method to cancel an operation.  An operation still waiting for a
+	 * worker never starts; a running one has its statement cancelled, and
+	 * its Job is told through cancelled() unless it completed anyway.
+	 *
+	 * @param key the key the operation was submitted under
+	 * @return whether an operation with that key was in flight
+	 */
+	public boolean cancel(final String key){
+		final InFlight op = this._inFlight.get(key);
+		if (op == null){
+			return false;
+		}
+		op.cancelled = true;
+		this._canceller.execute(new Runnable(){
+			public void run(){
+				try{
+					op.handle.cancel();
+				}catch (SQLException e){
+					System.err.println("Unable to cancel " + key + ": " + e.getMessage());
+				}
+			}
+		});
+		return true;
+	}
+
+	public boolean isInFlight(String key){
+		return this._inFlight.containsKey(key);
+	}
+
+	/**
+	 * Method to stop the workers, e.g. when the window closes.  Operations
+	 * still running are cancelled.
+	 */
+	public void shutdown(){
+		for (String key : new ArrayList<String>(this._inFlight.keySet())){
+			cancel(key);
+		}
+		this._workers.shutdown();
+		this._canceller.shutdown();
+	}
+
+	private void fireChanged(){
+		List<String> keys = new ArrayList<String>(this._inFlight.keySet());
+		for (Listener listener : this._listeners){
+			listener.inFlightChanged(keys);
+		}
+	}
+}
@@ -14,6 +14,7 @@
 import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -22,6 +23,7 @@ import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.Collection;
 import java.util.ArrayList;
 
 import java.io.IOException;
@@ -32,22 +34,48 @@ import java.io.IOException;
  *
  */
 
-public class DBproject{
-	//reference to physical database connection
-	private Connection _connection = null;
+public class DBproject implements Database{
+	//pool of physical database connections shared by all data-access methods
+	private ConnectionPool _pool = null;
+	//atomic booking path shared by the menu options
+	private BookingEngine _booking = new BookingEngine(this);
+	//in-memory seat inventory, kept current by the booking path
+	private InventoryCache _inventory = new InventoryCache(this);
+	//calls, rows and latency per data-access method and SQL string
+	private final QueryMetrics _metrics = new QueryMetrics();
+	//results of the report queries, invalidated by writes
+	private final ResultCache _cache = new ResultCache();
+	//primary keys handed out from blocks of the id sequences
+	private final IdAllocator _allocator = new IdAllocator(this);
+	//calls slower than -Dslowlog.threshold, with sampled plans; null when off
+	private SlowQueryLog _slowLog = null;
+	static final int POOL_MIN_SIZE = 2;
+	static final int POOL_MAX_SIZE = 16;
 	static BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
 	static DBproject esql;
+	//how long report results are served from the cache, and the tables they read
+	static final long REPORT_CACHE_TTL = 30000;
+	static final String[] REPAIRS_TABLES = { "repairs", "repairsperplane", "repairsperyear" };
+	static final String[] RESERVATION_TABLES = { "reservation", "flightstatuscounts" };
 	
 	public DBproject(String dbname, String dbport, String user, String passwd) throws SQLException {
 		System.out.print("Connecting to database...");
 		try{
-			// constructs the connection URL
-			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
+			// constructs the connection URL, asking for binary transfer of typed values
+			// and for batched inserts to be sent as multi-row inserts
+			String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname + "?binaryTransfer=true&reWriteBatchedInserts=true";
 			System.out.println ("Connection URL: " + url + "\n");
 			
-			// obtain a physical connection
-	        this._connection = DriverManager.getConnection(url, user, passwd);
+			// obtain a pool of physical connections
+	        this._pool = new ConnectionPool(url, user, passwd, POOL_MIN_SIZE, POOL_MAX_SIZE);
 	        System.out.println("Done");
+
+	        // publish the query statistics through JMX, and dump them if -Dmetrics.dump is set
+	        this._metrics.register ();
+	        this._metrics.startDumpFromProperties ();
+	        this._slowLog = SlowQueryLog.fromProperties (this._pool);
+	        // map the inventory snapshot shared with other processes, if -Dinventory.snapshot is set
+	        this._inventory.setSnapshotFile (InventorySnapshot.fromProperties ());
 		}catch(Exception e){
 			System.err.println("Error - Unable to Connect to Database: " + e.getMessage());
 	        System.out.println("Make sure you started postgres on this machine");
@@ -58,62 +86,105 @@ public class DBproject{
 	/**
 	 * Method to execute an update SQL statement.  Update SQL instructions
 	 * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
+	 * The statement is prepared once per connection and cached, so any
+	 * user input should be passed as parameters bound to '?' placeholders
+	 * instead of being concatenated into the SQL string.
 	 * 
 	 * @param sql the input SQL string
+	 * @param params values for the '?' placeholders, in order
+	 * @return the number of rows affected
 	 * @throws java.sql.SQLException when update failed
 	 * */
-	public void executeUpdate (String sql) throws SQLException { 
-		// creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeUpdate (String sql, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		PreparedStatement stmt = null;
+		try{
+			// fetches the cached prepared statement
+			stmt = this._pool.getStatementCache (conn).prepare (sql);
+			StatementCache.bind (stmt, params);
+			CancelHandle.started (stmt);
 
-		// issues the update instruction
-		stmt.executeUpdate (sql);
+			// issues the update instruction
+			int count = stmt.executeUpdate ();
+			rows = count;
 
-		// close the instruction
-	    stmt.close ();
+			// drops cached results that read the table just written
+			this._cache.written (sql);
+			return count;
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.UPDATE, sql, params, start, rows);
+		}
 	}//end executeUpdate
 
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and outputs the results to
-	 * standard out.
+	 * standard out.  Rows are read through a cursor DEFAULT_FETCH_SIZE at
+	 * a time, so large results are not held in memory.
 	 * 
 	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQueryAndPrintResult (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
-
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
-
-		/*
-		 *  obtains the metadata object for the returned result set.  The metadata
-		 *  contains row and column info.
-		 */
-		ResultSetMetaData rsmd = rs.getMetaData ();
-		int numCol = rsmd.getColumnCount ();
-		int rowCount = 0;
-		
-		//iterates through the result set and output them to standard out.
-		boolean outputHeader = true;
-		while (rs.next()){
-			if(outputHeader){
-				for(int i = 1; i <= numCol; i++){
-					System.out.print(rsmd.getColumnName(i) + "\t");
-			    }
-			    System.out.println();
-			    outputHeader = false;
+	public int executeQueryAndPrintResult (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		PreparedStatement stmt = null;
+		try{
+			// cursors only exist inside a transaction
+			conn.setAutoCommit (false);
+
+			// fetches the cached prepared statement
+			stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			CancelHandle.started (stmt);
+			stmt.setFetchSize (DEFAULT_FETCH_SIZE);
+
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
+
+			try{
+				/*
+				 *  obtains the metadata object for the returned result set.  The metadata
+				 *  contains row and column info.
+				 */
+				ResultSetMetaData rsmd = rs.getMetaData ();
+				int numCol = rsmd.getColumnCount ();
+				int rowCount = 0;
+			
+				//iterates through the result set and output them to standard out.
+				boolean outputHeader = true;
+				while (rs.next()){
+					if(outputHeader){
+						for(int i = 1; i <= numCol; i++){
+							System.out.print(rsmd.getColumnName(i) + "\t");
+					    }
+					    System.out.println();
+					    outputHeader = false;
+					}
+					for (int i=1; i<=numCol; ++i)
+						System.out.print (rs.getString (i) + "\t");
+					System.out.println ();
+					++rowCount;
+				}//end while
+				conn.commit ();
+				rows = rowCount;
+				return rowCount;
+			}finally{
+				rs.close ();
+				stmt.setFetchSize (0);
 			}
-			for (int i=1; i<=numCol; ++i)
-				System.out.print (rs.getString (i) + "\t");
-			System.out.println ();
-			++rowCount;
-		}//end while
-		stmt.close ();
-		return rowCount;
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.PRINT, query, params, start, rows);
+		}
 	}
 	
 	/**
@@ -122,66 +193,250 @@ public class DBproject{
 	 * a list of records. Each record in turn is a list of attribute values
 	 * 
 	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
 	 * @return the query result as a list of records
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException { 
-		//creates a statement object 
-		Statement stmt = this._connection.createStatement (); 
-		
-		//issues the query instruction 
-		ResultSet rs = stmt.executeQuery (query); 
-	 
-		/*
-		 * obtains the metadata object for the returned result set.  The metadata 
-		 * contains row and column info. 
-		*/ 
-		ResultSetMetaData rsmd = rs.getMetaData (); 
-		int numCol = rsmd.getColumnCount (); 
-		int rowCount = 0; 
-	 
-		//iterates through the result set and saves the data returned by the query. 
-		boolean outputHeader = false;
-		List<List<String>> result  = new ArrayList<List<String>>(); 
-		while (rs.next()){
-			List<String> record = new ArrayList<String>(); 
-			for (int i=1; i<=numCol; ++i) 
-				record.add(rs.getString (i)); 
-			result.add(record); 
-		}//end while 
-		stmt.close (); 
-		return result; 
+	public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		PreparedStatement stmt = null;
+		try{
+			// fetches the cached prepared statement
+			stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			CancelHandle.started (stmt);
+			
+			//issues the query instruction 
+			ResultSet rs = stmt.executeQuery (); 
+		 
+			try{
+				/*
+				 * obtains the metadata object for the returned result set.  The metadata 
+				 * contains row and column info. 
+				*/ 
+				ResultSetMetaData rsmd = rs.getMetaData (); 
+				int numCol = rsmd.getColumnCount (); 
+		 
+				//iterates through the result set and saves the data returned by the query. 
+				List<List<String>> result  = new ArrayList<List<String>>(); 
+				while (rs.next()){
+					List<String> record = new ArrayList<String>(); 
+					for (int i=1; i<=numCol; ++i) 
+						record.add(rs.getString (i)); 
+					result.add(record); 
+				}//end while 
+				rows = result.size ();
+				return result; 
+			}finally{
+				rs.close ();
+			}
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.RESULT, query, params, start, rows);
+		}
 	}//end executeQueryAndReturnResult
 	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
+	 * method issues the query to the DBMS and returns the results as a
+	 * typed, column-oriented table, see ResultTable.
+	 * 
+	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
+	 * @return the query result as a typed table
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultTable executeQueryAndReturnTable (String query, Object... params) throws SQLException { 
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		PreparedStatement stmt = null;
+		try{
+			// fetches the cached prepared statement
+			stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			CancelHandle.started (stmt);
+
+			ResultSet rs = stmt.executeQuery ();
+			try{
+				ResultTable result = ResultTable.read (rs);
+				rows = result.getRowCount ();
+				return result;
+			}finally{
+				rs.close ();
+			}
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.TABLE, query, params, start, rows);
+		}
+	}//end executeQueryAndReturnTable
+	
+	/**
+	 * Method to execute a report query (i.e. SELECT) through the result
+	 * cache, see ResultCache.  A cached result is returned without running
+	 * the query while it is younger than ttlMillis and none of its tables
+	 * has been written by this process since.
+	 * 
+	 * @param query the input query string
+	 * @param ttlMillis how long the result may be served from the cache
+	 * @param tables the tables whose writes change the result
+	 * @param params values for the '?' placeholders, in order
+	 * @return the query result as a typed table, shared with other callers
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public ResultTable executeCachedQuery (String query, long ttlMillis, String[] tables, Object... params) throws SQLException {
+		ResultCache.Key key = this._cache.key (query, params);
+		ResultTable result = this._cache.get (key);
+		if (result == null){
+			// read the table versions first, so a write during the query marks the result stale
+			long[] versions = this._cache.versions (tables);
+			result = this.executeQueryAndReturnTable (query, params);
+			this._cache.put (key, result, ttlMillis, tables, versions);
+		}//end if
+		return result;
+	}//end executeCachedQuery
+	
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * push each row to a handler as it arrives.  The query runs inside a
+	 * transaction with the given fetch size, so Postgres returns the rows
+	 * through a cursor and at most fetchSize rows are held in memory.
+	 * 
+	 * @param query the input query string
+	 * @param fetchSize number of rows fetched per round trip
+	 * @param handler the callback receiving each row
+	 * @param params values for the '?' placeholders, in order
+	 * @return the number of rows handed to the handler
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public int executeQueryAndStream (String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		PreparedStatement stmt = null;
+		try{
+			// cursors only exist inside a transaction
+			conn.setAutoCommit (false);
+
+			stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			CancelHandle.started (stmt);
+			stmt.setFetchSize (fetchSize);
+
+			int rowCount = 0;
+			ResultSet rs = stmt.executeQuery ();
+			try{
+				while (rs.next ()){
+					++rowCount;
+					if (!handler.handleRow (rs)){
+						break;
+					}
+				}//end while
+			}finally{
+				rs.close ();
+				stmt.setFetchSize (0);
+			}
+			conn.commit ();
+			rows = rowCount;
+			return rowCount;
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.STREAM, query, params, start, rows);
+		}
+	}//end executeQueryAndStream
+
+	/**
+	 * Method to execute an input query SQL instruction (i.e. SELECT) and
+	 * return a cursor over its rows.  Rows are fetched lazily fetchSize at a
+	 * time; the cursor keeps its connection until it is exhausted or closed.
+	 * 
+	 * @param query the input query string
+	 * @param fetchSize number of rows fetched per round trip
+	 * @param params values for the '?' placeholders, in order
+	 * @return the open cursor
+	 * @throws java.sql.SQLException when failed to execute the query
+	 */
+	public RowCursor openCursor (String query, int fetchSize, Object... params) throws SQLException {
+		Connection conn = this._pool.borrow ();
+		try{
+			// cursors only exist inside a transaction
+			conn.setAutoCommit (false);
+
+			PreparedStatement stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			stmt.setFetchSize (fetchSize);
+			return new RowCursor (this._pool, conn, stmt);
+		}catch (SQLException e){
+			// a no-op if the cursor already handed the connection back
+			this._pool.release (conn);
+			throw e;
+		}
+	}//end openCursor
+	
 	/**
 	 * Method to execute an input query SQL instruction (i.e. SELECT).  This
 	 * method issues the query to the DBMS and returns the number of results
 	 * 
 	 * @param query the input query string
+	 * @param params values for the '?' placeholders, in order
 	 * @return the number of rows returned
 	 * @throws java.sql.SQLException when failed to execute the query
 	 */
-	public int executeQuery (String query) throws SQLException {
-		//creates a statement object
-		Statement stmt = this._connection.createStatement ();
+	public int executeQuery (String query, Object... params) throws SQLException {
+		long start = System.nanoTime ();
+		long rows = -1;
+		Connection conn = this._pool.borrow ();
+		PreparedStatement stmt = null;
+		try{
+			// fetches the cached prepared statement
+			stmt = this._pool.getStatementCache (conn).prepare (query);
+			StatementCache.bind (stmt, params);
+			CancelHandle.started (stmt);
 
-		//issues the query instruction
-		ResultSet rs = stmt.executeQuery (query);
+			//issues the query instruction
+			ResultSet rs = stmt.executeQuery ();
 
-		int rowCount = 0;
+			try{
+				int rowCount = 0;
 
-		//iterates through the result set and count nuber of results.
-		if(rs.next()){
-			rowCount++;
-		}//end while
-		stmt.close ();
-		return rowCount;
+				//iterates through the result set and count nuber of results.
+				if(rs.next()){
+					rowCount++;
+				}//end while
+				rows = rowCount;
+				return rowCount;
+			}finally{
+				rs.close ();
+			}
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+			this.recorded (QueryMetrics.QUERY, query, params, start, rows);
+		}
 	}
 	
+	/*
+	 * Counts a finished call in the query statistics, and writes it to the
+	 * slow-query log if it took longer than the threshold.
+	 */
+	private void recorded (int operation, String sql, Object[] params, long start, long rows){
+		long nanos = this._metrics.record (operation, sql, start, rows);
+		if (this._slowLog != null && this._slowLog.isSlow (nanos)){
+			this._slowLog.log (QueryMetrics.OPERATIONS[operation], sql, params, nanos, rows);
+		}
+	}
+
 	/**
 	 * Method to fetch the last value from sequence. This
 	 * method issues the query to the DBMS and returns the current 
-	 * value of sequence used for autogenerated keys
+	 * value of sequence used for autogenerated keys.
+	 * Note that currval is per session, so with pooled connections this
+	 * only sees values produced on the connection it happens to borrow.
 	 * 
 	 * @param sequence name of the DB sequence
 	 * @return current value of a sequence
@@ -189,25 +444,108 @@ public class DBproject{
 	 */
 	
 	public int getCurrSeqVal(String sequence) throws SQLException {
-		Statement stmt = this._connection.createStatement ();
-		
-		ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-		if (rs.next()) return rs.getInt(1);
-		return -1;
+		Connection conn = this._pool.borrow ();
+		Statement stmt = null;
+		try{
+			stmt = conn.createStatement ();
+			CancelHandle.started (stmt);
+			try{
+				ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
+				return rs.next() ? rs.getInt(1) : -1;
+			}finally{
+				stmt.close ();
+			}
+		}finally{
+			CancelHandle.finished (stmt);
+			this._pool.release (conn);
+		}
+	}
+
+	/**
+	 * Method to fetch the engine that books seats, see BookingEngine.
+	 * 
+	 * @return the booking engine backed by this object
+	 */
+	public BookingEngine getBookingEngine(){
+		return this._booking;
+	}
+
+	/**
+	 * Method to book many seats at once, e.g. for a partner channel.
+	 * Requests are grouped by flight; each flight takes its seats with one
+	 * conditional UPDATE and inserts its reservations with one batch, see
+	 * BookingEngine.bookFlights.
+	 * 
+	 * @param requests the booking requests
+	 * @return one outcome per request, in the order of the requests
+	 * @throws java.sql.SQLException when no connection could be obtained
+	 */
+	public List<BookingEngine.Outcome> bookFlights(Collection<BookingEngine.BookingRequest> requests) throws SQLException {
+		return this._booking.bookFlights(requests);
+	}
+
+	/**
+	 * Method to fetch the in-memory seat inventory, see InventoryCache.
+	 * 
+	 * @return the seat inventory backed by this object
+	 */
+	public InventoryCache getInventory(){
+		return this._inventory;
+	}
+
+	/**
+	 * Method to fetch the connection pool, e.g. to read its statistics.
+	 * 
+	 * @return the connection pool backing this object
+	 */
+	public ConnectionPool getPool(){
+		return this._pool;
+	}
+
+	/**
+	 * Method to fetch the per-query statistics, see QueryMetrics.
+	 * 
+	 * @return the statistics of the data-access methods of this object
+	 */
+	public QueryMetrics getMetrics(){
+		return this._metrics;
 	}
 
 	/**
-	 * Method to close the physical connection if it is open.
+	 * Method to fetch the cache of report results, e.g. to invalidate it
+	 * after writing through another path.
+	 * 
+	 * @return the result cache of this object
+	 */
+	public ResultCache getResultCache(){
+		return this._cache;
+	}
+
+	/**
+	 * Method to fetch the allocator of primary keys, see IdAllocator.
+	 * 
+	 * @return the id allocator of this object
+	 */
+	public IdAllocator getIdAllocator(){
+		return this._allocator;
+	}
+
+	/**
+	 * Method to close the pooled physical connections if they are open.
 	 */
 	public void cleanup(){
 		try{
 			if(esql != null) {
 				System.out.print("Disconnecting from database...");
 				try{
-					if (this._connection != null){
-						this._connection.close ();
+					if (this._pool != null){
+						this._pool.close ();
 					}//end if
-				}catch (SQLException e){
+					this._metrics.close ();
+					if (this._slowLog != null){
+						this._slowLog.close ();
+					}//end if
+				}catch (Exception e){
 					 // ignored.
 				}//end try
 				System.out.println("Done\n\nBye !");
@@ -230,8 +568,6 @@ public class DBproject{
 			return;
 		}//end if
 		
-		DBproject esql = null;
-
 		GUI dbUI = new GUI();
 		dbUI.setVisible(true);
 		
@@ -252,7 +588,7 @@ public class DBproject{
 			String dbport = args[1];
 			String user = args[2];
 			
-			esql = new DBproject (dbname, dbport, user, "");
+			DBproject.esql = new DBproject (dbname, dbport, user, "");
 
 		}catch(Exception e){
 			System.err.println (e.getMessage ());
@@ -260,14 +596,12 @@ public class DBproject{
 	}
 
 	public static String AddPlane(String[] input){//1
-		String query = "INSERT INTO plane(id, make, model, age, seats) VALUES (" + input[0] + ", "
-																					+ "'" + input[1] + "', "
-																					+ "'" + input[2] + "', "
-																					+ "'" + input[3] + "', "
-																					+ input[4] + ");";
+		String query = "INSERT INTO plane(id, make, model, age, seats) VALUES (?, ?, ?, ?, ?);";
 		try{
-			esql.executeUpdate(query);
-			return new String("Success...!");
+			int id = esql.getIdAllocator().next(IdAllocator.PLANE);
+			esql.executeUpdate(query, id, input[0], input[1],
+								Integer.parseInt(input[2].trim()), Integer.parseInt(input[3].trim()));
+			return new String("Success...! (plane id " + id + ")");
 		}catch(SQLException se){
 			return "Failed.." + se.getMessage();
 		}catch(Exception e){
@@ -276,12 +610,11 @@ public class DBproject{
 	}
 
 	public static String AddPilot(String[] input) {//2
-		String query = "INSERT INTO pilot(id, fullname, nationality) VALUES (" + input[0] + ", "
-																					+ "'" + input[1] + "', "
-																					+ "'" + input[2] + "');";
+		String query = "INSERT INTO pilot(id, fullname, nationality) VALUES (?, ?, ?);";
 		try{
-			esql.executeUpdate(query);
-			return "Success...!";
+			int id = esql.getIdAllocator().next(IdAllocator.PILOT);
+			esql.executeUpdate(query, id, input[0], input[1]);
+			return "Success...! (pilot id " + id + ")";
 		}catch(SQLException se){
 			return "Failed.." + se.getMessage();
 		}catch(Exception e){
@@ -291,13 +624,12 @@ public class DBproject{
 
 	public static String AddFlight(String[] input) {//3
 		// Given a pilot, plane and flight, adds a flight in the DB -- details of fligth also?
-		String query = "INSERT INTO FlightInfo(fiid, flight_id, pilot_id, plane_id) VALUES (" + input[0] + ", "
-																					+ input[1] + ", "
-																					+ input[2] + ", "
-																					+ input[3] + ");";
+		String query = "INSERT INTO FlightInfo(fiid, flight_id, pilot_id, plane_id) VALUES (?, ?, ?, ?);";
 		try{
-			esql.executeUpdate(query);
-			return "Success...!";
+			int fiid = esql.getIdAllocator().next(IdAllocator.FLIGHT_INFO);
+			esql.executeUpdate(query, fiid, Integer.parseInt(input[0].trim()),
+								Integer.parseInt(input[1].trim()), Integer.parseInt(input[2].trim()));
+			return "Success...! (fiid " + fiid + ")";
 		}catch(SQLException se){
 			return "Failed.." + se.getMessage();
 		}catch(Exception e){
@@ -307,10 +639,11 @@ public class DBproject{
 
 	public static String AddTechnician(String[] input) {//4
 		
-		String query = "INSERT INTO technician(id, full_name) VALUES (" + input[0] + ", " + "'" + input[1] + "');";
+		String query = "INSERT INTO technician(id, full_name) VALUES (?, ?);";
 		try{
-			esql.executeUpdate(query);
-			return "Success...!";
+			int id = esql.getIdAllocator().next(IdAllocator.TECHNICIAN);
+			esql.executeUpdate(query, id, input[0]);
+			return "Success...! (technician id " + id + ")";
 		}catch(SQLException se){
 			return "Failed.." + se.getMessage();
 		}catch(Exception e){
@@ -319,10 +652,10 @@ public class DBproject{
 	}
 
 	public static String BookFlight(String[] input) {//5
-		String query = "INSERT INTO reservation(rnum, cid, fid) VALUES ( 10, " + input[0] + ", " + "'" + input[1] + "');";
 		try{
-			esql.executeUpdate(query);
-			return "Success...!";
+			// reserves a seat, or waitlists the customer if the flight is full
+			BookingEngine.Booking booking = esql.getBookingEngine().book(Integer.parseInt(input[0].trim()), Integer.parseInt(input[1].trim()), true);
+			return "Success...! " + booking;
 		}catch(SQLException se){
 			return "Failed.." + se.getMessage();
 		}catch(Exception e){
@@ -330,28 +663,27 @@ public class DBproject{
 		}
 	}
 
-	public static List<List<String>> ListNumberOfAvailableSeats() {//6
+	public static String ListNumberOfAvailableSeats(String input) {//6
 		// For flight number and date, find the number of availalbe seats (i.e. total plane capacity minus booked seats )
-		String query = "SELECT P.seats - F.num_sold FROM Flight F, FlightInfo FI, Plane P WHERE (F.fnum = FI.flight_id) AND (FI.plane_id = P.id) AND fnum = 10;";
-		List<List<String>> result  = new ArrayList<List<String>>();
 		try{
-			result = esql.executeQueryAndReturnResult(query);
-			return result;
+			int fnum = Integer.parseInt(input.trim());
+			//answered from the in-memory inventory (or the shared snapshot) instead of joining Flight, FlightInfo and Plane
+			int seatsLeft = esql.getInventory().getAvailableSeats(fnum);
+			return "Flight " + fnum + ": " + (seatsLeft < 0 ? "not found or no plane assigned" : seatsLeft + " seats left");
 		}catch(SQLException se){
-			System.out.println("Failed.");
-			return result;
+			return "Failed.." + se.getMessage();
 		}catch(Exception e){
-			System.out.println("Failed.");
-			return result;
+			return "Failed.." + e.getMessage();
 		}
 	}
 
-	public static List<List<String>> ListsTotalNumberOfRepairsPerPlane() {//7
-		List<List<String>> result  = new ArrayList<List<String>>();
+	public static ResultTable ListsTotalNumberOfRepairsPerPlane() {//7
+		ResultTable result = null;
 		// Count number of repairs per planes and list them in descending order
-		String query = "SELECT count(*) as \"# Repairs\", plane_id as \"Plane ID#\" FROM repairs group by \"Plane ID#\" ORDER BY \"# Repairs\" DESC";
+		//read from the RepairsPerPlane summary table maintained by triggers on Repairs
+		String query = "SELECT num_repairs as \"# Repairs\", plane_id as \"Plane ID#\" FROM RepairsPerPlane ORDER BY \"# Repairs\" DESC";
 		try{
-			result = esql.executeQueryAndReturnResult(query);
+			result = esql.executeCachedQuery(query, REPORT_CACHE_TTL, REPAIRS_TABLES);
 			return result;
 		}catch(SQLException se){
 			System.out.println("Failed.");
@@ -362,12 +694,13 @@ public class DBproject{
 		}
 	}
 
-	public static List<List<String>> ListTotalNumberOfRepairsPerYear() {//8
-		List<List<String>> result  = new ArrayList<List<String>>();
+	public static ResultTable ListTotalNumberOfRepairsPerYear() {//8
+		ResultTable result = null;
 		// Count repairs per year and list them in ascending order
-		String query = "SELECT count(*) as \"# Repairs\", extract(year from repair_date) as \"Year\" FROM repairs GROUP BY \"Year\" ORDER BY \"# Repairs\" ASC;";
+		//read from the RepairsPerYear summary table maintained by triggers on Repairs
+		String query = "SELECT num_repairs as \"# Repairs\", repair_year as \"Year\" FROM RepairsPerYear ORDER BY \"# Repairs\" ASC;";
 		try{
-			result = esql.executeQueryAndReturnResult(query);
+			result = esql.executeCachedQuery(query, REPORT_CACHE_TTL, REPAIRS_TABLES);
 			return result;
 		}catch(SQLException se){
 			System.out.println("Failed.");
@@ -378,13 +711,14 @@ public class DBproject{
 		}
 	}
 	
-	public static List<List<String>> FindPassengersCountWithStatus(String input){//9
-		List<List<String>> result  = new ArrayList<List<String>>();
+	public static ResultTable FindPassengersCountWithStatus(String input){//9
+		ResultTable result = null;
 
-		String query = "SELECT count(*) as \"# Customers with Status\" FROM reservation R WHERE R.fid = 10 AND R.status = \'" + input.toUpperCase() + "\';";
+		//read from the FlightStatusCounts table maintained by triggers on Reservation
+		String query = "SELECT coalesce((SELECT num FROM FlightStatusCounts WHERE fid = ? AND status = ?), 0) as \"# Customers with Status\";";
 		
 		try{
-			result = esql.executeQueryAndReturnResult(query);
+			result = esql.executeCachedQuery(query, REPORT_CACHE_TTL, RESERVATION_TABLES, 10, input.trim().toUpperCase());
 			return result;
 		}catch(SQLException se){
 			System.out.println("Failed.");
@@ -31,6 +31,11 @@ public class GUI extends javax.swing.JFrame {
             java.util.logging.Logger.getLogger(GUI.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
         }
         initComponents();
+        initBrowseTab();
+        optionButtons = new javax.swing.JButton[] {
+            jButton1, jButton2, jButton5, jButton6, jButton3, jButton4, jButton7, jButton8, jButton9, jButtonBrowse
+        };
+        initStatusBar();
     }
 
     /**
@@ -92,6 +97,8 @@ public class GUI extends javax.swing.JFrame {
         jTextField10 = new javax.swing.JTextField();
         jButton3 = new javax.swing.JButton();
         jPanel6 = new javax.swing.JPanel();
+        jLabel24 = new javax.swing.JLabel();
+        jTextField18 = new javax.swing.JTextField();
         jButton4 = new javax.swing.JButton();
         jPanel7 = new javax.swing.JPanel();
         jButton7 = new javax.swing.JButton();
@@ -119,6 +126,8 @@ public class GUI extends javax.swing.JFrame {
         jLabel1.setText("Add Plane");
 
         jLabel2.setText("Plane ID");
+        jTextField1.setEditable(false);
+        jTextField1.setToolTipText("assigned on insert");
 
         jButton1.setText("Insert");
         jButton1.addActionListener(new java.awt.event.ActionListener() {
@@ -201,6 +210,8 @@ public class GUI extends javax.swing.JFrame {
         jLabel7.setText("Add Pilot");
 
         jLabel8.setText("Pilot ID");
+        jTextField6.setEditable(false);
+        jTextField6.setToolTipText("assigned on insert");
 
         jLabel9.setText("Fullname");
 
@@ -266,6 +277,8 @@ public class GUI extends javax.swing.JFrame {
         jLabel14.setText("Add Flight");
 
         jLabel15.setText("FIID");
+        jTextField11.setEditable(false);
+        jTextField11.setToolTipText("assigned on insert");
 
         jLabel16.setText("Flight ID");
 
@@ -333,6 +346,8 @@ public class GUI extends javax.swing.JFrame {
         jLabel19.setText("Add Technician");
 
         jLabel20.setText("Technician ID");
+        jTextField15.setEditable(false);
+        jTextField15.setToolTipText("assigned on insert");
 
         jLabel21.setText("Fullname");
 
@@ -440,12 +455,25 @@ public class GUI extends javax.swing.JFrame {
 
         jTabbedPane1.addTab("#5", jPanel5);
 
+        jLabel24.setText("Flight Number");
+
         jButton4.setText("List Number of Available Seats");
+        jButton4.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jButton4ActionPerformed(evt);
+            }
+        });
 
         javax.swing.GroupLayout jPanel6Layout = new javax.swing.GroupLayout(jPanel6);
         jPanel6.setLayout(jPanel6Layout);
         jPanel6Layout.setHorizontalGroup(
             jPanel6Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
+            .addGroup(jPanel6Layout.createSequentialGroup()
+                .addContainerGap()
+                .addComponent(jLabel24)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(jTextField18)
+                .addContainerGap())
             .addGroup(jPanel6Layout.createSequentialGroup()
                 .addGap(86, 86, 86)
                 .addComponent(jButton4)
@@ -455,8 +483,12 @@ public class GUI extends javax.swing.JFrame {
             jPanel6Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
             .addGroup(jPanel6Layout.createSequentialGroup()
                 .addContainerGap()
+                .addGroup(jPanel6Layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(jLabel24)
+                    .addComponent(jTextField18, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(jButton4)
-                .addContainerGap(257, Short.MAX_VALUE))
+                .addContainerGap(225, Short.MAX_VALUE))
         );
 
         jTabbedPane1.addTab("#6", jPanel6);
@@ -577,125 +609,230 @@ public class GUI extends javax.swing.JFrame {
         }
         jTextArea1.setText(output);*/                               
 
+    /*
+     * Adds a tab that pages through every reservation, read from the
+     * database only as far as the table is scrolled.
+     */
+    private void initBrowseTab() {
+        jButtonBrowse = new javax.swing.JButton("Browse reservations");
+        jButtonBrowse.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jButtonBrowseActionPerformed(evt);
+            }
+        });
+        javax.swing.JPanel browsePanel = new javax.swing.JPanel(new java.awt.FlowLayout(java.awt.FlowLayout.CENTER, 10, 40));
+        browsePanel.add(new javax.swing.JLabel("All reservations, loaded a page at a time"));
+        browsePanel.add(jButtonBrowse);
+        jTabbedPane1.addTab("Browse", browsePanel);
+    }
+
+    /*
+     * Builds the status bar below the tabs: what is running, a busy
+     * indicator and a button cancelling the operation of the selected tab.
+     */
+    private void initStatusBar() {
+        statusLabel = new javax.swing.JLabel("Ready");
+        statusProgress = new javax.swing.JProgressBar();
+        statusProgress.setIndeterminate(true);
+        statusProgress.setVisible(false);
+        cancelButton = new javax.swing.JButton("Cancel");
+        cancelButton.setEnabled(false);
+        cancelButton.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                runner.cancel(selectedOption());
+            }
+        });
+        jTabbedPane1.addChangeListener(new javax.swing.event.ChangeListener() {
+            public void stateChanged(javax.swing.event.ChangeEvent evt) {
+                cancelButton.setEnabled(runner.isInFlight(selectedOption()));
+            }
+        });
+        runner.addListener(new AsyncRunner.Listener() {
+            public void inFlightChanged(List<String> keys) {
+                statusLabel.setText(keys.isEmpty() ? "Ready" : "Running: " + keys);
+                statusProgress.setVisible(!keys.isEmpty());
+                cancelButton.setEnabled(keys.contains(selectedOption()));
+                for (int i = 0; i < optionButtons.length; i++) {
+                    optionButtons[i].setEnabled(!keys.contains("Option #" + (i + 1)));
+                }
+            }
+        });
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            public void windowClosed(java.awt.event.WindowEvent evt) {
+                runner.shutdown();
+            }
+        });
+
+        javax.swing.JPanel statusBar = new javax.swing.JPanel(new java.awt.BorderLayout(8, 0));
+        statusBar.setBorder(javax.swing.BorderFactory.createEmptyBorder(2, 6, 2, 6));
+        statusBar.add(statusLabel, java.awt.BorderLayout.CENTER);
+        statusBar.add(statusProgress, java.awt.BorderLayout.WEST);
+        statusBar.add(cancelButton, java.awt.BorderLayout.EAST);
+        javax.swing.JSplitPane split = new javax.swing.JSplitPane(javax.swing.JSplitPane.VERTICAL_SPLIT,
+            getContentPane(), resultsPanel);
+        resultsPanel.setPreferredSize(new java.awt.Dimension(400, 240));
+        javax.swing.JPanel root = new javax.swing.JPanel(new java.awt.BorderLayout());
+        root.add(split, java.awt.BorderLayout.CENTER);
+        root.add(statusBar, java.awt.BorderLayout.SOUTH);
+        setContentPane(root);
+        pack();
+    }
+
+    private String selectedOption() {
+        return "Option #" + (jTabbedPane1.getSelectedIndex() + 1);
+    }
+
+    private void runOperation(String option, AsyncRunner.Job<?> job) {
+        if (!runner.submit(option, job)) {
+            statusLabel.setText(option + " is already running");
+        }
+    }
+
+    //an operation whose result is a message
+    private abstract class TextJob extends AsyncRunner.Job<String> {
+        public void done(String result) {
+            resultsPanel.showMessage(result);
+        }
+
+        public void failed(Exception e) {
+            resultsPanel.showMessage("Failed.." + e.getMessage());
+        }
+
+        public void cancelled() {
+            resultsPanel.showMessage("Cancelled.");
+        }
+    }
+
+    //an operation whose result is a table, null if it failed
+    private abstract class TableJob extends AsyncRunner.Job<ResultTable> {
+        private final String title;
+
+        TableJob(String title) {
+            this.title = title;
+        }
+
+        public void done(ResultTable input) {
+            if (input == null) {
+                resultsPanel.showMessage(title + ": Failed.");
+            } else {
+                resultsPanel.showTable(title, new ResultTableModel(input));
+            }
+        }
+
+        public void cancelled() {
+            resultsPanel.showMessage(title + ": Cancelled.");
+        }
+    }
+
     private void jButton1ActionPerformed(java.awt.event.ActionEvent evt) {   //1                                     
-        // TODO add your handling code here:
-        String[] params = new String[5];
-        params[0] = jTextField1.getText();
-        params[1] = jTextField2.getText();
-        params[2] = jTextField3.getText();
-        params[3] = jTextField4.getText();
-        params[4] = jTextField5.getText();
-        String result = DBproject.AddPlane(params);
-        Popup temp = new Popup(result);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        final String[] params = new String[4];
+        params[0] = jTextField2.getText();
+        params[1] = jTextField3.getText();
+        params[2] = jTextField4.getText();
+        params[3] = jTextField5.getText();
+        runOperation("Option #1", new TextJob() {
+            public String run() {
+                return DBproject.AddPlane(params);
+            }
+        });
     }                                                                  
 
     private void jButton2ActionPerformed(java.awt.event.ActionEvent evt) {       //2                                  
-        // TODO add your handling code here:
-        String[] params = new String[3];
-        params[0] = jTextField6.getText();
-        params[1] = jTextField7.getText();
+        final String[] params = new String[2];
+        params[0] = jTextField7.getText();
         params[1] = jTextField8.getText();
-        String result = DBproject.AddPilot(params);
-        Popup temp2 = new Popup(result);
-        temp2.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp2.setVisible(true);
+        runOperation("Option #2", new TextJob() {
+            public String run() {
+                return DBproject.AddPilot(params);
+            }
+        });
     }                                        
 
     private void jButton3ActionPerformed(java.awt.event.ActionEvent evt) { //5                                   
-        // TODO add your handling code here:
-        String[] params = new String[2];
+        final String[] params = new String[2];
         params[0] = jTextField9.getText();
         params[1] = jTextField10.getText();
-        String result = DBproject.BookFlight(params);
-        Popup temp = new Popup(result);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        runOperation("Option #5", new TextJob() {
+            public String run() {
+                return DBproject.BookFlight(params);
+            }
+        });
     }                                        
 
     private void jButton5ActionPerformed(java.awt.event.ActionEvent evt) { //3                                    
-        // TODO add your handling code here:
-        String[] params = new String[4];
-        params[0] = jTextField11.getText();
-        params[1] = jTextField12.getText();
-        params[2] = jTextField13.getText();
-        params[3] = jTextField14.getText();
-        String result = DBproject.AddFlight(params);
-        Popup temp = new Popup(result);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        final String[] params = new String[3];
+        params[0] = jTextField12.getText();
+        params[1] = jTextField13.getText();
+        params[2] = jTextField14.getText();
+        runOperation("Option #3", new TextJob() {
+            public String run() {
+                return DBproject.AddFlight(params);
+            }
+        });
     }              
     
     private void jButton6ActionPerformed(java.awt.event.ActionEvent evt) { //4                                        
-        // TODO add your handling code here:
-        String[] params = new String[2];
-        params[0] = jTextField15.getText();
-        params[1] = jTextField16.getText();
-        String result = DBproject.AddTechnician(params);
-        Popup temp = new Popup(result);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        final String[] params = new String[1];
+        params[0] = jTextField16.getText();
+        runOperation("Option #4", new TextJob() {
+            public String run() {
+                return DBproject.AddTechnician(params);
+            }
+        });
     }
 
     private void jButton4ActionPerformed(java.awt.event.ActionEvent evt) { //6                                    
-        // TODO add your handling code here:
-        List<List<String>> input = DBproject.ListNumberOfAvailableSeats();
-        String output = "";
-        for(int i = 0; i < input.size(); i++){
-            for (int j = 0; j < input.get(i).size(); j++){
-                output += input.get(i).get(j) + "\t\t";
+        final String fnum = jTextField18.getText();
+        runOperation("Option #6", new TextJob() {
+            public String run() {
+                return DBproject.ListNumberOfAvailableSeats(fnum);
             }
-            output += "\n";
-        }
-        Popup temp = new Popup(output);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        });
     }
 
     private void jButton7ActionPerformed(java.awt.event.ActionEvent evt) {  //7                                      
-        // TODO add your handling code here:
-        List<List<String>> input = DBproject.ListsTotalNumberOfRepairsPerPlane();
-        String output = "";
-        for(int i = 0; i < input.size(); i++){
-            for (int j = 0; j < input.get(i).size(); j++){
-                output += input.get(i).get(j) + "\t\t";
+        runOperation("Option #7", new TableJob("Repairs per plane") {
+            public ResultTable run() {
+                return DBproject.ListsTotalNumberOfRepairsPerPlane();
             }
-            output += "\n";
-        }
-        Popup temp = new Popup(output);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        });
     }                                       
     
     private void jButton8ActionPerformed(java.awt.event.ActionEvent evt) { //8                                     
-        // TODO add your handling code here:
-        List<List<String>> input = DBproject.ListTotalNumberOfRepairsPerYear();
-        String output = "";
-        for(int i = 0; i < input.size(); i++){
-            for (int j = 0; j < input.get(i).size(); j++){
-                output += input.get(i).get(j) + "\t\t";
+        runOperation("Option #8", new TableJob("Repairs per year") {
+            public ResultTable run() {
+                return DBproject.ListTotalNumberOfRepairsPerYear();
             }
-            output += "\n";
-        }
-        Popup temp = new Popup(output);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        });
     }     
 
     private void jButton9ActionPerformed(java.awt.event.ActionEvent evt) {    //9                                     
-        // TODO add your handling code here:
-        List<List<String>> input = DBproject.FindPassengersCountWithStatus(jTextField17.getText());
-        String output = "";
-        for(int i = 0; i < input.size(); i++){
-            for (int j = 0; j < input.get(i).size(); j++){
-                output += input.get(i).get(j) + "\t\t";
+        final String status = jTextField17.getText();
+        runOperation("Option #9", new TableJob("Passengers with status " + status.trim().toUpperCase()) {
+            public ResultTable run() {
+                return DBproject.FindPassengersCountWithStatus(status);
             }
-            output += "\n";
-        }
-        Popup temp = new Popup(output);
-        temp.setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
-        temp.setVisible(true);
+        });
+    }
+
+    private void jButtonBrowseActionPerformed(java.awt.event.ActionEvent evt) {
+        runOperation("Option #10", new AsyncRunner.Job<PagedTableModel>() {
+            public PagedTableModel run() throws Exception {
+                return PagedTableModel.open(DBproject.esql, "rnum, cid, fid, status", "Reservation", "rnum");
+            }
+
+            public void done(PagedTableModel model) {
+                resultsPanel.showTable("Reservations", model);
+            }
+
+            public void failed(Exception e) {
+                resultsPanel.showMessage("Failed.." + e.getMessage());
+            }
+
+            public void cancelled() {
+                resultsPanel.showMessage("Cancelled.");
+            }
+        });
     }                                    
 
     /**
@@ -730,6 +867,17 @@ public class GUI extends javax.swing.JFrame {
         });
     }*/
 
+    //runs the database operations off the event dispatch thread
+    private final AsyncRunner runner = new AsyncRunner();
+    //the button of each option, in option order
+    private javax.swing.JButton[] optionButtons;
+    private javax.swing.JLabel statusLabel;
+    private javax.swing.JProgressBar statusProgress;
+    private javax.swing.JButton cancelButton;
+    private javax.swing.JButton jButtonBrowse;
+    //shows the outcome of every operation
+    private final ResultsPanel resultsPanel = new ResultsPanel();
+
     // Variables declaration - do not modify                     
     private javax.swing.JButton jButton1;
     private javax.swing.JButton jButton2;
@@ -757,6 +905,7 @@ public class GUI extends javax.swing.JFrame {
     private javax.swing.JLabel jLabel21;
     private javax.swing.JLabel jLabel22;
     private javax.swing.JLabel jLabel23;
+    private javax.swing.JLabel jLabel24;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel4;
     private javax.swing.JLabel jLabel5;
@@ -783,6 +932,7 @@ public class GUI extends javax.swing.JFrame {
     private javax.swing.JTextField jTextField15;
     private javax.swing.JTextField jTextField16;
     private javax.swing.JTextField jTextField17;
+    private javax.swing.JTextField jTextField18;
     private javax.swing.JTextField jTextField2;
     private javax.swing.JTextField jTextField3;
     private javax.swing.JTextField jTextField4;
@@ -0,0 +1,277 @@
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class defines a JTable model over a result too large to hold in
+ * memory, e.g. every row of Reservation.  Rows are read a page at a time
+ * with keyset pagination: page p is the next PAGE_SIZE rows after the last
+ * sort key of page p-1, so reading it costs an index range scan no matter
+ * how deep into the result it is.  A page whose predecessor has not been
+ * read (the scrollbar was dragged far ahead) is read with OFFSET once, and
+ * its last key makes the pages after it cheap again.
+ *
+ * Only the MAX_PAGES most recently used pages are kept.  Pages are read on
+ * a background thread; until a page arrives its cells are empty, and the
+ * table repaints them when it does.
+ *
+ * Sorting by a column orders the query by (column, key), so the order is
+ * applied by the database and still only the visible pages are read.
+ * NULLs of the column (e.g. Reservation.status) sort last in both
+ * directions, and the keyset predicate lets them through explicitly, since
+ * a row comparison with a NULL is never true.
+ *
+ * A page that can not be read is remembered and not requested again until
+ * the order changes; getFailure() reports it, once, to the results panel.
+ *
+ * Everything except the page reads runs on the event dispatch thread.
+ *
+ */
+
+public class PagedTableModel extends AbstractTableModel{
+	private static final long serialVersionUID = 1L;
+
+	static final int PAGE_SIZE = 200;
+	static final int MAX_PAGES = 8;
+
+	private final DBproject _esql;
+	private final String _columns;
+	private final String _from;
+	private final String _key;
+	private final int _rowCount;
+	private final String[] _names;
+	private final int[] _types;
+	private final int _keyColumn;
+
+	private int _sortColumn = -1;
+	private boolean _ascending = true;
+	//bumped on every sort change, so pages read for an older order are dropped
+	private int _generation = 0;
+
+	//most recently used pages, by page number
+	private final LinkedHashMap<Integer, ResultTable> _pages = new LinkedHashMap<Integer, ResultTable>(16, 0.75f, true);
+	private final Map<Integer, Boolean> _loading = new ConcurrentHashMap<Integer, Boolean>();
+	//sort key and row key of the last row of each page read so far
+	private final Map<Integer, Object[]> _lastKeys = new ConcurrentHashMap<Integer, Object[]>();
+	//pages whose read failed, with the error; only touched on the event dispatch thread
+	private final Map<Integer, String> _failed = new HashMap<Integer, String>();
+	private String _failure = null;
+	private final ExecutorService _reader;
+
+	private PagedTableModel(DBproject esql, String columns, String from, String key, int rowCount, ResultTable first){
+		this._esql = esql;
+		this._columns = columns;
+		this._from = from;
+		this._key = key;
+		this._rowCount = rowCount;
+		this._names = new String[first.getColumnCount()];
+		this._types = new int[first.getColumnCount()];
+		int keyColumn = -1;
+		for (int i = 0; i < this._names.length; i++){
+			this._names[i] = first.getColumnName(i);
+			this._types[i] = first.getColumnType(i);
+			if (this._names[i].equalsIgnoreCase(key)){
+				keyColumn = i;
+			}
+		}
+		if (keyColumn < 0){
+			throw new IllegalArgumentException("The key column " + key + " must be one of the selected columns");
+		}
+		this._keyColumn = keyColumn;
+		this._reader = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "page-reader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		storePage(0, first);
+	}
+
+	/**
+	 * Method to open a paged view of a table.  It counts the rows and reads
+	 * the first page, so it should be called off the event dispatch thread.
+	 *
+	 * @param esql the database
+	 * @param columns the select list, e.g. "rnum, cid, fid, status"
+	 * @param from the table to read
+	 * @param key a unique column of the select list, used to order and page the rows
+	 * @return the model, showing the rows ordered by key
+	 * @throws java.sql.SQLException when the count or the first page can not be read
+	 */
+	public static PagedTableModel open(DBproject esql, String columns, String from, String key) throws SQLException {
+		ResultTable count = esql.executeQueryAndReturnTable("SELECT count(*) FROM " + from + ";");
+		ResultTable first = esql.executeQueryAndReturnTable(
+			"SELECT " + columns + " FROM " + from + " ORDER BY " + key + " LIMIT ?;", PAGE_SIZE);
+		return new PagedTableModel(esql, columns, from, key, count.getInt(0, 0), first);
+	}
+
+	public int getRowCount(){
+		return this._rowCount;
+	}
+
+	public int getColumnCount(){
+		return this._names.length;
+	}
+
+	public String getColumnName(int col){
+		String name = this._names[col];
+		if (col == this._sortColumn){
+			return name + (this._ascending ? " (asc)" : " (desc)");
+		}
+		return name;
+	}
+
+	public Class<?> getColumnClass(int col){
+		return ResultTableModel.classOf(this._types[col]);
+	}
+
+	public Object getValueAt(int row, int col){
+		int page = row / PAGE_SIZE;
+		ResultTable t = this._pages.get(page);
+		if (t == null){
+			if (!this._failed.containsKey(page)){
+				requestPage(page);
+			}
+			return null;
+		}
+		int i = row % PAGE_SIZE;
+		return i < t.getRowCount() ? ResultTableModel.valueOf(t, i, col) : null;
+	}
+
+	/**
+	 * Method to fetch the error of the last page read that failed, which
+	 * is reported once: the page is not read again until the order changes.
+	 *
+	 * @return the error, or null if every page read so far succeeded
+	 */
+	public String getFailure(){
+		return this._failure;
+	}
+
+	/**
+	 * Method to order the rows by a column, or reverse the order if they
+	 * already are.  The pages read so far are dropped and the visible ones
+	 * are read again in the new order.
+	 *
+	 * @param col zero-based column index
+	 */
+	public void sortBy(int col){
+		if (col == this._sortColumn){
+			this._ascending = !this._ascending;
+		}else{
+			this._sortColumn = col;
+			this._ascending = true;
+		}
+		this._generation++;
+		this._pages.clear();
+		this._lastKeys.clear();
+		this._loading.clear();
+		this._failed.clear();
+		this._failure = null;
+		fireTableStructureChanged();
+	}
+
+	/**
+	 * Method to stop the page reader once the model is no longer shown.
+	 */
+	public void close(){
+		this._reader.shutdownNow();
+	}
+
+	private void requestPage(final int page){
+		if (this._loading.put(page, Boolean.TRUE) != null){
+			return;
+		}
+		final int generation = this._generation;
+		final int sortColumn = this._sortColumn;
+		final boolean ascending = this._ascending;
+		this._reader.execute(new Runnable(){
+			public void run(){
+				ResultTable t = null;
+				String error = null;
+				try{
+					t = readPage(page, sortColumn, ascending);
+				}catch (SQLException e){
+					error = "unable to read rows " + (page * PAGE_SIZE + 1) + " to " + ((page + 1) * PAGE_SIZE) + ": " + e.getMessage();
+				}
+				final ResultTable result = t;
+				final String failure = error;
+				SwingUtilities.invokeLater(new Runnable(){
+					public void run(){
+						if (generation != _generation){
+							return;
+						}
+						_loading.remove(page);
+						if (result != null){
+							storePage(page, result);
+						}else{
+							_failed.put(page, failure);
+							_failure = failure;
+						}
+						int firstRow = page * PAGE_SIZE;
+						fireTableRowsUpdated(firstRow, Math.min(firstRow + PAGE_SIZE, _rowCount) - 1);
+					}
+				});
+			}
+		});
+	}
+
+	/*
+	 * Runs on the page reader: builds the keyset (or OFFSET) query for one
+	 * page in the given order.
+	 */
+	private ResultTable readPage(int page, int sortColumn, boolean ascending) throws SQLException {
+		String dir = ascending ? "" : " DESC";
+		String order = sortColumn < 0 || sortColumn == this._keyColumn
+			? this._key + dir
+			: this._names[sortColumn] + dir + " NULLS LAST, " + this._key + dir;
+		String select = "SELECT " + this._columns + " FROM " + this._from;
+		Object[] after = page == 0 ? null : this._lastKeys.get(page - 1);
+		if (page == 0){
+			return this._esql.executeQueryAndReturnTable(select + " ORDER BY " + order + " LIMIT ?;", PAGE_SIZE);
+		}
+		if (after == null){
+			return this._esql.executeQueryAndReturnTable(select + " ORDER BY " + order + " LIMIT ? OFFSET ?;",
+				PAGE_SIZE, page * PAGE_SIZE);
+		}
+		String op = ascending ? ">" : "<";
+		if (sortColumn < 0 || sortColumn == this._keyColumn){
+			return this._esql.executeQueryAndReturnTable(select + " WHERE " + this._key + " " + op + " ? ORDER BY " + order + " LIMIT ?;",
+				after[1], PAGE_SIZE);
+		}
+		String column = this._names[sortColumn];
+		if (after[0] == null){
+			//already among the NULLs, which come last
+			return this._esql.executeQueryAndReturnTable(
+				select + " WHERE " + column + " IS NULL AND " + this._key + " " + op + " ? ORDER BY " + order + " LIMIT ?;",
+				after[1], PAGE_SIZE);
+		}
+		return this._esql.executeQueryAndReturnTable(
+			select + " WHERE ((" + column + ", " + this._key + ") " + op + " (?, ?) OR " + column + " IS NULL) ORDER BY " + order + " LIMIT ?;",
+			after[0], after[1], PAGE_SIZE);
+	}
+
+	private void storePage(int page, ResultTable t){
+		this._pages.put(page, t);
+		int last = t.getRowCount() - 1;
+		if (last >= 0){
+			Object sortValue = this._sortColumn < 0 ? null : ResultTableModel.valueOf(t, last, this._sortColumn);
+			this._lastKeys.put(page, new Object[]{ sortValue, ResultTableModel.valueOf(t, last, this._keyColumn) });
+		}
+		Iterator<Integer> it = this._pages.keySet().iterator();
+		while (this._pages.size() > MAX_PAGES && it.hasNext()){
+			it.next();
+			it.remove();
+		}
+	}
+}
@@ -0,0 +1,76 @@
+import java.sql.Timestamp;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * This class defines a JTable model over a ResultTable that is already in
+ * memory.  Values are handed to the table with their SQL type (Integer,
+ * Long, Double, Timestamp or String), so a TableRowSorter sorts numbers
+ * and dates by value and no query has to be re-run to change the order.
+ *
+ */
+
+public class ResultTableModel extends AbstractTableModel{
+	private static final long serialVersionUID = 1L;
+
+	private final ResultTable _table;
+
+	public ResultTableModel(ResultTable table){
+		this._table = table;
+	}
+
+	public int getRowCount(){
+		return this._table.getRowCount();
+	}
+
+	public int getColumnCount(){
+		return this._table.getColumnCount();
+	}
+
+	public String getColumnName(int col){
+		return this._table.getColumnName(col);
+	}
+
+	public Class<?> getColumnClass(int col){
+		return classOf(this._table.getColumnType(col));
+	}
+
+	public Object getValueAt(int row, int col){
+		return valueOf(this._table, row, col);
+	}
+
+	/**
+	 * @param type one of the ResultTable column types
+	 * @return the Java class values of that type are presented as
+	 */
+	static Class<?> classOf(int type){
+		switch (type){
+			case ResultTable.INT: return Integer.class;
+			case ResultTable.LONG: return Long.class;
+			case ResultTable.DOUBLE: return Double.class;
+			case ResultTable.DATE: return Timestamp.class;
+			default: return String.class;
+		}
+	}
+
+	/**
+	 * Method to box one value of a ResultTable with its SQL type.
+	 *
+	 * @param table the result
+	 * @param row zero-based row index
+	 * @param col zero-based column index
+	 * @return the value, null for NULL
+	 */
+	static Object valueOf(ResultTable table, int row, int col){
+		if (table.isNull(row, col)){
+			return null;
+		}
+		switch (table.getColumnType(col)){
+			case ResultTable.INT: return table.getInt(row, col);
+			case ResultTable.LONG: return table.getLong(row, col);
+			case ResultTable.DOUBLE: return table.getDouble(row, col);
+			case ResultTable.DATE: return new Timestamp(table.getDate(row, col));
+			default: return table.getString(row, col);
+		}
+	}
+}
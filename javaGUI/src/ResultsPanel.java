@@ -0,0 +1,95 @@
+import java.awt.BorderLayout;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.table.TableModel;
+
+/**
+ * This class defines the results area of the GUI: a message line above a
+ * JTable.  The same panel shows the outcome of every operation, instead of
+ * a new window per click.
+ *
+ * Results held in memory (ResultTableModel) are sorted by the table's own
+ * row sorter when a column header is clicked.  Paged results
+ * (PagedTableModel) are sorted by the database, one page at a time.  The
+ * JTable only asks the model for the rows it paints, so a paged result of
+ * any size costs the visible pages.
+ *
+ */
+
+public class ResultsPanel extends JPanel{
+	private static final long serialVersionUID = 1L;
+
+	private final JLabel _message = new JLabel(" ");
+	private final JTable _table = new JTable();
+	private TableModel _model = null;
+
+	public ResultsPanel(){
+		super(new BorderLayout());
+		this._message.setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
+		this._table.setFillsViewportHeight(true);
+		this._table.getTableHeader().addMouseListener(new MouseAdapter(){
+			public void mouseClicked(MouseEvent e){
+				if (_model instanceof PagedTableModel){
+					int col = _table.convertColumnIndexToModel(_table.columnAtPoint(e.getPoint()));
+					if (col >= 0){
+						((PagedTableModel) _model).sortBy(col);
+					}
+				}
+			}
+		});
+		add(this._message, BorderLayout.NORTH);
+		add(new JScrollPane(this._table), BorderLayout.CENTER);
+	}
+
+	/**
+	 * Method to show a message and clear the table.
+	 *
+	 * @param text e.g. the outcome of an insert
+	 */
+	public void showMessage(String text){
+		setModel(new DefaultTableModel(), false);
+		this._message.setText(text);
+	}
+
+	/**
+	 * Method to show a result.
+	 *
+	 * @param title the line shown above the table, followed by the row count
+	 * @param model a ResultTableModel or PagedTableModel
+	 */
+	public void showTable(final String title, TableModel model){
+		setModel(model, !(model instanceof PagedTableModel));
+		final String text = title + " (" + model.getRowCount() + " rows)";
+		this._message.setText(text);
+		if (model instanceof PagedTableModel){
+			//a page that can not be read shows its error once, above the table
+			final PagedTableModel paged = (PagedTableModel) model;
+			paged.addTableModelListener(new TableModelListener(){
+				public void tableChanged(TableModelEvent e){
+					if (_model == paged){
+						_message.setText(paged.getFailure() == null ? text : text + ": " + paged.getFailure());
+					}
+				}
+			});
+		}
+	}
+
+	private void setModel(TableModel model, boolean sortInMemory){
+		if (this._model instanceof PagedTableModel){
+			((PagedTableModel) this._model).close();
+		}
+		this._model = model;
+		this._table.setRowSorter(null);
+		this._table.setModel(model);
+		this._table.setAutoCreateRowSorter(sortInMemory);
+	}
+}
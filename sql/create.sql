@@ -9,6 +9,18 @@ DROP TABLE IF EXISTS FlightInfo CASCADE;--OK
 DROP TABLE IF EXISTS Repairs CASCADE;--OK
 DROP TABLE IF EXISTS Schedule CASCADE;--OK
 
+DROP TABLE IF EXISTS RepairsPerPlane CASCADE;--OK
+DROP TABLE IF EXISTS RepairsPerYear CASCADE;--OK
+DROP TABLE IF EXISTS RepairsPerCode CASCADE;--OK
+DROP TABLE IF EXISTS FlightStatusCounts CASCADE;--OK
+
+DROP SEQUENCE IF EXISTS reservation_rnum_seq;--OK
+DROP SEQUENCE IF EXISTS reservation_booked_seq;--OK
+DROP SEQUENCE IF EXISTS plane_id_seq;--OK
+DROP SEQUENCE IF EXISTS pilot_id_seq;--OK
+DROP SEQUENCE IF EXISTS flightinfo_fiid_seq;--OK
+DROP SEQUENCE IF EXISTS technician_id_seq;--OK
+
 -------------
 ---DOMAINS---
 -------------
@@ -79,17 +91,28 @@ CREATE TABLE Technician
 ---RELATIONS---
 ---------------
 
+-- Order in which reservations were inserted, which rnum is not: every client takes rnums from its own block --
+-- The wait list is served in this order --
+CREATE SEQUENCE reservation_booked_seq;
+
 CREATE TABLE Reservation
 (
 	rnum INTEGER NOT NULL,
 	cid INTEGER NOT NULL,
 	fid INTEGER NOT NULL,
 	status _STATUS,
+	booked BIGINT NOT NULL DEFAULT nextval('reservation_booked_seq'),
 	PRIMARY KEY (rnum),
 	FOREIGN KEY (cid) REFERENCES Customer(id),
 	FOREIGN KEY (fid) REFERENCES Flight(fnum)
 );
 
+ALTER SEQUENCE reservation_booked_seq OWNED BY Reservation.booked;
+
+-- Reservation numbers handed out by the booking path --
+-- Each nextval reserves a block of 50 numbers for one client (see IdAllocator) --
+CREATE SEQUENCE reservation_rnum_seq INCREMENT BY 50 OWNED BY Reservation.rnum;
+
 CREATE TABLE FlightInfo
 (
 	fiid INTEGER NOT NULL,
@@ -102,6 +125,12 @@ CREATE TABLE FlightInfo
 	FOREIGN KEY (plane_id) REFERENCES Plane(id)
 );
 
+-- Ids of the rows the Add options insert, reserved in blocks like reservation numbers --
+CREATE SEQUENCE plane_id_seq INCREMENT BY 50 OWNED BY Plane.id;
+CREATE SEQUENCE pilot_id_seq INCREMENT BY 50 OWNED BY Pilot.id;
+CREATE SEQUENCE flightinfo_fiid_seq INCREMENT BY 50 OWNED BY FlightInfo.fiid;
+CREATE SEQUENCE technician_id_seq INCREMENT BY 50 OWNED BY Technician.id;
+
 CREATE TABLE Repairs
 (
 	rid INTEGER NOT NULL,
@@ -190,6 +219,8 @@ COPY Reservation (
 FROM 'reservation.csv'
 WITH DELIMITER ',';
 
+SELECT setval('reservation_rnum_seq', (SELECT coalesce(max(rnum), 0) + 1 FROM Reservation), false);
+
 COPY FlightInfo (
 	fiid,
 	flight_id,
@@ -199,6 +230,11 @@ COPY FlightInfo (
 FROM 'flightinfo.csv'
 WITH DELIMITER ',';
 
+SELECT setval('plane_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM Plane), false);
+SELECT setval('pilot_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM Pilot), false);
+SELECT setval('flightinfo_fiid_seq', (SELECT coalesce(max(fiid), 0) + 1 FROM FlightInfo), false);
+SELECT setval('technician_id_seq', (SELECT coalesce(max(id), 0) + 1 FROM Technician), false);
+
 COPY Repairs (
 	rid,
 	repair_date,
@@ -229,4 +265,301 @@ USING BTREE(repair_date);
 
 CREATE INDEX index3
 ON Reservation
-USING BTREE(status);
\ No newline at end of file
+USING BTREE(fid, status);
+
+--------------------
+---SUMMARY TABLES---
+--------------------
+-- Repair counts per plane, per year and per code, kept current by triggers on Repairs --
+-- so options 7 and 8 read a handful of rows instead of grouping all of Repairs. --
+
+CREATE TABLE RepairsPerPlane
+(
+	plane_id INTEGER NOT NULL,
+	num_repairs INTEGER NOT NULL,
+	PRIMARY KEY (plane_id)
+);
+
+CREATE TABLE RepairsPerYear
+(
+	repair_year INTEGER NOT NULL,
+	num_repairs INTEGER NOT NULL,
+	PRIMARY KEY (repair_year)
+);
+
+CREATE TABLE RepairsPerCode
+(
+	repair_code CHAR(2) NOT NULL,
+	num_repairs INTEGER NOT NULL,
+	PRIMARY KEY (repair_code)
+);
+
+-- Adds delta to the counters of one repair, dropping counters that reach zero --
+CREATE OR REPLACE FUNCTION repairs_summary_add(p_plane INTEGER, p_date DATE, p_code CHAR(2), p_delta INTEGER)
+RETURNS void AS $$
+BEGIN
+	INSERT INTO RepairsPerPlane AS S VALUES (p_plane, p_delta)
+		ON CONFLICT (plane_id) DO UPDATE SET num_repairs = S.num_repairs + p_delta;
+	DELETE FROM RepairsPerPlane WHERE plane_id = p_plane AND num_repairs <= 0;
+
+	INSERT INTO RepairsPerYear AS S VALUES (extract(year from p_date), p_delta)
+		ON CONFLICT (repair_year) DO UPDATE SET num_repairs = S.num_repairs + p_delta;
+	DELETE FROM RepairsPerYear WHERE repair_year = extract(year from p_date) AND num_repairs <= 0;
+
+	IF p_code IS NOT NULL THEN
+		INSERT INTO RepairsPerCode AS S VALUES (p_code, p_delta)
+			ON CONFLICT (repair_code) DO UPDATE SET num_repairs = S.num_repairs + p_delta;
+		DELETE FROM RepairsPerCode WHERE repair_code = p_code AND num_repairs <= 0;
+	END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Recomputes all counters from Repairs, used after bulk loads --
+CREATE OR REPLACE FUNCTION repairs_summary_rebuild()
+RETURNS void AS $$
+BEGIN
+	TRUNCATE RepairsPerPlane, RepairsPerYear, RepairsPerCode;
+	INSERT INTO RepairsPerPlane SELECT plane_id, count(*) FROM Repairs GROUP BY plane_id;
+	INSERT INTO RepairsPerYear SELECT extract(year from repair_date), count(*) FROM Repairs GROUP BY 1;
+	INSERT INTO RepairsPerCode SELECT repair_code, count(*) FROM Repairs WHERE repair_code IS NOT NULL GROUP BY repair_code;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION repairs_summary_row()
+RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'DELETE' OR TG_OP = 'UPDATE' THEN
+		PERFORM repairs_summary_add(OLD.plane_id, OLD.repair_date, OLD.repair_code, -1);
+	END IF;
+	IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+		PERFORM repairs_summary_add(NEW.plane_id, NEW.repair_date, NEW.repair_code, 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION repairs_summary_truncate()
+RETURNS trigger AS $$
+BEGIN
+	TRUNCATE RepairsPerPlane, RepairsPerYear, RepairsPerCode;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT repairs_summary_rebuild();
+
+CREATE TRIGGER repairs_summary
+AFTER INSERT OR UPDATE OR DELETE ON Repairs
+FOR EACH ROW EXECUTE PROCEDURE repairs_summary_row();
+
+CREATE TRIGGER repairs_summary_truncate
+AFTER TRUNCATE ON Repairs
+FOR EACH STATEMENT EXECUTE PROCEDURE repairs_summary_truncate();
+
+-- Number of reservations per flight and status, kept current by triggers on Reservation --
+-- in the same transaction as the reservation change, so option 9 is a primary key lookup. --
+
+CREATE TABLE FlightStatusCounts
+(
+	fid INTEGER NOT NULL,
+	status CHAR(1) NOT NULL,
+	num INTEGER NOT NULL,
+	PRIMARY KEY (fid, status)
+);
+
+-- Adds delta to the counter of one flight and status --
+CREATE OR REPLACE FUNCTION reservation_counts_add(p_fid INTEGER, p_status CHAR(1), p_delta INTEGER)
+RETURNS void AS $$
+BEGIN
+	IF p_status IS NOT NULL THEN
+		INSERT INTO FlightStatusCounts AS S VALUES (p_fid, p_status, p_delta)
+			ON CONFLICT (fid, status) DO UPDATE SET num = S.num + p_delta;
+	END IF;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Recomputes all counters from Reservation, used after bulk loads --
+CREATE OR REPLACE FUNCTION reservation_counts_rebuild()
+RETURNS void AS $$
+BEGIN
+	TRUNCATE FlightStatusCounts;
+	INSERT INTO FlightStatusCounts SELECT fid, status, count(*) FROM Reservation WHERE status IS NOT NULL GROUP BY fid, status;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION reservation_counts_row()
+RETURNS trigger AS $$
+BEGIN
+	IF TG_OP = 'UPDATE' AND OLD.fid = NEW.fid AND OLD.status IS NOT DISTINCT FROM NEW.status THEN
+		RETURN NULL;
+	END IF;
+	IF TG_OP = 'DELETE' OR TG_OP = 'UPDATE' THEN
+		PERFORM reservation_counts_add(OLD.fid, OLD.status, -1);
+	END IF;
+	IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+		PERFORM reservation_counts_add(NEW.fid, NEW.status, 1);
+	END IF;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE OR REPLACE FUNCTION reservation_counts_truncate()
+RETURNS trigger AS $$
+BEGIN
+	TRUNCATE FlightStatusCounts;
+	RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+SELECT reservation_counts_rebuild();
+
+CREATE TRIGGER reservation_counts
+AFTER INSERT OR UPDATE OR DELETE ON Reservation
+FOR EACH ROW EXECUTE PROCEDURE reservation_counts_row();
+
+CREATE TRIGGER reservation_counts_truncate
+AFTER TRUNCATE ON Reservation
+FOR EACH STATEMENT EXECUTE PROCEDURE reservation_counts_truncate();
+
+------------------------------
+---RESERVATION PARTITIONING---
+------------------------------
+-- Reservation starts as a plain table. reservation_partition() rebuilds it partitioned by fid, so that --
+-- a query with fid = ? reads one partition and its indexes stay the size of a partition: --
+--   SELECT reservation_partition('hash', 16);    16 partitions, fid spread by hash --
+--   SELECT reservation_partition('range', 1000); one partition per 1000 consecutive flight numbers --
+--   SELECT reservation_partition('none');        back to a plain table --
+-- Partitions need PostgreSQL 11 or later. The primary key of a partitioned Reservation is (rnum, fid), --
+-- since it must contain the partition key; rnum stays unique because it only comes from reservation_rnum_seq. --
+
+-- Adds (p_sign 1) or removes (p_sign -1) the reservations of a table to or from FlightStatusCounts --
+CREATE OR REPLACE FUNCTION reservation_counts_merge(p_table REGCLASS, p_sign INTEGER)
+RETURNS void AS $$
+BEGIN
+	EXECUTE format('INSERT INTO FlightStatusCounts AS S '
+		'SELECT fid, status, %s * count(*) FROM %s WHERE status IS NOT NULL GROUP BY fid, status '
+		'ON CONFLICT (fid, status) DO UPDATE SET num = S.num + EXCLUDED.num', p_sign, p_table);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Recreates Reservation as a plain ('none'), hash or range partitioned table holding the same rows --
+CREATE OR REPLACE FUNCTION reservation_partition(p_mode TEXT, p_count INTEGER DEFAULT 16)
+RETURNS void AS $$
+DECLARE
+	v_max INTEGER;
+	v_part REGCLASS;
+BEGIN
+	IF p_mode NOT IN ('none', 'hash', 'range') THEN
+		RAISE EXCEPTION 'partitioning mode must be none, hash or range, not %', p_mode;
+	END IF;
+	IF p_mode <> 'none' AND current_setting('server_version_num')::INTEGER < 110000 THEN
+		RAISE EXCEPTION 'partitioning Reservation needs PostgreSQL 11 or later';
+	END IF;
+	IF p_count < 1 THEN
+		RAISE EXCEPTION 'partition count must be positive';
+	END IF;
+	LOCK TABLE Reservation IN ACCESS EXCLUSIVE MODE;
+
+	-- the old table keeps its rows until they are copied; its names are freed for the new one
+	ALTER SEQUENCE reservation_rnum_seq OWNED BY NONE;
+	ALTER SEQUENCE reservation_booked_seq OWNED BY NONE;
+	ALTER TABLE Reservation RENAME TO reservation_old;
+	EXECUTE format('ALTER INDEX %I RENAME TO reservation_old_pkey',
+		(SELECT conname FROM pg_constraint WHERE conrelid = 'reservation_old'::regclass AND contype = 'p'));
+	ALTER INDEX index3 RENAME TO reservation_old_index3;
+	FOR v_part IN SELECT inhrelid::regclass FROM pg_inherits WHERE inhparent = 'reservation_old'::regclass LOOP
+		EXECUTE format('ALTER TABLE %s RENAME TO %I', v_part, 'old_' || v_part::TEXT);
+	END LOOP;
+
+	IF p_mode = 'none' THEN
+		CREATE TABLE Reservation
+		(
+			rnum INTEGER NOT NULL,
+			cid INTEGER NOT NULL,
+			fid INTEGER NOT NULL,
+			status _STATUS,
+			booked BIGINT NOT NULL DEFAULT nextval('reservation_booked_seq'),
+			PRIMARY KEY (rnum),
+			FOREIGN KEY (cid) REFERENCES Customer(id),
+			FOREIGN KEY (fid) REFERENCES Flight(fnum)
+		);
+	ELSE
+		EXECUTE format('CREATE TABLE Reservation ('
+			'rnum INTEGER NOT NULL, cid INTEGER NOT NULL, fid INTEGER NOT NULL, status _STATUS, '
+			'booked BIGINT NOT NULL DEFAULT nextval(''reservation_booked_seq''), '
+			'PRIMARY KEY (rnum, fid), '
+			'FOREIGN KEY (cid) REFERENCES Customer(id), FOREIGN KEY (fid) REFERENCES Flight(fnum)'
+			') PARTITION BY %s (fid)', upper(p_mode));
+	END IF;
+
+	IF p_mode = 'hash' THEN
+		FOR i IN 0 .. p_count - 1 LOOP
+			EXECUTE format('CREATE TABLE reservation_p%s PARTITION OF Reservation '
+				'FOR VALUES WITH (MODULUS %s, REMAINDER %s)', i, p_count, i);
+		END LOOP;
+	ELSIF p_mode = 'range' THEN
+		-- every flight number up to the next p_count after the highest has a partition; later ones go to the default
+		SELECT greatest(coalesce(max(fnum), 0), coalesce((SELECT max(fid) FROM reservation_old), 0)) INTO v_max FROM Flight;
+		FOR i IN 0 .. v_max / p_count + 1 LOOP
+			EXECUTE format('CREATE TABLE reservation_p%s PARTITION OF Reservation FOR VALUES FROM (%s) TO (%s)',
+				i, i * p_count, (i + 1) * p_count);
+		END LOOP;
+		CREATE TABLE reservation_default PARTITION OF Reservation DEFAULT;
+	END IF;
+
+	INSERT INTO Reservation (rnum, cid, fid, status, booked) SELECT rnum, cid, fid, status, booked FROM reservation_old;
+	DROP TABLE reservation_old;
+
+	CREATE INDEX index3 ON Reservation USING BTREE(fid, status);
+	ALTER SEQUENCE reservation_rnum_seq OWNED BY Reservation.rnum;
+	ALTER SEQUENCE reservation_booked_seq OWNED BY Reservation.booked;
+	CREATE TRIGGER reservation_counts
+	AFTER INSERT OR UPDATE OR DELETE ON Reservation
+	FOR EACH ROW EXECUTE PROCEDURE reservation_counts_row();
+	CREATE TRIGGER reservation_counts_truncate
+	AFTER TRUNCATE ON Reservation
+	FOR EACH STATEMENT EXECUTE PROCEDURE reservation_counts_truncate();
+	ANALYZE Reservation;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Attaches a table of reservations as a partition, e.g. --
+--   SELECT reservation_attach('reservation_p9', 'FROM (9000) TO (10000)'); --
+--   SELECT reservation_attach('reservation_p3', 'WITH (MODULUS 16, REMAINDER 3)'); --
+CREATE OR REPLACE FUNCTION reservation_attach(p_table REGCLASS, p_bound TEXT)
+RETURNS void AS $$
+BEGIN
+	EXECUTE format('ALTER TABLE Reservation ATTACH PARTITION %s FOR VALUES %s', p_table, p_bound);
+	PERFORM reservation_counts_merge(p_table, 1);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Detaches a partition; it stays a table of its own and its reservations leave FlightStatusCounts --
+CREATE OR REPLACE FUNCTION reservation_detach(p_table REGCLASS)
+RETURNS void AS $$
+BEGIN
+	EXECUTE format('ALTER TABLE Reservation DETACH PARTITION %s', p_table);
+	PERFORM reservation_counts_merge(p_table, -1);
+END;
+$$ LANGUAGE plpgsql;
+
+-- Detaches every non-empty partition whose reservations are all on flights departed before p_before, --
+-- returning their names. With range partitioning a partition holds consecutive flight numbers, so --
+-- partitions of old flights qualify as a whole; a hash partition mixes flights and rarely does. --
+CREATE OR REPLACE FUNCTION reservation_archive(p_before DATE)
+RETURNS SETOF TEXT AS $$
+DECLARE
+	v_part REGCLASS;
+	v_live BOOLEAN;
+	v_empty BOOLEAN;
+BEGIN
+	FOR v_part IN SELECT inhrelid::regclass FROM pg_inherits WHERE inhparent = 'reservation'::regclass ORDER BY 1 LOOP
+		EXECUTE format('SELECT NOT EXISTS (SELECT 1 FROM %s), EXISTS (SELECT 1 FROM %s R JOIN Flight F ON F.fnum = R.fid '
+			'WHERE F.actual_departure_date >= $1)', v_part, v_part) INTO v_empty, v_live USING p_before;
+		IF NOT v_empty AND NOT v_live THEN
+			PERFORM reservation_detach(v_part);
+			RETURN NEXT v_part::TEXT;
+		END IF;
+	END LOOP;
+END;
+$$ LANGUAGE plpgsql;